@@ -30,9 +30,30 @@ public class S3StreamConfig {
     private long networkBaselineBandwidth = 0;
     private int refillPeriodMs = 1000;
 
+    // Streams are sharded by streamId to scale the append and read of the storage.
+    private int storageShardNum = 1;
+
+    // Max count of the WAL objects uploading at the same time, they are still committed in order.
+    private int walObjectUploadConcurrency = 4;
+
+    // Compression type of the data blocks in S3 objects: none, zstd or lz4.
+    private String objectCompressionType = "none";
+    // Record interval of the sparse offset index in the data blocks, 0 means no index.
+    // Only enable it after all the readers are upgraded, the old readers cannot read the blocks with the index.
+    private int objectBlockOffsetIndexInterval = 0;
+
+    // Path of the local disk tier of the block cache, leave it empty to disable the disk tier.
+    private String blockCacheDiskPath;
+    private long blockCacheDiskSize = 10L * 1024 * 1024 * 1024;
+    // Max total size of the cached indexes of S3 objects.
+    private long objectIndexCacheSize = 64 * 1024 * 1024;
+
     private int streamObjectCompactionIntervalMinutes = 60;
     private long streamObjectCompactionMaxSizeBytes = 10737418240L;
     private int streamObjectCompactionLivingTimeMinutes = 60;
+    // Max count of the streams compacted at the same time, and max bytes of the source objects compacted per round.
+    private int streamObjectCompactionParallelism = 4;
+    private long streamObjectCompactionByteBudget = 10737418240L;
 
     private int walObjectCompactionInterval = 20;
     private long walObjectCompactionCacheSize = 200 * 1024 * 1024;
@@ -77,6 +98,34 @@ public class S3StreamConfig {
         return refillPeriodMs;
     }
 
+    public int storageShardNum() {
+        return storageShardNum;
+    }
+
+    public int walObjectUploadConcurrency() {
+        return walObjectUploadConcurrency;
+    }
+
+    public String objectCompressionType() {
+        return objectCompressionType;
+    }
+
+    public int objectBlockOffsetIndexInterval() {
+        return objectBlockOffsetIndexInterval;
+    }
+
+    public String blockCacheDiskPath() {
+        return blockCacheDiskPath;
+    }
+
+    public long blockCacheDiskSize() {
+        return blockCacheDiskSize;
+    }
+
+    public long objectIndexCacheSize() {
+        return objectIndexCacheSize;
+    }
+
     public int streamObjectCompactionIntervalMinutes() {
         return streamObjectCompactionIntervalMinutes;
     }
@@ -89,6 +138,14 @@ public class S3StreamConfig {
         return streamObjectCompactionLivingTimeMinutes;
     }
 
+    public int streamObjectCompactionParallelism() {
+        return streamObjectCompactionParallelism;
+    }
+
+    public long streamObjectCompactionByteBudget() {
+        return streamObjectCompactionByteBudget;
+    }
+
     public int walObjectCompactionInterval() {
         return walObjectCompactionInterval;
     }
@@ -34,12 +34,30 @@ public class StoreConfig {
 
     private int fetchBatchSizeFactor = 2;
 
+    // The messages put to a queue concurrently are packed into one record batch of the data stream,
+    // limited by the message count and the total bytes of the batch.
+    private int putBatchMaxCount = 256;
+
+    // Default is 1MB, unit in bytes
+    private int putBatchMaxBytes = 1024 * 1024;
+
     // Used for storing KV data based on RocksDB
     private String kvPath = "/tmp/rocketmq/kvstore";
 
     // DEFAULT is 1000 * 1000, unit in records
     private int operationSnapshotInterval = 1000 * 1000;
 
+    // The operations logged to an operation stream concurrently are committed as one record,
+    // limited by the operation count. Operations wait for at most the linger time to be grouped,
+    // besides the time waiting for the in-flight append of the same stream.
+    private int operationLogGroupCommitMaxCount = 1024;
+    // Default is 0, unit in milliseconds
+    private long operationLogGroupCommitLingerMillis = 0;
+
+    // The operation stream is fetched and replayed in chunks when recovering a queue,
+    // DEFAULT is 10 * 1000, unit in operations
+    private int operationLogRecoverBatchSize = 10 * 1000;
+
     private int workingThreadPoolNums = PROCESSOR_NUMBER;
     private int workingThreadQueueCapacity = 10000;
 
@@ -59,6 +77,22 @@ public class StoreConfig {
         return fetchBatchSizeFactor;
     }
 
+    public int putBatchMaxCount() {
+        return putBatchMaxCount;
+    }
+
+    public void setPutBatchMaxCount(int putBatchMaxCount) {
+        this.putBatchMaxCount = putBatchMaxCount;
+    }
+
+    public int putBatchMaxBytes() {
+        return putBatchMaxBytes;
+    }
+
+    public void setPutBatchMaxBytes(int putBatchMaxBytes) {
+        this.putBatchMaxBytes = putBatchMaxBytes;
+    }
+
     public String kvPath() {
         return kvPath;
     }
@@ -71,6 +105,30 @@ public class StoreConfig {
         this.operationSnapshotInterval = operationSnapshotInterval;
     }
 
+    public int operationLogGroupCommitMaxCount() {
+        return operationLogGroupCommitMaxCount;
+    }
+
+    public void setOperationLogGroupCommitMaxCount(int operationLogGroupCommitMaxCount) {
+        this.operationLogGroupCommitMaxCount = operationLogGroupCommitMaxCount;
+    }
+
+    public long operationLogGroupCommitLingerMillis() {
+        return operationLogGroupCommitLingerMillis;
+    }
+
+    public void setOperationLogGroupCommitLingerMillis(long operationLogGroupCommitLingerMillis) {
+        this.operationLogGroupCommitLingerMillis = operationLogGroupCommitLingerMillis;
+    }
+
+    public int operationLogRecoverBatchSize() {
+        return operationLogRecoverBatchSize;
+    }
+
+    public void setOperationLogRecoverBatchSize(int operationLogRecoverBatchSize) {
+        this.operationLogRecoverBatchSize = operationLogRecoverBatchSize;
+    }
+
     public int workingThreadPoolNums() {
         return workingThreadPoolNums;
     }
@@ -143,6 +143,16 @@ public class DefaultS3MetadataService implements S3MetadataService {
             int brokerId = walObject.getBrokerId();
             long objectId = walObject.getObjectId();
 
+            // A commit may be retried after it is applied but the response is lost, so commit again is a no-op.
+            if (objectId != S3Constants.NOOP_OBJECT_ID) {
+                S3WalObject committed = s3WALObjectMapper.getByObjectId(objectId);
+                if (!Objects.isNull(committed) && Objects.equals(committed.getNodeId(), brokerId)) {
+                    LOGGER.info("S3WALObject[object-id={}] is already committed", objectId);
+                    future.complete(null);
+                    return future;
+                }
+            }
+
             Map<Long, List<Pair<Long, Long>>> streamSegments = new HashMap<>();
             for (S3StreamObject item : streamObjects) {
                 if (!streamSegments.containsKey(item.getStreamId())) {
@@ -186,7 +196,8 @@ public class DefaultS3MetadataService implements S3MetadataService {
             }
 
             long dataTs = System.currentTimeMillis();
-            long sequenceId = objectId;
+            // The sequence id keeps the order of the WAL object, which may be an object uploaded again for an earlier one.
+            long sequenceId = walObject.getSequenceId() > 0 ? walObject.getSequenceId() : objectId;
             if (!Objects.isNull(compactedObjects) && !compactedObjects.isEmpty()) {
                 List<S3WalObject> s3WalObjects = compactedObjects.stream()
                     .map(id -> {
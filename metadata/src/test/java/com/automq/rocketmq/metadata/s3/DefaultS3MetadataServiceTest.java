@@ -702,6 +702,41 @@ public class DefaultS3MetadataServiceTest extends DatabaseTestBase {
         }
     }
 
+    @Test
+    public void testCommitWalObject_Retry() throws IOException, ExecutionException, InterruptedException {
+        long objectId;
+        int nodeId = 1;
+
+        try (S3MetadataService s3MetadataService = new DefaultS3MetadataService(config, getSessionFactory(), executorService)) {
+            objectId = s3MetadataService.prepareS3Objects(2, 5).get();
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+
+        // the object is uploaded again for the earlier one, so it keeps the order of the earlier one
+        S3WALObject walObject = S3WALObject.newBuilder()
+            .setObjectId(objectId + 1)
+            .setSequenceId(objectId)
+            .setObjectSize(222L)
+            .setBrokerId(nodeId)
+            .build();
+
+        try (S3MetadataService manager = new DefaultS3MetadataService(config, getSessionFactory(), executorService)) {
+            manager.commitWalObject(walObject, new ArrayList<>(), new ArrayList<>()).get();
+            // the commit is applied but the response is lost, so it is retried
+            manager.commitWalObject(walObject, new ArrayList<>(), new ArrayList<>()).get();
+        }
+
+        try (SqlSession session = getSessionFactory().openSession()) {
+            S3ObjectMapper s3ObjectMapper = session.getMapper(S3ObjectMapper.class);
+            Assertions.assertEquals(S3ObjectState.BOS_COMMITTED, s3ObjectMapper.getById(objectId + 1).getState());
+
+            S3WalObjectMapper s3WALObjectMapper = session.getMapper(S3WalObjectMapper.class);
+            S3WalObject object = s3WALObjectMapper.getByObjectId(objectId + 1);
+            Assertions.assertEquals(objectId, object.getSequenceId());
+        }
+    }
+
     @Test
     public void testCommitWalObject_ObjectNotPrepare() throws IOException, ExecutionException, InterruptedException {
         long streamId, startOffset = 0, endOffset = 10;
@@ -0,0 +1,61 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.automq.stream.s3.benchmark.jmh;
+
+import com.automq.stream.s3.DirectByteBufAlloc;
+import com.automq.stream.s3.model.StreamRecordBatch;
+import io.netty.buffer.ByteBuf;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+final class BenchmarkUtils {
+    private static final byte[] RANDOM_BYTES = new byte[1024 * 1024];
+
+    static {
+        ThreadLocalRandom.current().nextBytes(RANDOM_BYTES);
+    }
+
+    private BenchmarkUtils() {
+    }
+
+    /**
+     * Create a record with a random payload in pooled direct memory.
+     * The payload is copied from pre-generated random bytes, so generating random bytes is not measured.
+     */
+    static StreamRecordBatch newRecord(long streamId, long baseOffset, int count, int payloadSize) {
+        ByteBuf payload = DirectByteBufAlloc.byteBuffer(payloadSize);
+        while (payload.readableBytes() < payloadSize) {
+            payload.writeBytes(RANDOM_BYTES, 0, Math.min(RANDOM_BYTES.length, payloadSize - payload.readableBytes()));
+        }
+        return new StreamRecordBatch(streamId, 0, baseOffset, count, payload);
+    }
+
+    /**
+     * Create continuous records of a stream, each of which contains one message.
+     */
+    static List<StreamRecordBatch> newRecords(long streamId, long startOffset, int recordCount, int payloadSize) {
+        List<StreamRecordBatch> records = new ArrayList<>(recordCount);
+        for (int i = 0; i < recordCount; i++) {
+            records.add(newRecord(streamId, startOffset + i, 1, payloadSize));
+        }
+        return records;
+    }
+}
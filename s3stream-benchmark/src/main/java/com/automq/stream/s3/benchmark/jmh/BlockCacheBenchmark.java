@@ -0,0 +1,106 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.automq.stream.s3.benchmark.jmh;
+
+import com.automq.stream.s3.cache.BlockCache;
+import com.automq.stream.s3.model.StreamRecordBatch;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reads and writes of the {@link BlockCache}, which is shared by all the readers of a node.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class BlockCacheBenchmark {
+    private static final long CACHE_SIZE = 256 * 1024 * 1024;
+    private static final int RECORDS_PER_STREAM = 1024;
+    private static final int RECORDS_PER_PUT = 16;
+    private static final int PAYLOAD_SIZE = 4096;
+    /**
+     * Stream id of the streams written by {@link #put}, which are not read by {@link #get}.
+     */
+    private static final AtomicLong PUT_STREAM_ID_ALLOC = new AtomicLong(Long.MAX_VALUE / 2);
+
+    @Param({"1", "64"})
+    private int streamCount;
+
+    @Param({"16"})
+    private int readRecordCount;
+
+    private BlockCache blockCache;
+
+    @State(Scope.Thread)
+    public static class PutState {
+        final long streamId = PUT_STREAM_ID_ALLOC.getAndIncrement();
+        long nextOffset = 0;
+    }
+
+    @Setup
+    public void setup() {
+        blockCache = new BlockCache(CACHE_SIZE);
+        for (long streamId = 0; streamId < streamCount; streamId++) {
+            for (int offset = 0; offset < RECORDS_PER_STREAM; offset += RECORDS_PER_PUT) {
+                blockCache.put(streamId, BenchmarkUtils.newRecords(streamId, offset, RECORDS_PER_PUT, PAYLOAD_SIZE));
+            }
+        }
+    }
+
+    @Benchmark
+    public int get() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long streamId = random.nextInt(streamCount);
+        long startOffset = random.nextInt(RECORDS_PER_STREAM - readRecordCount);
+        List<StreamRecordBatch> records = blockCache.get(streamId, startOffset, startOffset + readRecordCount, Integer.MAX_VALUE).getRecords();
+        int size = records.size();
+        records.forEach(StreamRecordBatch::release);
+        return size;
+    }
+
+    /**
+     * Put records of a stream per thread. The cache soon becomes full, so the puts also evict the least recently
+     * used blocks.
+     */
+    @Benchmark
+    public void put(PutState state) {
+        List<StreamRecordBatch> records = BenchmarkUtils.newRecords(state.streamId, state.nextOffset, RECORDS_PER_PUT, PAYLOAD_SIZE);
+        state.nextOffset += RECORDS_PER_PUT;
+        blockCache.put(state.streamId, records);
+    }
+}
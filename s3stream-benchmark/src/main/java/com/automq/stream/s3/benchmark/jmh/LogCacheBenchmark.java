@@ -0,0 +1,95 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.automq.stream.s3.benchmark.jmh;
+
+import com.automq.stream.s3.cache.LogCache;
+import com.automq.stream.s3.model.StreamRecordBatch;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tailing reads from the {@link LogCache}, whose records are spread over several archived blocks.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LogCacheBenchmark {
+    private static final int RECORDS_PER_STREAM = 1024;
+    private static final int PAYLOAD_SIZE = 1024;
+    private static final long BLOCK_SIZE = 4 * 1024 * 1024;
+
+    @Param({"1", "64"})
+    private int streamCount;
+
+    @Param({"16"})
+    private int readRecordCount;
+
+    private LogCache logCache;
+    private final List<StreamRecordBatch> records = new ArrayList<>();
+
+    @Setup
+    public void setup() {
+        logCache = new LogCache(BLOCK_SIZE);
+        // interleave the streams as the records are appended to the WAL
+        for (int i = 0; i < RECORDS_PER_STREAM; i++) {
+            for (long streamId = 0; streamId < streamCount; streamId++) {
+                StreamRecordBatch record = BenchmarkUtils.newRecord(streamId, i, 1, PAYLOAD_SIZE);
+                records.add(record);
+                if (logCache.put(record)) {
+                    logCache.archiveCurrentBlock();
+                }
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        records.forEach(StreamRecordBatch::release);
+        records.clear();
+    }
+
+    @Benchmark
+    public int get() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long streamId = random.nextInt(streamCount);
+        long startOffset = random.nextInt(RECORDS_PER_STREAM - readRecordCount);
+        List<StreamRecordBatch> records = logCache.get(streamId, startOffset, startOffset + readRecordCount, Integer.MAX_VALUE);
+        int size = records.size();
+        records.forEach(StreamRecordBatch::release);
+        return size;
+    }
+}
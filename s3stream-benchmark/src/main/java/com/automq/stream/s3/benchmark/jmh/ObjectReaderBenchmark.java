@@ -0,0 +1,150 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.automq.stream.s3.benchmark.jmh;
+
+import com.automq.stream.s3.ObjectReader;
+import com.automq.stream.s3.ObjectWriter;
+import com.automq.stream.s3.metadata.S3ObjectMetadata;
+import com.automq.stream.s3.metadata.S3ObjectType;
+import com.automq.stream.s3.model.StreamRecordBatch;
+import com.automq.stream.s3.operator.MemoryS3Operator;
+import com.automq.stream.s3.operator.S3Operator;
+import com.automq.stream.utils.CloseableIterator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Searching the index block of an object and decoding its data blocks, which are done for every block cache miss.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ObjectReaderBenchmark {
+
+    private static S3ObjectMetadata writeObject(S3Operator s3Operator, long objectId, int streamCount, int recordsPerStream,
+                                                int payloadSize, int blockSize) {
+        ObjectWriter writer = ObjectWriter.writer(objectId, s3Operator, blockSize, blockSize);
+        for (long streamId = 0; streamId < streamCount; streamId++) {
+            List<StreamRecordBatch> records = BenchmarkUtils.newRecords(streamId, 0, recordsPerStream, payloadSize);
+            writer.write(streamId, records);
+            records.forEach(StreamRecordBatch::release);
+        }
+        writer.close().join();
+        return new S3ObjectMetadata(objectId, writer.size(), S3ObjectType.WAL);
+    }
+
+    /**
+     * A WAL object with many small streams, so the index block has thousands of entries.
+     */
+    @State(Scope.Benchmark)
+    public static class IndexState {
+        private static final int RECORDS_PER_STREAM = 64;
+
+        @Param({"1024"})
+        int streamCount;
+
+        ObjectReader reader;
+        ObjectReader.IndexBlock indexBlock;
+
+        @Setup
+        public void setup() {
+            S3Operator s3Operator = new MemoryS3Operator();
+            // 1KiB records in 16KiB blocks, so each stream has 4 blocks
+            S3ObjectMetadata metadata = writeObject(s3Operator, 0L, streamCount, RECORDS_PER_STREAM, 1024, 16 * 1024);
+            reader = new ObjectReader(metadata, s3Operator);
+            indexBlock = reader.basicObjectInfo().join().indexBlock();
+        }
+
+        @TearDown
+        public void tearDown() {
+            // the index block is released with the reader
+            reader.close();
+        }
+    }
+
+    /**
+     * The data blocks of a stream object.
+     */
+    @State(Scope.Benchmark)
+    public static class DataBlockState {
+        private static final int OBJECT_SIZE = 16 * 1024 * 1024;
+        private static final int BLOCK_SIZE = 1024 * 1024;
+
+        @Param({"1024", "65536"})
+        int payloadSize;
+
+        final List<ObjectReader.DataBlock> dataBlocks = new ArrayList<>();
+
+        @Setup
+        public void setup() {
+            S3Operator s3Operator = new MemoryS3Operator();
+            S3ObjectMetadata metadata = writeObject(s3Operator, 0L, 1, OBJECT_SIZE / payloadSize, payloadSize, BLOCK_SIZE);
+            try (ObjectReader reader = new ObjectReader(metadata, s3Operator)) {
+                for (ObjectReader.DataBlockIndex index : reader.find(0L, 0L, Long.MAX_VALUE).join()) {
+                    dataBlocks.add(reader.read(index).join());
+                }
+            }
+        }
+
+        @TearDown
+        public void tearDown() {
+            dataBlocks.forEach(ObjectReader.DataBlock::close);
+            dataBlocks.clear();
+        }
+    }
+
+    @Benchmark
+    public int indexBlockFind(IndexState state) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long streamId = random.nextInt(state.streamCount);
+        long startOffset = random.nextInt(IndexState.RECORDS_PER_STREAM);
+        return state.indexBlock.find(streamId, startOffset, startOffset + 16).size();
+    }
+
+    @Benchmark
+    public long dataBlockIterator(DataBlockState state) {
+        ObjectReader.DataBlock dataBlock = state.dataBlocks.get(ThreadLocalRandom.current().nextInt(state.dataBlocks.size()));
+        long lastOffset = 0;
+        try (CloseableIterator<StreamRecordBatch> it = dataBlock.iterator()) {
+            while (it.hasNext()) {
+                StreamRecordBatch record = it.next();
+                lastOffset = record.getLastOffset();
+                record.release();
+            }
+        }
+        return lastOffset;
+    }
+}
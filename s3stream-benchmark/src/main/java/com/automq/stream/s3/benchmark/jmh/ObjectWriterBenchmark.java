@@ -0,0 +1,97 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.automq.stream.s3.benchmark.jmh;
+
+import com.automq.stream.s3.ObjectWriter;
+import com.automq.stream.s3.metadata.ObjectUtils;
+import com.automq.stream.s3.model.StreamRecordBatch;
+import com.automq.stream.s3.operator.MemoryS3Operator;
+import com.automq.stream.s3.operator.S3Operator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writing a 16MiB object with {@link ObjectWriter}, as a WAL object upload or a compaction does.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ObjectWriterBenchmark {
+    private static final int OBJECT_SIZE = 16 * 1024 * 1024;
+    private static final int BLOCK_SIZE = 1024 * 1024;
+    private static final int PART_SIZE = 16 * 1024 * 1024;
+
+    @Param({"1", "64"})
+    private int streamCount;
+
+    @Param({"1024", "65536"})
+    private int payloadSize;
+
+    private S3Operator s3Operator;
+    private final List<List<StreamRecordBatch>> streamRecords = new ArrayList<>();
+    private long nextObjectId = 0;
+
+    @Setup
+    public void setup() {
+        s3Operator = new MemoryS3Operator();
+        int recordsPerStream = Math.max(1, OBJECT_SIZE / streamCount / payloadSize);
+        for (long streamId = 0; streamId < streamCount; streamId++) {
+            List<StreamRecordBatch> records = BenchmarkUtils.newRecords(streamId, 0, recordsPerStream, payloadSize);
+            // records are encoded when they are appended to the storage, so it is not measured here
+            records.forEach(StreamRecordBatch::encoded);
+            streamRecords.add(records);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        streamRecords.forEach(records -> records.forEach(StreamRecordBatch::release));
+        streamRecords.clear();
+        s3Operator.close();
+    }
+
+    @Benchmark
+    public long write() {
+        long objectId = nextObjectId++;
+        ObjectWriter writer = ObjectWriter.writer(objectId, s3Operator, BLOCK_SIZE, PART_SIZE);
+        for (List<StreamRecordBatch> records : streamRecords) {
+            writer.write(records.get(0).getStreamId(), records);
+        }
+        writer.close().join();
+        s3Operator.delete(ObjectUtils.genKey(0, objectId)).join();
+        return writer.size();
+    }
+}
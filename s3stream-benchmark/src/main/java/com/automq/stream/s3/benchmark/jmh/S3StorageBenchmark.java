@@ -0,0 +1,111 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.automq.stream.s3.benchmark.jmh;
+
+import com.automq.stream.s3.Config;
+import com.automq.stream.s3.S3Storage;
+import com.automq.stream.s3.cache.DefaultS3BlockCache;
+import com.automq.stream.s3.memory.MemoryMetadataManager;
+import com.automq.stream.s3.metadata.ObjectUtils;
+import com.automq.stream.s3.operator.MemoryS3Operator;
+import com.automq.stream.s3.operator.S3Operator;
+import com.automq.stream.s3.wal.MemoryWriteAheadLog;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Appending to {@link S3Storage} with the in-memory WAL and S3, which measures the append path of the storage itself:
+ * sequencing, the log cache, and uploading WAL objects in the background.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class S3StorageBenchmark {
+    private static final AtomicLong STREAM_ID_ALLOC = new AtomicLong();
+
+    @Param({"1024", "65536"})
+    private int payloadSize;
+
+    @Param({"1", "4"})
+    private int shardNum;
+
+    private MemoryMetadataManager metadataManager;
+    private S3Operator s3Operator;
+    private S3Storage storage;
+
+    @State(Scope.Thread)
+    public static class StreamState {
+        final long streamId = STREAM_ID_ALLOC.getAndIncrement();
+        long nextOffset = 0;
+    }
+
+    @Setup
+    public void setup() {
+        Config config = new Config()
+                .s3StorageShardNum(shardNum)
+                .s3WALObjectSize(16 * 1024 * 1024)
+                .s3WALCacheSize(64 * 1024 * 1024);
+        metadataManager = new MemoryMetadataManager();
+        s3Operator = new MemoryS3Operator();
+        storage = new S3Storage(config, new MemoryWriteAheadLog(), metadataManager, metadataManager,
+                new DefaultS3BlockCache(0, metadataManager, s3Operator), s3Operator);
+        storage.startup();
+    }
+
+    @TearDown
+    public void tearDown() {
+        storage.shutdown();
+        s3Operator.close();
+    }
+
+    /**
+     * The uploaded objects are kept in memory, so delete them after each iteration.
+     */
+    @TearDown(Level.Iteration)
+    public void deleteObjects() {
+        long nextObjectId = metadataManager.prepareObject(1, 0).join();
+        for (long objectId = 0; objectId < nextObjectId; objectId++) {
+            s3Operator.delete(ObjectUtils.genKey(0, objectId)).join();
+        }
+    }
+
+    @Benchmark
+    public void append(StreamState state) {
+        storage.append(BenchmarkUtils.newRecord(state.streamId, state.nextOffset++, 1, payloadSize)).join();
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.automq.stream.s3.benchmark.jmh;
+
+import com.automq.stream.s3.StreamRecordBatchCodec;
+import com.automq.stream.s3.model.StreamRecordBatch;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.DataInputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding and decoding of {@link StreamRecordBatch}, which is done for every record written to the WAL and objects.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StreamRecordBatchCodecBenchmark {
+
+    @Param({"256", "4096", "65536"})
+    private int payloadSize;
+
+    private StreamRecordBatch record;
+    private ByteBuf encoded;
+
+    @Setup
+    public void setup() {
+        record = BenchmarkUtils.newRecord(233L, 0L, 1, payloadSize);
+        encoded = StreamRecordBatchCodec.encode(record);
+    }
+
+    @TearDown
+    public void tearDown() {
+        record.release();
+        encoded.release();
+    }
+
+    @Benchmark
+    public int encode() {
+        ByteBuf buf = StreamRecordBatchCodec.encode(record);
+        int size = buf.readableBytes();
+        buf.release();
+        return size;
+    }
+
+    /**
+     * Decode from a {@link ByteBuf}, which slices the payload, as the WAL recovery and the log cache do.
+     */
+    @Benchmark
+    public long decodeByteBuf() {
+        StreamRecordBatch decoded = StreamRecordBatchCodec.decode(encoded.duplicate());
+        return decoded.getLastOffset();
+    }
+
+    /**
+     * Decode from a {@link DataInputStream}, which copies the payload, as the data block iterator does.
+     */
+    @Benchmark
+    public long decodeStream() {
+        StreamRecordBatch decoded = StreamRecordBatchCodec.decode(new DataInputStream(new ByteBufInputStream(encoded.duplicate())));
+        long lastOffset = decoded.getLastOffset();
+        decoded.release();
+        return lastOffset;
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.automq.stream.s3;
+
+import com.github.luben.zstd.Zstd;
+import io.netty.buffer.ByteBuf;
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4FastDecompressor;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The compression type of data block, which is stored in the high bits of the data block flag.
+ */
+public enum CompressionType {
+    NONE(0, "none") {
+        @Override
+        int compress0(ByteBuffer src, ByteBuffer dst) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        void decompress0(ByteBuffer src, ByteBuffer dst) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        int maxCompressedLength(int length) {
+            return length;
+        }
+    },
+    ZSTD(1, "zstd") {
+        @Override
+        int compress0(ByteBuffer src, ByteBuffer dst) {
+            long size = Zstd.compressDirectByteBuffer(dst, 0, dst.remaining(), src, 0, src.remaining(), Zstd.defaultCompressionLevel());
+            if (Zstd.isError(size)) {
+                throw new IllegalStateException("zstd compress fail: " + Zstd.getErrorName(size));
+            }
+            return (int) size;
+        }
+
+        @Override
+        void decompress0(ByteBuffer src, ByteBuffer dst) {
+            long size = Zstd.decompressDirectByteBuffer(dst, 0, dst.remaining(), src, 0, src.remaining());
+            if (Zstd.isError(size)) {
+                throw new IllegalStateException("zstd decompress fail: " + Zstd.getErrorName(size));
+            }
+            if (size != dst.remaining()) {
+                throw new IllegalStateException("zstd decompressed size mismatch, expected " + dst.remaining() + ", actual " + size);
+            }
+        }
+
+        @Override
+        int maxCompressedLength(int length) {
+            return (int) Zstd.compressBound(length);
+        }
+    },
+    LZ4(2, "lz4") {
+        private final LZ4Compressor compressor = LZ4Factory.fastestInstance().fastCompressor();
+        private final LZ4FastDecompressor decompressor = LZ4Factory.fastestInstance().fastDecompressor();
+
+        @Override
+        int compress0(ByteBuffer src, ByteBuffer dst) {
+            return compressor.compress(src, 0, src.remaining(), dst, 0, dst.remaining());
+        }
+
+        @Override
+        void decompress0(ByteBuffer src, ByteBuffer dst) {
+            int read = decompressor.decompress(src, 0, dst, 0, dst.remaining());
+            if (read != src.remaining()) {
+                throw new IllegalStateException("lz4 compressed size mismatch, expected " + src.remaining() + ", actual " + read);
+            }
+        }
+
+        @Override
+        int maxCompressedLength(int length) {
+            return compressor.maxCompressedLength(length);
+        }
+    };
+
+    private final byte code;
+    private final String name;
+
+    CompressionType(int code, String name) {
+        this.code = (byte) code;
+        this.name = name;
+    }
+
+    public byte code() {
+        return code;
+    }
+
+    public String typeName() {
+        return name;
+    }
+
+    /**
+     * Compress the readable bytes of the source buffer into a new pooled direct buffer.
+     * The source buffer is not released.
+     */
+    public ByteBuf compress(ByteBuf src) {
+        ByteBuf in = directContinuous(src);
+        int maxLength = maxCompressedLength(in.readableBytes());
+        ByteBuf out = DirectByteBufAlloc.byteBuffer(maxLength, "compress");
+        try {
+            int size = compress0(in.nioBuffer(in.readerIndex(), in.readableBytes()), out.nioBuffer(0, maxLength));
+            out.writerIndex(size);
+            return out;
+        } catch (Throwable e) {
+            out.release();
+            throw e;
+        } finally {
+            in.release();
+        }
+    }
+
+    /**
+     * Decompress the readable bytes of the source buffer into a new pooled direct buffer.
+     * The source buffer is not released.
+     *
+     * @param uncompressedSize the exact size of the uncompressed data
+     */
+    public ByteBuf decompress(ByteBuf src, int uncompressedSize) {
+        ByteBuf in = directContinuous(src);
+        ByteBuf out = DirectByteBufAlloc.byteBuffer(uncompressedSize, "decompress");
+        try {
+            decompress0(in.nioBuffer(in.readerIndex(), in.readableBytes()), out.nioBuffer(0, uncompressedSize));
+            out.writerIndex(uncompressedSize);
+            return out;
+        } catch (Throwable e) {
+            out.release();
+            throw e;
+        } finally {
+            in.release();
+        }
+    }
+
+    abstract int compress0(ByteBuffer src, ByteBuffer dst);
+
+    abstract void decompress0(ByteBuffer src, ByteBuffer dst);
+
+    abstract int maxCompressedLength(int length);
+
+    /**
+     * The native codecs require a continuous direct memory, so copy the buffer if it is not.
+     */
+    private static ByteBuf directContinuous(ByteBuf buf) {
+        if (buf.isDirect() && buf.nioBufferCount() == 1) {
+            return buf.retainedDuplicate();
+        }
+        ByteBuf copy = DirectByteBufAlloc.byteBuffer(buf.readableBytes());
+        copy.writeBytes(buf, buf.readerIndex(), buf.readableBytes());
+        return copy;
+    }
+
+    public static CompressionType fromCode(int code) {
+        for (CompressionType type : values()) {
+            if (type.code == code) {
+                return type;
+            }
+        }
+        throw new IllegalArgumentException("unknown compression type code " + code);
+    }
+
+    public static CompressionType fromName(String name) {
+        for (CompressionType type : values()) {
+            if (type.name.equalsIgnoreCase(name)) {
+                return type;
+            }
+        }
+        throw new IllegalArgumentException("unknown compression type " + name);
+    }
+}
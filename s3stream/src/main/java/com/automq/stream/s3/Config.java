@@ -35,14 +35,27 @@ public class Config {
     private long s3WALWindowIncrement = 4194304L;
     private long s3WALWindowMax = 536870912L;
     private long s3WALBlockSoftLimit = 128 * 1024;
+    private boolean s3WALLockFreeAppend = false;
+    private boolean s3WALBatchWrite = false;
     private long s3WALObjectSize = 100 * 1024 * 1024;
+    private int s3WALObjectUploadConcurrency = 4;
     private int s3StreamSplitSize = 16777216;
     private int s3ObjectBlockSize = 8388608;
     private int s3ObjectPartSize = 16777216;
+    private String s3ObjectCompressionType = CompressionType.NONE.typeName();
+    // the sparse offset index in the data blocks is disabled if the interval is not positive
+    private int s3ObjectBlockOffsetIndexInterval = 0;
     private long s3BlockCacheSize = 100 * 1024 * 1024;
+    // the local disk tier of the block cache is disabled if the path is not set
+    private String s3BlockCacheDiskPath = null;
+    private long s3BlockCacheDiskSize = 10L * 1024 * 1024 * 1024;
+    private int s3BlockCacheDiskSegmentSize = 64 * 1024 * 1024;
+    private long s3ObjectIndexCacheSize = 64 * 1024 * 1024;
     private int s3StreamObjectCompactionIntervalMinutes = 60;
     private long s3StreamObjectCompactionMaxSizeBytes = 10737418240L;
     private int s3StreamObjectCompactionLivingTimeMinutes = 60;
+    private int s3StreamObjectCompactionParallelism = 4;
+    private long s3StreamObjectCompactionByteBudget = 10737418240L;
     private int s3ControllerRequestRetryMaxCount = 5;
     private long s3ControllerRequestRetryBaseDelayMs = 500;
     private long brokerEpoch = 0L;
@@ -54,6 +67,7 @@ public class Config {
     private int s3WALObjectCompactionMaxObjectNum = 500;
     private int s3MaxStreamNumPerWALObject = 10000;
     private int s3MaxStreamObjectNumPerCommit = 10000;
+    private int s3StorageShardNum = 1;
     private boolean s3MockEnable = false;
     private boolean s3ObjectLogEnable = false;
     // 100MB/s
@@ -116,10 +130,22 @@ public class Config {
         return s3WALBlockSoftLimit;
     }
 
+    public boolean s3WALLockFreeAppend() {
+        return s3WALLockFreeAppend;
+    }
+
+    public boolean s3WALBatchWrite() {
+        return s3WALBatchWrite;
+    }
+
     public long s3WALObjectSize() {
         return s3WALObjectSize;
     }
 
+    public int s3WALObjectUploadConcurrency() {
+        return s3WALObjectUploadConcurrency;
+    }
+
     public int s3StreamSplitSize() {
         return s3StreamSplitSize;
     }
@@ -132,10 +158,34 @@ public class Config {
         return s3ObjectPartSize;
     }
 
+    public String s3ObjectCompressionType() {
+        return s3ObjectCompressionType;
+    }
+
+    public int s3ObjectBlockOffsetIndexInterval() {
+        return s3ObjectBlockOffsetIndexInterval;
+    }
+
     public long s3BlockCacheSize() {
         return s3BlockCacheSize;
     }
 
+    public String s3BlockCacheDiskPath() {
+        return s3BlockCacheDiskPath;
+    }
+
+    public long s3BlockCacheDiskSize() {
+        return s3BlockCacheDiskSize;
+    }
+
+    public int s3BlockCacheDiskSegmentSize() {
+        return s3BlockCacheDiskSegmentSize;
+    }
+
+    public long s3ObjectIndexCacheSize() {
+        return s3ObjectIndexCacheSize;
+    }
+
     public int s3StreamObjectCompactionIntervalMinutes() {
         return s3StreamObjectCompactionIntervalMinutes;
     }
@@ -148,6 +198,14 @@ public class Config {
         return s3StreamObjectCompactionLivingTimeMinutes;
     }
 
+    public int s3StreamObjectCompactionParallelism() {
+        return s3StreamObjectCompactionParallelism;
+    }
+
+    public long s3StreamObjectCompactionByteBudget() {
+        return s3StreamObjectCompactionByteBudget;
+    }
+
     public int s3ControllerRequestRetryMaxCount() {
         return s3ControllerRequestRetryMaxCount;
     }
@@ -192,6 +250,10 @@ public class Config {
         return s3MaxStreamObjectNumPerCommit;
     }
 
+    public int s3StorageShardNum() {
+        return s3StorageShardNum;
+    }
+
     public boolean s3MockEnable() {
         return s3MockEnable;
     }
@@ -286,11 +348,26 @@ public class Config {
         return this;
     }
 
+    public Config s3WALLockFreeAppend(boolean s3WALLockFreeAppend) {
+        this.s3WALLockFreeAppend = s3WALLockFreeAppend;
+        return this;
+    }
+
+    public Config s3WALBatchWrite(boolean s3WALBatchWrite) {
+        this.s3WALBatchWrite = s3WALBatchWrite;
+        return this;
+    }
+
     public Config s3WALObjectSize(long s3WALObjectSize) {
         this.s3WALObjectSize = s3WALObjectSize;
         return this;
     }
 
+    public Config s3WALObjectUploadConcurrency(int s3WALObjectUploadConcurrency) {
+        this.s3WALObjectUploadConcurrency = s3WALObjectUploadConcurrency;
+        return this;
+    }
+
     public Config s3StreamSplitSize(int s3StreamSplitSize) {
         this.s3StreamSplitSize = s3StreamSplitSize;
         return this;
@@ -306,11 +383,41 @@ public class Config {
         return this;
     }
 
+    public Config s3ObjectCompressionType(String s3ObjectCompressionType) {
+        this.s3ObjectCompressionType = s3ObjectCompressionType;
+        return this;
+    }
+
+    public Config s3ObjectBlockOffsetIndexInterval(int s3ObjectBlockOffsetIndexInterval) {
+        this.s3ObjectBlockOffsetIndexInterval = s3ObjectBlockOffsetIndexInterval;
+        return this;
+    }
+
     public Config s3BlockCacheSize(long s3CacheSize) {
         this.s3BlockCacheSize = s3CacheSize;
         return this;
     }
 
+    public Config s3BlockCacheDiskPath(String s3BlockCacheDiskPath) {
+        this.s3BlockCacheDiskPath = s3BlockCacheDiskPath;
+        return this;
+    }
+
+    public Config s3BlockCacheDiskSize(long s3BlockCacheDiskSize) {
+        this.s3BlockCacheDiskSize = s3BlockCacheDiskSize;
+        return this;
+    }
+
+    public Config s3BlockCacheDiskSegmentSize(int s3BlockCacheDiskSegmentSize) {
+        this.s3BlockCacheDiskSegmentSize = s3BlockCacheDiskSegmentSize;
+        return this;
+    }
+
+    public Config s3ObjectIndexCacheSize(long s3ObjectIndexCacheSize) {
+        this.s3ObjectIndexCacheSize = s3ObjectIndexCacheSize;
+        return this;
+    }
+
     public Config s3StreamObjectCompactionIntervalMinutes(int s3StreamObjectCompactionIntervalMinutes) {
         this.s3StreamObjectCompactionIntervalMinutes = s3StreamObjectCompactionIntervalMinutes;
         return this;
@@ -326,6 +433,16 @@ public class Config {
         return this;
     }
 
+    public Config s3StreamObjectCompactionParallelism(int s3StreamObjectCompactionParallelism) {
+        this.s3StreamObjectCompactionParallelism = s3StreamObjectCompactionParallelism;
+        return this;
+    }
+
+    public Config s3StreamObjectCompactionByteBudget(long s3StreamObjectCompactionByteBudget) {
+        this.s3StreamObjectCompactionByteBudget = s3StreamObjectCompactionByteBudget;
+        return this;
+    }
+
     public Config s3ControllerRequestRetryMaxCount(int s3ControllerRequestRetryMaxCount) {
         this.s3ControllerRequestRetryMaxCount = s3ControllerRequestRetryMaxCount;
         return this;
@@ -381,6 +498,11 @@ public class Config {
         return this;
     }
 
+    public Config s3StorageShardNum(int s3StorageShardNum) {
+        this.s3StorageShardNum = s3StorageShardNum;
+        return this;
+    }
+
     public Config s3MockEnable(boolean s3MockEnable) {
         this.s3MockEnable = s3MockEnable;
         return this;
@@ -70,6 +70,13 @@ public class DirectByteBufAlloc {
         }
     }
 
+    /**
+     * @return the direct memory used by the allocator in bytes.
+     */
+    public static long usedMemory() {
+        return ALLOC.metric().usedDirectMemory();
+    }
+
     public static void registerOOMHandlers(OOMHandler handler) {
         OOM_HANDLERS.add(handler);
     }
@@ -18,26 +18,25 @@
 package com.automq.stream.s3;
 
 import com.automq.stream.utils.CloseableIterator;
-import com.automq.stream.api.ErrorCode;
-import com.automq.stream.api.StreamClientException;
 import com.automq.stream.s3.model.StreamRecordBatch;
+import com.automq.stream.s3.network.ThrottleStrategy;
 import com.automq.stream.s3.operator.S3Operator;
-import com.automq.stream.utils.ByteBufferInputStream;
 import com.automq.stream.utils.biniarysearch.IndexBlockOrderedBytes;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
 import com.automq.stream.s3.metadata.S3ObjectMetadata;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.DataInputStream;
-import java.io.IOException;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.automq.stream.s3.ObjectWriter.Footer.FOOTER_SIZE;
+import static com.automq.stream.s3.ObjectWriter.Footer.INDEX_VERSION_TAIL_OFFSET;
 import static com.automq.stream.s3.metadata.ObjectUtils.NOOP_OFFSET;
 
 public class ObjectReader implements AutoCloseable {
@@ -45,13 +44,22 @@ public class ObjectReader implements AutoCloseable {
     private final S3ObjectMetadata metadata;
     private final String objectKey;
     private final S3Operator s3Operator;
+    private final IndexSizeHint indexSizeHint;
     private final CompletableFuture<BasicObjectInfo> basicObjectInfoCf;
     private final AtomicInteger refCount = new AtomicInteger(1);
 
     public ObjectReader(S3ObjectMetadata metadata, S3Operator s3Operator) {
+        this(metadata, s3Operator, new IndexSizeHint());
+    }
+
+    /**
+     * @param indexSizeHint the index size estimation shared by the readers, which is updated by the index read.
+     */
+    public ObjectReader(S3ObjectMetadata metadata, S3Operator s3Operator, IndexSizeHint indexSizeHint) {
         this.metadata = metadata;
         this.objectKey = metadata.key();
         this.s3Operator = s3Operator;
+        this.indexSizeHint = indexSizeHint;
         this.basicObjectInfoCf = new CompletableFuture<>();
         asyncGetBasicObjectInfo();
     }
@@ -60,6 +68,10 @@ public class ObjectReader implements AutoCloseable {
         return objectKey;
     }
 
+    public long objectId() {
+        return metadata.objectId();
+    }
+
     public CompletableFuture<BasicObjectInfo> basicObjectInfo() {
         return basicObjectInfoCf;
     }
@@ -73,28 +85,53 @@ public class ObjectReader implements AutoCloseable {
     }
 
     public CompletableFuture<DataBlock> read(DataBlockIndex block) {
-        CompletableFuture<ByteBuf> rangeReadCf = s3Operator.rangeRead(objectKey, block.startPosition(), block.endPosition());
+        return read(block, ThrottleStrategy.BYPASS);
+    }
+
+    /**
+     * Read the data block.
+     *
+     * @param throttleStrategy the traffic class the read is charged to.
+     */
+    public CompletableFuture<DataBlock> read(DataBlockIndex block, ThrottleStrategy throttleStrategy) {
+        CompletableFuture<ByteBuf> rangeReadCf = s3Operator.rangeRead(objectKey, block.startPosition(), block.endPosition(), throttleStrategy);
         return rangeReadCf.thenApply(buf -> new DataBlock(buf, block.recordCount()));
     }
 
     void asyncGetBasicObjectInfo() {
-        asyncGetBasicObjectInfo0(Math.max(0, metadata.objectSize() - 1024 * 1024), true);
+        long tailStart = Math.max(0, metadata.objectSize() - FOOTER_SIZE - indexSizeHint.get());
+        asyncGetBasicObjectInfo0(tailStart, true);
     }
 
-    private void asyncGetBasicObjectInfo0(long startPosition, boolean firstAttempt) {
-        CompletableFuture<ByteBuf> cf = s3Operator.rangeRead(objectKey, startPosition, metadata.objectSize());
-        cf.thenAccept(buf -> {
-            try {
-                BasicObjectInfo basicObjectInfo = BasicObjectInfo.parse(buf, metadata.objectSize());
-                basicObjectInfoCf.complete(basicObjectInfo);
-            } catch (IndexBlockParseException ex) {
-                asyncGetBasicObjectInfo0(ex.indexBlockPosition, false);
+    /**
+     * Read the index in at most two steps: read the tail of the object, which is the footer and the index of the
+     * estimated size. If the index is bigger than the estimation, read the rest of the index according to the footer.
+     */
+    private void asyncGetBasicObjectInfo0(long tailStart, boolean firstAttempt) {
+        long objectSize = metadata.objectSize();
+        s3Operator.rangeRead(objectKey, tailStart, objectSize).thenCompose(tailBuf -> {
+            long indexBlockPosition = tailBuf.getLong(tailBuf.readableBytes() - FOOTER_SIZE);
+            if (indexBlockPosition >= tailStart) {
+                return CompletableFuture.completedFuture(tailBuf);
             }
+            return s3Operator.rangeRead(objectKey, indexBlockPosition, tailStart).handle((headBuf, ex) -> {
+                if (ex != null) {
+                    tailBuf.release();
+                    throw new CompletionException(ex);
+                }
+                CompositeByteBuf buf = DirectByteBufAlloc.compositeByteBuffer();
+                buf.addComponents(true, headBuf, tailBuf);
+                return buf;
+            });
+        }).thenAccept(buf -> {
+            BasicObjectInfo basicObjectInfo = BasicObjectInfo.parse(buf, objectSize);
+            indexSizeHint.update(basicObjectInfo.indexBlockSize());
+            basicObjectInfoCf.complete(basicObjectInfo);
         }).exceptionally(ex -> {
-            LOGGER.warn("s3 range read from {} [{}, {}) failed", objectKey, startPosition, metadata.objectSize(), ex);
+            LOGGER.warn("s3 range read from {} [{}, {}) failed", objectKey, tailStart, objectSize, ex);
             // TODO: delay retry.
             if (firstAttempt) {
-                asyncGetBasicObjectInfo0(startPosition, false);
+                asyncGetBasicObjectInfo0(tailStart, false);
             } else {
                 basicObjectInfoCf.completeExceptionally(ex);
             }
@@ -148,21 +185,29 @@ public class ObjectReader implements AutoCloseable {
             this.indexBlockSize = indexBlockSize;
         }
 
-        public static BasicObjectInfo parse(ByteBuf objectTailBuf, long objectSize) throws IndexBlockParseException {
+        /**
+         * Parse the index from the tail of the object, which must contain the whole index.
+         */
+        public static BasicObjectInfo parse(ByteBuf objectTailBuf, long objectSize) {
             long indexBlockPosition = objectTailBuf.getLong(objectTailBuf.readableBytes() - FOOTER_SIZE);
             int indexBlockSize = objectTailBuf.getInt(objectTailBuf.readableBytes() - 40);
+            byte indexVersion = objectTailBuf.getByte(objectTailBuf.readableBytes() - INDEX_VERSION_TAIL_OFFSET);
             if (indexBlockPosition + objectTailBuf.readableBytes() < objectSize) {
                 objectTailBuf.release();
-                throw new IndexBlockParseException(indexBlockPosition);
+                throw new IllegalStateException("The object tail doesn't contain the whole index, index position: " + indexBlockPosition);
             } else {
                 int indexRelativePosition = objectTailBuf.readableBytes() - (int) (objectSize - indexBlockPosition);
                 ByteBuf indexBlockBuf = objectTailBuf.slice(objectTailBuf.readerIndex() + indexRelativePosition, indexBlockSize);
                 int blockCount = indexBlockBuf.readInt();
-                ByteBuf blocks = indexBlockBuf.retainedSlice(indexBlockBuf.readerIndex(), blockCount * 16);
-                indexBlockBuf.skipBytes(blockCount * 16);
-                ByteBuf streamRanges = indexBlockBuf.retainedSlice(indexBlockBuf.readerIndex(), indexBlockBuf.readableBytes());
+                int blocksSize = blockCount * ObjectWriter.blockIndexSize(indexVersion);
+                // copy the index out of the tail buffer, so the cached index holds no more than its own size.
+                ByteBuf compact = DirectByteBufAlloc.byteBuffer(indexBlockBuf.readableBytes(), "object_index");
+                compact.writeBytes(indexBlockBuf);
                 objectTailBuf.release();
-                return new BasicObjectInfo(indexBlockPosition, new IndexBlock(blocks, streamRanges), blockCount, indexBlockSize);
+                ByteBuf blocks = compact.retainedSlice(0, blocksSize);
+                ByteBuf streamRanges = compact.retainedSlice(blocksSize, compact.readableBytes() - blocksSize);
+                compact.release();
+                return new BasicObjectInfo(indexBlockPosition, new IndexBlock(blocks, streamRanges, indexVersion), blockCount, indexBlockSize);
             }
         }
 
@@ -190,10 +235,42 @@ public class ObjectReader implements AutoCloseable {
     public static class IndexBlock {
         private final ByteBuf blocks;
         private final ByteBuf streamRanges;
+        private final byte version;
+        private final int blockIndexSize;
 
         public IndexBlock(ByteBuf blocks, ByteBuf streamRanges) {
+            this(blocks, streamRanges, ObjectWriter.INDEX_VERSION_V0);
+        }
+
+        public IndexBlock(ByteBuf blocks, ByteBuf streamRanges, byte version) {
             this.blocks = blocks;
             this.streamRanges = streamRanges;
+            this.version = version;
+            this.blockIndexSize = ObjectWriter.blockIndexSize(version);
+        }
+
+        public byte version() {
+            return version;
+        }
+
+        public int blockCount() {
+            return blocks.readableBytes() / blockIndexSize;
+        }
+
+        /**
+         * The size of the index in memory.
+         */
+        public int size() {
+            return blocks.readableBytes() + streamRanges.readableBytes();
+        }
+
+        public DataBlockIndex dataBlockIndex(int blockId) {
+            int index = blockId * blockIndexSize;
+            long blockPosition = blocks.getLong(index);
+            int blockSize = blocks.getInt(index + 8);
+            int recordCount = blocks.getInt(index + 12);
+            int uncompressedSize = version == ObjectWriter.INDEX_VERSION_V0 ? blockSize : blocks.getInt(index + 16);
+            return new DataBlockIndex(blockId, blockPosition, blockSize, recordCount, uncompressedSize);
         }
 
         public ByteBuf blocks() {
@@ -232,12 +309,11 @@ public class ObjectReader implements AutoCloseable {
                         continue;
                     }
                     nextStartOffset = rangeEndOffset;
-                    long blockPosition = blocks.getLong(rangeBlockId * 16);
-                    int blockSize = blocks.getInt(rangeBlockId * 16 + 8);
-                    int recordCount = blocks.getInt(rangeBlockId * 16 + 12);
-                    rst.add(new DataBlockIndex(rangeBlockId, blockPosition, blockSize, recordCount));
+                    DataBlockIndex dataBlockIndex = dataBlockIndex(rangeBlockId);
+                    rst.add(dataBlockIndex);
                     if (matched) {
-                        nextMaxBytes -= Math.min(nextMaxBytes, blockSize);
+                        // the records are read into memory decompressed, so count by the uncompressed size
+                        nextMaxBytes -= Math.min(nextMaxBytes, dataBlockIndex.uncompressedSize());
                     }
                     matched = true;
                     if ((endOffset != NOOP_OFFSET && nextStartOffset >= endOffset) || nextMaxBytes == 0) {
@@ -256,13 +332,32 @@ public class ObjectReader implements AutoCloseable {
         }
     }
 
-    public static class IndexBlockParseException extends Exception {
-        long indexBlockPosition;
+    /**
+     * The estimated size of the index blocks, which is the size of the first tail read besides the footer. It follows
+     * the index sizes recently read.
+     */
+    public static class IndexSizeHint {
+        static final int MIN_INDEX_SIZE_HINT = 4 * 1024;
+        static final int MAX_INDEX_SIZE_HINT = 1024 * 1024;
+        private final AtomicInteger hint;
+
+        public IndexSizeHint() {
+            this(16 * 1024);
+        }
 
-        public IndexBlockParseException(long indexBlockPosition) {
-            this.indexBlockPosition = indexBlockPosition;
+        IndexSizeHint(int initialHint) {
+            this.hint = new AtomicInteger(initialHint);
+        }
+
+        public int get() {
+            return hint.get();
         }
 
+        void update(int indexBlockSize) {
+            // leave some room, so most of the indexes are read in one step
+            int sample = (int) Math.min(MAX_INDEX_SIZE_HINT, Math.max(MIN_INDEX_SIZE_HINT, indexBlockSize * 2L));
+            hint.accumulateAndGet(sample, (current, s) -> (current * 7 + s) / 8);
+        }
     }
 
     static class BasicObjectInfoParseException extends Exception {
@@ -281,12 +376,18 @@ public class ObjectReader implements AutoCloseable {
         private final long startPosition;
         private final int size;
         private final int recordCount;
+        private final int uncompressedSize;
 
         public DataBlockIndex(int blockId, long startPosition, int size, int recordCount) {
+            this(blockId, startPosition, size, recordCount, size);
+        }
+
+        public DataBlockIndex(int blockId, long startPosition, int size, int recordCount, int uncompressedSize) {
             this.blockId = blockId;
             this.startPosition = startPosition;
             this.size = size;
             this.recordCount = recordCount;
+            this.uncompressedSize = uncompressedSize;
         }
 
         public int blockId() {
@@ -301,38 +402,97 @@ public class ObjectReader implements AutoCloseable {
             return startPosition + size;
         }
 
+        public int size() {
+            return size;
+        }
+
+        public int uncompressedSize() {
+            return uncompressedSize;
+        }
+
         public int recordCount() {
             return recordCount;
         }
     }
 
     public static class DataBlock implements AutoCloseable {
+        /**
+         * [base offset long][position int]
+         */
+        private static final int OFFSET_INDEX_ENTRY_SIZE = 8 + 4;
         private final ByteBuf buf;
         private final int recordCount;
+        /**
+         * The decompressed records of a compressed block, lazily created on the first iteration.
+         */
+        private ByteBuf decompressed;
 
         public DataBlock(ByteBuf buf, int recordCount) {
             this.buf = buf;
             this.recordCount = recordCount;
         }
 
+        /**
+         * Iterate the records in the block without copying. Each returned record is a slice which retains the block
+         * buffer, so the buffer is freed after the block is closed and all the returned records are released.
+         * <p>
+         * A compressed block is decompressed into a pooled direct buffer, and the returned records are slices of it.
+         * So the size of the records is the decompressed size.
+         */
         public CloseableIterator<StreamRecordBatch> iterator() {
+            return iterator(Long.MIN_VALUE);
+        }
+
+        /**
+         * Iterate the records in the block from the record which contains {@code startOffset}, that is, the records
+         * whose last offset is larger than {@code startOffset}. If the block has an offset index, the records before
+         * the closest indexed record are skipped without being touched, otherwise they are skipped one by one without
+         * being decoded.
+         *
+         * @see #iterator()
+         */
+        public CloseableIterator<StreamRecordBatch> iterator(long startOffset) {
             ByteBuf buf = this.buf.duplicate();
-            AtomicInteger remainingRecordCount = new AtomicInteger(recordCount);
-            // skip magic and flag
             byte magicCode = buf.readByte();
-            buf.readByte();
+            byte flag = buf.readByte();
 
             if (magicCode != ObjectWriter.DATA_BLOCK_MAGIC) {
                 LOGGER.error("magic code mismatch, expected {}, actual {}", ObjectWriter.DATA_BLOCK_MAGIC, magicCode);
                 throw new RuntimeException("[FATAL] magic code mismatch, data is corrupted");
             }
-            // TODO: check flag, use uncompressed stream or compressed stream.
-//            DataInputStream in = new DataInputStream(ZstdFactory.wrapForInput(buf.nioBuffer(), (byte) 0, BufferSupplier.NO_CACHING));
-            DataInputStream in = new DataInputStream(new ByteBufferInputStream(buf.nioBuffer()));
+            CompressionType compressionType = ObjectWriter.compressionType(flag);
+            int recordsSize = compressionType != CompressionType.NONE ? buf.readInt() : 0;
+            int indexedRecord = 0;
+            int indexedPosition = 0;
+            if ((flag & ObjectWriter.DATA_BLOCK_OFFSET_INDEX_FLAG) != 0) {
+                int interval = buf.readInt();
+                int entryCount = buf.readInt();
+                int entry = floorEntry(buf, buf.readerIndex(), entryCount, startOffset);
+                if (entry >= 0) {
+                    indexedRecord = entry * interval;
+                    indexedPosition = buf.getInt(buf.readerIndex() + entry * OFFSET_INDEX_ENTRY_SIZE + 8);
+                }
+                buf.skipBytes(entryCount * OFFSET_INDEX_ENTRY_SIZE);
+            }
+            if (compressionType != CompressionType.NONE) {
+                synchronized (this) {
+                    if (decompressed == null) {
+                        decompressed = compressionType.decompress(buf, recordsSize);
+                    }
+                }
+                buf = decompressed.duplicate();
+            }
+            ByteBuf recordsBuf = buf;
+            recordsBuf.skipBytes(indexedPosition);
+            int remaining = recordCount - indexedRecord;
+            while (remaining > 0 && StreamRecordBatchCodec.peekLastOffset(recordsBuf) <= startOffset) {
+                StreamRecordBatchCodec.skip(recordsBuf);
+                remaining--;
+            }
+            AtomicInteger remainingRecordCount = new AtomicInteger(remaining);
             return new CloseableIterator<>() {
                 @Override
                 public boolean hasNext() {
-                    // in.available() is not reliable. ZstdInputStreamNoFinalizer might return 1 when there is no more data.
                     return remainingRecordCount.get() != 0;
                 }
 
@@ -341,27 +501,56 @@ public class ObjectReader implements AutoCloseable {
                     if (remainingRecordCount.decrementAndGet() < 0) {
                         throw new NoSuchElementException();
                     }
-                    return StreamRecordBatchCodec.decode(in);
+                    return StreamRecordBatchCodec.sliceRetainDecode(recordsBuf);
                 }
 
                 @Override
                 public void close() {
-                    try {
-                        in.close();
-                    } catch (IOException e) {
-                        throw new StreamClientException(ErrorCode.UNEXPECTED, "Failed to close object block stream ", e);
-                    }
                 }
             };
         }
 
+        /**
+         * Binary search the last entry of the offset index whose base offset is not larger than the offset.
+         *
+         * @return the entry index, or -1 if the offset is before the first entry.
+         */
+        private static int floorEntry(ByteBuf buf, int entriesStart, int entryCount, long offset) {
+            int low = 0;
+            int high = entryCount - 1;
+            int floor = -1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (buf.getLong(entriesStart + mid * OFFSET_INDEX_ENTRY_SIZE) <= offset) {
+                    floor = mid;
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            return floor;
+        }
+
         public int recordCount() {
             return recordCount;
         }
 
+        /**
+         * The raw bytes of the block as stored in the object, which are compressed for a compressed block.
+         * The returned buffer is not retained.
+         */
+        public ByteBuf buffer() {
+            return buf;
+        }
+
         @Override
         public void close() {
             buf.release();
+            synchronized (this) {
+                if (decompressed != null) {
+                    decompressed.release();
+                }
+            }
         }
     }
 
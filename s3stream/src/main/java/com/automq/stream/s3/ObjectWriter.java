@@ -18,6 +18,7 @@
 package com.automq.stream.s3;
 
 import com.automq.stream.s3.model.StreamRecordBatch;
+import com.automq.stream.s3.network.ThrottleStrategy;
 import com.automq.stream.s3.objects.ObjectStreamRange;
 import com.automq.stream.s3.operator.S3Operator;
 import com.automq.stream.s3.operator.Writer;
@@ -30,6 +31,7 @@ import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.LongFunction;
 
 // TODO: memory optimization
 
@@ -39,8 +41,25 @@ import java.util.concurrent.CompletableFuture;
 public interface ObjectWriter {
 
     byte DATA_BLOCK_MAGIC = 0x01;
-    // TODO: first n bit is the compressed flag
     byte DATA_BLOCK_DEFAULT_FLAG = 0x02;
+    /**
+     * The first 3 bits of the data block flag is the {@link CompressionType} code of the block.
+     */
+    int DATA_BLOCK_COMPRESSION_SHIFT = 5;
+    /**
+     * The data block flag bit which marks the block contains a sparse offset index, see {@link DataBlock}.
+     */
+    byte DATA_BLOCK_OFFSET_INDEX_FLAG = 0x04;
+
+    /**
+     * Block index: [position long, size int, recordCount int]
+     */
+    byte INDEX_VERSION_V0 = 0;
+    /**
+     * Block index: [position long, size int, recordCount int, uncompressedSize int]. It is only written when
+     * the object contains compressed data blocks, so the objects without compression are compatible with old readers.
+     */
+    byte INDEX_VERSION_V1 = 1;
 
     void write(long streamId, List<StreamRecordBatch> records);
 
@@ -56,10 +75,47 @@ public interface ObjectWriter {
         return new DefaultObjectWriter(objectId, s3Operator, blockSizeThreshold, partSizeThreshold);
     }
 
+    /**
+     * Create a writer which compresses the data blocks of each stream with the compression type chosen by
+     * {@code compressionTypeSelector}.
+     */
+    static ObjectWriter writer(long objectId, S3Operator s3Operator, int blockSizeThreshold, int partSizeThreshold,
+                               LongFunction<CompressionType> compressionTypeSelector) {
+        return new DefaultObjectWriter(objectId, s3Operator, blockSizeThreshold, partSizeThreshold, compressionTypeSelector);
+    }
+
+    /**
+     * Create a writer which also writes a sparse offset index of every {@code offsetIndexInterval} records into each
+     * data block, so a reader can seek to an offset without decoding the records before it. The index is disabled if
+     * {@code offsetIndexInterval} is not positive.
+     * <p>
+     * Note: the readers before the offset index is introduced cannot read the blocks with the index.
+     */
+    static ObjectWriter writer(long objectId, S3Operator s3Operator, int blockSizeThreshold, int partSizeThreshold,
+                               LongFunction<CompressionType> compressionTypeSelector, int offsetIndexInterval) {
+        return new DefaultObjectWriter(objectId, s3Operator, blockSizeThreshold, partSizeThreshold, compressionTypeSelector,
+            offsetIndexInterval);
+    }
+
     static ObjectWriter noop(long objectId) {
         return new NoopObjectWriter(objectId);
     }
 
+    static int blockIndexSize(byte indexVersion) {
+        switch (indexVersion) {
+            case INDEX_VERSION_V0:
+                return 8 + 4 + 4;
+            case INDEX_VERSION_V1:
+                return 8 + 4 + 4 + 4;
+            default:
+                throw new IllegalArgumentException("unknown index version " + indexVersion);
+        }
+    }
+
+    static CompressionType compressionType(byte dataBlockFlag) {
+        return CompressionType.fromCode((dataBlockFlag >> DATA_BLOCK_COMPRESSION_SHIFT) & 0x07);
+    }
+
     class DefaultObjectWriter implements ObjectWriter {
 
         private final int blockSizeThreshold;
@@ -69,6 +125,8 @@ public interface ObjectWriter {
         private IndexBlock indexBlock;
         private final Writer writer;
         private final long objectId;
+        private final LongFunction<CompressionType> compressionTypeSelector;
+        private final int offsetIndexInterval;
 
         private long size;
 
@@ -81,20 +139,44 @@ public interface ObjectWriter {
          * @param partSizeThreshold  the max size of a part. If it is smaller than {@link Writer#MIN_PART_SIZE}, it will be set to {@link Writer#MIN_PART_SIZE}.
          */
         public DefaultObjectWriter(long objectId, S3Operator s3Operator, int blockSizeThreshold, int partSizeThreshold) {
+            this(objectId, s3Operator, blockSizeThreshold, partSizeThreshold, streamId -> CompressionType.NONE);
+        }
+
+        /**
+         * Create a new object writer.
+         *
+         * @param compressionTypeSelector the compression type of the data blocks of the stream
+         */
+        public DefaultObjectWriter(long objectId, S3Operator s3Operator, int blockSizeThreshold, int partSizeThreshold,
+                                   LongFunction<CompressionType> compressionTypeSelector) {
+            this(objectId, s3Operator, blockSizeThreshold, partSizeThreshold, compressionTypeSelector, 0);
+        }
+
+        /**
+         * Create a new object writer.
+         *
+         * @param compressionTypeSelector the compression type of the data blocks of the stream
+         * @param offsetIndexInterval     the record interval of the sparse offset index in the data blocks, 0 means no index
+         */
+        public DefaultObjectWriter(long objectId, S3Operator s3Operator, int blockSizeThreshold, int partSizeThreshold,
+                                   LongFunction<CompressionType> compressionTypeSelector, int offsetIndexInterval) {
             this.objectId = objectId;
+            this.compressionTypeSelector = compressionTypeSelector;
+            this.offsetIndexInterval = offsetIndexInterval;
             String objectKey = ObjectUtils.genKey(0, objectId);
             this.blockSizeThreshold = blockSizeThreshold;
             this.partSizeThreshold = Math.max(Writer.MIN_PART_SIZE, partSizeThreshold);
             waitingUploadBlocks = new LinkedList<>();
             completedBlocks = new LinkedList<>();
-            writer = s3Operator.writer(objectKey);
+            writer = s3Operator.writer(objectKey, ThrottleStrategy.WAL_UPLOAD);
         }
 
         public void write(long streamId, List<StreamRecordBatch> records) {
             List<List<StreamRecordBatch>> blocks = groupByBlock(records);
             List<CompletableFuture<Void>> closeCf = new ArrayList<>(blocks.size());
+            CompressionType compressionType = compressionTypeSelector.apply(streamId);
             blocks.forEach(blockRecords -> {
-                DataBlock block = new DataBlock(streamId, blockRecords);
+                DataBlock block = new DataBlock(streamId, blockRecords, compressionType, offsetIndexInterval);
                 waitingUploadBlocks.add(block);
                 closeCf.add(block.close());
             });
@@ -161,7 +243,7 @@ public interface ObjectWriter {
                 waitingUploadBlocks.clear();
                 indexBlock = new IndexBlock();
                 buf.addComponent(true, indexBlock.buffer());
-                Footer footer = new Footer(indexBlock.position(), indexBlock.size());
+                Footer footer = new Footer(indexBlock.position(), indexBlock.size(), indexBlock.version());
                 buf.addComponent(true, footer.buffer());
                 writer.write(buf.duplicate());
                 size = indexBlock.position() + indexBlock.size() + footer.size();
@@ -203,10 +285,12 @@ public interface ObjectWriter {
         class IndexBlock {
             private final ByteBuf buf;
             private final long position;
+            private final byte version;
 
             public IndexBlock() {
                 long nextPosition = 0;
-                int indexBlockSize = 4 + (8 + 4 + 4 + 8 + 8 + 4 + 4) * completedBlocks.size();
+                version = completedBlocks.stream().anyMatch(block -> block.uncompressedSize() != block.size()) ? INDEX_VERSION_V1 : INDEX_VERSION_V0;
+                int indexBlockSize = 4 + (ObjectWriter.blockIndexSize(version) + 8 + 8 + 4 + 4) * completedBlocks.size();
                 buf = DirectByteBufAlloc.byteBuffer(indexBlockSize, "write_index_block");
                 buf.writeInt(completedBlocks.size()); // block count
                 // block index
@@ -217,6 +301,10 @@ public interface ObjectWriter {
                     buf.writeInt(block.size());
                     // how many ranges in the block
                     buf.writeInt(block.recordCount());
+                    if (version == INDEX_VERSION_V1) {
+                        // byte size of the block before compression
+                        buf.writeInt(block.uncompressedSize());
+                    }
                     nextPosition += block.size();
                 }
                 position = nextPosition;
@@ -246,25 +334,107 @@ public interface ObjectWriter {
             public int size() {
                 return buf.readableBytes();
             }
+
+            public byte version() {
+                return version;
+            }
         }
     }
 
+    /**
+     * Uncompressed data block: [magic][flag][offset index (optional)][records...]
+     * <p>
+     * Compressed data block: [magic][flag][uncompressed records size int][offset index (optional)][compressed records...]
+     * <p>
+     * Offset index: [interval int][entry count int][(base offset long, position int)...]. The i-th entry points to the
+     * (i * interval)-th record of the block, and its position is relative to the start of the (uncompressed) records.
+     * It is only written when the block is marked by {@link #DATA_BLOCK_OFFSET_INDEX_FLAG}.
+     */
     class DataBlock {
         private final CompositeByteBuf encodedBuf;
         private final ObjectStreamRange streamRange;
         private final int recordCount;
         private final int size;
+        private final int uncompressedSize;
 
         public DataBlock(long streamId, List<StreamRecordBatch> records) {
+            this(streamId, records, CompressionType.NONE);
+        }
+
+        public DataBlock(long streamId, List<StreamRecordBatch> records, CompressionType compressionType) {
+            this(streamId, records, compressionType, 0);
+        }
+
+        public DataBlock(long streamId, List<StreamRecordBatch> records, CompressionType compressionType, int offsetIndexInterval) {
             this.streamRange = new ObjectStreamRange(streamId, records.get(0).getEpoch(), records.get(0).getBaseOffset(), records.get(records.size() - 1).getLastOffset());
             this.recordCount = records.size();
             this.encodedBuf = DirectByteBufAlloc.compositeByteBuffer();
-            ByteBuf header = DirectByteBufAlloc.byteBuffer(2);
+            int recordsSize = records.stream().mapToInt(r -> r.encoded().readableBytes()).sum();
+            ByteBuf compressed = compressionType == CompressionType.NONE ? null : compress(records, recordsSize, compressionType);
+            // a single entry index is useless, the block is read from the first record anyway.
+            ByteBuf offsetIndex = offsetIndexInterval > 0 && records.size() > offsetIndexInterval ? offsetIndex(records, offsetIndexInterval) : null;
+            int flag = DATA_BLOCK_DEFAULT_FLAG;
+            if (compressed != null) {
+                flag |= compressionType.code() << DATA_BLOCK_COMPRESSION_SHIFT;
+            }
+            if (offsetIndex != null) {
+                flag |= DATA_BLOCK_OFFSET_INDEX_FLAG;
+            }
+            ByteBuf header = DirectByteBufAlloc.byteBuffer(2 + (compressed == null ? 0 : 4));
             header.writeByte(DATA_BLOCK_MAGIC);
-            header.writeByte(DATA_BLOCK_DEFAULT_FLAG);
+            header.writeByte(flag);
+            if (compressed != null) {
+                header.writeInt(recordsSize);
+            }
             encodedBuf.addComponent(true, header);
-            records.forEach(r -> encodedBuf.addComponent(true, r.encoded().retain()));
+            int offsetIndexSize = 0;
+            if (offsetIndex != null) {
+                offsetIndexSize = offsetIndex.readableBytes();
+                encodedBuf.addComponent(true, offsetIndex);
+            }
+            if (compressed == null) {
+                records.forEach(r -> encodedBuf.addComponent(true, r.encoded().retain()));
+            } else {
+                encodedBuf.addComponent(true, compressed);
+            }
             this.size = encodedBuf.readableBytes();
+            this.uncompressedSize = 2 + offsetIndexSize + recordsSize;
+        }
+
+        private static ByteBuf offsetIndex(List<StreamRecordBatch> records, int interval) {
+            int entryCount = (records.size() + interval - 1) / interval;
+            ByteBuf buf = DirectByteBufAlloc.byteBuffer(4 + 4 + entryCount * (8 + 4), "write_offset_index");
+            buf.writeInt(interval);
+            buf.writeInt(entryCount);
+            int position = 0;
+            for (int i = 0; i < records.size(); i++) {
+                StreamRecordBatch record = records.get(i);
+                if (i % interval == 0) {
+                    buf.writeLong(record.getBaseOffset());
+                    buf.writeInt(position);
+                }
+                position += record.encoded().readableBytes();
+            }
+            return buf;
+        }
+
+        /**
+         * Compress the records, return null if the compression is not worth it.
+         */
+        private static ByteBuf compress(List<StreamRecordBatch> records, int recordsSize, CompressionType compressionType) {
+            ByteBuf raw = DirectByteBufAlloc.byteBuffer(recordsSize, "compress");
+            ByteBuf compressed;
+            try {
+                records.forEach(r -> raw.writeBytes(r.encoded()));
+                compressed = compressionType.compress(raw);
+            } finally {
+                raw.release();
+            }
+            if (compressed.readableBytes() + 4 >= recordsSize) {
+                compressed.release();
+                return null;
+            }
+            return compressed;
         }
 
         public CompletableFuture<Void> close() {
@@ -275,6 +445,13 @@ public interface ObjectWriter {
             return size;
         }
 
+        /**
+         * The size of the block if it is not compressed.
+         */
+        public int uncompressedSize() {
+            return uncompressedSize;
+        }
+
         public int recordCount() {
             return recordCount;
         }
@@ -293,14 +470,25 @@ public interface ObjectWriter {
         private static final long MAGIC = 0x88e241b785f4cff7L;
         private final ByteBuf buf;
 
+        /**
+         * The position of the index version, counting from the end of the object.
+         */
+        public static final int INDEX_VERSION_TAIL_OFFSET = FOOTER_SIZE - 8 - 4;
+
         public Footer(long indexStartPosition, int indexBlockLength) {
+            this(indexStartPosition, indexBlockLength, INDEX_VERSION_V0);
+        }
+
+        public Footer(long indexStartPosition, int indexBlockLength, byte indexVersion) {
             buf = DirectByteBufAlloc.byteBuffer(FOOTER_SIZE);
             // start position of index block
             buf.writeLong(indexStartPosition);
             // size of index block
             buf.writeInt(indexBlockLength);
+            // version of index block
+            buf.writeByte(indexVersion);
             // reserved for future
-            buf.writeZero(40 - 8 - 4);
+            buf.writeZero(40 - 8 - 4 - 1);
             buf.writeLong(MAGIC);
         }
 
@@ -17,6 +17,7 @@
 
 package com.automq.stream.s3;
 
+import com.automq.stream.api.StreamClientException;
 import com.automq.stream.s3.cache.LogCache;
 import com.automq.stream.s3.cache.ReadDataBlock;
 import com.automq.stream.s3.cache.S3BlockCache;
@@ -24,7 +25,9 @@ import com.automq.stream.s3.metadata.StreamMetadata;
 import com.automq.stream.s3.metrics.TimerUtil;
 import com.automq.stream.s3.metrics.operations.S3Operation;
 import com.automq.stream.s3.metrics.stats.OperationMetricsStats;
+import com.automq.stream.s3.metrics.stats.StorageMetricsStats;
 import com.automq.stream.s3.model.StreamRecordBatch;
+import com.automq.stream.s3.objects.CommitWALObjectRequest;
 import com.automq.stream.s3.objects.ObjectManager;
 import com.automq.stream.s3.operator.S3Operator;
 import com.automq.stream.s3.streams.StreamManager;
@@ -44,41 +47,60 @@ import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
 import java.util.Optional;
 import java.util.Queue;
-import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 
 public class S3Storage implements Storage {
     private static final Logger LOGGER = LoggerFactory.getLogger(S3Storage.class);
+    /**
+     * Max count of the WAL object uploads in flight in recovery.
+     */
+    static final int MAX_INFLIGHT_RECOVER_UPLOADS = 2;
+    /**
+     * Max backoff of the retries of a failed WAL object upload.
+     */
+    static final long MAX_UPLOAD_RETRY_DELAY_MS = TimeUnit.MINUTES.toMillis(1);
     private final long maxWALCacheSize;
     private final Config config;
     private final WriteAheadLog log;
     /**
-     * WAL log cache. Single thread mainReadExecutor will ensure the memory safety.
+     * Streams are sharded by streamId % shards.length, each shard has its own callback sequencer, log cache and executors.
      */
-    private final LogCache logCache;
+    private final StorageShard[] shards;
     /**
-     * WAL out of order callback sequencer. Single thread mainWriteExecutor will ensure the memory safety.
+     * WAL confirm offset across all shards.
      */
-    private final WALCallbackSequencer callbackSequencer = new WALCallbackSequencer();
+    private final WALConfirmOffsetCalculator confirmOffsetCalculator = new WALConfirmOffsetCalculator();
+    private final AtomicBoolean archiveScheduled = new AtomicBoolean();
+    private CompletableFuture<Void> lastArchiveCf = CompletableFuture.completedFuture(null);
     private final Queue<WALObjectUploadTaskContext> walObjectPrepareQueue = new LinkedList<>();
     private final Queue<WALObjectUploadTaskContext> walObjectCommitQueue = new LinkedList<>();
+    /**
+     * Whether the head of {@link #walObjectPrepareQueue} is preparing. It is only accessed in the backgroundExecutor.
+     */
+    private boolean walObjectPreparing;
+    /**
+     * The non-retriable error of a WAL object commit. Once set, no more WAL objects are committed, so the WAL is not
+     * trimmed past the uncommitted records. It is only accessed in the backgroundExecutor.
+     */
+    private Throwable walObjectCommitError;
+    private final int maxInflightWALObjectUploads;
     private final List<CompletableFuture<Void>> inflightWALUploadTasks = new CopyOnWriteArrayList<>();
 
-    private final ScheduledExecutorService mainWriteExecutor = Threads.newSingleThreadScheduledExecutor(
-            ThreadUtils.createThreadFactory("s3-storage-main-write", false), LOGGER);
-    private final ScheduledExecutorService mainReadExecutor = Threads.newSingleThreadScheduledExecutor(
-            ThreadUtils.createThreadFactory("s3-storage-main-read", false), LOGGER);
     private final ScheduledExecutorService backgroundExecutor = Threads.newSingleThreadScheduledExecutor(
             ThreadUtils.createThreadFactory("s3-storage-background", true), LOGGER);
     private final ExecutorService uploadWALExecutor = Threads.newFixedThreadPool(
@@ -92,15 +114,25 @@ public class S3Storage implements Storage {
     private final ObjectManager objectManager;
     private final S3Operator s3Operator;
     private final S3BlockCache blockCache;
+    /**
+     * The peak direct memory used by the last recovery, in bytes.
+     */
+    private volatile long recoverPeakDirectMemory = 0L;
 
     public S3Storage(Config config, WriteAheadLog log, StreamManager streamManager, ObjectManager objectManager,
                      S3BlockCache blockCache, S3Operator s3Operator) {
         this.config = config;
         this.maxWALCacheSize = config.s3WALCacheSize();
+        this.maxInflightWALObjectUploads = Math.max(1, config.s3WALObjectUploadConcurrency());
         this.log = log;
         this.blockCache = blockCache;
-        this.logCache = new LogCache(config.s3WALObjectSize(), config.s3MaxStreamNumPerWALObject());
+        int shardNum = Math.max(1, config.s3StorageShardNum());
+        this.shards = new StorageShard[shardNum];
+        for (int i = 0; i < shardNum; i++) {
+            shards[i] = new StorageShard(i, config.s3WALObjectSize() / shardNum, Math.max(1, config.s3MaxStreamNumPerWALObject() / shardNum));
+        }
         DirectByteBufAlloc.registerOOMHandlers(new LogCacheEvictOOMHandler());
+        StorageMetricsStats.registerRecoverPeakDirectMemory(() -> recoverPeakDirectMemory);
         this.streamManager = streamManager;
         this.objectManager = objectManager;
         this.s3Operator = s3Operator;
@@ -122,24 +154,38 @@ public class S3Storage implements Storage {
 
     /**
      * Upload WAL to S3 and close opening streams.
+     * <p>
+     * The recovered records are cut into blocks of WAL object size and uploaded while the WAL is still being read,
+     * so the memory used by recovery is bounded by {@link #MAX_INFLIGHT_RECOVER_UPLOADS} blocks rather than the whole WAL.
      */
     private void recover() throws Throwable {
+        TimerUtil timerUtil = new TimerUtil();
         log.start();
         List<StreamMetadata> streams = streamManager.getOpeningStreams().get();
 
-        LogCache.LogCacheBlock cacheBlock = recoverContinuousRecords(log.recover(), streams);
         Map<Long, Long> streamEndOffsets = new HashMap<>();
-        cacheBlock.records().forEach((streamId, records) -> {
-            if (!records.isEmpty()) {
-                streamEndOffsets.put(streamId, records.get(records.size() - 1).getLastOffset());
+        Queue<CompletableFuture<Void>> inflightUploads = new LinkedList<>();
+        Consumer<LogCache.LogCacheBlock> uploader = block -> {
+            if (block.size() == 0) {
+                return;
             }
-        });
+            recoverPeakDirectMemory = Math.max(recoverPeakDirectMemory, DirectByteBufAlloc.usedMemory());
+            block.records().forEach((streamId, records) -> {
+                if (!records.isEmpty()) {
+                    streamEndOffsets.put(streamId, records.get(records.size() - 1).getLastOffset());
+                }
+            });
+            LOGGER.info("try recover from crash, recover records bytes size {}", block.size());
+            inflightUploads.add(uploadWALObject(block).thenAccept(nil -> block.records().forEach((streamId, records) -> records.forEach(StreamRecordBatch::release))));
+            while (inflightUploads.size() >= MAX_INFLIGHT_RECOVER_UPLOADS) {
+                inflightUploads.poll().join();
+            }
+        };
+        LogCache.LogCacheBlock cacheBlock = recoverContinuousRecords(log.recover(), streams,
+                config.s3WALObjectSize(), config.s3MaxStreamNumPerWALObject(), uploader);
+        uploader.accept(cacheBlock);
+        CompletableFuture.allOf(inflightUploads.toArray(new CompletableFuture[0])).get();
 
-        if (cacheBlock.size() != 0) {
-            LOGGER.info("try recover from crash, recover records bytes size {}", cacheBlock.size());
-            uploadWALObject(cacheBlock).get();
-            cacheBlock.records().forEach((streamId, records) -> records.forEach(StreamRecordBatch::release));
-        }
         log.reset().get();
         for (StreamMetadata stream : streams) {
             long newEndOffset = streamEndOffsets.getOrDefault(stream.getStreamId(), stream.getEndOffset());
@@ -151,11 +197,27 @@ public class S3Storage implements Storage {
                         .map(s -> streamManager.closeStream(s.getStreamId(), s.getEpoch()))
                         .toArray(CompletableFuture[]::new)
         ).get();
+        OperationMetricsStats.getHistogram(S3Operation.RECOVER_STORAGE).update(timerUtil.elapsed());
     }
 
     LogCache.LogCacheBlock recoverContinuousRecords(Iterator<WriteAheadLog.RecoverResult> it, List<StreamMetadata> openingStreams) {
+        return recoverContinuousRecords(it, openingStreams, Long.MAX_VALUE, Integer.MAX_VALUE, block -> {
+        });
+    }
+
+    /**
+     * Recover continuous records from the WAL.
+     *
+     * @param blockMaxSize       max size of a recovered block
+     * @param blockMaxStreamNum  max stream count of a recovered block
+     * @param fullBlockConsumer  consumer of the full blocks, which takes the ownership of the records in them
+     * @return the last block, which is not full
+     */
+    LogCache.LogCacheBlock recoverContinuousRecords(Iterator<WriteAheadLog.RecoverResult> it, List<StreamMetadata> openingStreams,
+                                                    long blockMaxSize, int blockMaxStreamNum,
+                                                    Consumer<LogCache.LogCacheBlock> fullBlockConsumer) {
         Map<Long, Long> openingStreamEndOffsets = openingStreams.stream().collect(Collectors.toMap(StreamMetadata::getStreamId, StreamMetadata::getEndOffset));
-        LogCache.LogCacheBlock cacheBlock = new LogCache.LogCacheBlock(1024L * 1024 * 1024);
+        LogCache.LogCacheBlock cacheBlock = new LogCache.LogCacheBlock(blockMaxSize, blockMaxStreamNum);
         long logEndOffset = -1L;
         Map<Long, Long> streamNextOffsets = new HashMap<>();
         while (it.hasNext()) {
@@ -176,9 +238,17 @@ public class S3Storage implements Storage {
                 continue;
             }
             Long expectNextOffset = streamNextOffsets.get(streamId);
+            if (expectNextOffset == null && streamRecordBatch.getBaseOffset() > openingStreamEndOffset) {
+                throw new IllegalStateException(String.format("[BUG] WAL data may lost, streamId %s endOffset=%s from controller" +
+                        "but WAL recovered records startOffset=%s", streamId, openingStreamEndOffset, streamRecordBatch.getBaseOffset()));
+            }
             if (expectNextOffset == null || expectNextOffset == streamRecordBatch.getBaseOffset()) {
-                cacheBlock.put(streamRecordBatch);
                 streamNextOffsets.put(streamRecordBatch.getStreamId(), streamRecordBatch.getLastOffset());
+                if (cacheBlock.put(streamRecordBatch)) {
+                    cacheBlock.confirmOffset(logEndOffset);
+                    fullBlockConsumer.accept(cacheBlock);
+                    cacheBlock = new LogCache.LogCacheBlock(blockMaxSize, blockMaxStreamNum);
+                }
             } else {
                 LOGGER.error("unexpected WAL record, streamId={}, expectNextOffset={}, record={}", streamId, expectNextOffset, streamRecordBatch);
                 streamRecordBatch.release();
@@ -187,18 +257,6 @@ public class S3Storage implements Storage {
         if (logEndOffset >= 0L) {
             cacheBlock.confirmOffset(logEndOffset);
         }
-        cacheBlock.records().forEach((streamId, records) -> {
-            if (!records.isEmpty()) {
-                long startOffset = records.get(0).getBaseOffset();
-                long expectedStartOffset = openingStreamEndOffsets.getOrDefault(streamId, startOffset);
-                if (startOffset > expectedStartOffset) {
-                    throw new IllegalStateException(String.format("[BUG] WAL data may lost, streamId %s endOffset=%s from controller" +
-                            "but WAL recovered records startOffset=%s", streamId, expectedStartOffset, startOffset));
-                }
-            }
-
-        });
-
         return cacheBlock;
     }
 
@@ -211,8 +269,11 @@ public class S3Storage implements Storage {
         }
         log.shutdownGracefully();
         backgroundExecutor.shutdown();
-        mainReadExecutor.shutdown();
-        mainWriteExecutor.shutdown();
+        for (StorageShard shard : shards) {
+            shard.readExecutor.shutdown();
+            shard.writeExecutor.shutdown();
+        }
+        blockCache.shutdown();
     }
 
 
@@ -223,6 +284,7 @@ public class S3Storage implements Storage {
         // encoded before append to free heap ByteBuf.
         streamRecord.encoded();
         WalWriteRequest writeRequest = new WalWriteRequest(streamRecord, -1L, cf);
+        confirmOffsetCalculator.add(writeRequest);
         handleAppendRequest(writeRequest);
         append0(writeRequest, false);
         cf.whenComplete((nil, ex) -> {
@@ -248,7 +310,7 @@ public class S3Storage implements Storage {
             }
             OperationMetricsStats.getCounter(S3Operation.APPEND_STORAGE_LOG_CACHE_FULL).inc();
             if (System.currentTimeMillis() - lastLogTimestamp > 1000L) {
-                LOGGER.warn("[BACKOFF] log cache size {} is larger than {}", logCache.size(), maxWALCacheSize);
+                LOGGER.warn("[BACKOFF] log cache size {} is larger than {}", logCacheSize(), maxWALCacheSize);
                 lastLogTimestamp = System.currentTimeMillis();
             }
             return true;
@@ -277,7 +339,15 @@ public class S3Storage implements Storage {
 
     @SuppressWarnings("BooleanMethodIsAlwaysInverted")
     private boolean tryAcquirePermit() {
-        return logCache.size() < maxWALCacheSize;
+        return logCacheSize() < maxWALCacheSize;
+    }
+
+    private long logCacheSize() {
+        long size = 0;
+        for (StorageShard shard : shards) {
+            size += shard.logCache.size();
+        }
+        return size;
     }
 
     private void tryDrainBackoffRecords() {
@@ -302,44 +372,14 @@ public class S3Storage implements Storage {
     public CompletableFuture<ReadDataBlock> read(long streamId, long startOffset, long endOffset, int maxBytes) {
         TimerUtil timerUtil = new TimerUtil();
         CompletableFuture<ReadDataBlock> cf = new CompletableFuture<>();
-        mainReadExecutor.execute(() -> FutureUtil.propagate(read0(streamId, startOffset, endOffset, maxBytes), cf));
+        StorageShard shard = shard(streamId);
+        shard.readExecutor.execute(() -> FutureUtil.propagate(shard.read0(streamId, startOffset, endOffset, maxBytes), cf));
         cf.whenComplete((nil, ex) -> {
             OperationMetricsStats.getHistogram(S3Operation.READ_STORAGE).update(timerUtil.elapsed());
         });
         return cf;
     }
 
-    private CompletableFuture<ReadDataBlock> read0(long streamId, long startOffset, long endOffset, int maxBytes) {
-        List<StreamRecordBatch> logCacheRecords = logCache.get(streamId, startOffset, endOffset, maxBytes);
-        if (!logCacheRecords.isEmpty() && logCacheRecords.get(0).getBaseOffset() <= startOffset) {
-            return CompletableFuture.completedFuture(new ReadDataBlock(logCacheRecords));
-        }
-        if (!logCacheRecords.isEmpty()) {
-            endOffset = logCacheRecords.get(0).getBaseOffset();
-        }
-        return blockCache.read(streamId, startOffset, endOffset, maxBytes).thenApplyAsync(readDataBlock -> {
-            List<StreamRecordBatch> rst = new ArrayList<>(readDataBlock.getRecords());
-            int remainingBytesSize = maxBytes - rst.stream().mapToInt(StreamRecordBatch::size).sum();
-            int readIndex = -1;
-            for (int i = 0; i < logCacheRecords.size() && remainingBytesSize > 0; i++) {
-                readIndex = i;
-                StreamRecordBatch record = logCacheRecords.get(i);
-                rst.add(record);
-                remainingBytesSize -= record.size();
-            }
-            if (readIndex < logCacheRecords.size()) {
-                // release unnecessary record
-                logCacheRecords.subList(readIndex + 1, logCacheRecords.size()).forEach(StreamRecordBatch::release);
-            }
-            continuousCheck(rst);
-            return new ReadDataBlock(rst);
-        }, mainReadExecutor).whenComplete((rst, ex) -> {
-            if (ex != null) {
-                logCacheRecords.forEach(StreamRecordBatch::release);
-            }
-        });
-    }
-
     private void continuousCheck(List<StreamRecordBatch> records) {
         long expectStartOffset = -1L;
         for (StreamRecordBatch record : records) {
@@ -359,53 +399,119 @@ public class S3Storage implements Storage {
         CompletableFuture<Void> cf = new CompletableFuture<>();
         List<CompletableFuture<Void>> inflightWALUploadTasks = new ArrayList<>(this.inflightWALUploadTasks);
         // await inflight WAL upload tasks to group force upload tasks.
-        CompletableFuture.allOf(inflightWALUploadTasks.toArray(new CompletableFuture[0])).whenCompleteAsync((nil, ex) -> {
-            logCache.setConfirmOffset(callbackSequencer.getWALConfirmOffset());
-            Optional<LogCache.LogCacheBlock> blockOpt = logCache.archiveCurrentBlockIfContains(streamId);
-            if (blockOpt.isPresent()) {
-                blockOpt.ifPresent(this::uploadWALObject);
-            }
-            FutureUtil.propagate(CompletableFuture.allOf(this.inflightWALUploadTasks.toArray(new CompletableFuture[0])), cf);
-            mainWriteExecutor.execute(() -> callbackSequencer.tryFree(streamId));
-        }, mainReadExecutor);
+        CompletableFuture.allOf(inflightWALUploadTasks.toArray(new CompletableFuture[0]))
+                .exceptionally(ex -> null)
+                .thenCompose(nil -> archiveCurrentBlocks(streamId))
+                .whenComplete((nil, ex) -> {
+                    FutureUtil.propagate(CompletableFuture.allOf(this.inflightWALUploadTasks.toArray(new CompletableFuture[0])), cf);
+                    if (streamId != LogCache.MATCH_ALL_STREAMS) {
+                        StorageShard shard = shard(streamId);
+                        shard.writeExecutor.execute(() -> shard.callbackSequencer.tryFree(streamId));
+                    }
+                });
         return cf;
     }
 
     private void handleAppendRequest(WalWriteRequest request) {
-        mainWriteExecutor.execute(() -> callbackSequencer.before(request));
+        StorageShard shard = shard(request.record.getStreamId());
+        shard.writeExecutor.execute(() -> shard.callbackSequencer.before(request));
     }
 
     private void handleAppendCallback(WalWriteRequest request) {
-        mainWriteExecutor.execute(() -> handleAppendCallback0(request));
+        StorageShard shard = shard(request.record.getStreamId());
+        shard.writeExecutor.execute(() -> shard.handleAppendCallback0(request));
     }
 
-    private void handleAppendCallback0(WalWriteRequest request) {
-        List<WalWriteRequest> waitingAckRequests = callbackSequencer.after(request);
-        long walConfirmOffset = callbackSequencer.getWALConfirmOffset();
-        waitingAckRequests.forEach(r -> r.record.retain());
-        mainReadExecutor.execute(() -> {
-            for (WalWriteRequest waitingAckRequest : waitingAckRequests) {
-                if (logCache.put(waitingAckRequest.record)) {
-                    // cache block is full, trigger WAL object upload.
-                    logCache.setConfirmOffset(walConfirmOffset);
-                    LogCache.LogCacheBlock logCacheBlock = logCache.archiveCurrentBlock();
-                    uploadWALObject(logCacheBlock);
-                }
+    private StorageShard shard(long streamId) {
+        return shards[(int) (streamId % shards.length)];
+    }
+
+    private void scheduleArchive() {
+        if (archiveScheduled.compareAndSet(false, true)) {
+            archiveCurrentBlocks(LogCache.MATCH_ALL_STREAMS).whenComplete((nil, ex) -> archiveScheduled.set(false));
+        }
+    }
+
+    /**
+     * Archive the current cache blocks of all shards and upload them as one WAL object.
+     * The archive rounds are serialized, so the earlier round will have smaller objectId and commit first.
+     *
+     * @param streamId only archive when the stream's shard current block contains the stream,
+     *                 {@link LogCache#MATCH_ALL_STREAMS} to archive unconditionally.
+     */
+    private synchronized CompletableFuture<Void> archiveCurrentBlocks(long streamId) {
+        CompletableFuture<Void> cf = lastArchiveCf
+                .exceptionally(ex -> null)
+                .thenComposeAsync(nil -> archiveCurrentBlocks0(streamId), backgroundExecutor);
+        cf.whenComplete((nil, ex) -> {
+            if (ex != null) {
+                LOGGER.error("archive log cache blocks fail", ex);
             }
         });
-        for (WalWriteRequest waitingAckRequest : waitingAckRequests) {
-            waitingAckRequest.cf.complete(null);
+        lastArchiveCf = cf;
+        return cf;
+    }
+
+    private CompletableFuture<Void> archiveCurrentBlocks0(long streamId) {
+        // all the records before the confirm offset are already put into the shards' log cache,
+        // so they will be included in the blocks archived after this point.
+        long confirmOffset = confirmOffsetCalculator.get();
+        CompletableFuture<Optional<ArchivedBlock>> firstCf;
+        StorageShard firstShard;
+        if (streamId == LogCache.MATCH_ALL_STREAMS) {
+            firstShard = shards[0];
+            firstCf = firstShard.archive(LogCache.MATCH_ALL_STREAMS, confirmOffset);
+        } else {
+            firstShard = shard(streamId);
+            firstCf = firstShard.archive(streamId, confirmOffset);
         }
+        return firstCf.thenCompose(firstBlock -> {
+            if (streamId != LogCache.MATCH_ALL_STREAMS && firstBlock.isEmpty()) {
+                return CompletableFuture.completedFuture(null);
+            }
+            List<CompletableFuture<Optional<ArchivedBlock>>> cfList = new ArrayList<>(shards.length);
+            cfList.add(CompletableFuture.completedFuture(firstBlock));
+            for (StorageShard shard : shards) {
+                if (shard != firstShard) {
+                    cfList.add(shard.archive(LogCache.MATCH_ALL_STREAMS, confirmOffset));
+                }
+            }
+            return CompletableFuture.allOf(cfList.toArray(new CompletableFuture[0])).thenAcceptAsync(nil -> {
+                List<ArchivedBlock> archivedBlocks = cfList.stream()
+                        .map(CompletableFuture::join)
+                        .filter(Optional::isPresent)
+                        .map(Optional::get)
+                        .collect(Collectors.toList());
+                if (archivedBlocks.isEmpty()) {
+                    return;
+                }
+                LogCache.LogCacheBlock logCacheBlock;
+                if (archivedBlocks.size() == 1) {
+                    logCacheBlock = archivedBlocks.get(0).block;
+                } else {
+                    logCacheBlock = new LogCache.LogCacheBlock(Long.MAX_VALUE, Integer.MAX_VALUE);
+                    for (ArchivedBlock archivedBlock : archivedBlocks) {
+                        archivedBlock.block.records().forEach((id, records) -> records.forEach(logCacheBlock::put));
+                    }
+                }
+                logCacheBlock.confirmOffset(confirmOffset);
+                uploadWALObject(logCacheBlock, archivedBlocks);
+            }, backgroundExecutor);
+        });
     }
 
     /**
      * Upload cache block to S3. The earlier cache block will have smaller objectId and commit first.
      */
     CompletableFuture<Void> uploadWALObject(LogCache.LogCacheBlock logCacheBlock) {
+        return uploadWALObject(logCacheBlock, Collections.emptyList());
+    }
+
+    private CompletableFuture<Void> uploadWALObject(LogCache.LogCacheBlock logCacheBlock, List<ArchivedBlock> archivedBlocks) {
         TimerUtil timerUtil = new TimerUtil();
         CompletableFuture<Void> cf = new CompletableFuture<>();
         inflightWALUploadTasks.add(cf);
-        backgroundExecutor.execute(() -> FutureUtil.exec(() -> uploadWALObject0(logCacheBlock, cf), cf, LOGGER, "uploadWALObject"));
+        backgroundExecutor.execute(() -> FutureUtil.exec(() -> uploadWALObject0(logCacheBlock, archivedBlocks, cf), cf, LOGGER, "uploadWALObject"));
         cf.whenComplete((nil, ex) -> {
             OperationMetricsStats.getHistogram(S3Operation.UPLOAD_STORAGE_WAL).update(timerUtil.elapsed());
             inflightWALUploadTasks.remove(cf);
@@ -416,43 +522,105 @@ public class S3Storage implements Storage {
         return cf;
     }
 
-    private void uploadWALObject0(LogCache.LogCacheBlock logCacheBlock, CompletableFuture<Void> cf) {
+    private void uploadWALObject0(LogCache.LogCacheBlock logCacheBlock, List<ArchivedBlock> archivedBlocks, CompletableFuture<Void> cf) {
+        if (walObjectCommitError != null) {
+            cf.completeExceptionally(walObjectCommitError);
+            return;
+        }
         WALObjectUploadTask walObjectUploadTask = WALObjectUploadTask.of(config, logCacheBlock.records(), objectManager, s3Operator, uploadWALExecutor);
         WALObjectUploadTaskContext context = new WALObjectUploadTaskContext();
         context.task = walObjectUploadTask;
         context.cache = logCacheBlock;
+        context.archivedBlocks = archivedBlocks;
         context.cf = cf;
-
-        boolean walObjectPrepareQueueEmpty = walObjectPrepareQueue.isEmpty();
         walObjectPrepareQueue.add(context);
-        if (!walObjectPrepareQueueEmpty) {
-            // there is another WAL object upload task is preparing, just return.
+        tryPrepareWALObject();
+    }
+
+    /**
+     * The WAL objects are uploaded in a pipeline:
+     * <ol>
+     *     <li>Prepare: the objects are prepared one by one, so the earlier one gets the smaller objectId.</li>
+     *     <li>Upload: an object starts uploading as soon as it is prepared, at most {@link #maxInflightWALObjectUploads}
+     *     objects are uploading or waiting for commit at the same time.</li>
+     *     <li>Commit: the objects are committed one by one in the prepare order, so the WAL is trimmed in order.</li>
+     * </ol>
+     * If the upload fails, the object is rolled back, that is, its records are uploaded again to a new object which
+     * keeps the order of the failed one. A failed commit is retried on the same object with backoff. The later objects
+     * keep uploading meanwhile, but wait for the failed one to commit. Once a commit is rejected, no more objects are
+     * prepared or uploaded, see {@link #retryWALObject}.
+     */
+    private void tryPrepareWALObject() {
+        if (walObjectCommitError != null) {
+            failPreparingWALObjects();
+            return;
+        }
+        if (walObjectPreparing || walObjectCommitQueue.size() >= maxInflightWALObjectUploads) {
+            return;
+        }
+        WALObjectUploadTaskContext context = walObjectPrepareQueue.peek();
+        if (context == null) {
             return;
         }
+        walObjectPreparing = true;
         prepareWALObject(context);
     }
 
+    /**
+     * Fail the objects waiting for prepare after a commit is rejected, without uploading them.
+     */
+    private void failPreparingWALObjects() {
+        if (walObjectPreparing) {
+            // the preparing one fails itself when the prepare completes
+            return;
+        }
+        WALObjectUploadTaskContext context;
+        while ((context = walObjectPrepareQueue.poll()) != null) {
+            context.cf.completeExceptionally(walObjectCommitError);
+        }
+    }
+
     private void prepareWALObject(WALObjectUploadTaskContext context) {
-        context.task.prepare().thenAcceptAsync(nil -> {
+        context.task.prepare().whenCompleteAsync((objectId, ex) -> {
+            if (walObjectCommitError != null) {
+                walObjectPreparing = false;
+                failPreparingWALObjects();
+                return;
+            }
+            if (ex != null) {
+                // nothing is uploaded, just prepare it again
+                long delay = retryDelay(++context.retries);
+                LOGGER.error("prepare WAL object fail, retry in {}ms", delay, ex);
+                context.task = context.task.rollback();
+                backgroundExecutor.schedule(() -> prepareWALObject(context), delay, TimeUnit.MILLISECONDS);
+                return;
+            }
             // 1. poll out current task and trigger upload.
-            WALObjectUploadTaskContext peek = walObjectPrepareQueue.poll();
-            Objects.requireNonNull(peek).task.upload();
+            walObjectPrepareQueue.poll();
+            context.uploadCf = context.task.upload();
             // 2. add task to commit queue.
             boolean walObjectCommitQueueEmpty = walObjectCommitQueue.isEmpty();
-            walObjectCommitQueue.add(peek);
+            walObjectCommitQueue.add(context);
             if (walObjectCommitQueueEmpty) {
-                commitWALObject(peek);
+                commitWALObject(context);
             }
             // 3. trigger next task to prepare.
-            WALObjectUploadTaskContext next = walObjectPrepareQueue.peek();
-            if (next != null) {
-                prepareWALObject(next);
-            }
+            walObjectPreparing = false;
+            tryPrepareWALObject();
         }, backgroundExecutor);
     }
 
     private void commitWALObject(WALObjectUploadTaskContext context) {
-        context.task.commit().thenAcceptAsync(nil -> {
+        if (walObjectCommitError != null) {
+            walObjectCommitQueue.remove(context);
+            context.cf.completeExceptionally(walObjectCommitError);
+            return;
+        }
+        context.task.commit().whenCompleteAsync((nil, ex) -> {
+            if (ex != null) {
+                retryWALObject(context, ex);
+                return;
+            }
             // 1. poll out current task
             walObjectCommitQueue.poll();
             if (context.cache.confirmOffset() != 0) {
@@ -460,7 +628,7 @@ public class S3Storage implements Storage {
                 log.trim(context.cache.confirmOffset());
             }
             // transfer records ownership to block cache.
-            freeCache(context.cache);
+            freeCache(context.archivedBlocks);
             context.cf.complete(null);
 
             // 2. trigger next task to commit.
@@ -468,36 +636,219 @@ public class S3Storage implements Storage {
             if (next != null) {
                 commitWALObject(next);
             }
-        }, backgroundExecutor).exceptionally(ex -> {
-            LOGGER.error("Unexpected exception when commit WAL object", ex);
-            context.cf.completeExceptionally(ex);
-            System.err.println("Unexpected exception when commit WAL object");
-            //noinspection CallToPrintStackTrace
-            ex.printStackTrace();
-            System.exit(1);
-            return null;
-        });
+            // 3. a slot for the next upload is freed.
+            tryPrepareWALObject();
+        }, backgroundExecutor);
+    }
+
+    /**
+     * Retry the WAL object at the head of the commit queue. The records are kept in the log cache and the WAL is not
+     * trimmed until the object is committed, so the object is retried rather than skipped.
+     * <p>
+     * If the upload failed, the object is rolled back and uploaded again as a new object. If the commit failed, the
+     * commit of the same object is retried, as a failed commit may have been applied by the controller, which treats
+     * the commit of an already committed object as a success. A {@link StreamClientException} means the controller
+     * rejects the commit, e.g. the object is expired or the stream is fenced, so it fails the object and the following
+     * ones instead of retrying forever, and no more objects are uploaded.
+     */
+    private void retryWALObject(WALObjectUploadTaskContext context, Throwable ex) {
+        long delay = retryDelay(++context.retries);
+        Throwable cause = FutureUtil.cause(ex);
+        if (context.uploadCf.isCompletedExceptionally()) {
+            LOGGER.error("upload WAL object fail, rollback and upload again in {}ms", delay, ex);
+            StorageMetricsStats.WAL_OBJECT_ROLLBACK_COUNT.inc();
+            context.commitRetries = 0;
+            context.task = context.task.rollback();
+            backgroundExecutor.schedule(() -> {
+                context.task.prepare();
+                context.uploadCf = context.task.upload();
+                commitWALObject(context);
+            }, delay, TimeUnit.MILLISECONDS);
+        } else if (cause instanceof StreamClientException) {
+            LOGGER.error("commit WAL object fail with non-retriable error, stop committing WAL objects", ex);
+            walObjectCommitError = cause;
+            walObjectCommitQueue.forEach(ctx -> ctx.cf.completeExceptionally(cause));
+            walObjectCommitQueue.clear();
+            // let the waiting objects fail as well
+            tryPrepareWALObject();
+        } else {
+            if (++context.commitRetries > config.s3ControllerRequestRetryMaxCount()) {
+                LOGGER.error("commit WAL object fail {} times, retry in {}ms", context.commitRetries, delay, ex);
+            } else {
+                LOGGER.warn("commit WAL object fail, retry in {}ms", delay, ex);
+            }
+            StorageMetricsStats.WAL_OBJECT_COMMIT_RETRY_COUNT.inc();
+            backgroundExecutor.schedule(() -> commitWALObject(context), delay, TimeUnit.MILLISECONDS);
+        }
     }
 
-    private void freeCache(LogCache.LogCacheBlock cacheBlock) {
-        mainReadExecutor.execute(() -> logCache.markFree(cacheBlock));
+    private long retryDelay(int retries) {
+        long baseDelay = Math.max(1, config.s3ControllerRequestRetryBaseDelayMs());
+        return Math.min(MAX_UPLOAD_RETRY_DELAY_MS, baseDelay << Math.min(retries - 1, 20));
+    }
+
+    private void freeCache(List<ArchivedBlock> archivedBlocks) {
+        for (ArchivedBlock archivedBlock : archivedBlocks) {
+            StorageShard shard = archivedBlock.shard;
+            shard.readExecutor.execute(() -> shard.logCache.markFree(archivedBlock.block));
+        }
     }
 
     /**
-     * WALCallbackSequencer is modified in single thread mainExecutor.
+     * StorageShard owns the streams which streamId % shards.length == index.
      */
-    static class WALCallbackSequencer {
+    class StorageShard {
+        /**
+         * WAL log cache. Single thread readExecutor will ensure the memory safety.
+         */
+        final LogCache logCache;
+        /**
+         * WAL out of order callback sequencer. Single thread writeExecutor will ensure the memory safety.
+         */
+        final WALCallbackSequencer callbackSequencer = new WALCallbackSequencer();
+        final ScheduledExecutorService writeExecutor;
+        final ScheduledExecutorService readExecutor;
+
+        StorageShard(int index, long cacheBlockMaxSize, int maxCacheBlockStreamCount) {
+            this.logCache = new LogCache(cacheBlockMaxSize, maxCacheBlockStreamCount);
+            this.writeExecutor = Threads.newSingleThreadScheduledExecutor(
+                    ThreadUtils.createThreadFactory("s3-storage-main-write-" + index, false), LOGGER);
+            this.readExecutor = Threads.newSingleThreadScheduledExecutor(
+                    ThreadUtils.createThreadFactory("s3-storage-main-read-" + index, false), LOGGER);
+        }
+
+        private CompletableFuture<ReadDataBlock> read0(long streamId, long startOffset, long endOffset, int maxBytes) {
+            List<StreamRecordBatch> logCacheRecords = logCache.get(streamId, startOffset, endOffset, maxBytes);
+            if (!logCacheRecords.isEmpty() && logCacheRecords.get(0).getBaseOffset() <= startOffset) {
+                return CompletableFuture.completedFuture(new ReadDataBlock(logCacheRecords));
+            }
+            if (!logCacheRecords.isEmpty()) {
+                endOffset = logCacheRecords.get(0).getBaseOffset();
+            }
+            return blockCache.read(streamId, startOffset, endOffset, maxBytes).thenApplyAsync(readDataBlock -> {
+                List<StreamRecordBatch> rst = new ArrayList<>(readDataBlock.getRecords());
+                int remainingBytesSize = maxBytes - rst.stream().mapToInt(StreamRecordBatch::size).sum();
+                int readIndex = -1;
+                for (int i = 0; i < logCacheRecords.size() && remainingBytesSize > 0; i++) {
+                    readIndex = i;
+                    StreamRecordBatch record = logCacheRecords.get(i);
+                    rst.add(record);
+                    remainingBytesSize -= record.size();
+                }
+                if (readIndex < logCacheRecords.size()) {
+                    // release unnecessary record
+                    logCacheRecords.subList(readIndex + 1, logCacheRecords.size()).forEach(StreamRecordBatch::release);
+                }
+                continuousCheck(rst);
+                return new ReadDataBlock(rst);
+            }, readExecutor).whenComplete((rst, ex) -> {
+                if (ex != null) {
+                    logCacheRecords.forEach(StreamRecordBatch::release);
+                }
+            });
+        }
+
+        private void handleAppendCallback0(WalWriteRequest request) {
+            List<WalWriteRequest> waitingAckRequests = callbackSequencer.after(request);
+            waitingAckRequests.forEach(r -> r.record.retain());
+            readExecutor.execute(() -> {
+                boolean full = false;
+                for (WalWriteRequest waitingAckRequest : waitingAckRequests) {
+                    full |= logCache.put(waitingAckRequest.record);
+                    waitingAckRequest.cached = true;
+                }
+                confirmOffsetCalculator.tryUpdate();
+                if (full) {
+                    // cache block is full, trigger WAL object upload.
+                    scheduleArchive();
+                }
+            });
+            for (WalWriteRequest waitingAckRequest : waitingAckRequests) {
+                waitingAckRequest.cf.complete(null);
+            }
+        }
+
+        private CompletableFuture<Optional<ArchivedBlock>> archive(long streamId, long confirmOffset) {
+            return CompletableFuture.supplyAsync(() -> {
+                logCache.setConfirmOffset(confirmOffset);
+                return logCache.archiveCurrentBlockIfContains(streamId).map(block -> new ArchivedBlock(this, block));
+            }, readExecutor);
+        }
+    }
+
+    static class ArchivedBlock {
+        final StorageShard shard;
+        final LogCache.LogCacheBlock block;
+
+        ArchivedBlock(StorageShard shard, LogCache.LogCacheBlock block) {
+            this.shard = shard;
+            this.block = block;
+        }
+    }
+
+    /**
+     * WALConfirmOffsetCalculator calculates the WAL inclusive confirm offset across all shards.
+     * All the records before the confirm offset are already put into the log cache.
+     */
+    static class WALConfirmOffsetCalculator {
         public static final long NOOP_OFFSET = -1L;
+        private final Queue<WalWriteRequest> walRequests = new ConcurrentLinkedQueue<>();
+        private final Lock lock = new ReentrantLock();
+        private volatile long walConfirmOffset = NOOP_OFFSET;
+
+        public void add(WalWriteRequest request) {
+            walRequests.add(request);
+        }
+
+        /**
+         * Try move forward the WAL inclusive confirm offset, skip when another thread is updating.
+         */
+        public void tryUpdate() {
+            if (lock.tryLock()) {
+                try {
+                    update0();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+
+        /**
+         * Get the up-to-date WAL inclusive confirm offset.
+         */
+        public long get() {
+            lock.lock();
+            try {
+                update0();
+                return walConfirmOffset;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void update0() {
+            for (; ; ) {
+                WalWriteRequest peek = walRequests.peek();
+                if (peek == null || !peek.cached) {
+                    break;
+                }
+                walRequests.poll();
+                walConfirmOffset = peek.offset;
+            }
+        }
+    }
+
+    /**
+     * WALCallbackSequencer is modified in single thread shard writeExecutor.
+     */
+    static class WALCallbackSequencer {
         private final Map<Long, Queue<WalWriteRequest>> stream2requests = new HashMap<>();
-        private final BlockingQueue<WalWriteRequest> walRequests = new LinkedBlockingQueue<>();
-        private long walConfirmOffset = NOOP_OFFSET;
 
         /**
          * Add request to stream sequence queue.
          */
         public void before(WalWriteRequest request) {
             try {
-                walRequests.put(request);
                 Queue<WalWriteRequest> streamRequests = stream2requests.computeIfAbsent(request.record.getStreamId(), s -> new LinkedBlockingQueue<>());
                 streamRequests.add(request);
             } catch (Throwable ex) {
@@ -506,21 +857,12 @@ public class S3Storage implements Storage {
         }
 
         /**
-         * Try pop sequence persisted request from stream queue and move forward wal inclusive confirm offset.
+         * Try pop sequence persisted request from stream queue.
          *
          * @return popped sequence persisted request.
          */
         public List<WalWriteRequest> after(WalWriteRequest request) {
             request.persisted = true;
-            // move the WAL inclusive confirm offset.
-            for (; ; ) {
-                WalWriteRequest peek = walRequests.peek();
-                if (peek == null || !peek.persisted) {
-                    break;
-                }
-                walRequests.poll();
-                walConfirmOffset = peek.offset;
-            }
 
             // pop sequence success stream request.
             long streamId = request.record.getStreamId();
@@ -541,15 +883,6 @@ public class S3Storage implements Storage {
             return rst;
         }
 
-        /**
-         * Get WAL inclusive confirm offset.
-         *
-         * @return inclusive confirm offset.
-         */
-        public long getWALConfirmOffset() {
-            return walConfirmOffset;
-        }
-
         /**
          * Try free stream related resources.
          */
@@ -564,19 +897,41 @@ public class S3Storage implements Storage {
     class LogCacheEvictOOMHandler implements DirectByteBufAlloc.OOMHandler {
         @Override
         public int handle(int memoryRequired) {
+            int freedBytes = 0;
             try {
-                CompletableFuture<Integer> cf = new CompletableFuture<>();
-                mainReadExecutor.submit(() -> FutureUtil.exec(() -> cf.complete(logCache.forceFree(memoryRequired)), cf, LOGGER, "handleOOM"));
-                return cf.get();
+                for (StorageShard shard : shards) {
+                    if (freedBytes >= memoryRequired) {
+                        break;
+                    }
+                    int required = memoryRequired - freedBytes;
+                    CompletableFuture<Integer> cf = new CompletableFuture<>();
+                    shard.readExecutor.submit(() -> FutureUtil.exec(() -> cf.complete(shard.logCache.forceFree(required)), cf, LOGGER, "handleOOM"));
+                    freedBytes += cf.get();
+                }
             } catch (Throwable e) {
-                return 0;
+                // ignore and return the freed bytes
             }
+            return freedBytes;
         }
     }
 
     static class WALObjectUploadTaskContext {
         WALObjectUploadTask task;
         LogCache.LogCacheBlock cache;
+        /**
+         * The shards' archived blocks which compose the cache, they are freed after the WAL object committed.
+         */
+        List<ArchivedBlock> archivedBlocks;
         CompletableFuture<Void> cf;
+        CompletableFuture<CommitWALObjectRequest> uploadCf;
+        /**
+         * The retries of the object, for the backoff.
+         */
+        int retries;
+        /**
+         * The commit retries of the object, the retries beyond {@link Config#s3ControllerRequestRetryMaxCount()} are
+         * logged as errors.
+         */
+        int commitRetries;
     }
 }
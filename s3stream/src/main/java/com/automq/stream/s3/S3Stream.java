@@ -41,9 +41,9 @@ import java.util.List;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ExecutionException;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.function.Function;
 import java.util.stream.Collectors;
@@ -71,6 +71,7 @@ public class S3Stream implements Stream {
 
     private final Set<CompletableFuture<?>> pendingAppends = ConcurrentHashMap.newKeySet();
     private final Set<CompletableFuture<?>> pendingFetches = ConcurrentHashMap.newKeySet();
+    private final LongAdder fetchedBytes = new LongAdder();
     private final AsyncNetworkBandwidthLimiter networkInboundLimiter;
     private final AsyncNetworkBandwidthLimiter networkOutboundLimiter;
     private CompletableFuture<Void> lastPendingTrim = CompletableFuture.completedFuture(null);
@@ -98,10 +99,15 @@ public class S3Stream implements Stream {
         this.networkOutboundLimiter = networkOutboundLimiter;
     }
 
-    public StreamObjectsCompactionTask.CompactionSummary triggerCompactionTask() throws ExecutionException, InterruptedException {
-        streamObjectsCompactionTask.prepare();
-        streamObjectsCompactionTask.doCompactions().get();
-        return streamObjectsCompactionTask.getCompactionsSummary();
+    StreamObjectsCompactionTask streamObjectsCompactionTask() {
+        return streamObjectsCompactionTask;
+    }
+
+    /**
+     * Get the bytes fetched from the stream since the last call, which indicates the read hotness of the stream.
+     */
+    public long takeFetchedBytes() {
+        return fetchedBytes.sumThenReset();
     }
 
     public boolean isClosed() {
@@ -185,9 +191,12 @@ public class S3Stream implements Stream {
                 OperationMetricsStats.getHistogram(S3Operation.FETCH_STREAM).update(System.currentTimeMillis() - start);
                 if (ex != null) {
                     LOGGER.error("{} stream fetch [{}, {}) {} fail", logIdent, startOffset, endOffset, maxBytes, ex);
-                } else if (networkOutboundLimiter != null) {
+                } else {
                     long totalSize = rs.recordBatchList().stream().mapToLong(record -> record.rawPayload().remaining()).sum();
-                    networkOutboundLimiter.forceConsume(totalSize);
+                    fetchedBytes.add(totalSize);
+                    if (networkOutboundLimiter != null) {
+                        networkOutboundLimiter.forceConsume(totalSize);
+                    }
                 }
                 pendingFetches.remove(cf);
             });
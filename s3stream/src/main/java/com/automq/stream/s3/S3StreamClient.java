@@ -40,7 +40,6 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
@@ -50,8 +49,8 @@ public class S3StreamClient implements StreamClient {
     private static final Logger LOGGER = LoggerFactory.getLogger(S3StreamClient.class);
     private final ScheduledThreadPoolExecutor streamObjectCompactionScheduler = Threads.newSingleThreadScheduledExecutor(
             ThreadUtils.createThreadFactory("stream-object-compaction-scheduler", true), LOGGER, true);
-    private final ExecutorService streamCompactionExecutor = Threads.newFixedThreadPool(1,
-            ThreadUtils.createThreadFactory("stream-object-compaction-background", true), LOGGER);
+    private final ExecutorService streamCompactionExecutor;
+    private final StreamObjectsCompactionScheduler streamObjectsCompactionScheduler;
     private ScheduledFuture<?> scheduledCompactionTaskFuture;
     private final Map<Long, S3Stream> openedStreams;
 
@@ -77,6 +76,10 @@ public class S3StreamClient implements StreamClient {
         this.config = config;
         this.networkInboundBucket = networkInboundBucket;
         this.networkOutboundBucket = networkOutboundBucket;
+        this.streamCompactionExecutor = Threads.newFixedThreadPool(config.s3StreamObjectCompactionParallelism(),
+                ThreadUtils.createThreadFactory("stream-object-compaction-background-%d", true), LOGGER);
+        this.streamObjectsCompactionScheduler = new StreamObjectsCompactionScheduler(config.s3StreamObjectCompactionParallelism(),
+                config.s3StreamObjectCompactionByteBudget(), streamCompactionExecutor);
         startStreamObjectsCompactions();
     }
 
@@ -108,27 +111,11 @@ public class S3StreamClient implements StreamClient {
             CompactionTasksSummary.Builder totalSummaryBuilder = CompactionTasksSummary.builder();
             final long startTime = System.currentTimeMillis();
 
-            operationStreams.forEach(stream -> {
-                if (stream.isClosed()) {
-                    return;
-                }
-                try {
-                    StreamObjectsCompactionTask.CompactionSummary summary = stream.triggerCompactionTask();
-                    if (summary == null) {
-                        LOGGER.debug("[stream {}] stream objects compaction finished, no compaction happened", stream.streamId());
-                    } else {
-                        LOGGER.debug("[stream {}] stream objects compaction finished, compaction summary: {}", stream.streamId(), summary);
-                        totalSummaryBuilder.withItem(summary);
-                    }
-                } catch (InterruptedException | ExecutionException e) {
-                    LOGGER.error("get exception when do stream objects compaction: {}", e.getMessage());
-                    if (e.getCause() instanceof StreamObjectsCompactionTask.HaltException) {
-                        LOGGER.error("halt stream objects compaction for stream {}", stream.streamId());
-                    }
-                } catch (Throwable e) {
-                    LOGGER.error("get exception when do stream objects compaction: {}", e.getMessage());
-                }
-            });
+            try {
+                streamObjectsCompactionScheduler.compact(operationStreams).get().forEach(totalSummaryBuilder::withItem);
+            } catch (Throwable e) {
+                LOGGER.error("get exception when do stream objects compaction: {}", e.getMessage());
+            }
 
             final long totalTimeCostInMs = System.currentTimeMillis() - startTime;
             LOGGER.info("stream objects compaction finished, summary: {}", totalSummaryBuilder.withTimeCostInMs(totalTimeCostInMs).build());
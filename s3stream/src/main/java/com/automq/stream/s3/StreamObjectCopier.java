@@ -22,6 +22,7 @@ import com.automq.stream.s3.operator.S3Operator;
 import com.automq.stream.s3.operator.Writer;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.Unpooled;
 import com.automq.stream.s3.metadata.ObjectUtils;
 import com.automq.stream.s3.metadata.S3ObjectMetadata;
 import com.automq.stream.s3.metadata.S3ObjectType;
@@ -102,7 +103,7 @@ public class StreamObjectCopier {
         CompositeByteBuf buf = DirectByteBufAlloc.compositeByteBuffer();
         IndexBlock indexBlock = new IndexBlock();
         buf.addComponent(true, indexBlock.buffer());
-        ObjectWriter.Footer footer = new ObjectWriter.Footer(indexBlock.position(), indexBlock.size());
+        ObjectWriter.Footer footer = new ObjectWriter.Footer(indexBlock.position(), indexBlock.size(), indexBlock.version());
         buf.addComponent(true, footer.buffer());
         writer.write(buf.duplicate());
         size += indexBlock.size() + footer.size();
@@ -120,15 +121,18 @@ public class StreamObjectCopier {
     private class IndexBlock {
         private final CompositeByteBuf buf;
         private final long position;
+        private final byte version;
 
         public IndexBlock() {
             position = nextObjectDataStartPosition;
+            // use the latest version of the source objects, the older ones will be upgraded
+            version = completedObjects.stream().map(StreamObjectIndexData::version).max(Byte::compare).orElse(ObjectWriter.INDEX_VERSION_V0);
             buf = DirectByteBufAlloc.compositeByteBuffer();
             // block count
             buf.addComponent(true, DirectByteBufAlloc.byteBuffer(4).writeInt(blockCount));
             // block index
             for (StreamObjectIndexData indexData : completedObjects) {
-                buf.addComponent(true, indexData.blockBuf());
+                buf.addComponent(true, indexData.blockBuf(version));
             }
             // object stream range
             for (StreamObjectIndexData indexData : completedObjects) {
@@ -147,15 +151,21 @@ public class StreamObjectCopier {
         public int size() {
             return buf.readableBytes();
         }
+
+        public byte version() {
+            return version;
+        }
     }
 
     static class StreamObjectIndexData {
         private final ByteBuf blockBuf;
         private final ByteBuf rangesBuf;
+        private final byte version;
 
         public StreamObjectIndexData(ObjectReader.IndexBlock indexBlock, long blockStartPosition, int blockStartId) {
             this.blockBuf = indexBlock.blocks().copy();
             this.rangesBuf = indexBlock.streamRanges().copy();
+            this.version = indexBlock.version();
 
             int blockPositionIndex = 0;
             while (blockPositionIndex < blockBuf.readableBytes()) {
@@ -163,7 +173,7 @@ public class StreamObjectCopier {
                 long blockPosition = blockBuf.getLong(blockPositionIndex);
                 // update block position with start position.
                 blockBuf.setLong(blockPositionIndex, blockPosition + blockStartPosition);
-                blockPositionIndex += 8 + 4 + 4;
+                blockPositionIndex += ObjectWriter.blockIndexSize(version);
             }
 
             int startBlockIdIndex = 8 + 8 + 4;
@@ -176,8 +186,27 @@ public class StreamObjectCopier {
             }
         }
 
-        public ByteBuf blockBuf() {
-            return blockBuf.duplicate();
+        public byte version() {
+            return version;
+        }
+
+        public ByteBuf blockBuf(byte targetVersion) {
+            if (targetVersion == version) {
+                return blockBuf.duplicate();
+            }
+            if (version != ObjectWriter.INDEX_VERSION_V0 || targetVersion != ObjectWriter.INDEX_VERSION_V1) {
+                throw new IllegalArgumentException("cannot convert index version from " + version + " to " + targetVersion);
+            }
+            // upgrade V0 to V1, the uncompressed size of the uncompressed block is the block size
+            int blockIndexSize = ObjectWriter.blockIndexSize(version);
+            int count = blockBuf.readableBytes() / blockIndexSize;
+            ByteBuf buf = Unpooled.buffer(count * ObjectWriter.blockIndexSize(targetVersion));
+            for (int i = 0; i < count; i++) {
+                int index = blockBuf.readerIndex() + i * blockIndexSize;
+                buf.writeBytes(blockBuf, index, blockIndexSize);
+                buf.writeInt(blockBuf.getInt(index + 8));
+            }
+            return buf;
         }
 
         public ByteBuf rangesBuf() {
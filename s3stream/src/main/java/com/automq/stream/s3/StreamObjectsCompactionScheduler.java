@@ -0,0 +1,189 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.automq.stream.s3;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.stream.Collectors;
+
+/**
+ * Schedule one round of stream objects compactions over many streams.
+ * <p>
+ * A round consists of two phases:
+ * <ol>
+ *     <li>Prepare the compaction task of every stream concurrently, to find out the small stream objects to compact.</li>
+ *     <li>Compact the streams with at most {@link #parallelism} streams at the same time, in the descending order of
+ *     {@link #score}. The total size of the source objects compacted in a round is limited by {@link #byteBudget},
+ *     the streams out of the budget are left to the next round.</li>
+ * </ol>
+ */
+public class StreamObjectsCompactionScheduler {
+    private static final Logger LOGGER = LoggerFactory.getLogger(StreamObjectsCompactionScheduler.class);
+    private final int parallelism;
+    private final long byteBudget;
+    private final ExecutorService executor;
+
+    /**
+     * @param parallelism the max count of the streams compacted at the same time.
+     * @param byteBudget  the max total size of the source objects compacted in a round.
+     * @param executor    the executor to prepare the compaction tasks.
+     */
+    public StreamObjectsCompactionScheduler(int parallelism, long byteBudget, ExecutorService executor) {
+        this.parallelism = Math.max(1, parallelism);
+        this.byteBudget = byteBudget;
+        this.executor = executor;
+    }
+
+    /**
+     * Run one round of compactions.
+     *
+     * @return the summaries of the streams which are compacted.
+     */
+    public CompletableFuture<List<StreamObjectsCompactionTask.CompactionSummary>> compact(Collection<S3Stream> streams) {
+        List<CompletableFuture<Candidate>> prepareCfList = streams.stream()
+                .filter(stream -> !stream.isClosed())
+                .map(stream -> CompletableFuture.supplyAsync(() -> prepare(stream), executor))
+                .collect(Collectors.toList());
+        return CompletableFuture.allOf(prepareCfList.toArray(new CompletableFuture[0])).thenCompose(nil -> {
+            List<Candidate> candidates = prepareCfList.stream()
+                    .map(CompletableFuture::join)
+                    .filter(candidate -> candidate != null && candidate.task.getPendingObjectsCount() > 0)
+                    .sorted(Comparator.comparingDouble((Candidate c) -> c.score).reversed())
+                    .collect(Collectors.toList());
+            return new Round(candidates).start();
+        });
+    }
+
+    /**
+     * The priority of a stream. The more small objects a stream has, the more metadata and S3 GETs per read it costs,
+     * and the hotter a stream is read, the more the cost is paid. The hotness is scaled logarithmically, so a hot stream
+     * with few small objects cannot starve the cold ones with many.
+     *
+     * @param pendingObjectsCount the count of the small objects to be compacted.
+     * @param fetchedBytes        the bytes fetched from the stream since the last round.
+     */
+    static double score(int pendingObjectsCount, long fetchedBytes) {
+        return pendingObjectsCount * (1 + Math.log1p(fetchedBytes / (1024.0 * 1024)) / Math.log(2));
+    }
+
+    private Candidate prepare(S3Stream stream) {
+        StreamObjectsCompactionTask task = stream.streamObjectsCompactionTask();
+        try {
+            task.prepare();
+        } catch (Throwable e) {
+            LOGGER.error("[stream {}] prepare stream objects compaction fail", stream.streamId(), e);
+            return null;
+        }
+        return new Candidate(stream, task, score(task.getPendingObjectsCount(), stream.takeFetchedBytes()));
+    }
+
+    static class Candidate {
+        final S3Stream stream;
+        final StreamObjectsCompactionTask task;
+        final double score;
+
+        Candidate(S3Stream stream, StreamObjectsCompactionTask task, double score) {
+            this.stream = stream;
+            this.task = task;
+            this.score = score;
+        }
+    }
+
+    class Round {
+        private final Queue<Candidate> candidates;
+        private final List<StreamObjectsCompactionTask.CompactionSummary> summaries = new ArrayList<>();
+        private final CompletableFuture<List<StreamObjectsCompactionTask.CompactionSummary>> cf = new CompletableFuture<>();
+        private long remainingBudget = byteBudget;
+        private int running;
+        private int started;
+        private int skipped;
+
+        Round(List<Candidate> candidates) {
+            this.candidates = new LinkedList<>(candidates);
+        }
+
+        CompletableFuture<List<StreamObjectsCompactionTask.CompactionSummary>> start() {
+            next();
+            return cf;
+        }
+
+        private synchronized void next() {
+            while (running < parallelism && !candidates.isEmpty()) {
+                Candidate candidate = candidates.poll();
+                long size = candidate.task.getPendingObjectsSize();
+                // always start the first one, so a stream larger than the budget is not starved.
+                if (started > 0 && size > remainingBudget) {
+                    skipped++;
+                    continue;
+                }
+                remainingBudget -= size;
+                running++;
+                started++;
+                run(candidate).whenComplete((nil, ex) -> {
+                    synchronized (this) {
+                        running--;
+                    }
+                    next();
+                });
+            }
+            if (running == 0 && candidates.isEmpty() && !cf.isDone()) {
+                if (skipped > 0) {
+                    LOGGER.info("stream objects compaction budget {} exhausted, {} streams are delayed to the next round", byteBudget, skipped);
+                }
+                cf.complete(summaries);
+            }
+        }
+
+        private CompletableFuture<Void> run(Candidate candidate) {
+            S3Stream stream = candidate.stream;
+            CompletableFuture<Void> compactCf;
+            try {
+                compactCf = candidate.task.doCompactions();
+            } catch (Throwable e) {
+                compactCf = CompletableFuture.failedFuture(e);
+            }
+            return compactCf.handle((nil, ex) -> {
+                if (ex != null) {
+                    LOGGER.error("[stream {}] get exception when do stream objects compaction: {}", stream.streamId(), ex.getMessage());
+                    if (ex.getCause() instanceof StreamObjectsCompactionTask.HaltException) {
+                        LOGGER.error("halt stream objects compaction for stream {}", stream.streamId());
+                    }
+                }
+                StreamObjectsCompactionTask.CompactionSummary summary = candidate.task.getCompactionsSummary();
+                if (summary == null) {
+                    LOGGER.debug("[stream {}] stream objects compaction finished, no compaction happened", stream.streamId());
+                } else {
+                    LOGGER.debug("[stream {}] stream objects compaction finished, compaction summary: {}", stream.streamId(), summary);
+                    synchronized (this) {
+                        summaries.add(summary);
+                    }
+                }
+                return null;
+            });
+        }
+    }
+}
@@ -62,6 +62,8 @@ public class StreamObjectsCompactionTask {
     private final ObjectManager objectManager;
     private final S3Operator s3Operator;
     private List<CompactionResult> compactionResults;
+    private int pendingObjectsCount;
+    private long pendingObjectsSize;
     private final String logIdent;
     private final ExecutorService executor;
 
@@ -339,6 +341,12 @@ public class StreamObjectsCompactionTask {
     public void prepare() throws ExecutionException, InterruptedException {
         this.compactionResults = new ArrayList<>();
         this.compactGroups = prepareCompactGroups(this.nextStartSearchingOffset);
+        this.pendingObjectsCount = 0;
+        this.pendingObjectsSize = 0;
+        for (List<S3StreamObjectMetadataSplitWrapper> group : compactGroups) {
+            pendingObjectsCount += group.size();
+            pendingObjectsSize += group.stream().mapToLong(w -> w.s3StreamObjectMetadata().objectSize()).sum();
+        }
         if (!this.compactGroups.isEmpty()) {
             LOGGER.info("{} prepared {} groups for compaction", this.logIdent, this.compactGroups.size());
         }
@@ -372,6 +380,20 @@ public class StreamObjectsCompactionTask {
             });
     }
 
+    /**
+     * The count of the small stream objects to be compacted, which is calculated in {@link #prepare()}.
+     */
+    public int getPendingObjectsCount() {
+        return pendingObjectsCount;
+    }
+
+    /**
+     * The total size of the small stream objects to be compacted, which is calculated in {@link #prepare()}.
+     */
+    public long getPendingObjectsSize() {
+        return pendingObjectsSize;
+    }
+
     public long getNextStartSearchingOffset() {
         return nextStartSearchingOffset;
     }
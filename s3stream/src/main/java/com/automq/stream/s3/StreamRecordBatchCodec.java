@@ -26,6 +26,10 @@ import java.nio.ByteBuffer;
 
 public class StreamRecordBatchCodec {
     public static final byte MAGIC_V0 = 0x22;
+    /**
+     * [magic byte][streamId long][epoch long][baseOffset long][lastOffsetDelta int][payload length int]
+     */
+    public static final int HEADER_SIZE = 1 + 8 + 8 + 8 + 4 + 4;
 
     public static ByteBuf encode(StreamRecordBatch streamRecord) {
         int totalLength = 1 // magic
@@ -72,6 +76,23 @@ public class StreamRecordBatchCodec {
         }
     }
 
+    /**
+     * Decode a stream record batch from a byte buffer and move the reader index.
+     * The payload of the returned record is a retained slice of the buffer, so no data is copied, and the buffer is
+     * not released until the returned record is released.
+     */
+    public static StreamRecordBatch sliceRetainDecode(ByteBuf buf) {
+        buf.readByte(); // magic
+        long streamId = buf.readLong();
+        long epoch = buf.readLong();
+        long baseOffset = buf.readLong();
+        int lastOffsetDelta = buf.readInt();
+        int payloadLength = buf.readInt();
+        ByteBuf payload = buf.retainedSlice(buf.readerIndex(), payloadLength);
+        buf.skipBytes(payloadLength);
+        return new StreamRecordBatch(streamId, epoch, baseOffset, lastOffsetDelta, payload);
+    }
+
     public static StreamRecordBatch decode(ByteBuf buf) {
         buf.readByte(); // magic
         long streamId = buf.readLong();
@@ -83,4 +104,19 @@ public class StreamRecordBatchCodec {
         buf.skipBytes(payloadLength);
         return new StreamRecordBatch(streamId, epoch, baseOffset, lastOffsetDelta, payload);
     }
+
+    /**
+     * Get the last offset of the record at the reader index without decoding it or moving the reader index.
+     */
+    public static long peekLastOffset(ByteBuf buf) {
+        int index = buf.readerIndex();
+        return buf.getLong(index + 1 + 8 + 8) + buf.getInt(index + 1 + 8 + 8 + 8);
+    }
+
+    /**
+     * Skip the record at the reader index without decoding it.
+     */
+    public static void skip(ByteBuf buf) {
+        buf.skipBytes(HEADER_SIZE + buf.getInt(buf.readerIndex() + HEADER_SIZE - 4));
+    }
 }
@@ -36,16 +36,23 @@ import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.function.LongFunction;
 
 import static com.automq.stream.s3.metadata.ObjectUtils.NOOP_OBJECT_ID;
 
 public class WALObjectUploadTask {
     private static final Logger LOGGER = LoggerFactory.getLogger(WALObjectUploadTask.class);
     private long startTimestamp;
+    private final Config config;
     private final Logger s3ObjectLogger;
     private final Map<Long, List<StreamRecordBatch>> streamRecordsMap;
     private final int objectBlockSize;
     private final int objectPartSize;
+    /**
+     * The compression type of the data blocks, which is the same for all streams.
+     */
+    private final LongFunction<CompressionType> compressionTypeSelector;
+    private final int offsetIndexInterval;
     private final int streamSplitSizeThreshold;
     private final ObjectManager objectManager;
     private final S3Operator s3Operator;
@@ -55,13 +62,21 @@ public class WALObjectUploadTask {
     private volatile CommitWALObjectRequest commitWALObjectRequest;
     private final CompletableFuture<CommitWALObjectRequest> uploadCf = new CompletableFuture<>();
     private final ExecutorService executor;
+    /**
+     * The order of the WAL object, it is the objectId unless the task is a rollback of another one.
+     */
+    private long orderId = NOOP_OBJECT_ID;
 
     public WALObjectUploadTask(Config config, Map<Long, List<StreamRecordBatch>> streamRecordsMap, ObjectManager objectManager, S3Operator s3Operator,
                                ExecutorService executor, boolean forceSplit) {
+        this.config = config;
         this.s3ObjectLogger = S3ObjectLogger.logger(String.format("[WALObjectUploadTask id=%d] ", config.brokerId()));
         this.streamRecordsMap = streamRecordsMap;
         this.objectBlockSize = config.s3ObjectBlockSize();
         this.objectPartSize = config.s3ObjectPartSize();
+        CompressionType compressionType = CompressionType.fromName(config.s3ObjectCompressionType());
+        this.compressionTypeSelector = streamId -> compressionType;
+        this.offsetIndexInterval = config.s3ObjectBlockOffsetIndexInterval();
         this.streamSplitSizeThreshold = config.s3StreamSplitSize();
         this.s3ObjectLogEnable = config.s3ObjectLogEnable();
         this.objectManager = objectManager;
@@ -103,10 +118,32 @@ public class WALObjectUploadTask {
     }
 
     public CompletableFuture<CommitWALObjectRequest> upload() {
-        prepareCf.thenAcceptAsync(objectId -> FutureUtil.exec(() -> upload0(objectId), uploadCf, LOGGER, "upload"), executor);
+        prepareCf.whenCompleteAsync((objectId, ex) -> {
+            if (ex != null) {
+                uploadCf.completeExceptionally(ex);
+                return;
+            }
+            FutureUtil.exec(() -> upload0(objectId), uploadCf, LOGGER, "upload");
+        }, executor);
         return uploadCf;
     }
 
+    /**
+     * Create a new task which uploads the same records to new objects, to take over this task when it fails.
+     * The new WAL object keeps the order of this task's WAL object if it has been prepared, so it is committed as if
+     * this task succeeded. The objects written by this task are not committed, and are deleted when their prepared
+     * TTL expires.
+     */
+    public WALObjectUploadTask rollback() {
+        WALObjectUploadTask task = new WALObjectUploadTask(config, streamRecordsMap, objectManager, s3Operator, executor, forceSplit);
+        if (orderId != NOOP_OBJECT_ID) {
+            task.orderId = orderId;
+        } else if (prepareCf.isDone() && !prepareCf.isCompletedExceptionally()) {
+            task.orderId = prepareCf.join();
+        }
+        return task;
+    }
+
     private void upload0(long objectId) {
         List<Long> streamIds = new ArrayList<>(streamRecordsMap.keySet());
         Collections.sort(streamIds);
@@ -117,7 +154,7 @@ public class WALObjectUploadTask {
             // when only has one stream, we only need to write the stream data.
             walObject = ObjectWriter.noop(objectId);
         } else {
-            walObject = ObjectWriter.writer(objectId, s3Operator, objectBlockSize, objectPartSize);
+            walObject = ObjectWriter.writer(objectId, s3Operator, objectBlockSize, objectPartSize, compressionTypeSelector, offsetIndexInterval);
         }
 
         List<CompletableFuture<Void>> streamObjectCfList = new LinkedList<>();
@@ -139,7 +176,7 @@ public class WALObjectUploadTask {
             }
         }
         request.setObjectId(objectId);
-        request.setOrderId(objectId);
+        request.setOrderId(orderId != NOOP_OBJECT_ID ? orderId : objectId);
         CompletableFuture<Void> walObjectCf = walObject.close().thenAccept(nil -> request.setObjectSize(walObject.size()));
         List<CompletableFuture<?>> allCf = new LinkedList<>(streamObjectCfList);
         allCf.add(walObjectCf);
@@ -165,7 +202,7 @@ public class WALObjectUploadTask {
     private CompletableFuture<StreamObject> writeStreamObject(List<StreamRecordBatch> streamRecords) {
         CompletableFuture<Long> objectIdCf = objectManager.prepareObject(1, TimeUnit.MINUTES.toMillis(30));
         return objectIdCf.thenComposeAsync(objectId -> {
-            ObjectWriter streamObjectWriter = ObjectWriter.writer(objectId, s3Operator, objectBlockSize, objectPartSize);
+            ObjectWriter streamObjectWriter = ObjectWriter.writer(objectId, s3Operator, objectBlockSize, objectPartSize, compressionTypeSelector, offsetIndexInterval);
             long streamId = streamRecords.get(0).getStreamId();
             streamObjectWriter.write(streamId, streamRecords);
             long startOffset = streamRecords.get(0).getBaseOffset();
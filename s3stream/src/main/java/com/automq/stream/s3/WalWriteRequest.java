@@ -27,6 +27,10 @@ public class WalWriteRequest implements Comparable<WalWriteRequest> {
     long offset;
     final CompletableFuture<Void> cf;
     boolean persisted;
+    /**
+     * Whether the record is put into the log cache.
+     */
+    volatile boolean cached;
 
     public WalWriteRequest(StreamRecordBatch record, long offset, CompletableFuture<Void> cf) {
         this.record = record;
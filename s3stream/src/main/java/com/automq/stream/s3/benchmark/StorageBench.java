@@ -0,0 +1,289 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.automq.stream.s3.benchmark;
+
+import com.automq.stream.s3.S3Storage;
+import com.automq.stream.s3.cache.DefaultS3BlockCache;
+import com.automq.stream.s3.cache.ReadDataBlock;
+import com.automq.stream.s3.memory.MemoryMetadataManager;
+import com.automq.stream.s3.model.StreamRecordBatch;
+import com.automq.stream.s3.network.ThrottleStrategy;
+import com.automq.stream.s3.operator.MemoryS3Operator;
+import com.automq.stream.s3.operator.Writer;
+import com.automq.stream.s3.wal.MemoryWriteAheadLog;
+import com.automq.stream.utils.ThreadUtils;
+import com.automq.stream.utils.Threads;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import net.sourceforge.argparse4j.ArgumentParsers;
+import net.sourceforge.argparse4j.helper.HelpScreenException;
+import net.sourceforge.argparse4j.inf.ArgumentParser;
+import net.sourceforge.argparse4j.inf.ArgumentParserException;
+import net.sourceforge.argparse4j.inf.Namespace;
+
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * StorageBench is a tool for benchmarking append and read throughput of {@link S3Storage} with different shard number.
+ * It runs against {@link MemoryWriteAheadLog} and an in-memory S3, so the result only reflects the storage CPU overhead.
+ */
+public class StorageBench implements AutoCloseable {
+    private static final int LOG_INTERVAL_SECONDS = 1;
+    private static final int MAX_INFLIGHT_APPEND_PER_THREAD = 1024;
+
+    private final S3Storage storage;
+    private final AtomicLongArray streamNextOffsets;
+    private final AtomicLongArray streamConfirmOffsets;
+    private final AtomicLong appendCount = new AtomicLong();
+    private final AtomicLong readCount = new AtomicLong();
+
+    public StorageBench(Config config) {
+        com.automq.stream.s3.Config storageConfig = new com.automq.stream.s3.Config()
+                .s3StorageShardNum(config.shards)
+                .s3WALCacheSize(config.cacheSize)
+                .s3WALObjectSize(config.cacheSize / 2);
+        MemoryMetadataManager metadataManager = new MemoryMetadataManager();
+        DiscardS3Operator s3Operator = new DiscardS3Operator();
+        this.storage = new S3Storage(storageConfig, new MemoryWriteAheadLog(), metadataManager, metadataManager,
+                new DefaultS3BlockCache(0L, metadataManager, s3Operator), s3Operator);
+        this.streamNextOffsets = new AtomicLongArray(config.streams);
+        this.streamConfirmOffsets = new AtomicLongArray(config.streams);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Namespace ns = null;
+        ArgumentParser parser = Config.parser();
+        try {
+            ns = parser.parseArgs(args);
+        } catch (HelpScreenException e) {
+            System.exit(0);
+        } catch (ArgumentParserException e) {
+            parser.handleError(e);
+            System.exit(1);
+        }
+        Config config = new Config(ns);
+
+        try (StorageBench bench = new StorageBench(config)) {
+            bench.run(config);
+        }
+    }
+
+    private void run(Config config) throws InterruptedException {
+        System.out.printf("Starting benchmark with %d shards\n", config.shards);
+
+        ExecutorService executor = Threads.newFixedThreadPool(
+                config.appendThreads + config.readThreads, ThreadUtils.createThreadFactory("bench-thread-%d", false), null);
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(config.durationSeconds);
+        for (int i = 0; i < config.appendThreads; i++) {
+            int index = i;
+            executor.submit(() -> runTask("Append", index, () -> runAppendTask(index, config, deadline)));
+        }
+        for (int i = 0; i < config.readThreads; i++) {
+            int index = i;
+            executor.submit(() -> runTask("Read", index, () -> runReadTask(config, deadline)));
+        }
+        executor.shutdown();
+
+        long totalAppendCount = 0;
+        long totalReadCount = 0;
+        long seconds = 0;
+        while (!executor.awaitTermination(LOG_INTERVAL_SECONDS, TimeUnit.SECONDS)) {
+            long appendCountValue = appendCount.getAndSet(0);
+            long readCountValue = readCount.getAndSet(0);
+            totalAppendCount += appendCountValue;
+            totalReadCount += readCountValue;
+            seconds += LOG_INTERVAL_SECONDS;
+            System.out.printf("Append Rate %d msg/s %d KB/s | Read Rate %d msg/s\n",
+                    appendCountValue / LOG_INTERVAL_SECONDS,
+                    appendCountValue * config.recordSizeBytes / LOG_INTERVAL_SECONDS / 1024,
+                    readCountValue / LOG_INTERVAL_SECONDS);
+        }
+        seconds = Math.max(seconds, 1);
+        System.out.printf("Benchmark finished, shards %d | Avg Append Rate %d msg/s | Avg Read Rate %d msg/s\n",
+                config.shards, totalAppendCount / seconds, totalReadCount / seconds);
+    }
+
+    private void runTask(String name, int index, Runnable task) {
+        try {
+            task.run();
+        } catch (Throwable e) {
+            System.err.printf("%s task %d failed, %s\n", name, index, e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    private void runAppendTask(int index, Config config, long deadline) {
+        byte[] bytes = new byte[config.recordSizeBytes];
+        new Random().nextBytes(bytes);
+        Semaphore inflight = new Semaphore(MAX_INFLIGHT_APPEND_PER_THREAD);
+        while (System.currentTimeMillis() < deadline) {
+            // each append thread owns the streams which streamId % appendThreads == index.
+            for (int i = index; i < config.streams; i += config.appendThreads) {
+                int streamId = i;
+                inflight.acquireUninterruptibly();
+                long offset = streamNextOffsets.get(streamId);
+                StreamRecordBatch record = new StreamRecordBatch(streamId, 0, offset, 1, Unpooled.wrappedBuffer(bytes));
+                CompletableFuture<Void> cf = storage.append(record);
+                streamNextOffsets.set(streamId, offset + 1);
+                cf.whenComplete((nil, ex) -> {
+                    inflight.release();
+                    if (ex == null) {
+                        appendCount.incrementAndGet();
+                        streamConfirmOffsets.accumulateAndGet(streamId, offset + 1, Math::max);
+                    }
+                });
+            }
+        }
+        inflight.acquireUninterruptibly(MAX_INFLIGHT_APPEND_PER_THREAD);
+    }
+
+    private void runReadTask(Config config, long deadline) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (System.currentTimeMillis() < deadline) {
+            int streamId = random.nextInt(config.streams);
+            // read the tail records which are served by the log cache.
+            long endOffset = streamConfirmOffsets.get(streamId);
+            long startOffset = endOffset - 10;
+            if (startOffset < 0) {
+                Thread.yield();
+                continue;
+            }
+            try {
+                ReadDataBlock readDataBlock = storage.read(streamId, startOffset, endOffset, Integer.MAX_VALUE).join();
+                readCount.addAndGet(readDataBlock.getRecords().size());
+                readDataBlock.getRecords().forEach(StreamRecordBatch::release);
+            } catch (CompletionException e) {
+                // the records are evicted from the log cache and the uploaded objects are discarded, just skip.
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        storage.shutdown();
+    }
+
+    static class Config {
+        final Integer shards;
+        final Long cacheSize;
+        final Integer streams;
+        final Integer appendThreads;
+        final Integer readThreads;
+        final Integer recordSizeBytes;
+        final Long durationSeconds;
+
+        Config(Namespace ns) {
+            this.shards = ns.getInt("shards");
+            this.cacheSize = ns.getLong("cacheSize");
+            this.streams = ns.getInt("streams");
+            this.appendThreads = ns.getInt("appendThreads");
+            this.readThreads = ns.getInt("readThreads");
+            this.recordSizeBytes = ns.getInt("recordSize");
+            this.durationSeconds = ns.getLong("duration");
+        }
+
+        static ArgumentParser parser() {
+            ArgumentParser parser = ArgumentParsers
+                    .newFor("StorageBench")
+                    .build()
+                    .defaultHelp(true)
+                    .description("Benchmark append and read throughput of S3Storage");
+            parser.addArgument("--shards")
+                    .type(Integer.class)
+                    .setDefault(1)
+                    .help("Number of S3Storage shards");
+            parser.addArgument("--cache-size")
+                    .dest("cacheSize")
+                    .type(Long.class)
+                    .setDefault(256L << 20)
+                    .help("Size of the WAL log cache in bytes");
+            parser.addArgument("--streams")
+                    .type(Integer.class)
+                    .setDefault(1024)
+                    .help("Number of streams to write");
+            parser.addArgument("--append-threads")
+                    .dest("appendThreads")
+                    .type(Integer.class)
+                    .setDefault(8)
+                    .help("Number of threads to append");
+            parser.addArgument("--read-threads")
+                    .dest("readThreads")
+                    .type(Integer.class)
+                    .setDefault(8)
+                    .help("Number of threads to read");
+            parser.addArgument("--record-size")
+                    .dest("recordSize")
+                    .type(Integer.class)
+                    .setDefault(1 << 7)
+                    .help("Size of each record in bytes");
+            parser.addArgument("--duration")
+                    .type(Long.class)
+                    .setDefault(30L)
+                    .help("Duration of the benchmark in seconds");
+            return parser;
+        }
+    }
+
+    /**
+     * An in-memory S3 which discards the written objects to keep the memory usage stable.
+     */
+    static class DiscardS3Operator extends MemoryS3Operator {
+        @Override
+        public CompletableFuture<Void> write(String path, ByteBuf data, ThrottleStrategy throttleStrategy) {
+            data.release();
+            return CompletableFuture.completedFuture(null);
+        }
+
+        @Override
+        public Writer writer(String path, ThrottleStrategy throttleStrategy) {
+            return new Writer() {
+                @Override
+                public CompletableFuture<Void> write(ByteBuf part) {
+                    part.release();
+                    return CompletableFuture.completedFuture(null);
+                }
+
+                @Override
+                public void copyOnWrite() {
+                }
+
+                @Override
+                public void copyWrite(String sourcePath, long start, long end) {
+                }
+
+                @Override
+                public boolean hasBatchingPart() {
+                    return false;
+                }
+
+                @Override
+                public CompletableFuture<Void> close() {
+                    return CompletableFuture.completedFuture(null);
+                }
+            };
+        }
+    }
+}
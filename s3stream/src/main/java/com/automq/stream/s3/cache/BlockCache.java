@@ -19,53 +19,93 @@ package com.automq.stream.s3.cache;
 
 
 import com.automq.stream.s3.DirectByteBufAlloc;
+import com.automq.stream.s3.metrics.stats.BlockCacheMetricsStats;
 import com.automq.stream.s3.model.StreamRecordBatch;
 import com.automq.stream.utils.biniarysearch.StreamRecordBatchList;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.ListIterator;
 import java.util.Map;
 import java.util.NavigableMap;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 import java.util.SortedMap;
-import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
-
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The cache of the records read from S3.
+ * <p>
+ * The streams are striped to {@link #SEGMENT_COUNT} segments. The put and eviction of a segment are protected by the
+ * segment lock, and the get is lock-free: the cache blocks are published through concurrent maps and are reference
+ * counted, so a block evicted during a get is freed after the get has retained the records.
+ * <p>
+ * Each segment evicts in S3-FIFO order: new blocks enter a small FIFO queue, and only the blocks which are read again
+ * after being read through are promoted to the main FIFO queue. So a one-pass scan (e.g. a catch-up read) cannot
+ * flush the blocks which are repeatedly read.
+ */
 public class BlockCache implements DirectByteBufAlloc.OOMHandler {
     private static final Logger LOGGER = LoggerFactory.getLogger(BlockCache.class);
     static final int BLOCK_SIZE = 1024 * 1024;
     static final int MAX_READAHEAD_SIZE = 16 * 1024 * 1024;
+    static final int SEGMENT_COUNT = 16;
     private final long maxSize;
-    final Map<Long, StreamCache> stream2cache = new HashMap<>();
-    private final LRUCache<CacheKey, Integer> inactive = new LRUCache<>();
-    private final LRUCache<CacheKey, Integer> active = new LRUCache<>();
+    final Map<Long, StreamCache> stream2cache = new ConcurrentHashMap<>();
+    private final Segment[] segments;
     private final AtomicLong size = new AtomicLong();
-    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
-    private final ReentrantReadWriteLock.WriteLock writeLock = lock.writeLock();
-    private final ReentrantReadWriteLock.ReadLock readLock = lock.readLock();
+    private final ReadaheadListener readaheadListener;
 
     public BlockCache(long maxSize) {
+        this(maxSize, ReadaheadListener.NOOP);
+    }
+
+    /**
+     * @param readaheadListener listen to the hits and the waste of the blocks filled by readaheads.
+     */
+    BlockCache(long maxSize, ReadaheadListener readaheadListener) {
         this.maxSize = maxSize;
+        this.readaheadListener = readaheadListener;
+        this.segments = new Segment[SEGMENT_COUNT];
+        for (int i = 0; i < SEGMENT_COUNT; i++) {
+            segments[i] = new Segment();
+        }
         DirectByteBufAlloc.registerOOMHandlers(this);
+        BlockCacheMetricsStats.registerBlockCacheSize(size::get);
     }
 
     public void put(long streamId, List<StreamRecordBatch> records) {
+        put(streamId, records, false);
+    }
+
+    /**
+     * @param prefetched whether the records are read by a readahead rather than a read which waits for them.
+     */
+    public void put(long streamId, List<StreamRecordBatch> records, boolean prefetched) {
+        Segment segment = segment(streamId);
+        segment.lock.lock();
         try {
-            writeLock.lock();
-            put0(streamId, records);
+            put0(segment, streamId, records, prefetched);
         } finally {
-            writeLock.unlock();
+            segment.lock.unlock();
         }
+        ensureCapacity();
     }
 
-    void put0(long streamId, List<StreamRecordBatch> records) {
+    void put0(Segment segment, long streamId, List<StreamRecordBatch> records, boolean prefetched) {
         if (maxSize == 0 || records.isEmpty()) {
             records.forEach(StreamRecordBatch::release);
             return;
@@ -96,10 +136,6 @@ public class BlockCache implements DirectByteBufAlloc.OOMHandler {
             });
         }
 
-        // ensure the cache size.
-        int size = records.stream().mapToInt(StreamRecordBatch::size).sum();
-        ensureCapacity(size);
-
         // split to 1MB cache blocks which one block contains sequential records.
         long expectStartOffset = -1L;
         List<StreamRecordBatch> part = new ArrayList<>(records.size() / 2);
@@ -110,7 +146,7 @@ public class BlockCache implements DirectByteBufAlloc.OOMHandler {
                 partSize += record.size();
             } else {
                 // put readahead to the first block.
-                put(streamId, streamCache, new CacheBlock(part, readahead));
+                put(segment, streamCache, new CacheBlock(part, readahead, prefetched));
                 readahead = null;
                 part = new ArrayList<>(records.size() / 2);
                 partSize = 0;
@@ -119,7 +155,7 @@ public class BlockCache implements DirectByteBufAlloc.OOMHandler {
             expectStartOffset = record.getLastOffset();
         }
         if (!part.isEmpty()) {
-            put(streamId, streamCache, new CacheBlock(part, readahead));
+            put(segment, streamCache, new CacheBlock(part, readahead, prefetched));
         }
 
     }
@@ -133,12 +169,13 @@ public class BlockCache implements DirectByteBufAlloc.OOMHandler {
         if (startOffset >= endOffset || maxBytes <= 0) {
             return GetCacheResult.empty();
         }
-        try {
-            readLock.lock();
-            return get0(streamId, startOffset, endOffset, maxBytes);
-        } finally {
-            readLock.unlock();
+        GetCacheResult rst = get0(streamId, startOffset, endOffset, maxBytes);
+        if (rst.getRecords().isEmpty()) {
+            BlockCacheMetricsStats.BLOCK_CACHE_MISS.inc();
+        } else {
+            BlockCacheMetricsStats.BLOCK_CACHE_HIT.inc();
         }
+        return rst;
     }
 
     public GetCacheResult get0(long streamId, long startOffset, long endOffset, int maxBytes) {
@@ -157,22 +194,37 @@ public class BlockCache implements DirectByteBufAlloc.OOMHandler {
             if (cacheBlock.lastOffset <= nextStartOffset || nextStartOffset < cacheBlock.firstOffset) {
                 break;
             }
-            if (readahead == null && cacheBlock.readahead != null) {
-                readahead = cacheBlock.readahead;
-                cacheBlock.readahead = null;
+            if (!cacheBlock.retain()) {
+                // the block is evicted concurrently
+                break;
             }
-            nextMaxBytes = readFromCacheBlock(records, cacheBlock, nextStartOffset, endOffset, nextMaxBytes);
-            nextStartOffset = records.getLast().getLastOffset();
-            boolean blockCompletedRead = nextStartOffset >= cacheBlock.lastOffset;
-            CacheKey cacheKey = new CacheKey(streamId, cacheBlock.firstOffset);
-            if (blockCompletedRead) {
-                active.remove(cacheKey);
-                inactive.put(cacheKey, cacheBlock.size);
-            } else {
-                if (!active.touch(cacheKey)) {
-                    inactive.touch(cacheKey);
+            int readCount;
+            try {
+                if (readahead == null) {
+                    readahead = cacheBlock.readahead.getAndSet(null);
+                }
+                int beforeCount = records.size();
+                int beforeMaxBytes = nextMaxBytes;
+                nextMaxBytes = readFromCacheBlock(records, cacheBlock, nextStartOffset, endOffset, nextMaxBytes);
+                readCount = records.size() - beforeCount;
+                if (cacheBlock.prefetched && readCount > 0) {
+                    long hitBytes = beforeMaxBytes - nextMaxBytes;
+                    BlockCacheMetricsStats.READAHEAD_HIT_BYTES.inc(hitBytes);
+                    readaheadListener.onHit(streamId, hitBytes);
                 }
+                // retain the records before the block is released, in case of the block is evicted concurrently.
+                ListIterator<StreamRecordBatch> it = records.listIterator(beforeCount);
+                while (it.hasNext()) {
+                    it.next().retain();
+                }
+            } finally {
+                cacheBlock.release();
+            }
+            if (readCount == 0) {
+                break;
             }
+            nextStartOffset = records.getLast().getLastOffset();
+            cacheBlock.access(nextStartOffset >= cacheBlock.lastOffset);
 
             if (nextStartOffset >= endOffset || nextMaxBytes <= 0) {
                 break;
@@ -180,7 +232,6 @@ public class BlockCache implements DirectByteBufAlloc.OOMHandler {
 
         }
 
-        records.forEach(StreamRecordBatch::retain);
         return GetCacheResult.of(records, readahead);
     }
 
@@ -210,56 +261,78 @@ public class BlockCache implements DirectByteBufAlloc.OOMHandler {
         return nextMaxBytes;
     }
 
-    private void ensureCapacity(int size) {
-        ensureCapacity0(size, false);
+    private void ensureCapacity() {
+        evict(maxSize, false);
     }
 
-    private int ensureCapacity0(int size, boolean forceEvict) {
-        if (!forceEvict && (maxSize - this.size.get() >= size)) {
-            return 0;
-        }
+    /**
+     * Evict the cache blocks from the largest segment, until the cache size is not larger than the limit (when not
+     * forced), or the evicted bytes is not smaller than the limit (when forced).
+     */
+    private int evict(long limit, boolean forceEvict) {
         int evictBytes = 0;
-        boolean evictFromActive = false;
-        for (LRUCache<CacheKey, Integer> lru : List.of(inactive, active)) {
-            for (; ; ) {
-                Map.Entry<CacheKey, Integer> entry = lru.pop();
-                if (entry == null) {
-                    break;
-                }
-                StreamCache streamCache = stream2cache.get(entry.getKey().streamId);
-                if (streamCache == null) {
-                    LOGGER.error("[BUG] Stream cache not found for streamId: {}", entry.getKey().streamId);
-                    continue;
-                }
-                CacheBlock cacheBlock = streamCache.blocks.remove(entry.getKey().startOffset);
-                if (cacheBlock == null) {
-                    LOGGER.error("[BUG] Cannot find stream cache block: {} {}", entry.getKey().streamId, entry.getKey().startOffset);
-                } else {
-                    if (evictFromActive) {
+        for (; ; ) {
+            if (forceEvict ? evictBytes >= limit : size.get() <= limit) {
+                return evictBytes;
+            }
+            Segment segment = largestSegment();
+            if (segment == null) {
+                return evictBytes;
+            }
+            CacheBlock cacheBlock;
+            segment.lock.lock();
+            try {
+                cacheBlock = segment.evict();
+                if (cacheBlock != null) {
+                    StreamCache streamCache = stream2cache.get(cacheBlock.streamId);
+                    if (streamCache == null || !streamCache.blocks.remove(cacheBlock.firstOffset, cacheBlock)) {
+                        LOGGER.error("[BUG] Cannot find stream cache block: {} {}", cacheBlock.streamId, cacheBlock.firstOffset);
+                    } else if (!cacheBlock.completed) {
+                        // the block is evicted before it is read through, so the readahead is too aggressive.
                         streamCache.evict = true;
-                    }
-                    cacheBlock.free();
-                    evictBytes += cacheBlock.size;
-                    if (forceEvict) {
-                        if (evictBytes >= size) {
-                            return evictBytes;
+                        if (cacheBlock.prefetched) {
+                            BlockCacheMetricsStats.READAHEAD_WASTE_BYTES.inc(cacheBlock.size);
+                            readaheadListener.onWaste(cacheBlock.streamId, cacheBlock.size);
+                            if (LOGGER.isDebugEnabled()) {
+                                LOGGER.debug("[READAHEAD_WASTE] stream={} firstOffset={} size={}", cacheBlock.streamId, cacheBlock.firstOffset, cacheBlock.size);
+                            }
                         }
-                    } else if (maxSize - this.size.addAndGet(-cacheBlock.size) >= size) {
-                        return evictBytes;
                     }
                 }
+            } finally {
+                segment.lock.unlock();
             }
-            evictFromActive = true;
+            if (cacheBlock == null) {
+                continue;
+            }
+            size.addAndGet(-cacheBlock.size);
+            evictBytes += cacheBlock.size;
+            BlockCacheMetricsStats.BLOCK_CACHE_EVICT.inc();
+            BlockCacheMetricsStats.BLOCK_CACHE_EVICT_BYTES.inc(cacheBlock.size);
+            cacheBlock.free();
         }
-        return evictBytes;
     }
 
-    private void put(long streamId, StreamCache streamCache, CacheBlock cacheBlock) {
+    private Segment largestSegment() {
+        Segment largest = null;
+        for (Segment segment : segments) {
+            if (segment.size > 0 && (largest == null || segment.size > largest.size)) {
+                largest = segment;
+            }
+        }
+        return largest;
+    }
+
+    private void put(Segment segment, StreamCache streamCache, CacheBlock cacheBlock) {
         streamCache.blocks.put(cacheBlock.firstOffset, cacheBlock);
-        active.put(new CacheKey(streamId, cacheBlock.firstOffset), cacheBlock.size);
+        segment.add(cacheBlock);
         size.getAndAdd(cacheBlock.size);
     }
 
+    private Segment segment(long streamId) {
+        return segments[(int) Math.floorMod(streamId, (long) SEGMENT_COUNT)];
+    }
+
 
     Readahead genReadahead(long streamId, List<StreamRecordBatch> records) {
         if (records.isEmpty()) {
@@ -295,7 +368,7 @@ public class BlockCache implements DirectByteBufAlloc.OOMHandler {
     @Override
     public int handle(int memoryRequired) {
         try {
-            return ensureCapacity0(memoryRequired, true);
+            return evict(memoryRequired, true);
         } catch (Throwable e) {
             LOGGER.error("[UNEXPECTED] handle OOM failed", e);
             return 0;
@@ -304,10 +377,10 @@ public class BlockCache implements DirectByteBufAlloc.OOMHandler {
 
     static class StreamCache {
         NavigableMap<Long, CacheBlock> blocks;
-        boolean evict;
+        volatile boolean evict;
 
         public StreamCache() {
-            blocks = new TreeMap<>();
+            blocks = new ConcurrentSkipListMap<>();
             evict = false;
         }
 
@@ -338,24 +411,146 @@ public class BlockCache implements DirectByteBufAlloc.OOMHandler {
         }
     }
 
-    public static class CacheBlock {
-        List<StreamRecordBatch> records;
-        long firstOffset;
-        long lastOffset;
-        int size;
-        Readahead readahead;
+    /**
+     * The S3-FIFO queues of a segment, all the methods should be called with the segment lock held.
+     */
+    static class Segment {
+        private static final int MAX_FREQUENCY = 3;
+        final ReentrantLock lock = new ReentrantLock();
+        private final Deque<CacheBlock> small = new ArrayDeque<>();
+        private final Deque<CacheBlock> main = new ArrayDeque<>();
+        /**
+         * The keys of the blocks recently evicted from the small queue.
+         */
+        private final Set<CacheKey> ghost = new LinkedHashSet<>();
+        private long smallSize;
+        private long mainSize;
+        volatile long size;
+
+        void add(CacheBlock cacheBlock) {
+            if (ghost.remove(cacheBlock.key())) {
+                // the block is read again soon after evicted
+                main.addLast(cacheBlock);
+                mainSize += cacheBlock.size;
+            } else {
+                small.addLast(cacheBlock);
+                smallSize += cacheBlock.size;
+            }
+            size = smallSize + mainSize;
+        }
+
+        /**
+         * Remove a block to evict, return null if the segment is empty.
+         */
+        CacheBlock evict() {
+            for (; ; ) {
+                CacheBlock cacheBlock;
+                // keep the small queue about 10% of the segment
+                if (!small.isEmpty() && (smallSize * 10 >= size || main.isEmpty())) {
+                    cacheBlock = small.pollFirst();
+                    smallSize -= cacheBlock.size;
+                    if (cacheBlock.frequency.get() > 0) {
+                        cacheBlock.frequency.set(0);
+                        main.addLast(cacheBlock);
+                        mainSize += cacheBlock.size;
+                        continue;
+                    }
+                    ghost.add(cacheBlock.key());
+                    trimGhost();
+                } else if (!main.isEmpty()) {
+                    cacheBlock = main.pollFirst();
+                    mainSize -= cacheBlock.size;
+                    if (cacheBlock.frequency.get() > 0) {
+                        cacheBlock.frequency.decrementAndGet();
+                        main.addLast(cacheBlock);
+                        mainSize += cacheBlock.size;
+                        continue;
+                    }
+                } else {
+                    cacheBlock = null;
+                }
+                size = smallSize + mainSize;
+                return cacheBlock;
+            }
+        }
+
+        private void trimGhost() {
+            int maxGhostCount = Math.max(small.size() + main.size(), 16);
+            Iterator<CacheKey> it = ghost.iterator();
+            while (ghost.size() > maxGhostCount && it.hasNext()) {
+                it.next();
+                it.remove();
+            }
+        }
+    }
 
-        public CacheBlock(List<StreamRecordBatch> records, Readahead readahead) {
+    public static class CacheBlock {
+        final long streamId;
+        final List<StreamRecordBatch> records;
+        final long firstOffset;
+        final long lastOffset;
+        final int size;
+        final AtomicReference<Readahead> readahead;
+        /**
+         * Whether the block is filled by a readahead.
+         */
+        final boolean prefetched;
+        /**
+         * How many times the block is read after it is read through, capped by {@link Segment#MAX_FREQUENCY}.
+         */
+        final AtomicInteger frequency = new AtomicInteger();
+        /**
+         * Whether the block has been read through.
+         */
+        volatile boolean completed;
+        private final AtomicInteger refCnt = new AtomicInteger(1);
+
+        public CacheBlock(List<StreamRecordBatch> records, Readahead readahead, boolean prefetched) {
+            this.prefetched = prefetched;
+            this.streamId = records.get(0).getStreamId();
             this.records = records;
             this.firstOffset = records.get(0).getBaseOffset();
             this.lastOffset = records.get(records.size() - 1).getLastOffset();
             this.size = records.stream().mapToInt(StreamRecordBatch::size).sum();
-            this.readahead = readahead;
+            this.readahead = new AtomicReference<>(readahead);
+        }
+
+        CacheKey key() {
+            return new CacheKey(streamId, firstOffset);
+        }
+
+        void access(boolean readThrough) {
+            if (completed) {
+                // only count the re-reads, so the sequential reads of a block by one consumer are not treated as hot.
+                int frequency;
+                do {
+                    frequency = this.frequency.get();
+                } while (frequency < Segment.MAX_FREQUENCY && !this.frequency.compareAndSet(frequency, frequency + 1));
+            } else if (readThrough) {
+                completed = true;
+            }
+        }
+
+        boolean retain() {
+            for (; ; ) {
+                int cnt = refCnt.get();
+                if (cnt <= 0) {
+                    return false;
+                }
+                if (refCnt.compareAndSet(cnt, cnt + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        void release() {
+            if (refCnt.decrementAndGet() == 0) {
+                records.forEach(StreamRecordBatch::release);
+            }
         }
 
         public void free() {
-            records.forEach(StreamRecordBatch::release);
-            records = null;
+            release();
         }
     }
 
@@ -389,6 +584,32 @@ public class BlockCache implements DirectByteBufAlloc.OOMHandler {
         }
     }
 
+    /**
+     * Listen to the blocks filled by readaheads. The methods are called on the read path, or with the segment lock held
+     * on eviction, so they should be lightweight.
+     */
+    interface ReadaheadListener {
+        ReadaheadListener NOOP = new ReadaheadListener() {
+            @Override
+            public void onHit(long streamId, long bytes) {
+            }
+
+            @Override
+            public void onWaste(long streamId, long bytes) {
+            }
+        };
+
+        /**
+         * The bytes of a read served by the blocks filled by readaheads.
+         */
+        void onHit(long streamId, long bytes);
+
+        /**
+         * The bytes of a block filled by a readahead, which is evicted before being read through.
+         */
+        void onWaste(long streamId, long bytes);
+    }
+
     public static class Readahead {
         private final long startOffset;
         private final int size;
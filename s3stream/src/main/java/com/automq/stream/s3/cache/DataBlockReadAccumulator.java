@@ -18,6 +18,7 @@
 package com.automq.stream.s3.cache;
 
 import com.automq.stream.s3.ObjectReader;
+import com.automq.stream.s3.network.ThrottleStrategy;
 import com.automq.stream.utils.FutureUtil;
 import org.apache.commons.lang3.tuple.Pair;
 import org.slf4j.Logger;
@@ -36,12 +37,41 @@ public class DataBlockReadAccumulator {
     private static final Logger LOGGER = LoggerFactory.getLogger(DataBlockReadAccumulator.class);
     private final Map<Pair<String, Integer>, DataBlockRecords> inflightDataBlockReads = new ConcurrentHashMap<>();
     private final Consumer<DataBlockRecords> dataBlockConsumer;
+    private final Reader dataBlockReader;
 
     public DataBlockReadAccumulator(Consumer<DataBlockRecords> dataBlockConsumer) {
+        this(dataBlockConsumer, ObjectReader::read);
+    }
+
+    /**
+     * @param dataBlockReader the real reader of the data blocks, which may read from a cache tier before S3.
+     */
+    public DataBlockReadAccumulator(Consumer<DataBlockRecords> dataBlockConsumer, Reader dataBlockReader) {
         this.dataBlockConsumer = dataBlockConsumer;
+        this.dataBlockReader = dataBlockReader;
     }
 
     public CompletableFuture<DataBlockRecords> readDataBlock(ObjectReader reader, ObjectReader.DataBlockIndex blockIndex) {
+        return readDataBlock(reader, blockIndex, ThrottleStrategy.BYPASS);
+    }
+
+    public CompletableFuture<DataBlockRecords> readDataBlock(ObjectReader reader, ObjectReader.DataBlockIndex blockIndex,
+        ThrottleStrategy throttleStrategy) {
+        return readDataBlock(reader, blockIndex, throttleStrategy, Long.MIN_VALUE, false);
+    }
+
+    /**
+     * Read the data block, or join the inflight read of the same block. The joined read is charged to the traffic
+     * class of the first reader.
+     * <p>
+     * Only the records from the record which contains {@code startOffset} are decoded, so a read that starts in the
+     * middle of the block seeks by the offset index of the block. An inflight read which starts after
+     * {@code startOffset} misses some records, so it is not joined.
+     *
+     * @param readahead whether the read is a readahead, see {@link DataBlockRecords#readahead()}.
+     */
+    public CompletableFuture<DataBlockRecords> readDataBlock(ObjectReader reader, ObjectReader.DataBlockIndex blockIndex,
+        ThrottleStrategy throttleStrategy, long startOffset, boolean readahead) {
         CompletableFuture<DataBlockRecords> cf = new CompletableFuture<>();
         BiConsumer<DataBlockRecords, Throwable> listener = (rst, ex) -> {
             if (ex != null) {
@@ -53,12 +83,12 @@ public class DataBlockReadAccumulator {
         Pair<String, Integer> key = Pair.of(reader.objectKey(), blockIndex.blockId());
         synchronized (inflightDataBlockReads) {
             DataBlockRecords records = inflightDataBlockReads.get(key);
-            if (records == null) {
-                records = new DataBlockRecords();
+            if (records == null || records.startOffset() > startOffset) {
+                records = new DataBlockRecords(startOffset, readahead);
                 records.registerListener(listener);
                 inflightDataBlockReads.put(key, records);
                 DataBlockRecords finalRecords = records;
-                reader.read(blockIndex).whenComplete((dataBlock, ex) -> {
+                dataBlockReader.read(reader, blockIndex, throttleStrategy).whenComplete((dataBlock, ex) -> {
                     try (dataBlock) {
                         synchronized (inflightDataBlockReads) {
                             inflightDataBlockReads.remove(key, finalRecords);
@@ -77,4 +107,9 @@ public class DataBlockReadAccumulator {
         }
         return cf;
     }
+
+    public interface Reader {
+        CompletableFuture<ObjectReader.DataBlock> read(ObjectReader reader, ObjectReader.DataBlockIndex blockIndex,
+            ThrottleStrategy throttleStrategy);
+    }
 }
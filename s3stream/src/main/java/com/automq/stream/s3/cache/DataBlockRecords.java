@@ -34,8 +34,24 @@ public class DataBlockRecords {
     private static final Logger LOGGER = LoggerFactory.getLogger(DataBlockRecords.class);
     final AtomicInteger refCount = new AtomicInteger(1);
     private final List<BiConsumer<DataBlockRecords, Throwable>> listeners = new LinkedList<>();
+    private final long startOffset;
+    private final boolean readahead;
     private List<StreamRecordBatch> records = Collections.emptyList();
 
+    public DataBlockRecords() {
+        this(Long.MIN_VALUE, false);
+    }
+
+    /**
+     * @param startOffset only the records whose last offset is larger than it are decoded, see
+     *                    {@link ObjectReader.DataBlock#iterator(long)}.
+     * @param readahead   whether the block is read by a readahead.
+     */
+    public DataBlockRecords(long startOffset, boolean readahead) {
+        this.startOffset = startOffset;
+        this.readahead = readahead;
+    }
+
     public void registerListener(BiConsumer<DataBlockRecords, Throwable> listener) {
         retain();
         listeners.add(listener);
@@ -44,7 +60,7 @@ public class DataBlockRecords {
     public void complete(ObjectReader.DataBlock dataBlock, Throwable ex) {
         if (ex == null) {
             records = new ArrayList<>(dataBlock.recordCount());
-            try (CloseableIterator<StreamRecordBatch> it = dataBlock.iterator()) {
+            try (CloseableIterator<StreamRecordBatch> it = dataBlock.iterator(startOffset)) {
                 while (it.hasNext()) {
                     records.add(it.next());
                 }
@@ -69,6 +85,32 @@ public class DataBlockRecords {
         return Collections.unmodifiableList(records);
     }
 
+    /**
+     * Get the records from the record which contains {@code startOffset}, that is, the records whose last offset is
+     * larger than {@code startOffset}.
+     */
+    public List<StreamRecordBatch> records(long startOffset) {
+        int low = 0;
+        int high = records.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (records.get(mid).getLastOffset() <= startOffset) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return Collections.unmodifiableList(records.subList(low, records.size()));
+    }
+
+    long startOffset() {
+        return startOffset;
+    }
+
+    public boolean readahead() {
+        return readahead;
+    }
+
     void retain() {
         refCount.incrementAndGet();
     }
@@ -17,12 +17,14 @@
 
 package com.automq.stream.s3.cache;
 
+import com.automq.stream.s3.Config;
 import com.automq.stream.s3.ObjectReader;
 import com.automq.stream.s3.metadata.S3ObjectMetadata;
 import com.automq.stream.s3.metrics.TimerUtil;
 import com.automq.stream.s3.metrics.operations.S3Operation;
 import com.automq.stream.s3.metrics.stats.OperationMetricsStats;
 import com.automq.stream.s3.model.StreamRecordBatch;
+import com.automq.stream.s3.network.ThrottleStrategy;
 import com.automq.stream.s3.objects.ObjectManager;
 import com.automq.stream.s3.operator.S3Operator;
 import com.automq.stream.utils.FutureUtil;
@@ -31,35 +33,56 @@ import com.automq.stream.utils.Threads;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
-import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
 
 import static com.automq.stream.s3.metadata.ObjectUtils.NOOP_OFFSET;
 
 public class DefaultS3BlockCache implements S3BlockCache {
     private static final Logger LOGGER = LoggerFactory.getLogger(DefaultS3BlockCache.class);
-    private final LRUCache<Long, ObjectReader> objectReaderLRU = new LRUCache<>();
-    private final Map<ReadingTaskKey, CompletableFuture<?>> readaheadTasks = new ConcurrentHashMap<>();
-    private final Semaphore readaheadLimiter = new Semaphore(16);
+    public static final long DEFAULT_OBJECT_INDEX_CACHE_SIZE = 64 * 1024 * 1024;
+    private final ObjectReaderLRUCache objectReaderLRU;
+    private final Map<ReadingTaskKey, ReadaheadManager.Task> readaheadTasks = new ConcurrentHashMap<>();
+    private final ReadaheadManager readaheadManager = new ReadaheadManager(this::readahead);
     private final BlockCache cache;
+    private final DiskBlockCache diskCache;
     private final ExecutorService mainExecutor;
     private final ObjectManager objectManager;
     private final S3Operator s3Operator;
     private final DataBlockReadAccumulator dataBlockReadAccumulator;
 
     public DefaultS3BlockCache(long cacheBytesSize, ObjectManager objectManager, S3Operator s3Operator) {
-        this.cache = new BlockCache(cacheBytesSize);
+        this(cacheBytesSize, null, objectManager, s3Operator);
+    }
+
+    public DefaultS3BlockCache(Config config, ObjectManager objectManager, S3Operator s3Operator) {
+        this(config.s3BlockCacheSize(), config.s3ObjectIndexCacheSize(), newDiskBlockCache(config), objectManager, s3Operator);
+    }
+
+    public DefaultS3BlockCache(long cacheBytesSize, DiskBlockCache diskCache, ObjectManager objectManager,
+        S3Operator s3Operator) {
+        this(cacheBytesSize, DEFAULT_OBJECT_INDEX_CACHE_SIZE, diskCache, objectManager, s3Operator);
+    }
+
+    /**
+     * @param objectIndexCacheSize the max total size of the cached object indexes.
+     * @param diskCache            the local disk tier behind the memory cache, null means no disk tier. It is closed
+     *                             when the block cache shuts down.
+     */
+    public DefaultS3BlockCache(long cacheBytesSize, long objectIndexCacheSize, DiskBlockCache diskCache,
+        ObjectManager objectManager, S3Operator s3Operator) {
+        this.cache = new BlockCache(cacheBytesSize, readaheadManager);
+        this.diskCache = diskCache;
+        this.objectReaderLRU = new ObjectReaderLRUCache(s3Operator, objectIndexCacheSize);
         this.mainExecutor = Threads.newFixedThreadPool(
                 2,
                 ThreadUtils.createThreadFactory("s3-block-cache-main-%d", false),
@@ -71,9 +94,22 @@ public class DefaultS3BlockCache implements S3BlockCache {
             if (!records.isEmpty()) {
                 long streamId = records.get(0).getStreamId();
                 records.forEach(StreamRecordBatch::retain);
-                cache.put(streamId, records);
+                cache.put(streamId, records, dataBlockRecords.readahead());
             }
-        });
+        }, diskCache != null ? diskCache::read : ObjectReader::read);
+    }
+
+    private static DiskBlockCache newDiskBlockCache(Config config) {
+        String path = config.s3BlockCacheDiskPath();
+        if (path == null || path.isEmpty()) {
+            return null;
+        }
+        try {
+            return new DiskBlockCache(path, config.s3BlockCacheDiskSize(), config.s3BlockCacheDiskSegmentSize());
+        } catch (IOException e) {
+            LOGGER.error("open disk block cache at {} fail, run without the disk tier", path, e);
+            return null;
+        }
     }
 
     @Override
@@ -91,12 +127,16 @@ public class DefaultS3BlockCache implements S3BlockCache {
                 return;
             }
 
+            List<StreamRecordBatch> records = ret.getRecords();
+            long nextOffset = records.isEmpty() ? startOffset : records.get(records.size() - 1).getLastOffset();
+            readaheadManager.onRead(streamId, startOffset, nextOffset,
+                    records.stream().mapToLong(StreamRecordBatch::size).sum(), ret.isCacheHit());
             if (ret.isCacheHit()) {
                 OperationMetricsStats.getCounter(S3Operation.READ_STORAGE_BLOCK_CACHE).inc();
             } else {
                 OperationMetricsStats.getCounter(S3Operation.READ_STORAGE_BLOCK_CACHE_MISS).inc();
             }
-            OperationMetricsStats.getHistogram(S3Operation.READ_STORAGE_BLOCK_CACHE).update(timerUtil.elapsedAndReset());
+            OperationMetricsStats.recordTimeNanos(S3Operation.READ_STORAGE_BLOCK_CACHE, timerUtil.elapsedAs(TimeUnit.NANOSECONDS));
         });
         return readCf;
     }
@@ -108,10 +148,11 @@ public class DefaultS3BlockCache implements S3BlockCache {
 
         if (awaitReadahead) {
             // expect readahead will fill the cache with the data we need.
-            CompletableFuture<?> readaheadCf = readaheadTasks.get(new ReadingTaskKey(streamId, startOffset));
-            if (readaheadCf != null) {
+            ReadaheadManager.Task readaheadTask = readaheadTasks.get(new ReadingTaskKey(streamId, startOffset));
+            if (readaheadTask != null) {
+                readaheadManager.boost(readaheadTask);
                 CompletableFuture<ReadDataBlock> readCf = new CompletableFuture<>();
-                readaheadCf.whenComplete((nil, ex) -> FutureUtil.propagate(read0(streamId, startOffset, endOffset, maxBytes, false), readCf));
+                readaheadTask.cf.whenComplete((nil, ex) -> FutureUtil.propagate(read0(streamId, startOffset, endOffset, maxBytes, false), readCf));
                 return readCf;
             }
         }
@@ -131,7 +172,7 @@ public class DefaultS3BlockCache implements S3BlockCache {
         }
         // 2. get from s3
 
-        ReadContext context = new ReadContext(Collections.emptyList(), nextStartOffset, nextMaxBytes);
+        ReadContext context = new ReadContext(Collections.emptyList(), nextStartOffset, nextMaxBytes, ThrottleStrategy.TAIL_READ);
         CompletableFuture<List<S3ObjectMetadata>> getObjectsCf = objectManager.getObjects(streamId, nextStartOffset, endOffset, 2);
         return getObjectsCf.thenComposeAsync(objects -> {
             context.objects = objects;
@@ -149,6 +190,13 @@ public class DefaultS3BlockCache implements S3BlockCache {
         stream2records.forEach(cache::put);
     }
 
+    @Override
+    public void shutdown() {
+        if (diskCache != null) {
+            diskCache.close();
+        }
+    }
+
     private CompletableFuture<ReadDataBlock> readFromS3(long streamId, long endOffset, ReadContext context) {
         CompletableFuture<Boolean /* empty objects */> getObjectsCf = CompletableFuture.completedFuture(false);
         if (context.objectIndex >= context.objects.size()) {
@@ -179,108 +227,121 @@ public class DefaultS3BlockCache implements S3BlockCache {
             context.reader = reader;
             return reader.find(streamId, context.nextStartOffset, endOffset, context.nextMaxBytes);
         });
-        CompletableFuture<List<CompletableFuture<DataBlockRecords>>> getDataCf = findIndexCf.thenCompose(blockIndexes -> {
-            if (blockIndexes.isEmpty()) {
-                return CompletableFuture.completedFuture(Collections.emptyList());
+        CompletableFuture<List<CompletableFuture<DataBlockRecords>>> getDataCf = findIndexCf.thenApply(blockIndexes -> {
+            // the blocks are consumed before all of them are read, so the reader is released by the blocks rather than
+            // the context, which may be reused by the next reader.
+            ObjectReader reader = context.reader;
+            context.reader = null;
+            if (reader == null) {
+                return Collections.emptyList();
             }
-            List<CompletableFuture<DataBlockRecords>> blockCfList = blockIndexes.stream()
-                    .map(i -> dataBlockReadAccumulator.readDataBlock(context.reader, i))
-                    .collect(Collectors.toList());
-            CompletableFuture<Void> allBlockCf = CompletableFuture.allOf(blockCfList.toArray(new CompletableFuture[0]));
-            return allBlockCf.thenApply(nil -> blockCfList);
+            List<CompletableFuture<DataBlockRecords>> blockCfList = new ArrayList<>(blockIndexes.size());
+            try {
+                for (int i = 0; i < blockIndexes.size(); i++) {
+                    // only the first block contains the records before the next start offset, which are skipped by
+                    // the offset index of the block.
+                    long blockStartOffset = i == 0 ? context.nextStartOffset : Long.MIN_VALUE;
+                    blockCfList.add(dataBlockReadAccumulator.readDataBlock(reader, blockIndexes.get(i),
+                        context.throttleStrategy, blockStartOffset, context.readahead));
+                }
+            } catch (RuntimeException e) {
+                reader.release();
+                throw e;
+            }
+            CompletableFuture.allOf(blockCfList.toArray(new CompletableFuture[0])).whenComplete((rst, ex) -> reader.release());
+            return blockCfList;
         });
         getDataCf.whenComplete((rst, ex) -> {
-            if (context.reader != null) {
+            if (ex != null && context.reader != null) {
                 context.reader.release();
                 context.reader = null;
             }
         });
-        return getDataCf.thenComposeAsync(blockCfList -> {
+        return getDataCf.thenCompose(blockCfList -> {
             if (blockCfList.isEmpty()) {
                 return CompletableFuture.completedFuture(new ReadDataBlock(context.records));
             }
+            return consumeDataBlocks(streamId, endOffset, context, blockCfList, 0);
+        });
+    }
+
+    /**
+     * Consume the data blocks in order, each one as soon as it is read, rather than waiting for all of them. If the read
+     * is fulfilled before the last block, the remaining blocks are released when they are read.
+     */
+    private CompletableFuture<ReadDataBlock> consumeDataBlocks(long streamId, long endOffset, ReadContext context,
+        List<CompletableFuture<DataBlockRecords>> blockCfList, int index) {
+        return blockCfList.get(index).handleAsync((dataBlock, ex) -> {
+            if (ex != null) {
+                releaseDataBlocks(blockCfList, index + 1);
+                return FutureUtil.<ReadDataBlock>failedFuture(ex);
+            }
             try {
                 long nextStartOffset = context.nextStartOffset;
                 int nextMaxBytes = context.nextMaxBytes;
                 boolean fulfill = false;
-                for (CompletableFuture<DataBlockRecords> blockCf : blockCfList) {
-                    DataBlockRecords dataBlock = blockCf.get();
-                    // TODO: add #getRecords to DataBlockRecords, use binary search to get the records we need.
-                    if (!fulfill) {
-                        for (StreamRecordBatch recordBatch : dataBlock.records()) {
-                            if (fulfill) {
-                                break;
-                            }
-                            if (recordBatch.getLastOffset() <= nextStartOffset) {
-                                continue;
-                            }
-                            recordBatch.retain();
-                            context.records.add(recordBatch);
-                            nextStartOffset = recordBatch.getLastOffset();
-                            nextMaxBytes -= Math.min(nextMaxBytes, recordBatch.size());
-                            if ((endOffset != NOOP_OFFSET && nextStartOffset >= endOffset) || nextMaxBytes == 0) {
-                                fulfill = true;
-                            }
-                        }
+                for (StreamRecordBatch recordBatch : dataBlock.records(nextStartOffset)) {
+                    recordBatch.retain();
+                    context.records.add(recordBatch);
+                    nextStartOffset = recordBatch.getLastOffset();
+                    nextMaxBytes -= Math.min(nextMaxBytes, recordBatch.size());
+                    if ((endOffset != NOOP_OFFSET && nextStartOffset >= endOffset) || nextMaxBytes == 0) {
+                        fulfill = true;
+                        break;
                     }
-                    dataBlock.release();
                 }
                 context.nextStartOffset = nextStartOffset;
                 context.nextMaxBytes = nextMaxBytes;
                 if (fulfill) {
+                    releaseDataBlocks(blockCfList, index + 1);
                     return CompletableFuture.completedFuture(new ReadDataBlock(context.records));
+                } else if (index + 1 < blockCfList.size()) {
+                    return consumeDataBlocks(streamId, endOffset, context, blockCfList, index + 1);
                 } else {
                     return readFromS3(streamId, endOffset, context);
                 }
             } catch (Throwable e) {
-                return FutureUtil.failedFuture(e);
+                releaseDataBlocks(blockCfList, index + 1);
+                return FutureUtil.<ReadDataBlock>failedFuture(e);
+            } finally {
+                dataBlock.release();
             }
-        }, mainExecutor);
+        }, mainExecutor).thenCompose(cf -> cf);
+    }
+
+    private static void releaseDataBlocks(List<CompletableFuture<DataBlockRecords>> blockCfList, int fromIndex) {
+        for (int i = fromIndex; i < blockCfList.size(); i++) {
+            blockCfList.get(i).thenAccept(DataBlockRecords::release);
+        }
     }
 
     private void backgroundReadahead(long streamId, BlockCache.Readahead readahead) {
-        mainExecutor.execute(() -> {
-            CompletableFuture<List<S3ObjectMetadata>> getObjectsCf = objectManager.getObjects(streamId, readahead.getStartOffset(), NOOP_OFFSET, 2);
-            getObjectsCf.thenAccept(objects -> {
-                if (objects.isEmpty()) {
-                    return;
-                }
-                if (!readaheadLimiter.tryAcquire()) {
-                    // if inflight readahead tasks exceed limit, skip this readahead.
-                    return;
-                }
+        int size = readaheadManager.adjust(streamId, readahead.getSize());
+        if (size <= 0) {
+            // the stream is not read sequentially, readahead is a waste.
+            return;
+        }
+        ReadingTaskKey readingTaskKey = new ReadingTaskKey(streamId, readahead.getStartOffset());
+        ReadaheadManager.Task task = readaheadManager.submit(streamId, readahead.getStartOffset(), size);
+        readaheadTasks.put(readingTaskKey, task);
+        task.cf.whenComplete((nil, ex) -> readaheadTasks.remove(readingTaskKey, task));
+    }
 
-                CompletableFuture<ReadDataBlock> readaheadCf = readFromS3(streamId, NOOP_OFFSET,
-                        new ReadContext(objects, readahead.getStartOffset(), readahead.getSize()));
-                ReadingTaskKey readingTaskKey = new ReadingTaskKey(streamId, readahead.getStartOffset());
-                readaheadTasks.put(readingTaskKey, readaheadCf);
-                readaheadCf
-                        .whenComplete((rst, ex) -> {
-                            readaheadLimiter.release();
-                            if (ex != null) {
-                                LOGGER.error("background readahead {} fail", readahead, ex);
-                            } else {
-                                rst.getRecords().forEach(StreamRecordBatch::release);
-                            }
-                            readaheadTasks.remove(readingTaskKey, readaheadCf);
-                        });
-            });
-        });
+    private CompletableFuture<?> readahead(ReadaheadManager.Task task) {
+        return CompletableFuture
+                .supplyAsync(() -> objectManager.getObjects(task.streamId, task.startOffset, NOOP_OFFSET, 2), mainExecutor)
+                .thenCompose(getObjectsCf -> getObjectsCf)
+                .thenCompose(objects -> {
+                    if (objects.isEmpty()) {
+                        return CompletableFuture.completedFuture(null);
+                    }
+                    return readFromS3(task.streamId, NOOP_OFFSET, new ReadContext(objects, task.startOffset, task.size, ThrottleStrategy.CATCH_UP_READ))
+                            .thenAccept(rst -> rst.getRecords().forEach(StreamRecordBatch::release));
+                });
     }
 
     private ObjectReader getObjectReader(S3ObjectMetadata metadata) {
-        synchronized (objectReaderLRU) {
-            // TODO: evict by object readers index cache size
-            while (objectReaderLRU.size() > 128) {
-                Optional.ofNullable(objectReaderLRU.pop()).ifPresent(entry -> entry.getValue().close());
-            }
-            ObjectReader objectReader = objectReaderLRU.get(metadata.objectId());
-            if (objectReader == null) {
-                objectReader = new ObjectReader(metadata, s3Operator);
-                objectReaderLRU.put(metadata.objectId(), objectReader);
-            }
-            return objectReader.retain();
-        }
+        return objectReaderLRU.get(metadata);
     }
 
     static class ReadContext {
@@ -290,9 +351,17 @@ public class DefaultS3BlockCache implements S3BlockCache {
         List<StreamRecordBatch> records;
         long nextStartOffset;
         int nextMaxBytes;
+        /**
+         * The reads a fetch waits for are charged to {@link ThrottleStrategy#TAIL_READ}, and the readaheads to
+         * {@link ThrottleStrategy#CATCH_UP_READ}.
+         */
+        final ThrottleStrategy throttleStrategy;
+        final boolean readahead;
 
-        public ReadContext(List<S3ObjectMetadata> objects, long startOffset, int maxBytes) {
+        public ReadContext(List<S3ObjectMetadata> objects, long startOffset, int maxBytes, ThrottleStrategy throttleStrategy) {
             this.objects = objects;
+            this.throttleStrategy = throttleStrategy;
+            this.readahead = throttleStrategy == ThrottleStrategy.CATCH_UP_READ;
             this.records = new LinkedList<>();
             this.nextStartOffset = startOffset;
             this.nextMaxBytes = maxBytes;
@@ -0,0 +1,316 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.automq.stream.s3.cache;
+
+import com.automq.stream.s3.ObjectReader;
+import com.automq.stream.s3.metrics.stats.BlockCacheMetricsStats;
+import com.automq.stream.s3.network.ThrottleStrategy;
+import com.automq.stream.s3.wal.util.WALUtil;
+import com.automq.stream.utils.ThreadUtils;
+import com.automq.stream.utils.Threads;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * A local disk cache of the raw data blocks of S3 objects, which is the second tier behind {@link BlockCache}.
+ * <p>
+ * The data blocks are keyed by (objectId, blockId) and appended to memory-mapped segment files of the same size.
+ * Each entry in a segment is laid out as:
+ * <pre>
+ * | magic (4B) | objectId (8B) | blockId (4B) | length (4B) | crc (4B) | data (length B) |
+ * </pre>
+ * The entries are never modified in place, and the oldest segment is deleted as a whole when the cache is full.
+ * The in-memory index is rebuilt by scanning the segments on start, and the scan of a segment stops at the first
+ * invalid entry, so a torn tail left by a crash is ignored.
+ * <p>
+ * The blocks are returned without copying, as buffers backed by the mapped segments. A mapping stays valid after its
+ * segment is evicted until all the buffers referring to it are garbage collected.
+ */
+public class DiskBlockCache implements AutoCloseable {
+    static final int ENTRY_MAGIC = 0x5A3C0DE5;
+    static final int ENTRY_HEADER_SIZE = 4 /* magic */ + 8 /* objectId */ + 4 /* blockId */ + 4 /* length */ + 4 /* crc */;
+    static final String SEGMENT_SUFFIX = ".seg";
+    private static final Logger LOGGER = LoggerFactory.getLogger(DiskBlockCache.class);
+    /**
+     * Blocks are dropped rather than queued once the bytes waiting to be written exceed this limit.
+     */
+    private static final long MAX_PENDING_WRITE_BYTES = 64 * 1024 * 1024;
+    private final Path dir;
+    private final long maxSize;
+    private final int segmentSize;
+    private final Map<Key, Entry> index = new ConcurrentHashMap<>();
+    /**
+     * Segments from the oldest to the newest, the last one is the active segment. Guarded by this.
+     */
+    private final Deque<Segment> segments = new ArrayDeque<>();
+    private final AtomicLong pendingWriteBytes = new AtomicLong();
+    private final ExecutorService writeExecutor;
+    private long nextSegmentId;
+
+    public DiskBlockCache(String path, long maxSize, int segmentSize) throws IOException {
+        if (maxSize < segmentSize) {
+            throw new IllegalArgumentException("disk block cache size " + maxSize + " is less than the segment size " + segmentSize);
+        }
+        this.dir = Paths.get(path);
+        this.maxSize = maxSize;
+        this.segmentSize = segmentSize;
+        Files.createDirectories(dir);
+        recover();
+        this.writeExecutor = Threads.newFixedThreadPool(1,
+                ThreadUtils.createThreadFactory("s3-disk-block-cache-write-%d", true), LOGGER);
+        BlockCacheMetricsStats.registerDiskBlockCacheSize(this::size);
+    }
+
+    /**
+     * Read the data block from the disk cache, or from S3 on a cache miss, in which case the block is written to the
+     * disk cache in the background.
+     *
+     * @param throttleStrategy the traffic class the read from S3 is charged to.
+     */
+    public CompletableFuture<ObjectReader.DataBlock> read(ObjectReader reader, ObjectReader.DataBlockIndex blockIndex,
+        ThrottleStrategy throttleStrategy) {
+        long objectId = reader.objectId();
+        ByteBuf buf = get(objectId, blockIndex.blockId());
+        if (buf != null) {
+            BlockCacheMetricsStats.DISK_BLOCK_CACHE_HIT.inc();
+            return CompletableFuture.completedFuture(new ObjectReader.DataBlock(buf, blockIndex.recordCount()));
+        }
+        BlockCacheMetricsStats.DISK_BLOCK_CACHE_MISS.inc();
+        return reader.read(blockIndex, throttleStrategy).thenApply(dataBlock -> {
+            put(objectId, blockIndex.blockId(), dataBlock.buffer());
+            return dataBlock;
+        });
+    }
+
+    /**
+     * Get the data block without copying.
+     *
+     * @return the data block, or null if it is not cached.
+     */
+    public ByteBuf get(long objectId, int blockId) {
+        Entry entry = index.get(new Key(objectId, blockId));
+        if (entry == null) {
+            return null;
+        }
+        return Unpooled.wrappedBuffer(entry.segment.buffer.slice(entry.position, entry.length));
+    }
+
+    /**
+     * Write the data block to the disk cache in the background. The buffer is not released.
+     *
+     * @return a future which completes when the block is written, or is dropped because it is already cached, larger
+     * than a segment, or there are too many pending writes.
+     */
+    public CompletableFuture<Void> put(long objectId, int blockId, ByteBuf data) {
+        Key key = new Key(objectId, blockId);
+        int length = data.readableBytes();
+        if (index.containsKey(key) || ENTRY_HEADER_SIZE + length > segmentSize) {
+            return CompletableFuture.completedFuture(null);
+        }
+        if (pendingWriteBytes.addAndGet(length) > MAX_PENDING_WRITE_BYTES) {
+            pendingWriteBytes.addAndGet(-length);
+            return CompletableFuture.completedFuture(null);
+        }
+        ByteBuf buf = data.retainedDuplicate();
+        CompletableFuture<Void> cf = new CompletableFuture<>();
+        writeExecutor.execute(() -> {
+            try {
+                write(key, buf);
+            } catch (Throwable e) {
+                LOGGER.warn("write block {} to disk block cache fail", key, e);
+            } finally {
+                buf.release();
+                pendingWriteBytes.addAndGet(-length);
+                cf.complete(null);
+            }
+        });
+        return cf;
+    }
+
+    public synchronized long size() {
+        return (long) segments.size() * segmentSize;
+    }
+
+    @Override
+    public void close() {
+        writeExecutor.shutdown();
+        try {
+            if (!writeExecutor.awaitTermination(10, TimeUnit.SECONDS)) {
+                writeExecutor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private synchronized void write(Key key, ByteBuf data) throws IOException {
+        if (index.containsKey(key)) {
+            return;
+        }
+        int length = data.readableBytes();
+        Segment segment = segments.peekLast();
+        if (segment == null || segment.remaining() < ENTRY_HEADER_SIZE + length) {
+            segment = newSegment();
+        }
+        int position = segment.writePosition;
+        MappedByteBuffer buffer = segment.buffer;
+        buffer.putInt(position, ENTRY_MAGIC);
+        buffer.putLong(position + 4, key.objectId);
+        buffer.putInt(position + 12, key.blockId);
+        buffer.putInt(position + 16, length);
+        buffer.putInt(position + 20, WALUtil.crc32(data));
+        data.getBytes(data.readerIndex(), buffer.slice(position + ENTRY_HEADER_SIZE, length));
+        segment.writePosition = position + ENTRY_HEADER_SIZE + length;
+        index.put(key, new Entry(segment, position + ENTRY_HEADER_SIZE, length));
+    }
+
+    private Segment newSegment() throws IOException {
+        while (!segments.isEmpty() && (long) (segments.size() + 1) * segmentSize > maxSize) {
+            evict(segments.pollFirst());
+        }
+        long id = nextSegmentId++;
+        Path path = dir.resolve(String.format("%020d%s", id, SEGMENT_SUFFIX));
+        Segment segment;
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            file.setLength(segmentSize);
+            segment = new Segment(path, file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentSize));
+        }
+        segments.addLast(segment);
+        return segment;
+    }
+
+    private void evict(Segment segment) {
+        index.values().removeIf(entry -> entry.segment == segment);
+        try {
+            Files.deleteIfExists(segment.path);
+        } catch (IOException e) {
+            LOGGER.warn("delete disk block cache segment {} fail", segment.path, e);
+        }
+    }
+
+    private synchronized void recover() throws IOException {
+        List<Path> paths = new ArrayList<>();
+        try (Stream<Path> files = Files.list(dir)) {
+            files.filter(p -> p.getFileName().toString().endsWith(SEGMENT_SUFFIX)).forEach(paths::add);
+        }
+        paths.sort(null);
+        for (Path path : paths) {
+            String fileName = path.getFileName().toString();
+            long id;
+            try {
+                id = Long.parseLong(fileName.substring(0, fileName.length() - SEGMENT_SUFFIX.length()));
+            } catch (NumberFormatException e) {
+                LOGGER.warn("skip unknown file {} in disk block cache", path);
+                continue;
+            }
+            Segment segment;
+            try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+                long fileSize = file.length();
+                if (fileSize > Integer.MAX_VALUE) {
+                    LOGGER.warn("skip oversize segment {} in disk block cache", path);
+                    continue;
+                }
+                segment = new Segment(path, file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, fileSize));
+            }
+            int count = scan(segment);
+            // seal the recovered segment, new blocks are always written to a new segment
+            segment.writePosition = segment.buffer.capacity();
+            segments.addLast(segment);
+            nextSegmentId = id + 1;
+            LOGGER.info("recover disk block cache segment {} with {} blocks", path, count);
+        }
+        while (!segments.isEmpty() && (long) segments.size() * segmentSize > maxSize) {
+            evict(segments.pollFirst());
+        }
+    }
+
+    /**
+     * Load the valid entries in the segment into the index.
+     *
+     * @return the count of the valid entries.
+     */
+    private int scan(Segment segment) {
+        MappedByteBuffer buffer = segment.buffer;
+        int capacity = buffer.capacity();
+        int position = 0;
+        int count = 0;
+        while (position + ENTRY_HEADER_SIZE <= capacity) {
+            if (buffer.getInt(position) != ENTRY_MAGIC) {
+                break;
+            }
+            long objectId = buffer.getLong(position + 4);
+            int blockId = buffer.getInt(position + 12);
+            int length = buffer.getInt(position + 16);
+            int crc = buffer.getInt(position + 20);
+            int dataPosition = position + ENTRY_HEADER_SIZE;
+            if (length < 0 || length > capacity - dataPosition) {
+                break;
+            }
+            if (WALUtil.crc32(Unpooled.wrappedBuffer(buffer.slice(dataPosition, length))) != crc) {
+                LOGGER.warn("crc mismatch of the entry at {} in disk block cache segment {}, ignore the rest", position, segment.path);
+                break;
+            }
+            index.put(new Key(objectId, blockId), new Entry(segment, dataPosition, length));
+            count++;
+            position = dataPosition + length;
+        }
+        return count;
+    }
+
+    static final class Segment {
+        final Path path;
+        final MappedByteBuffer buffer;
+        int writePosition;
+
+        Segment(Path path, MappedByteBuffer buffer) {
+            this.path = path;
+            this.buffer = buffer;
+        }
+
+        int remaining() {
+            return buffer.capacity() - writePosition;
+        }
+    }
+
+    record Key(long objectId, int blockId) {
+    }
+
+    record Entry(Segment segment, int position, int length) {
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.automq.stream.s3.cache;
+
+import com.automq.stream.s3.ObjectReader;
+import com.automq.stream.s3.metadata.S3ObjectMetadata;
+import com.automq.stream.s3.metrics.stats.BlockCacheMetricsStats;
+import com.automq.stream.s3.operator.S3Operator;
+
+import java.util.Map;
+
+/**
+ * Cache the {@link ObjectReader}s, whose parsed indexes are bounded by {@link #maxIndexSize} bytes in total. The least
+ * recently used readers are evicted when the bound is exceeded, and the readers failing to load their indexes are
+ * evicted at once, so the next read retries.
+ */
+class ObjectReaderLRUCache {
+    private final LRUCache<Long, Entry> readers = new LRUCache<>();
+    private final S3Operator s3Operator;
+    private final long maxIndexSize;
+    private final ObjectReader.IndexSizeHint indexSizeHint = new ObjectReader.IndexSizeHint();
+    /**
+     * The total size of the loaded indexes, guarded by this.
+     */
+    private long indexSize;
+
+    ObjectReaderLRUCache(S3Operator s3Operator, long maxIndexSize) {
+        this.s3Operator = s3Operator;
+        this.maxIndexSize = maxIndexSize;
+        BlockCacheMetricsStats.registerObjectIndexCacheSize(this::indexSize);
+    }
+
+    /**
+     * Get the reader of the object, or create one if it is not cached.
+     *
+     * @return the retained reader, which should be released after use.
+     */
+    synchronized ObjectReader get(S3ObjectMetadata metadata) {
+        Entry entry = readers.get(metadata.objectId());
+        if (entry == null) {
+            ObjectReader reader = new ObjectReader(metadata, s3Operator, indexSizeHint);
+            Entry newEntry = new Entry(reader);
+            readers.put(metadata.objectId(), newEntry);
+            reader.basicObjectInfo().whenComplete((info, ex) -> onLoaded(metadata.objectId(), newEntry, info, ex));
+            entry = newEntry;
+        }
+        return entry.reader.retain();
+    }
+
+    synchronized long indexSize() {
+        return indexSize;
+    }
+
+    synchronized int size() {
+        return readers.size();
+    }
+
+    private synchronized void onLoaded(long objectId, Entry entry, ObjectReader.BasicObjectInfo info, Throwable ex) {
+        if (readers.get(objectId) != entry) {
+            // evicted
+            return;
+        }
+        if (ex != null) {
+            readers.remove(objectId);
+            entry.reader.close();
+            return;
+        }
+        entry.indexSize = info.indexBlock().size();
+        indexSize += entry.indexSize;
+        // keep the last one, the bound is exceeded by a single index only if the index is bigger than the bound.
+        while (indexSize > maxIndexSize && readers.size() > 1) {
+            Map.Entry<Long, Entry> evicted = readers.pop();
+            if (evicted == null) {
+                break;
+            }
+            indexSize -= evicted.getValue().indexSize;
+            evicted.getValue().reader.close();
+        }
+    }
+
+    static class Entry {
+        final ObjectReader reader;
+        /**
+         * The size of the loaded index, 0 if the index is not loaded yet.
+         */
+        int indexSize;
+
+        Entry(ObjectReader reader) {
+            this.reader = reader;
+        }
+    }
+}
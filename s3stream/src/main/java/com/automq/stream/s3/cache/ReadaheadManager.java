@@ -0,0 +1,355 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.automq.stream.s3.cache;
+
+import com.automq.stream.s3.metrics.stats.BlockCacheMetricsStats;
+import com.automq.stream.utils.FutureUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Decide the size of the readaheads generated by {@link BlockCache} per stream, and schedule them.
+ * <p>
+ * Size: the reads of each stream are tracked to detect sequential consumers and estimate their consume rate. A
+ * readahead is skipped if the last read of the stream is not sequential. Otherwise, it is capped to the bytes the
+ * stream consumes during two S3 readaheads, so the window of a slow consumer shrinks and the window of a fast consumer
+ * follows the exponential growth of {@link BlockCache} up to {@link BlockCache#MAX_READAHEAD_SIZE}.
+ * <p>
+ * Scheduling: at most {@link #MAX_INFLIGHT} readaheads run at the same time, the others are queued rather than
+ * dropped. The queue is ordered by:
+ * <ol>
+ *     <li>the readaheads a reader is waiting for,</li>
+ *     <li>the readaheads of the lagging streams, whose last read missed the cache,</li>
+ *     <li>the submission order.</li>
+ * </ol>
+ * Only when the queue is full is the readahead with the lowest priority dropped.
+ * <p>
+ * The state of a stream is evicted after it is not read for {@link #STATE_IDLE_TIMEOUT_NANOS}, e.g. it is closed or
+ * moved away, so the tracked streams are bounded by the streams read recently.
+ * <p>
+ * The hit and waste bytes of the readaheads are also tracked in the state of each stream, and the
+ * {@link #TOP_WASTE_STREAMS} streams which waste the most are logged when the idle states are evicted.
+ */
+class ReadaheadManager implements BlockCache.ReadaheadListener {
+    static final int MAX_INFLIGHT = 16;
+    static final int MAX_PENDING = 1024;
+    /**
+     * Recent read positions tracked per stream, so several consumers of the same stream are all detected as sequential.
+     */
+    static final int TRACKED_READERS = 4;
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReadaheadManager.class);
+    private static final long RATE_SAMPLE_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final double EWMA_ALPHA = 0.2;
+    static final long STATE_IDLE_TIMEOUT_NANOS = TimeUnit.MINUTES.toNanos(1);
+    static final int TOP_WASTE_STREAMS = 10;
+    private final Map<Long, StreamState> states = new ConcurrentHashMap<>();
+    private final NavigableSet<Task> pending = new TreeSet<>(Comparator
+            .comparing((Task t) -> !t.urgent)
+            .thenComparing(t -> !t.lagging)
+            .thenComparingLong(t -> t.sequence));
+    private final Function<Task, CompletableFuture<?>> runner;
+    private int inflight;
+    private long sequence;
+    /**
+     * EWMA of the readahead latency in seconds, 0 means unknown.
+     */
+    private volatile double latency;
+    private final AtomicLong lastEvictNanos = new AtomicLong(System.nanoTime());
+
+    /**
+     * @param runner run the readahead task, the returned future completes when the task is done.
+     */
+    ReadaheadManager(Function<Task, CompletableFuture<?>> runner) {
+        this.runner = runner;
+        BlockCacheMetricsStats.registerReadaheadPending(this::pendingCount);
+    }
+
+    /**
+     * Record a read of the stream. Should be called when the read is completed.
+     *
+     * @param startOffset the start offset of the read
+     * @param nextOffset  the offset after the last returned record
+     * @param bytes       the returned bytes
+     * @param cacheHit    whether the read is fully served by the cache
+     */
+    void onRead(long streamId, long startOffset, long nextOffset, long bytes, boolean cacheHit) {
+        onRead(streamId, startOffset, nextOffset, bytes, cacheHit, System.nanoTime());
+    }
+
+    void onRead(long streamId, long startOffset, long nextOffset, long bytes, boolean cacheHit, long nowNanos) {
+        StreamState state = states.computeIfAbsent(streamId, id -> new StreamState());
+        synchronized (state) {
+            state.onRead(startOffset, nextOffset, bytes, nowNanos);
+            state.lagging = !cacheHit;
+        }
+        long lastEvict = lastEvictNanos.get();
+        if (nowNanos - lastEvict >= STATE_IDLE_TIMEOUT_NANOS && lastEvictNanos.compareAndSet(lastEvict, nowNanos)) {
+            evictIdleStates(nowNanos);
+        }
+    }
+
+    /**
+     * Evict the states of the streams which are not read for {@link #STATE_IDLE_TIMEOUT_NANOS}. A stream read again
+     * starts over as a new stream.
+     */
+    private void evictIdleStates(long nowNanos) {
+        states.values().removeIf(state -> nowNanos - state.lastReadNanos >= STATE_IDLE_TIMEOUT_NANOS);
+        List<StreamStats> topWasteStreams = topWasteStreams(TOP_WASTE_STREAMS);
+        if (!topWasteStreams.isEmpty()) {
+            LOGGER.info("[READAHEAD_WASTE] top streams: {}", topWasteStreams);
+        }
+    }
+
+    @Override
+    public void onHit(long streamId, long bytes) {
+        StreamState state = states.get(streamId);
+        if (state != null) {
+            state.hitBytes.addAndGet(bytes);
+        }
+    }
+
+    @Override
+    public void onWaste(long streamId, long bytes) {
+        StreamState state = states.get(streamId);
+        if (state != null) {
+            state.wasteBytes.addAndGet(bytes);
+        }
+    }
+
+    /**
+     * Get the tracked streams which waste the most readahead bytes, in descending order of the waste.
+     */
+    List<StreamStats> topWasteStreams(int limit) {
+        return states.entrySet().stream()
+                .map(e -> new StreamStats(e.getKey(), e.getValue().hitBytes.get(), e.getValue().wasteBytes.get()))
+                .filter(stats -> stats.wasteBytes() > 0)
+                .sorted(Comparator.comparingLong(StreamStats::wasteBytes).reversed())
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+
+    int stateCount() {
+        return states.size();
+    }
+
+    /**
+     * Adjust the readahead size proposed by {@link BlockCache}.
+     *
+     * @return the adjusted size, 0 means the readahead should be skipped.
+     */
+    int adjust(long streamId, int proposedSize) {
+        StreamState state = states.get(streamId);
+        if (state == null) {
+            return proposedSize;
+        }
+        double rate;
+        synchronized (state) {
+            if (!state.sequential) {
+                return 0;
+            }
+            rate = state.rate;
+        }
+        double latency = this.latency;
+        if (rate <= 0 || latency <= 0) {
+            return proposedSize;
+        }
+        long target = (long) (rate * latency * 2);
+        int size = (int) Math.min(proposedSize, Math.max(target, BlockCache.BLOCK_SIZE));
+        return Math.min(BlockCache.MAX_READAHEAD_SIZE, size);
+    }
+
+    /**
+     * Submit a readahead task.
+     *
+     * @return the task, whose future completes when the task is done or dropped.
+     */
+    Task submit(long streamId, long startOffset, int size) {
+        StreamState state = states.get(streamId);
+        boolean lagging = state != null && state.lagging;
+        Task task;
+        Task dropped = null;
+        synchronized (this) {
+            task = new Task(streamId, startOffset, size, lagging, sequence++);
+            pending.add(task);
+            if (pending.size() > MAX_PENDING) {
+                dropped = pending.pollLast();
+            }
+        }
+        if (dropped != null) {
+            BlockCacheMetricsStats.READAHEAD_DROPPED.inc();
+            dropped.cf.complete(null);
+        }
+        scheduleNext();
+        return task;
+    }
+
+    /**
+     * A reader is waiting for the task, so run it before the others.
+     */
+    void boost(Task task) {
+        synchronized (this) {
+            if (!task.urgent && pending.remove(task)) {
+                task.urgent = true;
+                pending.add(task);
+            }
+        }
+    }
+
+    synchronized long pendingCount() {
+        return pending.size();
+    }
+
+    private void scheduleNext() {
+        while (true) {
+            Task task;
+            synchronized (this) {
+                if (inflight >= MAX_INFLIGHT || pending.isEmpty()) {
+                    return;
+                }
+                task = pending.pollFirst();
+                inflight++;
+            }
+            long startNanos = System.nanoTime();
+            CompletableFuture<?> cf;
+            try {
+                cf = runner.apply(task);
+            } catch (Throwable e) {
+                cf = FutureUtil.failedFuture(e);
+            }
+            cf.whenComplete((nil, ex) -> {
+                if (ex != null) {
+                    LOGGER.error("background readahead {} fail", task, ex);
+                } else {
+                    updateLatency((System.nanoTime() - startNanos) / 1e9);
+                }
+                synchronized (this) {
+                    inflight--;
+                }
+                task.cf.complete(null);
+                scheduleNext();
+            });
+        }
+    }
+
+    private void updateLatency(double seconds) {
+        double latency = this.latency;
+        this.latency = latency <= 0 ? seconds : latency * (1 - EWMA_ALPHA) + seconds * EWMA_ALPHA;
+    }
+
+    static class StreamState {
+        /**
+         * The next offsets of the recent reads.
+         */
+        final long[] positions = new long[TRACKED_READERS];
+        int nextSlot;
+        /**
+         * Whether the last read continues one of the recent reads. A new stream is assumed to be sequential.
+         */
+        boolean sequential = true;
+        volatile boolean lagging;
+        /**
+         * EWMA of the consume rate in bytes per second, 0 means unknown.
+         */
+        double rate;
+        long sampleStartNanos;
+        long sampleBytes;
+        volatile long lastReadNanos;
+        /**
+         * The bytes read from the blocks filled by readaheads.
+         */
+        final AtomicLong hitBytes = new AtomicLong();
+        /**
+         * The bytes of the blocks filled by readaheads, which are evicted before being read through.
+         */
+        final AtomicLong wasteBytes = new AtomicLong();
+
+        StreamState() {
+            Arrays.fill(positions, -1L);
+        }
+
+        void onRead(long startOffset, long nextOffset, long bytes, long nowNanos) {
+            lastReadNanos = nowNanos;
+            int slot = -1;
+            for (int i = 0; i < positions.length; i++) {
+                if (positions[i] == startOffset) {
+                    slot = i;
+                    break;
+                }
+            }
+            boolean first = sampleStartNanos == 0;
+            sequential = slot != -1 || first;
+            if (slot == -1) {
+                slot = nextSlot;
+                nextSlot = (nextSlot + 1) % positions.length;
+            }
+            positions[slot] = nextOffset;
+
+            if (first) {
+                sampleStartNanos = nowNanos;
+                return;
+            }
+            sampleBytes += bytes;
+            long elapsed = nowNanos - sampleStartNanos;
+            if (elapsed >= RATE_SAMPLE_INTERVAL_NANOS) {
+                double sample = sampleBytes * 1e9 / elapsed;
+                rate = rate <= 0 ? sample : rate * (1 - EWMA_ALPHA) + sample * EWMA_ALPHA;
+                sampleStartNanos = nowNanos;
+                sampleBytes = 0;
+            }
+        }
+    }
+
+    record StreamStats(long streamId, long hitBytes, long wasteBytes) {
+    }
+
+    static class Task {
+        final long streamId;
+        final long startOffset;
+        final int size;
+        final boolean lagging;
+        final long sequence;
+        final CompletableFuture<Void> cf = new CompletableFuture<>();
+        volatile boolean urgent;
+
+        Task(long streamId, long startOffset, int size, boolean lagging, long sequence) {
+            this.streamId = streamId;
+            this.startOffset = startOffset;
+            this.size = size;
+            this.lagging = lagging;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public String toString() {
+            return "Task{streamId=" + streamId + ", startOffset=" + startOffset + ", size=" + size + '}';
+        }
+    }
+}
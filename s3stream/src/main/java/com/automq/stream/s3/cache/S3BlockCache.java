@@ -33,4 +33,9 @@ public interface S3BlockCache {
     CompletableFuture<ReadDataBlock> read(long streamId, long startOffset, long endOffset, int maxBytes);
 
     void put(Map<Long, List<StreamRecordBatch>> stream2records);
+
+    /**
+     * Release the resources held by the cache, e.g. the local disk tier.
+     */
+    void shutdown();
 }
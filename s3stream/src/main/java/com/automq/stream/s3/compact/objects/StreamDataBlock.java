@@ -38,10 +38,16 @@ public class StreamDataBlock {
     private final long blockPosition;
     private final int blockSize;
     private final int recordCount;
+    private final int uncompressedSize;
     private final CompletableFuture<ByteBuf> dataCf = new CompletableFuture<>();
 
     public StreamDataBlock(long streamId, long startOffset, long endOffset, int blockId,
                            long objectId, long blockPosition, int blockSize, int recordCount) {
+        this(streamId, startOffset, endOffset, blockId, objectId, blockPosition, blockSize, recordCount, blockSize);
+    }
+
+    public StreamDataBlock(long streamId, long startOffset, long endOffset, int blockId,
+                           long objectId, long blockPosition, int blockSize, int recordCount, int uncompressedSize) {
         this.streamId = streamId;
         this.startOffset = startOffset;
         this.endOffset = endOffset;
@@ -50,6 +56,7 @@ public class StreamDataBlock {
         this.blockPosition = blockPosition;
         this.blockSize = blockSize;
         this.recordCount = recordCount;
+        this.uncompressedSize = uncompressedSize;
     }
 
     public long getStreamId() {
@@ -92,6 +99,13 @@ public class StreamDataBlock {
         return recordCount;
     }
 
+    /**
+     * The size of the block before compression, which equals to the block size if the block is not compressed.
+     */
+    public int getUncompressedSize() {
+        return uncompressedSize;
+    }
+
     public CompletableFuture<ByteBuf> getDataCf() {
         return this.dataCf;
     }
@@ -123,12 +137,12 @@ public class StreamDataBlock {
         StreamDataBlock that = (StreamDataBlock) o;
         return streamId == that.streamId && startOffset == that.startOffset && endOffset == that.endOffset
                 && blockId == that.blockId && objectId == that.objectId && blockPosition == that.blockPosition
-                && blockSize == that.blockSize && recordCount == that.recordCount;
+                && blockSize == that.blockSize && recordCount == that.recordCount && uncompressedSize == that.uncompressedSize;
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(streamId, startOffset, endOffset, blockId, objectId, blockPosition, blockSize, recordCount);
+        return Objects.hash(streamId, startOffset, endOffset, blockId, objectId, blockPosition, blockSize, recordCount, uncompressedSize);
     }
 
 }
\ No newline at end of file
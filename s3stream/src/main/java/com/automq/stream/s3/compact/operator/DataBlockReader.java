@@ -18,6 +18,7 @@
 package com.automq.stream.s3.compact.operator;
 
 import com.automq.stream.s3.DirectByteBufAlloc;
+import com.automq.stream.s3.ObjectWriter;
 import com.automq.stream.s3.compact.objects.StreamDataBlock;
 import com.automq.stream.s3.network.ThrottleStrategy;
 import com.automq.stream.s3.operator.S3Operator;
@@ -194,21 +195,24 @@ public class DataBlockReader {
             try {
                 long indexBlockPosition = objectTailBuf.getLong(objectTailBuf.readableBytes() - 48);
                 int indexBlockSize = objectTailBuf.getInt(objectTailBuf.readableBytes() - 40);
+                byte indexVersion = objectTailBuf.getByte(objectTailBuf.readableBytes() - ObjectWriter.Footer.INDEX_VERSION_TAIL_OFFSET);
                 if (indexBlockPosition + objectTailBuf.readableBytes() < objectSize) {
                     throw new IndexBlockParseException(indexBlockPosition);
                 } else {
                     int indexRelativePosition = objectTailBuf.readableBytes() - (int) (objectSize - indexBlockPosition);
                     ByteBuf indexBlockBuf = objectTailBuf.slice(objectTailBuf.readerIndex() + indexRelativePosition, indexBlockSize);
                     int blockCount = indexBlockBuf.readInt();
-                    ByteBuf blocks = indexBlockBuf.slice(indexBlockBuf.readerIndex(), blockCount * 16);
+                    int blocksSize = blockCount * ObjectWriter.blockIndexSize(indexVersion);
+                    ByteBuf blocks = indexBlockBuf.slice(indexBlockBuf.readerIndex(), blocksSize);
                     List<DataBlockIndex> dataBlockIndices = new ArrayList<>();
                     for (int i = 0; i < blockCount; i++) {
                         long blockPosition = blocks.readLong();
                         int blockSize = blocks.readInt();
                         int recordCount = blocks.readInt();
-                        dataBlockIndices.add(new DataBlockIndex(blockPosition, blockSize, recordCount));
+                        int uncompressedSize = indexVersion == ObjectWriter.INDEX_VERSION_V0 ? blockSize : blocks.readInt();
+                        dataBlockIndices.add(new DataBlockIndex(blockPosition, blockSize, recordCount, uncompressedSize));
                     }
-                    indexBlockBuf.skipBytes(blockCount * 16);
+                    indexBlockBuf.skipBytes(blocksSize);
                     ByteBuf streamRanges = indexBlockBuf.slice(indexBlockBuf.readerIndex(), indexBlockBuf.readableBytes());
                     List<StreamDataBlock> streamDataBlocks = new ArrayList<>();
                     for (int i = 0; i < blockCount; i++) {
@@ -217,7 +221,8 @@ public class DataBlockReader {
                         int rangeSize = streamRanges.readInt();
                         int blockIndex = streamRanges.readInt();
                         streamDataBlocks.add(new StreamDataBlock(streamId, startOffset, startOffset + rangeSize, blockIndex,
-                                objectId, dataBlockIndices.get(i).startPosition, dataBlockIndices.get(i).size, dataBlockIndices.get(i).recordCount));
+                                objectId, dataBlockIndices.get(i).startPosition, dataBlockIndices.get(i).size, dataBlockIndices.get(i).recordCount,
+                                dataBlockIndices.get(i).uncompressedSize));
                     }
                     return streamDataBlocks;
                 }
@@ -242,11 +247,13 @@ public class DataBlockReader {
         private final long startPosition;
         private final int size;
         private final int recordCount;
+        private final int uncompressedSize;
 
-        public DataBlockIndex(long startPosition, int size, int recordCount) {
+        public DataBlockIndex(long startPosition, int size, int recordCount, int uncompressedSize) {
             this.startPosition = startPosition;
             this.size = size;
             this.recordCount = recordCount;
+            this.uncompressedSize = uncompressedSize;
         }
     }
 }
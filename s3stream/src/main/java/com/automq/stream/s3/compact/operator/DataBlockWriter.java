@@ -18,6 +18,7 @@
 package com.automq.stream.s3.compact.operator;
 
 import com.automq.stream.s3.DirectByteBufAlloc;
+import com.automq.stream.s3.ObjectWriter;
 import com.automq.stream.s3.compact.objects.StreamDataBlock;
 import com.automq.stream.s3.network.ThrottleStrategy;
 import com.automq.stream.s3.operator.S3Operator;
@@ -143,9 +144,12 @@ public class DataBlockWriter {
     class IndexBlock {
         private final ByteBuf buf;
         private final long position;
+        private final byte version;
 
         public IndexBlock() {
             position = nextDataBlockPosition;
+            version = completedBlocks.stream().anyMatch(block -> block.getUncompressedSize() != block.getBlockSize())
+                    ? ObjectWriter.INDEX_VERSION_V1 : ObjectWriter.INDEX_VERSION_V0;
             buf = DirectByteBufAlloc.byteBuffer(calculateIndexBlockSize(), "write_index_block");
             buf.writeInt(completedBlocks.size()); // block count
             long nextPosition = 0;
@@ -154,6 +158,9 @@ public class DataBlockWriter {
                 buf.writeLong(nextPosition);
                 buf.writeInt(block.getBlockSize());
                 buf.writeInt(block.getRecordCount());
+                if (version == ObjectWriter.INDEX_VERSION_V1) {
+                    buf.writeInt(block.getUncompressedSize());
+                }
                 nextPosition += block.getBlockSize();
             }
 
@@ -168,7 +175,7 @@ public class DataBlockWriter {
         }
 
         private int calculateIndexBlockSize() {
-            return 4 + completedBlocks.size() * 40;
+            return 4 + completedBlocks.size() * (ObjectWriter.blockIndexSize(version) + 24);
         }
 
         public ByteBuf buffer() {
@@ -182,6 +189,10 @@ public class DataBlockWriter {
         public int size() {
             return buf.readableBytes();
         }
+
+        public byte version() {
+            return version;
+        }
     }
 
     class Footer {
@@ -193,7 +204,8 @@ public class DataBlockWriter {
             buf = DirectByteBufAlloc.byteBuffer(FOOTER_SIZE);
             buf.writeLong(indexBlock.position());
             buf.writeInt(indexBlock.size());
-            buf.writeZero(40 - 8 - 4);
+            buf.writeByte(indexBlock.version());
+            buf.writeZero(40 - 8 - 4 - 1);
             buf.writeLong(MAGIC);
         }
 
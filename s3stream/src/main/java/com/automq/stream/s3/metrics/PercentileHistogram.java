@@ -0,0 +1,173 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.automq.stream.s3.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram which records the values into log-linear buckets, like HdrHistogram, and calculates the percentiles of
+ * the values recorded in the last window.
+ * <p>
+ * The values are split by the power of 2, and each power of 2 is split into {@code 2^(SUB_BUCKET_BITS - 1)} linear
+ * sub-buckets, so the relative error of a percentile is within {@code 2^-(SUB_BUCKET_BITS - 1)}.
+ * <p>
+ * Recording a value is lock-free and allocation-free: it increases the cumulative count of the bucket. The reader
+ * rolls a window every {@link #windowNanos} by copying the cumulative counts, and the counts of the last window are
+ * the difference of the last two copies. A value recorded concurrently with a roll may be counted into the next window.
+ */
+public class PercentileHistogram implements Histogram {
+    public static final long DEFAULT_WINDOW_NANOS = TimeUnit.MINUTES.toNanos(1);
+    static final int SUB_BUCKET_BITS = 6;
+    static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    static final int SUB_BUCKET_HALF_COUNT = SUB_BUCKET_COUNT >> 1;
+    static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKET_HALF_COUNT;
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final long windowNanos;
+    /**
+     * The cumulative counts at the last roll.
+     */
+    private final long[] lastCounts = new long[BUCKET_COUNT];
+    /**
+     * The counts of the last window.
+     */
+    private final long[] windowCounts = new long[BUCKET_COUNT];
+    private long windowTotal;
+    private long lastSum;
+    private long windowSum;
+    private long lastRollNanos;
+
+    public PercentileHistogram() {
+        this(DEFAULT_WINDOW_NANOS);
+    }
+
+    public PercentileHistogram(long windowNanos) {
+        this.windowNanos = windowNanos;
+        this.lastRollNanos = System.nanoTime();
+    }
+
+    /**
+     * Record a value. Negative values are recorded as 0.
+     */
+    @Override
+    public void update(long value) {
+        value = Math.max(0, value);
+        counts.incrementAndGet(index(value));
+        count.increment();
+        sum.add(value);
+    }
+
+    @Override
+    public long count() {
+        return count.sum();
+    }
+
+    @Override
+    public double mean() {
+        long count = this.count.sum();
+        return count == 0 ? 0 : (double) sum.sum() / count;
+    }
+
+    /**
+     * Get the value at the percentile of the values recorded in the last window.
+     *
+     * @param percentile the percentile in [0, 100]
+     * @return the highest value equivalent to the value at the percentile, or 0 if no value is recorded.
+     */
+    public synchronized long valueAtPercentile(double percentile) {
+        tryRoll(System.nanoTime());
+        if (windowTotal == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(Math.min(100, percentile) / 100 * windowTotal));
+        long accumulated = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            accumulated += windowCounts[i];
+            if (accumulated >= rank) {
+                return highestEquivalentValue(i);
+            }
+        }
+        return highestEquivalentValue(BUCKET_COUNT - 1);
+    }
+
+    /**
+     * Get the max value recorded in the last window, or 0 if no value is recorded.
+     */
+    public long max() {
+        return valueAtPercentile(100);
+    }
+
+    /**
+     * Get the count of the values recorded in the last window.
+     */
+    public synchronized long windowCount() {
+        tryRoll(System.nanoTime());
+        return windowTotal;
+    }
+
+    /**
+     * Get the mean of the values recorded in the last window, or 0 if no value is recorded.
+     */
+    public synchronized double windowMean() {
+        tryRoll(System.nanoTime());
+        return windowTotal == 0 ? 0 : (double) windowSum / windowTotal;
+    }
+
+    /**
+     * Roll the window if it is elapsed. The percentiles are read by several gauges at about the same time, so the window
+     * is rolled by time rather than by each read, to keep the gauges consistent.
+     */
+    void tryRoll(long nowNanos) {
+        if (nowNanos - lastRollNanos < windowNanos) {
+            return;
+        }
+        lastRollNanos = nowNanos;
+        // read the sum before the counts, so the mean is never more than the max when a value is being recorded.
+        long sum = this.sum.sum();
+        windowSum = sum - lastSum;
+        lastSum = sum;
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            long current = counts.get(i);
+            windowCounts[i] = current - lastCounts[i];
+            lastCounts[i] = current;
+            total += windowCounts[i];
+        }
+        windowTotal = total;
+    }
+
+    static int index(long value) {
+        // the values less than SUB_BUCKET_COUNT are recorded exactly, the bigger ones are shifted into the upper half
+        // of the sub-buckets.
+        int shift = Math.max(0, 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS + 1);
+        return (shift << (SUB_BUCKET_BITS - 1)) + (int) (value >>> shift);
+    }
+
+    static long highestEquivalentValue(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = (index >> (SUB_BUCKET_BITS - 1)) - 1;
+        long subBucket = index - ((long) shift << (SUB_BUCKET_BITS - 1));
+        // the upper bound of the last bucket is 2^63, which wraps to Long.MAX_VALUE after minus 1.
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
@@ -17,6 +17,8 @@
 
 package com.automq.stream.s3.metrics;
 
+import java.util.concurrent.TimeUnit;
+
 public class TimerUtil {
     private long last;
 
@@ -25,18 +27,32 @@ public class TimerUtil {
     }
 
     public void reset() {
-        last = System.currentTimeMillis();
+        last = System.nanoTime();
     }
 
+    /**
+     * @return the elapsed time in milliseconds.
+     */
     public long elapsed() {
-        return System.currentTimeMillis() - last;
+        return elapsedAs(TimeUnit.MILLISECONDS);
+    }
+
+    public long elapsedAs(TimeUnit timeUnit) {
+        return timeUnit.convert(System.nanoTime() - last, TimeUnit.NANOSECONDS);
     }
 
+    /**
+     * @return the elapsed time in milliseconds.
+     */
     public long elapsedAndReset() {
-        long now = System.currentTimeMillis();
+        return elapsedAndResetAs(TimeUnit.MILLISECONDS);
+    }
+
+    public long elapsedAndResetAs(TimeUnit timeUnit) {
+        long now = System.nanoTime();
         long elapsed = now - last;
         last = now;
-        return elapsed;
+        return timeUnit.convert(elapsed, TimeUnit.NANOSECONDS);
     }
 
 }
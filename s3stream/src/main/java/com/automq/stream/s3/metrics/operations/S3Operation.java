@@ -34,6 +34,7 @@ public enum S3Operation {
     APPEND_STORAGE_LOG_CACHE(S3MetricsType.S3Storage, "append_log_cache"),
     APPEND_STORAGE_LOG_CACHE_FULL(S3MetricsType.S3Storage, "append_log_cache_full"),
     UPLOAD_STORAGE_WAL(S3MetricsType.S3Storage, "upload_wal"),
+    RECOVER_STORAGE(S3MetricsType.S3Storage, "recover"),
     READ_STORAGE(S3MetricsType.S3Storage, "read"),
     READ_STORAGE_LOG_CACHE(S3MetricsType.S3Storage, "read_log_cache"),
     READ_STORAGE_LOG_CACHE_MISS(S3MetricsType.S3Storage, "read_log_cache_miss"),
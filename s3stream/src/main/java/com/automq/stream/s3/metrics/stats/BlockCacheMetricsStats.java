@@ -0,0 +1,75 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.automq.stream.s3.metrics.stats;
+
+import com.automq.stream.s3.metrics.Counter;
+import com.automq.stream.s3.metrics.Gauge;
+import com.automq.stream.s3.metrics.S3StreamMetricsRegistry;
+
+import java.util.Collections;
+
+public class BlockCacheMetricsStats {
+    public static final Counter BLOCK_CACHE_HIT = S3StreamMetricsRegistry.getMetricsGroup()
+            .newCounter("block_cache_hit" + Counter.SUFFIX, Collections.emptyMap());
+
+    public static final Counter BLOCK_CACHE_MISS = S3StreamMetricsRegistry.getMetricsGroup()
+            .newCounter("block_cache_miss" + Counter.SUFFIX, Collections.emptyMap());
+
+    public static final Counter BLOCK_CACHE_EVICT = S3StreamMetricsRegistry.getMetricsGroup()
+            .newCounter("block_cache_evict" + Counter.SUFFIX, Collections.emptyMap());
+
+    public static final Counter BLOCK_CACHE_EVICT_BYTES = S3StreamMetricsRegistry.getMetricsGroup()
+            .newCounter("block_cache_evict_bytes" + Counter.SUFFIX, Collections.emptyMap());
+
+    public static final Counter DISK_BLOCK_CACHE_HIT = S3StreamMetricsRegistry.getMetricsGroup()
+            .newCounter("disk_block_cache_hit" + Counter.SUFFIX, Collections.emptyMap());
+
+    public static final Counter DISK_BLOCK_CACHE_MISS = S3StreamMetricsRegistry.getMetricsGroup()
+            .newCounter("disk_block_cache_miss" + Counter.SUFFIX, Collections.emptyMap());
+
+    public static final Counter READAHEAD_DROPPED = S3StreamMetricsRegistry.getMetricsGroup()
+            .newCounter("readahead_dropped" + Counter.SUFFIX, Collections.emptyMap());
+
+    /**
+     * The bytes served from the cache blocks filled by readaheads.
+     */
+    public static final Counter READAHEAD_HIT_BYTES = S3StreamMetricsRegistry.getMetricsGroup()
+            .newCounter("readahead_hit_bytes" + Counter.SUFFIX, Collections.emptyMap());
+
+    /**
+     * The bytes of the cache blocks filled by readaheads, which are evicted before being read through.
+     */
+    public static final Counter READAHEAD_WASTE_BYTES = S3StreamMetricsRegistry.getMetricsGroup()
+            .newCounter("readahead_waste_bytes" + Counter.SUFFIX, Collections.emptyMap());
+
+    public static void registerBlockCacheSize(Gauge gauge) {
+        S3StreamMetricsRegistry.getMetricsGroup().newGauge("block_cache_size", Collections.emptyMap(), gauge);
+    }
+
+    public static void registerDiskBlockCacheSize(Gauge gauge) {
+        S3StreamMetricsRegistry.getMetricsGroup().newGauge("disk_block_cache_size", Collections.emptyMap(), gauge);
+    }
+
+    public static void registerObjectIndexCacheSize(Gauge gauge) {
+        S3StreamMetricsRegistry.getMetricsGroup().newGauge("object_index_cache_size", Collections.emptyMap(), gauge);
+    }
+
+    public static void registerReadaheadPending(Gauge gauge) {
+        S3StreamMetricsRegistry.getMetricsGroup().newGauge("readahead_pending", Collections.emptyMap(), gauge);
+    }
+}
@@ -21,10 +21,14 @@ import com.automq.stream.s3.metrics.Counter;
 import com.automq.stream.s3.metrics.Gauge;
 import com.automq.stream.s3.metrics.S3StreamMetricsRegistry;
 import com.automq.stream.s3.network.AsyncNetworkBandwidthLimiter;
+import com.automq.stream.s3.network.ThrottleStrategy;
 
 import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class NetworkMetricsStats {
+    private static final Map<String, Counter> NETWORK_USAGE_COUNTER_MAP = new ConcurrentHashMap<>();
 
     public static final Counter NETWORK_INBOUND_USAGE = S3StreamMetricsRegistry.getMetricsGroup()
             .newCounter("network_inbound_usage" + Counter.SUFFIX, Collections.emptyMap());
@@ -41,4 +45,18 @@ public class NetworkMetricsStats {
         String metricName = String.format("network_%s_limiter_queue_size", type.getName().toLowerCase());
         S3StreamMetricsRegistry.getMetricsGroup().newGauge(metricName, Collections.emptyMap(), gauge);
     }
+
+    /**
+     * The bandwidth used by a traffic class.
+     */
+    public static Counter getNetworkUsageCounter(AsyncNetworkBandwidthLimiter.Type type, ThrottleStrategy throttleStrategy) {
+        String metricName = String.format("network_%s_class_usage", type.getName().toLowerCase());
+        return NETWORK_USAGE_COUNTER_MAP.computeIfAbsent(metricName + "-" + throttleStrategy.name(), key -> S3StreamMetricsRegistry.getMetricsGroup()
+                .newCounter(metricName + Counter.SUFFIX, Map.of("class", throttleStrategy.name().toLowerCase())));
+    }
+
+    public static void registerNetworkLimiterQueueSize(AsyncNetworkBandwidthLimiter.Type type, ThrottleStrategy throttleStrategy, Gauge gauge) {
+        String metricName = String.format("network_%s_limiter_class_queue_size", type.getName().toLowerCase());
+        S3StreamMetricsRegistry.getMetricsGroup().newGauge(metricName, Map.of("class", throttleStrategy.name().toLowerCase()), gauge);
+    }
 }
@@ -19,32 +19,114 @@ package com.automq.stream.s3.metrics.stats;
 
 import com.automq.stream.s3.metrics.Counter;
 import com.automq.stream.s3.metrics.Histogram;
+import com.automq.stream.s3.metrics.PercentileHistogram;
+import com.automq.stream.s3.metrics.S3StreamMetricsGroup;
 import com.automq.stream.s3.metrics.S3StreamMetricsRegistry;
 import com.automq.stream.s3.metrics.operations.S3Operation;
 
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
+/**
+ * The metrics of {@link S3Operation}.
+ * <p>
+ * The operation time is recorded into the {@code operation_time} histogram in milliseconds, and into a
+ * {@link PercentileHistogram} per operation in microseconds, which is indexed by the ordinal of the operation, so
+ * recording a time takes no lock and no allocation. The percentiles, count and mean of the last window are exported as
+ * gauges. The operations faster than a millisecond, like the block cache reads and the WAL appends, should be recorded
+ * by {@link #recordTimeNanos}, so the percentiles keep the sub-millisecond resolution.
+ */
 public class OperationMetricsStats {
     private static final Map<String, Counter> OPERATION_COUNTER_MAP = new ConcurrentHashMap<>();
-    private static final Map<String, Histogram> OPERATION_HIST_MAP = new ConcurrentHashMap<>();
+    private static final AtomicReferenceArray<OperationTimeHistogram> OPERATION_HISTOGRAMS = new AtomicReferenceArray<>(S3Operation.values().length);
 
     public static Counter getCounter(S3Operation s3Operation) {
         return getOrCreateCounterMetrics(s3Operation);
     }
 
+    /**
+     * Get the histogram of the operation time, whose values are in milliseconds.
+     */
     public static Histogram getHistogram(S3Operation s3Operation) {
         return getOrCreateHistMetrics(s3Operation);
     }
 
+    /**
+     * Record the operation time in nanoseconds.
+     */
+    public static void recordTimeNanos(S3Operation s3Operation, long elapsedNanos) {
+        getOrCreateHistMetrics(s3Operation).updateNanos(elapsedNanos);
+    }
+
     private static Counter getOrCreateCounterMetrics(S3Operation s3Operation) {
         return OPERATION_COUNTER_MAP.computeIfAbsent(s3Operation.getUniqueKey(), id -> S3StreamMetricsRegistry.getMetricsGroup()
                 .newCounter("operation_count" + Counter.SUFFIX, tags(s3Operation)));
     }
 
-    private static Histogram getOrCreateHistMetrics(S3Operation s3Operation) {
-        return OPERATION_HIST_MAP.computeIfAbsent(s3Operation.getUniqueKey(), id -> S3StreamMetricsRegistry.getMetricsGroup()
-                .newHistogram("operation_time", tags(s3Operation)));
+    private static OperationTimeHistogram getOrCreateHistMetrics(S3Operation s3Operation) {
+        OperationTimeHistogram histogram = OPERATION_HISTOGRAMS.get(s3Operation.ordinal());
+        if (histogram == null) {
+            histogram = createHistMetrics(s3Operation);
+        }
+        return histogram;
+    }
+
+    private static synchronized OperationTimeHistogram createHistMetrics(S3Operation s3Operation) {
+        OperationTimeHistogram histogram = OPERATION_HISTOGRAMS.get(s3Operation.ordinal());
+        if (histogram != null) {
+            return histogram;
+        }
+        Map<String, String> tags = tags(s3Operation);
+        S3StreamMetricsGroup metricsGroup = S3StreamMetricsRegistry.getMetricsGroup();
+        PercentileHistogram micros = new PercentileHistogram();
+        metricsGroup.newGauge("operation_time_us_p50", tags, () -> micros.valueAtPercentile(50));
+        metricsGroup.newGauge("operation_time_us_p99", tags, () -> micros.valueAtPercentile(99));
+        metricsGroup.newGauge("operation_time_us_p999", tags, () -> micros.valueAtPercentile(99.9));
+        metricsGroup.newGauge("operation_time_us_max", tags, micros::max);
+        metricsGroup.newGauge("operation_time_us_mean", tags, () -> (long) micros.windowMean());
+        metricsGroup.newGauge("operation_time_us_count", tags, micros::windowCount);
+        OperationTimeHistogram newHistogram = new OperationTimeHistogram(metricsGroup.newHistogram("operation_time", tags), micros);
+        OPERATION_HISTOGRAMS.set(s3Operation.ordinal(), newHistogram);
+        return newHistogram;
+    }
+
+    /**
+     * Record the operation time into both the {@code operation_time} histogram in milliseconds and the percentile
+     * histogram in microseconds.
+     */
+    static class OperationTimeHistogram implements Histogram {
+        private final Histogram millis;
+        private final PercentileHistogram micros;
+
+        OperationTimeHistogram(Histogram millis, PercentileHistogram micros) {
+            this.millis = millis;
+            this.micros = micros;
+        }
+
+        @Override
+        public void update(long value) {
+            updateNanos(TimeUnit.MILLISECONDS.toNanos(value));
+        }
+
+        void updateNanos(long nanos) {
+            millis.update(TimeUnit.NANOSECONDS.toMillis(nanos));
+            micros.update(TimeUnit.NANOSECONDS.toMicros(nanos));
+        }
+
+        @Override
+        public long count() {
+            return micros.count();
+        }
+
+        /**
+         * @return the mean in milliseconds.
+         */
+        @Override
+        public double mean() {
+            return micros.mean() / 1000;
+        }
     }
 
     private static Map<String, String> tags(S3Operation s3Operation) {
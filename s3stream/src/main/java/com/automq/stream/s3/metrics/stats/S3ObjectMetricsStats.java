@@ -31,6 +31,15 @@ public class S3ObjectMetricsStats {
     public static final Counter S3_OBJECT_COUNT = S3StreamMetricsRegistry.getMetricsGroup().newCounter("s3_object_count" + Counter.SUFFIX, Collections.emptyMap());
     public static final Histogram S3_OBJECT_UPLOAD_SIZE = S3StreamMetricsRegistry.getMetricsGroup().newHistogram("s3_object_upload_size", Collections.emptyMap());
     public static final Histogram S3_OBJECT_DOWNLOAD_SIZE = S3StreamMetricsRegistry.getMetricsGroup().newHistogram("s3_object_download_size", Collections.emptyMap());
+    public static final Histogram S3_OBJECT_READ_QUEUE_TIME = S3StreamMetricsRegistry.getMetricsGroup().newHistogram("s3_object_read_queue_time", Collections.emptyMap());
+    /**
+     * The count of the range reads merged into one GET.
+     */
+    public static final Histogram S3_OBJECT_READ_MERGE_COUNT = S3StreamMetricsRegistry.getMetricsGroup().newHistogram("s3_object_read_merge_count", Collections.emptyMap());
+    /**
+     * The count of the duplicate GETs issued for the slow GETs.
+     */
+    public static final Counter S3_OBJECT_READ_HEDGE_COUNT = S3StreamMetricsRegistry.getMetricsGroup().newCounter("s3_object_read_hedge_count" + Counter.SUFFIX, Collections.emptyMap());
 
     public static Histogram getHistogram(S3ObjectStage stage) {
         return S3_OBJECT_TIME_MAP.computeIfAbsent(stage.getName(), op -> {
@@ -0,0 +1,34 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.automq.stream.s3.metrics.stats;
+
+import com.automq.stream.s3.metrics.Counter;
+import com.automq.stream.s3.metrics.Gauge;
+import com.automq.stream.s3.metrics.S3StreamMetricsRegistry;
+
+import java.util.Collections;
+
+public class StorageMetricsStats {
+    public static final Counter WAL_OBJECT_COMMIT_RETRY_COUNT = S3StreamMetricsRegistry.getMetricsGroup().newCounter("storage_wal_object_commit_retry_count" + Counter.SUFFIX, Collections.emptyMap());
+    public static final Counter WAL_OBJECT_ROLLBACK_COUNT = S3StreamMetricsRegistry.getMetricsGroup().newCounter("storage_wal_object_rollback_count" + Counter.SUFFIX, Collections.emptyMap());
+
+    public static void registerRecoverPeakDirectMemory(Gauge gauge) {
+        S3StreamMetricsRegistry.getMetricsGroup().newGauge("storage_recover_peak_direct_memory", Collections.emptyMap(), gauge);
+    }
+}
@@ -20,7 +20,10 @@ package com.automq.stream.s3.network;
 import com.automq.stream.s3.metrics.stats.NetworkMetricsStats;
 import io.netty.util.concurrent.DefaultThreadFactory;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
 import java.util.Queue;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
@@ -31,6 +34,14 @@ import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
+/**
+ * A token bucket shared by the traffic classes in {@link ThrottleStrategy}.
+ * <p>
+ * The waiting requests are served by self-clocked fair queuing: a request is tagged with the virtual finish time
+ * {@code max(virtualTime, last finish tag of its class) + size / weight}, and the request with the smallest tag is
+ * served first. So the tokens are distributed among the waiting classes in proportion to their weights, and the
+ * requests of a class are served in order.
+ */
 public class AsyncNetworkBandwidthLimiter {
     private final Lock lock = new ReentrantLock();
     private final Condition condition = lock.newCondition();
@@ -40,33 +51,47 @@ public class AsyncNetworkBandwidthLimiter {
     private final ExecutorService callbackThreadPool;
     private final Queue<BucketItem> queuedCallbacks;
     private final Type type;
+    /**
+     * The last finish tag of each class, indexed by the ordinal of {@link ThrottleStrategy}.
+     */
+    private final double[] lastFinishTags = new double[ThrottleStrategy.values().length];
+    private final int[] queuedCounts = new int[ThrottleStrategy.values().length];
+    /**
+     * The finish tag of the last served request.
+     */
+    private double virtualTime;
+    private long sequence;
 
     public AsyncNetworkBandwidthLimiter(Type type, long tokenSize, int refillIntervalMs, long maxTokenSize) {
         this.type = type;
         this.availableTokens = tokenSize;
         this.maxTokens = maxTokenSize;
-        this.queuedCallbacks = new LinkedList<>();
+        this.queuedCallbacks = new PriorityQueue<>(Comparator.comparingDouble(BucketItem::finishTag).thenComparingLong(BucketItem::sequence));
         this.refillThreadPool = Executors.newSingleThreadScheduledExecutor(new DefaultThreadFactory("refill-bucket-thread"));
         this.callbackThreadPool = Executors.newFixedThreadPool(1, new DefaultThreadFactory("callback-thread"));
         this.callbackThreadPool.execute(() -> {
             while (true) {
+                List<BucketItem> items = new ArrayList<>();
                 lock.lock();
                 try {
                     while (queuedCallbacks.isEmpty() || availableTokens <= 0) {
                         condition.await();
                     }
                     while (!queuedCallbacks.isEmpty() && availableTokens > 0) {
-                        BucketItem head = queuedCallbacks.peek();
+                        BucketItem head = queuedCallbacks.poll();
+                        virtualTime = head.finishTag;
+                        queuedCounts[head.throttleStrategy.ordinal()]--;
                         availableTokens -= head.size;
-                        logMetrics(head.size);
-                        head.cf.complete(null);
-                        queuedCallbacks.poll();
+                        logMetrics(head.throttleStrategy, head.size);
+                        items.add(head);
                     }
                 } catch (InterruptedException ignored) {
                     break;
                 } finally {
                     lock.unlock();
                 }
+                // complete out of the lock, so the callbacks do not block the new requests.
+                items.forEach(item -> item.cf.complete(null));
             }
         });
         this.refillThreadPool.scheduleAtFixedRate(() -> {
@@ -94,6 +119,19 @@ public class AsyncNetworkBandwidthLimiter {
                 lock.unlock();
             }
         });
+        for (ThrottleStrategy throttleStrategy : ThrottleStrategy.values()) {
+            if (throttleStrategy == ThrottleStrategy.BYPASS) {
+                continue;
+            }
+            NetworkMetricsStats.registerNetworkLimiterQueueSize(type, throttleStrategy, () -> {
+                lock.lock();
+                try {
+                    return queuedCounts[throttleStrategy.ordinal()];
+                } finally {
+                    lock.unlock();
+                }
+            });
+        }
     }
 
     public void shutdown() {
@@ -118,37 +156,35 @@ public class AsyncNetworkBandwidthLimiter {
         lock.lock();
         try {
             availableTokens -= size;
-            logMetrics(size);
+            logMetrics(ThrottleStrategy.BYPASS, size);
         } finally {
             lock.unlock();
         }
     }
 
     public CompletableFuture<Void> consume(ThrottleStrategy throttleStrategy, long size) {
-        CompletableFuture<Void> cf = new CompletableFuture<>();
-        switch (throttleStrategy) {
-            case BYPASS:
-                forceConsume(size);
-                cf.complete(null);
-                break;
-            case THROTTLE:
-                cf = consume(size);
-                break;
+        if (throttleStrategy == ThrottleStrategy.BYPASS) {
+            forceConsume(size);
+            return CompletableFuture.completedFuture(null);
         }
-        return cf;
+        return consume0(throttleStrategy, size);
     }
 
-    private CompletableFuture<Void> consume(long size) {
+    private CompletableFuture<Void> consume0(ThrottleStrategy throttleStrategy, long size) {
         CompletableFuture<Void> cf = new CompletableFuture<>();
         lock.lock();
         try {
             if (availableTokens < 0 || !queuedCallbacks.isEmpty()) {
-                queuedCallbacks.add(new BucketItem(size, cf));
+                int index = throttleStrategy.ordinal();
+                double finishTag = Math.max(virtualTime, lastFinishTags[index]) + (double) size / throttleStrategy.weight();
+                lastFinishTags[index] = finishTag;
+                queuedCounts[index]++;
+                queuedCallbacks.add(new BucketItem(throttleStrategy, size, cf, finishTag, sequence++));
                 condition.signalAll();
             } else {
                 availableTokens -= size;
                 cf.complete(null);
-                logMetrics(size);
+                logMetrics(throttleStrategy, size);
             }
         } finally {
             lock.unlock();
@@ -156,15 +192,16 @@ public class AsyncNetworkBandwidthLimiter {
         return cf;
     }
 
-    private void logMetrics(long size) {
+    private void logMetrics(ThrottleStrategy throttleStrategy, long size) {
         if (type == Type.INBOUND) {
             NetworkMetricsStats.NETWORK_INBOUND_USAGE.inc(size);
         } else {
             NetworkMetricsStats.NETWORK_OUTBOUND_USAGE.inc(size);
         }
+        NetworkMetricsStats.getNetworkUsageCounter(type, throttleStrategy).inc(size);
     }
 
-    record BucketItem(long size, CompletableFuture<Void> cf) {
+    record BucketItem(ThrottleStrategy throttleStrategy, long size, CompletableFuture<Void> cf, double finishTag, long sequence) {
     }
 
     public enum Type {
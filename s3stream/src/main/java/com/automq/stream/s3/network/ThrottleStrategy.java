@@ -17,7 +17,40 @@
 
 package com.automq.stream.s3.network;
 
+/**
+ * The traffic classes of {@link AsyncNetworkBandwidthLimiter}. Except {@link #BYPASS}, the tokens are distributed
+ * among the waiting classes in proportion to their weights, so a class never starves the others and a class with a
+ * higher weight waits less under contention.
+ */
 public enum ThrottleStrategy {
-    BYPASS,
-    THROTTLE
+    /**
+     * Consume the tokens without waiting.
+     */
+    BYPASS(0),
+    /**
+     * Upload the WAL objects, which the WAL trimming depends on.
+     */
+    WAL_UPLOAD(8),
+    /**
+     * The reads a fetch is waiting for.
+     */
+    TAIL_READ(4),
+    /**
+     * The background reads for the catch-up consumers, e.g. readahead.
+     */
+    CATCH_UP_READ(2),
+    /**
+     * The background traffic, e.g. compaction.
+     */
+    THROTTLE(1);
+
+    private final int weight;
+
+    ThrottleStrategy(int weight) {
+        this.weight = weight;
+    }
+
+    public int weight() {
+        return weight;
+    }
 }
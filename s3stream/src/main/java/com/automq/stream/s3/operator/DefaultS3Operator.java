@@ -28,8 +28,11 @@ import com.automq.stream.utils.FutureUtil;
 import com.automq.stream.utils.ThreadUtils;
 import com.automq.stream.utils.Threads;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
 import io.netty.buffer.Unpooled;
 import org.apache.commons.lang3.StringUtils;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import software.amazon.awssdk.auth.credentials.AnonymousCredentialsProvider;
@@ -38,6 +41,7 @@ import software.amazon.awssdk.auth.credentials.AwsCredentialsProviderChain;
 import software.amazon.awssdk.auth.credentials.InstanceProfileCredentialsProvider;
 import software.amazon.awssdk.core.async.AsyncRequestBody;
 import software.amazon.awssdk.core.async.AsyncResponseTransformer;
+import software.amazon.awssdk.core.async.ResponsePublisher;
 import software.amazon.awssdk.http.HttpStatusCode;
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.s3.S3AsyncClient;
@@ -51,6 +55,7 @@ import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
 import software.amazon.awssdk.services.s3.model.DeleteObjectsRequest;
 import software.amazon.awssdk.services.s3.model.DeletedObject;
 import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
 import software.amazon.awssdk.services.s3.model.ObjectIdentifier;
 import software.amazon.awssdk.services.s3.model.PutObjectRequest;
 import software.amazon.awssdk.services.s3.model.S3Exception;
@@ -59,37 +64,60 @@ import software.amazon.awssdk.services.s3.model.UploadPartRequest;
 import software.amazon.awssdk.services.s3.model.UploadPartResponse;
 
 import java.net.URI;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
-import java.util.HashMap;
+import java.util.EnumMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Queue;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 import static com.automq.stream.utils.FutureUtil.cause;
 
 public class DefaultS3Operator implements S3Operator {
     private static final Logger LOGGER = LoggerFactory.getLogger(DefaultS3Operator.class);
+    /**
+     * The max bytes of the inflight GETs. A GET larger than it is still allowed when there is no other inflight GET.
+     */
+    static final long MAX_INFLIGHT_READ_BYTES = 256L * 1024 * 1024;
     private final String bucket;
     private final S3AsyncClient writeS3Client;
     private final S3AsyncClient readS3Client;
     private final Semaphore inflightWriteLimiter;
     private final Semaphore inflightReadLimiter;
-    private final List<ReadTask> waitingReadTasks = new LinkedList<>();
+    /**
+     * The waiting read tasks of each caller class, the GETs are started from the queues in turn.
+     */
+    private final Map<ThrottleStrategy, Queue<ReadTask>> waitingReadTasks = new EnumMap<>(ThrottleStrategy.class);
+    private final ReadMergeWindow readMergeWindow = new ReadMergeWindow();
+    /**
+     * The bytes of the inflight GETs, guarded by {@link #waitingReadTasks}.
+     */
+    private long inflightReadBytes;
+    private int nextReadQueue;
     private final AsyncNetworkBandwidthLimiter networkInboundBandwidthLimiter;
     private final AsyncNetworkBandwidthLimiter networkOutboundBandwidthLimiter;
     private final ScheduledExecutorService scheduler = Threads.newSingleThreadScheduledExecutor(
             ThreadUtils.createThreadFactory("s3operator", true), LOGGER);
+    /**
+     * Hedge the slow GETs. The duplicate GETs are out of the inflight limits, which is fine for they are a few percent
+     * of the GETs.
+     */
+    private final ReadHedger readHedger = new ReadHedger(scheduler);
     private final ExecutorService readLimiterCallbackExecutor = Threads.newFixedThreadPool(1,
             ThreadUtils.createThreadFactory("s3-read-limiter-cb-executor-%d", true), LOGGER);
     private final ExecutorService writeLimiterCallbackExecutor = Threads.newFixedThreadPool(1,
@@ -99,6 +127,12 @@ public class DefaultS3Operator implements S3Operator {
     private final ExecutorService writeCallbackExecutor = Threads.newFixedThreadPool(1,
             ThreadUtils.createThreadFactory("s3-write-cb-executor-%d", true), LOGGER);
 
+    {
+        for (ThrottleStrategy throttleStrategy : ThrottleStrategy.values()) {
+            waitingReadTasks.put(throttleStrategy, new LinkedList<>());
+        }
+    }
+
     public DefaultS3Operator(String endpoint, String region, String bucket, boolean forcePathStyle, String accessKey, String secretKey) {
         this(endpoint, region, bucket, forcePathStyle, accessKey, secretKey, null, null, false);
     }
@@ -165,19 +199,22 @@ public class DefaultS3Operator implements S3Operator {
                 if (ex != null) {
                     cf.completeExceptionally(ex);
                 } else {
-                    rangeRead0(path, start, end, cf);
+                    rangeRead0(path, start, end, throttleStrategy, cf);
                 }
             }, readLimiterCallbackExecutor);
         } else {
-            rangeRead0(path, start, end, cf);
+            rangeRead0(path, start, end, throttleStrategy, cf);
         }
 
         return cf;
     }
 
-    private void rangeRead0(String path, long start, long end, CompletableFuture<ByteBuf> cf) {
+    private void rangeRead0(String path, long start, long end, ThrottleStrategy throttleStrategy, CompletableFuture<ByteBuf> cf) {
+        if (throttleStrategy == null) {
+            throttleStrategy = ThrottleStrategy.BYPASS;
+        }
         synchronized (waitingReadTasks) {
-            waitingReadTasks.add(new ReadTask(path, start, end, cf));
+            waitingReadTasks.get(throttleStrategy).add(new ReadTask(path, start, end, cf));
         }
     }
 
@@ -190,80 +227,135 @@ public class DefaultS3Operator implements S3Operator {
     }
 
     /**
-     * Get adjacent read tasks and merge them into one read task which read range is not exceed 16MB.
+     * Start the waiting read tasks as long as the inflight GETs are within the count and bytes limit. The read tasks
+     * are taken from the caller queues in turn, and the waiting read tasks of the same object within the
+     * {@link ReadMergeWindow} are merged into one GET.
      */
     private void tryMergeRead0() {
-        if (waitingReadTasks.isEmpty()) {
-            return;
-        }
         List<MergedReadTask> mergedReadTasks = new ArrayList<>();
         synchronized (waitingReadTasks) {
-            int readPermit = availableReadPermit();
-            while (readPermit > 0 && !waitingReadTasks.isEmpty()) {
-                Iterator<ReadTask> it = waitingReadTasks.iterator();
-                Map<String, MergedReadTask> mergingReadTasks = new HashMap<>();
-                while (it.hasNext()) {
-                    ReadTask readTask = it.next();
-                    MergedReadTask mergedReadTask = mergingReadTasks.get(readTask.path);
-                    if (mergedReadTask == null) {
-                        if (readPermit > 0) {
-                            readPermit -= 1;
-                            mergedReadTask = new MergedReadTask(readTask);
-                            mergingReadTasks.put(readTask.path, mergedReadTask);
-                            mergedReadTasks.add(mergedReadTask);
-                            it.remove();
-                        }
-                    } else {
-                        if (mergedReadTask.tryMerge(readTask)) {
-                            it.remove();
+            long maxGap = readMergeWindow.maxGap();
+            int maxSize = readMergeWindow.maxSize();
+            Queue<ReadTask> queue;
+            while ((queue = nextReadQueue()) != null) {
+                ReadTask readTask = queue.peek();
+                long readSize = readTask.end - readTask.start;
+                if (!tryAcquireReadPermit(readSize)) {
+                    break;
+                }
+                queue.poll();
+                // the merged GET should not grow beyond the remaining inflight bytes budget
+                int mergeMaxSize = (int) Math.max(readSize, Math.min(maxSize, MAX_INFLIGHT_READ_BYTES - inflightReadBytes));
+                MergedReadTask mergedReadTask = new MergedReadTask(readTask, mergeMaxSize, maxGap, readCallbackExecutor);
+                boolean merged = true;
+                // merge until no more task can be merged, the task out of the gap may be merged after the range grows.
+                while (merged) {
+                    merged = false;
+                    for (Queue<ReadTask> tasks : waitingReadTasks.values()) {
+                        Iterator<ReadTask> it = tasks.iterator();
+                        while (it.hasNext()) {
+                            if (mergedReadTask.tryMerge(it.next())) {
+                                it.remove();
+                                merged = true;
+                            }
                         }
                     }
                 }
+                inflightReadBytes += mergedReadTask.end - mergedReadTask.start;
+                mergedReadTasks.add(mergedReadTask);
             }
         }
-        mergedReadTasks.forEach(
-                mergedReadTask -> mergedRangeRead(mergedReadTask.path, mergedReadTask.start, mergedReadTask.end)
-                        .whenComplete((rst, ex) -> FutureUtil.suppress(() -> mergedReadTask.handleReadCompleted(rst, ex), LOGGER))
-        );
+        mergedReadTasks.forEach(mergedReadTask -> {
+            mergedReadTask.readTasks.forEach(readTask -> S3ObjectMetricsStats.S3_OBJECT_READ_QUEUE_TIME.update(readTask.timerUtil.elapsed()));
+            S3ObjectMetricsStats.S3_OBJECT_READ_MERGE_COUNT.update(mergedReadTask.readTasks.size());
+            CompletableFuture<Void> cf;
+            try {
+                cf = mergedRangeRead(mergedReadTask.path, mergedReadTask.start, mergedReadTask.end, mergedReadTask::onData);
+            } catch (Throwable e) {
+                cf = FutureUtil.failedFuture(e);
+            }
+            cf.whenComplete((nil, ex) -> {
+                releaseReadPermit(mergedReadTask.end - mergedReadTask.start);
+                FutureUtil.suppress(() -> mergedReadTask.handleReadCompleted(ex), LOGGER);
+            });
+        });
     }
 
-    private int availableReadPermit() {
-        // TODO: implement limiter
-        return Integer.MAX_VALUE;
+    /**
+     * Get the next non-empty caller queue in turn, should be called with {@link #waitingReadTasks} locked.
+     *
+     * @return the queue, or null if all queues are empty.
+     */
+    private Queue<ReadTask> nextReadQueue() {
+        ThrottleStrategy[] strategies = ThrottleStrategy.values();
+        for (int i = 0; i < strategies.length; i++) {
+            Queue<ReadTask> queue = waitingReadTasks.get(strategies[nextReadQueue]);
+            nextReadQueue = (nextReadQueue + 1) % strategies.length;
+            if (!queue.isEmpty()) {
+                return queue;
+            }
+        }
+        return null;
     }
 
-    CompletableFuture<ByteBuf> mergedRangeRead(String path, long start, long end) {
-        end = end - 1;
-        CompletableFuture<ByteBuf> cf = new CompletableFuture<>();
-        CompletableFuture<ByteBuf> retCf = acquireReadPermit(cf);
-        if (retCf.isDone()) {
-            return retCf;
+    /**
+     * Try to acquire a read permit for a GET, should be called with {@link #waitingReadTasks} locked.
+     */
+    private boolean tryAcquireReadPermit(long size) {
+        if (inflightReadBytes > 0 && inflightReadBytes + size > MAX_INFLIGHT_READ_BYTES) {
+            return false;
         }
-        mergedRangeRead0(path, start, end, cf);
-        return retCf;
+        return inflightReadLimiter.tryAcquire();
+    }
+
+    private void releaseReadPermit(long size) {
+        synchronized (waitingReadTasks) {
+            inflightReadBytes -= size;
+        }
+        inflightReadLimiter.release();
+    }
+
+    /**
+     * Read the range [start, end) of the object, and feed the bytes to the consumer as soon as they arrive. The next
+     * bytes are requested from the response only after the consumer returns. If the read fails in the middle, it is
+     * retried from the first byte not fed yet.
+     *
+     * @return the future which completes when all bytes are fed.
+     */
+    CompletableFuture<Void> mergedRangeRead(String path, long start, long end, Consumer<ByteBuffer> consumer) {
+        CompletableFuture<Void> cf = new CompletableFuture<>();
+        mergedRangeRead0(path, start, end, consumer, cf);
+        return cf;
     }
 
-    void mergedRangeRead0(String path, long start, long end, CompletableFuture<ByteBuf> cf) {
+    void mergedRangeRead0(String path, long start, long end, Consumer<ByteBuffer> consumer, CompletableFuture<Void> cf) {
         TimerUtil timerUtil = new TimerUtil();
-        GetObjectRequest request = GetObjectRequest.builder().bucket(bucket).key(path).range(range(start, end)).build();
-        readS3Client.getObject(request, AsyncResponseTransformer.toPublisher())
-                .thenAccept(responsePublisher -> {
+        long startNanos = System.nanoTime();
+        long size = end - start;
+        GetObjectRequest request = GetObjectRequest.builder().bucket(bucket).key(path).range(range(start, end - 1)).build();
+        BodySubscriber subscriber = new BodySubscriber(consumer);
+        readHedger.read(() -> readS3Client.getObject(request, AsyncResponseTransformer.toPublisher()), DefaultS3Operator::discard)
+                .thenCompose(responsePublisher -> {
                     OperationMetricsStats.getHistogram(S3Operation.GET_OBJECT).update(timerUtil.elapsed());
-                    long size = end - start + 1;
                     S3ObjectMetricsStats.S3_OBJECT_DOWNLOAD_SIZE.update(size);
-                    ByteBuf buf = DirectByteBufAlloc.byteBuffer((int) size, "merge_read");
-                    responsePublisher.subscribe(buf::writeBytes).thenAccept(v -> cf.complete(buf));
+                    long responseNanos = System.nanoTime();
+                    responsePublisher.subscribe(subscriber);
+                    return subscriber.cf.thenAccept(nil -> readMergeWindow.record(size, responseNanos - startNanos, System.nanoTime() - responseNanos));
                 })
-                .exceptionally(ex -> {
+                .whenComplete((nil, ex) -> {
+                    if (ex == null) {
+                        cf.complete(null);
+                        return;
+                    }
                     OperationMetricsStats.getHistogram(S3Operation.GET_OBJECT_FAIL).update(timerUtil.elapsed());
                     if (isUnrecoverable(ex)) {
                         LOGGER.error("GetObject for object {} [{}, {}) fail", path, start, end, ex);
                         cf.completeExceptionally(ex);
                     } else {
-                        LOGGER.warn("GetObject for object {} [{}, {}) fail, retry later", path, start, end, ex);
-                        scheduler.schedule(() -> mergedRangeRead0(path, start, end, cf), 100, TimeUnit.MILLISECONDS);
+                        long nextStart = start + subscriber.received;
+                        LOGGER.warn("GetObject for object {} [{}, {}) fail, retry [{}, {}) later", path, start, end, nextStart, end, ex);
+                        scheduler.schedule(() -> mergedRangeRead0(path, nextStart, end, consumer, cf), 100, TimeUnit.MILLISECONDS);
                     }
-                    return null;
                 });
     }
 
@@ -575,33 +667,6 @@ public class DefaultS3Operator implements S3Operator {
         return builder.build();
     }
 
-    /**
-     * Acquire read permit, permit will auto release when cf complete.
-     *
-     * @return retCf the retCf should be used as method return value to ensure release before following operations.
-     */
-    <T> CompletableFuture<T> acquireReadPermit(CompletableFuture<T> cf) {
-        // TODO: async acquire?
-        try {
-            inflightReadLimiter.acquire();
-            CompletableFuture<T> newCf = new CompletableFuture<>();
-            cf.whenComplete((rst, ex) -> {
-                inflightReadLimiter.release();
-                readCallbackExecutor.execute(() -> {
-                    if (ex != null) {
-                        newCf.completeExceptionally(ex);
-                    } else {
-                        newCf.complete(rst);
-                    }
-                });
-            });
-            return newCf;
-        } catch (InterruptedException e) {
-            cf.completeExceptionally(e);
-            return cf;
-        }
-    }
-
     /**
      * Acquire write permit, permit will auto release when cf complete.
      *
@@ -628,17 +693,43 @@ public class DefaultS3Operator implements S3Operator {
         }
     }
 
+    /**
+     * The read tasks merged into one GET. The bytes of the GET are copied into pooled chunks of {@link #CHUNK_SIZE} as
+     * they arrive, and a read task is completed as soon as its bytes are all received, with the slices of the chunks.
+     * A chunk is released once no waiting read task needs it, so the bytes in the gaps and the bytes handed over are not
+     * held until the whole GET is done.
+     */
     static class MergedReadTask {
-        static final int MAX_MERGE_READ_SIZE = 16 * 1024 * 1024;
+        static final int CHUNK_SIZE = 1024 * 1024;
         final String path;
         final List<ReadTask> readTasks = new ArrayList<>();
+        final int maxSize;
+        final long maxGap;
+        private final Executor callbackExecutor;
         long start;
         long end;
-
-        MergedReadTask(ReadTask readTask) {
+        /**
+         * The waiting read tasks in the order of their end, initialized when the GET starts.
+         */
+        private List<ReadTask> waitingReadTasks;
+        private final List<ByteBuf> chunks = new ArrayList<>();
+        private int releasedChunks;
+        /**
+         * The offset of the next byte to receive.
+         */
+        private long position = -1L;
+
+        MergedReadTask(ReadTask readTask, int maxSize, long maxGap) {
+            this(readTask, maxSize, maxGap, Runnable::run);
+        }
+
+        MergedReadTask(ReadTask readTask, int maxSize, long maxGap, Executor callbackExecutor) {
             this.path = readTask.path;
             this.start = readTask.start;
             this.end = readTask.end;
+            this.maxSize = maxSize;
+            this.maxGap = maxGap;
+            this.callbackExecutor = callbackExecutor;
             this.readTasks.add(readTask);
         }
 
@@ -646,9 +737,12 @@ public class DefaultS3Operator implements S3Operator {
             if (!path.equals(readTask.path)) {
                 return false;
             }
+            if (readTask.start - end > maxGap || start - readTask.end > maxGap) {
+                return false;
+            }
             long newStart = Math.min(start, readTask.start);
             long newEnd = Math.max(end, readTask.end);
-            boolean merge = newEnd - newStart <= MAX_MERGE_READ_SIZE;
+            boolean merge = newEnd - newStart <= maxSize;
             if (merge) {
                 readTasks.add(readTask);
                 start = newStart;
@@ -657,15 +751,164 @@ public class DefaultS3Operator implements S3Operator {
             return merge;
         }
 
-        void handleReadCompleted(ByteBuf rst, Throwable ex) {
-            if (ex != null) {
-                readTasks.forEach(readTask -> readTask.cf.completeExceptionally(ex));
-            } else {
-                for (ReadTask readTask : readTasks) {
-                    readTask.cf.complete(rst.retainedSlice((int) (readTask.start - start), (int) (readTask.end - readTask.start)));
+        synchronized void onData(ByteBuffer data) {
+            init();
+            while (data.hasRemaining() && position < end) {
+                int index = (int) ((position - start) / CHUNK_SIZE);
+                if (index == chunks.size()) {
+                    long chunkStart = chunkStart(index);
+                    chunks.add(DirectByteBufAlloc.byteBuffer((int) Math.min(CHUNK_SIZE, end - chunkStart), "merge_read"));
                 }
-                rst.release();
+                ByteBuf chunk = chunks.get(index);
+                int length = (int) Math.min(data.remaining(), chunkStart(index) + chunk.capacity() - position);
+                ByteBuffer slice = data.slice();
+                slice.limit(length);
+                chunk.writeBytes(slice);
+                data.position(data.position() + length);
+                position += length;
+            }
+            completeReadTasks();
+        }
+
+        synchronized void handleReadCompleted(Throwable ex) {
+            init();
+            if (ex == null && !waitingReadTasks.isEmpty()) {
+                ex = new IllegalStateException(String.format("GetObject for object %s [%d, %d) ends at %d", path, start, end, position));
+            }
+            Throwable cause = ex;
+            for (ReadTask readTask : waitingReadTasks) {
+                callbackExecutor.execute(() -> readTask.cf.completeExceptionally(cause));
+            }
+            waitingReadTasks.clear();
+            releaseChunks(Long.MAX_VALUE);
+        }
+
+        private void init() {
+            if (waitingReadTasks == null) {
+                waitingReadTasks = new LinkedList<>(readTasks);
+                waitingReadTasks.sort(Comparator.comparingLong(readTask -> readTask.end));
+                position = start;
+            }
+        }
+
+        private void completeReadTasks() {
+            Iterator<ReadTask> it = waitingReadTasks.iterator();
+            while (it.hasNext()) {
+                ReadTask readTask = it.next();
+                if (readTask.end > position) {
+                    break;
+                }
+                it.remove();
+                ByteBuf buf = slice(readTask.start, readTask.end);
+                callbackExecutor.execute(() -> readTask.cf.complete(buf));
+            }
+            long minStart = waitingReadTasks.stream().mapToLong(readTask -> readTask.start).min().orElse(Long.MAX_VALUE);
+            releaseChunks(Math.min(minStart, position));
+        }
+
+        /**
+         * Release the chunks which end before the offset.
+         */
+        private void releaseChunks(long offset) {
+            while (releasedChunks < chunks.size() && chunkStart(releasedChunks) + chunks.get(releasedChunks).capacity() <= offset) {
+                chunks.get(releasedChunks).release();
+                chunks.set(releasedChunks, null);
+                releasedChunks++;
+            }
+            if (offset == Long.MAX_VALUE && releasedChunks < chunks.size()) {
+                // the last chunk is not fully received
+                chunks.get(releasedChunks).release();
+                chunks.set(releasedChunks, null);
+                releasedChunks++;
+            }
+        }
+
+        private ByteBuf slice(long sliceStart, long sliceEnd) {
+            int first = (int) ((sliceStart - start) / CHUNK_SIZE);
+            int last = (int) ((sliceEnd - 1 - start) / CHUNK_SIZE);
+            if (first == last) {
+                return chunks.get(first).retainedSlice((int) (sliceStart - chunkStart(first)), (int) (sliceEnd - sliceStart));
+            }
+            CompositeByteBuf buf = DirectByteBufAlloc.compositeByteBuffer();
+            for (int i = first; i <= last; i++) {
+                long chunkStart = chunkStart(i);
+                long from = Math.max(sliceStart, chunkStart);
+                long to = Math.min(sliceEnd, chunkStart + CHUNK_SIZE);
+                buf.addComponent(true, chunks.get(i).retainedSlice((int) (from - chunkStart), (int) (to - from)));
+            }
+            return buf;
+        }
+
+        private long chunkStart(int index) {
+            return start + (long) index * CHUNK_SIZE;
+        }
+    }
+
+    /**
+     * Discard the response of a GET which loses the race, by cancelling the body so the connection is released.
+     */
+    private static void discard(ResponsePublisher<GetObjectResponse> responsePublisher) {
+        responsePublisher.subscribe(new Subscriber<>() {
+            @Override
+            public void onSubscribe(Subscription subscription) {
+                subscription.cancel();
+            }
+
+            @Override
+            public void onNext(ByteBuffer data) {
+            }
+
+            @Override
+            public void onError(Throwable t) {
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        });
+    }
+
+    /**
+     * Subscribe the body of a GET, and request the next bytes only after the consumer returns.
+     */
+    static class BodySubscriber implements Subscriber<ByteBuffer> {
+        final CompletableFuture<Void> cf = new CompletableFuture<>();
+        private final Consumer<ByteBuffer> consumer;
+        volatile long received;
+        private Subscription subscription;
+
+        BodySubscriber(Consumer<ByteBuffer> consumer) {
+            this.consumer = consumer;
+        }
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(1);
+        }
+
+        @Override
+        public void onNext(ByteBuffer data) {
+            try {
+                int size = data.remaining();
+                consumer.accept(data);
+                received += size;
+            } catch (Throwable e) {
+                subscription.cancel();
+                cf.completeExceptionally(e);
+                return;
             }
+            subscription.request(1);
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            cf.completeExceptionally(t);
+        }
+
+        @Override
+        public void onComplete() {
+            cf.complete(null);
         }
     }
 
@@ -674,6 +917,7 @@ public class DefaultS3Operator implements S3Operator {
         final long start;
         final long end;
         final CompletableFuture<ByteBuf> cf;
+        final TimerUtil timerUtil = new TimerUtil();
 
         public ReadTask(String path, long start, long end, CompletableFuture<ByteBuf> cf) {
             this.path = path;
@@ -24,11 +24,13 @@ import software.amazon.awssdk.services.s3.model.CompletedPart;
 
 import java.util.List;
 import java.util.Map;
+import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 
 public class MemoryS3Operator implements S3Operator {
     private final Map<String, ByteBuf> storage = new ConcurrentHashMap<>();
+    private final Map<String, Map<Integer, ByteBuf>> multipartUploads = new ConcurrentHashMap<>();
 
     @Override
     public void close() {
@@ -106,21 +108,50 @@ public class MemoryS3Operator implements S3Operator {
 
     @Override
     public CompletableFuture<String> createMultipartUpload(String path) {
-        return FutureUtil.failedFuture(new UnsupportedOperationException());
+        String uploadId = UUID.randomUUID().toString();
+        multipartUploads.put(uploadId, new ConcurrentHashMap<>());
+        return CompletableFuture.completedFuture(uploadId);
     }
 
     @Override
     public CompletableFuture<CompletedPart> uploadPart(String path, String uploadId, int partNumber, ByteBuf data, ThrottleStrategy throttleStrategy) {
-        return FutureUtil.failedFuture(new UnsupportedOperationException());
+        Map<Integer, ByteBuf> parts = multipartUploads.get(uploadId);
+        if (parts == null) {
+            data.release();
+            return FutureUtil.failedFuture(new IllegalArgumentException("upload not exist"));
+        }
+        ByteBuf buf = Unpooled.buffer(data.readableBytes());
+        buf.writeBytes(data.duplicate());
+        // Keep the same behavior as a real S3Operator
+        data.release();
+        parts.put(partNumber, buf);
+        return CompletableFuture.completedFuture(CompletedPart.builder().partNumber(partNumber).build());
     }
 
     @Override
     public CompletableFuture<CompletedPart> uploadPartCopy(String sourcePath, String path, long start, long end, String uploadId, int partNumber) {
-        return FutureUtil.failedFuture(new UnsupportedOperationException());
+        Map<Integer, ByteBuf> parts = multipartUploads.get(uploadId);
+        ByteBuf source = storage.get(sourcePath);
+        if (parts == null || source == null) {
+            return FutureUtil.failedFuture(new IllegalArgumentException("upload or object not exist"));
+        }
+        ByteBuf buf = Unpooled.buffer((int) (end - start));
+        buf.writeBytes(source.slice(source.readerIndex() + (int) start, (int) (end - start)));
+        parts.put(partNumber, buf);
+        return CompletableFuture.completedFuture(CompletedPart.builder().partNumber(partNumber).build());
     }
 
     @Override
     public CompletableFuture<Void> completeMultipartUpload(String path, String uploadId, List<CompletedPart> parts) {
-        return FutureUtil.failedFuture(new UnsupportedOperationException());
+        Map<Integer, ByteBuf> uploadedParts = multipartUploads.remove(uploadId);
+        if (uploadedParts == null) {
+            return FutureUtil.failedFuture(new IllegalArgumentException("upload not exist"));
+        }
+        ByteBuf buf = Unpooled.buffer();
+        for (CompletedPart part : parts) {
+            buf.writeBytes(uploadedParts.get(part.partNumber()));
+        }
+        storage.put(path, buf);
+        return CompletableFuture.completedFuture(null);
     }
 }
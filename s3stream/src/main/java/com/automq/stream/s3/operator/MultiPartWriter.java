@@ -27,6 +27,8 @@ import io.netty.buffer.ByteBuf;
 import io.netty.buffer.CompositeByteBuf;
 import software.amazon.awssdk.services.s3.model.CompletedPart;
 
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
@@ -34,8 +36,17 @@ import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
+/**
+ * Write an object by multipart upload.
+ * <p>
+ * The source ranges of {@link #copyWrite} are read concurrently and added to the part in the order of the calls. At most
+ * {@link #MAX_INFLIGHT_READS} range reads are running at the same time, and the reads of a part wait until the part
+ * {@link #MAX_INFLIGHT_PARTS} before it is uploaded, which bounds the memory held by a writer.
+ */
 public class MultiPartWriter implements Writer {
     private static final long MAX_MERGE_WRITE_SIZE = 16L * 1024 * 1024;
+    static final int MAX_INFLIGHT_READS = 8;
+    static final int MAX_INFLIGHT_PARTS = 4;
     private final S3Operator operator;
     private final String path;
     final CompletableFuture<String> uploadIdCf = new CompletableFuture<>();
@@ -51,6 +62,14 @@ public class MultiPartWriter implements Writer {
     private final TimerUtil timerUtil = new TimerUtil();
     private final ThrottleStrategy throttleStrategy;
     private final AtomicLong totalWriteSize = new AtomicLong(0L);
+    /**
+     * The completion of the recent range reads, the next read starts after the oldest one completes.
+     */
+    private final Deque<CompletableFuture<Void>> inflightReads = new ArrayDeque<>();
+    /**
+     * The completion of the recent parts, the reads of a new part start after the oldest one completes.
+     */
+    private final Deque<CompletableFuture<Void>> inflightParts = new ArrayDeque<>();
 
     public MultiPartWriter(S3Operator operator, String path, long minPartSize, ThrottleStrategy throttleStrategy) {
         this.operator = operator;
@@ -169,10 +188,12 @@ public class MultiPartWriter implements Writer {
         private final CompletableFuture<CompletedPart> partCf = new CompletableFuture<>();
         private long size;
         private final ThrottleStrategy throttleStrategy;
+        private final CompletableFuture<Void> readGate;
 
         public ObjectPart(ThrottleStrategy throttleStrategy) {
             this.throttleStrategy = throttleStrategy;
             parts.add(partCf);
+            readGate = acquireSlot(inflightParts, MAX_INFLIGHT_PARTS, partCf);
         }
 
         public void write(ByteBuf data) {
@@ -194,15 +215,31 @@ public class MultiPartWriter implements Writer {
 
         public void readAndWrite(String sourcePath, long start, long end) {
             size += end - start;
-            // TODO: parallel read and sequence add.
-            this.lastRangeReadCf = lastRangeReadCf
-                    .thenCompose(nil -> operator.rangeRead(sourcePath, start, end, throttleStrategy))
-                    .thenAccept(buf -> partBuf.addComponent(true, buf));
+            CompletableFuture<ByteBuf> readCf = new CompletableFuture<>();
+            CompletableFuture<Void> readSlot = acquireSlot(inflightReads, MAX_INFLIGHT_READS, readCf);
+            CompletableFuture.allOf(readGate, readSlot).whenComplete((nil, ex) ->
+                    FutureUtil.propagate(operator.rangeRead(sourcePath, start, end, throttleStrategy), readCf));
+            // the reads run concurrently, but are added to the part in order.
+            CompletableFuture<Void> prevCf = this.lastRangeReadCf;
+            CompletableFuture<Void> cf = new CompletableFuture<>();
+            prevCf.whenComplete((nil, prevEx) -> readCf.whenComplete((buf, ex) -> {
+                if (prevEx != null || ex != null) {
+                    if (buf != null) {
+                        buf.release();
+                    }
+                    cf.completeExceptionally(prevEx != null ? prevEx : ex);
+                } else {
+                    partBuf.addComponent(true, buf);
+                    cf.complete(null);
+                }
+            }));
+            this.lastRangeReadCf = cf;
         }
 
         public void upload() {
             this.lastRangeReadCf.whenComplete((nil, ex) -> {
                 if (ex != null) {
+                    partBuf.release();
                     partCf.completeExceptionally(ex);
                 } else {
                     upload0();
@@ -225,6 +262,17 @@ public class MultiPartWriter implements Writer {
         }
     }
 
+    /**
+     * Take a slot from the window of the recent operations, and put the completion of the new operation into it.
+     *
+     * @return the future which completes when the oldest operation in the window completes, no matter it succeeds or not.
+     */
+    private static CompletableFuture<Void> acquireSlot(Deque<CompletableFuture<Void>> window, int size, CompletableFuture<?> operationCf) {
+        CompletableFuture<Void> slot = window.size() >= size ? window.poll() : CompletableFuture.completedFuture(null);
+        window.add(operationCf.handle((nil, ex) -> null));
+        return slot;
+    }
+
     class CopyObjectPart {
         private final CompletableFuture<CompletedPart> partCf = new CompletableFuture<>();
 
@@ -0,0 +1,187 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.automq.stream.s3.operator;
+
+import com.automq.stream.s3.metrics.stats.S3ObjectMetricsStats;
+import com.automq.stream.utils.FutureUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Hedge the reads against the tail latency of the object storage: if a read does not respond within the
+ * {@link #HEDGE_PERCENTILE} of the recent response latencies, a duplicate read is issued, and the first response wins.
+ * <p>
+ * The duplicate reads are limited by a budget: each read earns {@link #HEDGE_BUDGET_RATIO} credit and each duplicate
+ * read costs 1, so at most 5% extra reads are issued in the long run, with a burst up to {@link #MAX_HEDGE_CREDITS}.
+ * No read is hedged before {@link #MIN_SAMPLES} latencies are observed.
+ */
+class ReadHedger {
+    static final double HEDGE_PERCENTILE = 0.95;
+    static final double HEDGE_BUDGET_RATIO = 0.05;
+    static final double MAX_HEDGE_CREDITS = 10;
+    static final int MIN_SAMPLES = 100;
+    static final long MIN_HEDGE_DELAY_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReadHedger.class);
+    private static final int SAMPLE_WINDOW = 1024;
+    /**
+     * The percentile is recalculated every {@code PERCENTILE_UPDATE_INTERVAL} samples rather than every sample.
+     */
+    private static final int PERCENTILE_UPDATE_INTERVAL = 64;
+    private final ScheduledExecutorService scheduler;
+    private final LongSupplier nanoTime;
+    private final long[] samples = new long[SAMPLE_WINDOW];
+    private long sampleCount;
+    private double credits;
+    /**
+     * The delay before a read is hedged, 0 means the reads are not hedged.
+     */
+    private volatile long hedgeDelayNanos;
+
+    ReadHedger(ScheduledExecutorService scheduler) {
+        this(scheduler, System::nanoTime);
+    }
+
+    /**
+     * @param nanoTime the clock of the response latencies, which should be consistent with the scheduler.
+     */
+    ReadHedger(ScheduledExecutorService scheduler, LongSupplier nanoTime) {
+        this.scheduler = scheduler;
+        this.nanoTime = nanoTime;
+    }
+
+    /**
+     * Issue the read, and hedge it if it is slow.
+     *
+     * @param read    issue a read, which may be called twice.
+     * @param discard release the response which loses the race.
+     * @return the future of the first successful response, or the last failure if all reads fail.
+     */
+    <T> CompletableFuture<T> read(Supplier<CompletableFuture<T>> read, Consumer<T> discard) {
+        Race<T> race = new Race<>(discard);
+        long delayNanos = hedgeDelayNanos;
+        synchronized (this) {
+            credits = Math.min(MAX_HEDGE_CREDITS, credits + HEDGE_BUDGET_RATIO);
+        }
+        race.start(read);
+        if (delayNanos > 0 && !race.cf.isDone()) {
+            scheduler.schedule(() -> {
+                if (!race.cf.isDone() && tryAcquireCredit()) {
+                    S3ObjectMetricsStats.S3_OBJECT_READ_HEDGE_COUNT.inc();
+                    race.start(read);
+                }
+            }, delayNanos, TimeUnit.NANOSECONDS);
+        }
+        return race.cf;
+    }
+
+    long hedgeDelayNanos() {
+        return hedgeDelayNanos;
+    }
+
+    private synchronized boolean tryAcquireCredit() {
+        if (credits < 1) {
+            return false;
+        }
+        credits -= 1;
+        return true;
+    }
+
+    synchronized void record(long latencyNanos) {
+        samples[(int) (sampleCount % SAMPLE_WINDOW)] = latencyNanos;
+        sampleCount++;
+        if (sampleCount >= MIN_SAMPLES && sampleCount % PERCENTILE_UPDATE_INTERVAL == 0) {
+            int size = (int) Math.min(sampleCount, SAMPLE_WINDOW);
+            long[] sorted = Arrays.copyOf(samples, size);
+            Arrays.sort(sorted);
+            hedgeDelayNanos = Math.max(MIN_HEDGE_DELAY_NANOS, sorted[(int) (size * HEDGE_PERCENTILE)]);
+        }
+    }
+
+    class Race<T> {
+        final CompletableFuture<T> cf = new CompletableFuture<>();
+        private final Consumer<T> discard;
+        private final List<CompletableFuture<T>> attempts = new ArrayList<>(2);
+        private int pending;
+        /**
+         * Whether the race is decided, the responses after it are discarded.
+         */
+        private boolean decided;
+
+        Race(Consumer<T> discard) {
+            this.discard = discard;
+        }
+
+        void start(Supplier<CompletableFuture<T>> read) {
+            long startNanos = nanoTime.getAsLong();
+            CompletableFuture<T> attempt;
+            try {
+                attempt = read.get();
+            } catch (Throwable e) {
+                attempt = FutureUtil.failedFuture(e);
+            }
+            synchronized (this) {
+                attempts.add(attempt);
+                pending++;
+            }
+            CompletableFuture<T> finalAttempt = attempt;
+            attempt.whenComplete((value, ex) -> onComplete(finalAttempt, value, ex, startNanos));
+        }
+
+        private void onComplete(CompletableFuture<T> attempt, T value, Throwable ex, long startNanos) {
+            boolean won = false;
+            boolean failed = false;
+            List<CompletableFuture<T>> losers = Collections.emptyList();
+            synchronized (this) {
+                pending--;
+                if (ex == null) {
+                    won = !decided;
+                    if (won) {
+                        losers = new ArrayList<>(attempts);
+                        losers.remove(attempt);
+                    }
+                } else {
+                    failed = pending == 0 && !decided;
+                }
+                decided |= won || failed;
+            }
+            if (ex == null) {
+                record(nanoTime.getAsLong() - startNanos);
+                if (won) {
+                    cf.complete(value);
+                    // cancel the slower read, which aborts the request.
+                    losers.forEach(loser -> loser.cancel(true));
+                } else {
+                    FutureUtil.suppress(() -> discard.accept(value), LOGGER);
+                }
+            } else if (failed) {
+                cf.completeExceptionally(ex);
+            }
+        }
+    }
+}
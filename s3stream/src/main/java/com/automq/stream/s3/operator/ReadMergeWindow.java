@@ -0,0 +1,88 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.automq.stream.s3.operator;
+
+/**
+ * Decide how the adjacent range reads of an object are merged into one GET, by the latency and throughput observed
+ * per GET.
+ * <ul>
+ *     <li>Gap: reading the bytes between two ranges is cheaper than a separate GET as long as the bytes can be
+ *     transferred in the time to the first byte of a GET, so the max gap is throughput * latency.</li>
+ *     <li>Size: a merged read completes its ranges only when the whole read is done, so its transfer time is limited
+ *     to {@link #MAX_TRANSFER_LATENCY_RATIO} times of the latency to the first byte.</li>
+ * </ul>
+ * Before enough GETs are observed, the window is {@link #MAX_MERGE_READ_SIZE} for both.
+ */
+class ReadMergeWindow {
+    static final int MAX_MERGE_READ_SIZE = 16 * 1024 * 1024;
+    static final int MIN_MERGE_READ_SIZE = 1024 * 1024;
+    static final int MAX_TRANSFER_LATENCY_RATIO = 4;
+    /**
+     * The throughput of the smaller GETs is dominated by the latency, so they are not sampled.
+     */
+    static final int MIN_THROUGHPUT_SAMPLE_SIZE = 256 * 1024;
+    private static final double EWMA_ALPHA = 0.2;
+    /**
+     * EWMA of the latency to the first byte in seconds, 0 means unknown.
+     */
+    private double latency;
+    /**
+     * EWMA of the transfer throughput in bytes per second, 0 means unknown.
+     */
+    private double throughput;
+    private volatile long maxGap = MAX_MERGE_READ_SIZE;
+    private volatile int maxSize = MAX_MERGE_READ_SIZE;
+
+    /**
+     * Record a completed GET.
+     *
+     * @param size          the size of the GET
+     * @param latencyNanos  the time from the request to the response
+     * @param transferNanos the time from the response to the last byte
+     */
+    synchronized void record(long size, long latencyNanos, long transferNanos) {
+        latency = ewma(latency, latencyNanos / 1e9);
+        if (size >= MIN_THROUGHPUT_SAMPLE_SIZE && transferNanos > 0) {
+            throughput = ewma(throughput, size * 1e9 / transferNanos);
+        }
+        if (latency <= 0 || throughput <= 0) {
+            return;
+        }
+        double bytesPerLatency = throughput * latency;
+        maxGap = (long) Math.min(bytesPerLatency, MAX_MERGE_READ_SIZE);
+        maxSize = (int) Math.max(MIN_MERGE_READ_SIZE, Math.min(bytesPerLatency * MAX_TRANSFER_LATENCY_RATIO, MAX_MERGE_READ_SIZE));
+    }
+
+    /**
+     * The max bytes between two ranges merged into one GET.
+     */
+    long maxGap() {
+        return maxGap;
+    }
+
+    /**
+     * The max size of a merged GET.
+     */
+    int maxSize() {
+        return maxSize;
+    }
+
+    private static double ewma(double current, double sample) {
+        return current <= 0 ? sample : current * (1 - EWMA_ALPHA) + sample * EWMA_ALPHA;
+    }
+}
@@ -48,6 +48,13 @@ public interface Block {
      */
     long addRecord(long recordSize, Function<Long, ByteBuf> recordSupplier, CompletableFuture<AppendResult.CallbackResult> future);
 
+    /**
+     * Seal this block, after which no record can be added to it and its {@link #size()} will not change.
+     * It is used for blocks supporting adding records concurrently, and does nothing by default.
+     */
+    default void seal() {
+    }
+
     /**
      * Futures of all records in this block.
      */
@@ -23,6 +23,7 @@ import com.automq.stream.s3.metrics.TimerUtil;
 import com.automq.stream.s3.metrics.operations.S3Operation;
 import com.automq.stream.s3.metrics.stats.OperationMetricsStats;
 import com.automq.stream.s3.wal.util.WALChannel;
+import com.automq.stream.s3.wal.util.WALPrefetchReader;
 import com.automq.stream.s3.wal.util.WALUtil;
 import com.automq.stream.utils.ThreadUtils;
 import com.automq.stream.utils.Threads;
@@ -33,10 +34,15 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.Queue;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -134,12 +140,26 @@ public class BlockWALService implements WriteAheadLog {
     public static final int WAL_HEADER_COUNT = 2;
     public static final int WAL_HEADER_CAPACITY = WALUtil.BLOCK_SIZE;
     public static final int WAL_HEADER_TOTAL_CAPACITY = WAL_HEADER_CAPACITY * WAL_HEADER_COUNT;
+    /**
+     * The size of each segment read ahead in recovery.
+     */
+    private static final int RECOVER_SEGMENT_SIZE = 4 * 1024 * 1024;
+    /**
+     * The max count and size of records whose body CRCs are verified in parallel in recovery.
+     */
+    private static final int RECOVER_BATCH_COUNT = 256;
+    private static final int RECOVER_BATCH_SIZE = 8 * 1024 * 1024;
     private static final Logger LOGGER = LoggerFactory.getLogger(BlockWALService.class);
     private final AtomicBoolean readyToServe = new AtomicBoolean(false);
     private final AtomicLong writeHeaderRoundTimes = new AtomicLong(0);
     private int walHeaderFlushIntervalSeconds;
     private long initialWindowSize;
+    private int recoverThreadNums;
     private ScheduledExecutorService flushWALHeaderScheduler;
+    /**
+     * Executor to read ahead the WAL and verify records in parallel in recovery.
+     */
+    private ExecutorService recoverExecutor;
     private WALChannel walChannel;
     private SlidingWindowService slidingWindowService;
     private WALHeaderCoreData walHeaderCoreData;
@@ -199,31 +219,42 @@ public class BlockWALService implements WriteAheadLog {
      *
      * @throws ReadRecordException if the record is not found or the record is corrupted
      */
-    private ByteBuf readRecord(long recordSectionCapacity, long recoverStartOffset) throws ReadRecordException {
+    private ByteBuf readRecord(WALPrefetchReader reader, long recordSectionCapacity, long recoverStartOffset) throws ReadRecordException {
+        SlidingWindowService.RecordHeaderCoreData readRecordHeader = readRecordHeader(reader, recordSectionCapacity, recoverStartOffset);
+        return readRecordBody(reader, recordSectionCapacity, recoverStartOffset, readRecordHeader, true);
+    }
+
+    private SlidingWindowService.RecordHeaderCoreData readRecordHeader(WALPrefetchReader reader, long recordSectionCapacity, long recoverStartOffset) throws ReadRecordException {
         final ByteBuf recordHeader = DirectByteBufAlloc.byteBuffer(RECORD_HEADER_SIZE);
-        SlidingWindowService.RecordHeaderCoreData readRecordHeader;
         try {
-            readRecordHeader = parseRecordHeader(recordSectionCapacity, recoverStartOffset, recordHeader);
+            return parseRecordHeader(reader, recordSectionCapacity, recoverStartOffset, recordHeader);
         } finally {
             recordHeader.release();
         }
+    }
 
+    /**
+     * Read the record body. The returned body should be released by the caller.
+     *
+     * @param verifyCRC whether to verify the CRC of the record body
+     */
+    private ByteBuf readRecordBody(WALPrefetchReader reader, long recordSectionCapacity, long recoverStartOffset,
+                                   SlidingWindowService.RecordHeaderCoreData readRecordHeader, boolean verifyCRC) throws ReadRecordException {
         int recordBodyLength = readRecordHeader.getRecordBodyLength();
         ByteBuf recordBody = DirectByteBufAlloc.byteBuffer(recordBodyLength);
         try {
-            parseRecordBody(recordSectionCapacity, recoverStartOffset, readRecordHeader, recordBody);
+            parseRecordBody(reader, recordSectionCapacity, recoverStartOffset, readRecordHeader, recordBody, verifyCRC);
         } catch (ReadRecordException e) {
             recordBody.release();
             throw e;
         }
-
         return recordBody;
     }
 
-    private SlidingWindowService.RecordHeaderCoreData parseRecordHeader(long recordSectionCapacity, long recoverStartOffset, ByteBuf recordHeader) throws ReadRecordException {
+    private SlidingWindowService.RecordHeaderCoreData parseRecordHeader(WALPrefetchReader reader, long recordSectionCapacity, long recoverStartOffset, ByteBuf recordHeader) throws ReadRecordException {
         final long position = WALUtil.recordOffsetToPosition(recoverStartOffset, recordSectionCapacity, WAL_HEADER_TOTAL_CAPACITY);
         try {
-            int read = walChannel.read(recordHeader, position);
+            int read = reader.read(recordHeader, position);
             if (read != RECORD_HEADER_SIZE) {
                 throw new ReadRecordException(
                         WALUtil.alignNextBlock(recoverStartOffset),
@@ -273,11 +304,12 @@ public class BlockWALService implements WriteAheadLog {
         return readRecordHeader;
     }
 
-    private void parseRecordBody(long recordSectionCapacity, long recoverStartOffset, SlidingWindowService.RecordHeaderCoreData readRecordHeader, ByteBuf recordBody) throws ReadRecordException {
+    private void parseRecordBody(WALPrefetchReader reader, long recordSectionCapacity, long recoverStartOffset, SlidingWindowService.RecordHeaderCoreData readRecordHeader,
+                                 ByteBuf recordBody, boolean verifyCRC) throws ReadRecordException {
         long recordBodyOffset = readRecordHeader.getRecordBodyOffset();
         int recordBodyLength = readRecordHeader.getRecordBodyLength();
         try {
-            int read = walChannel.read(recordBody, WALUtil.recordOffsetToPosition(recordBodyOffset, recordSectionCapacity, WAL_HEADER_TOTAL_CAPACITY));
+            int read = reader.read(recordBody, WALUtil.recordOffsetToPosition(recordBodyOffset, recordSectionCapacity, WAL_HEADER_TOTAL_CAPACITY));
             if (read != recordBodyLength) {
                 throw new ReadRecordException(
                         WALUtil.alignNextBlock(recoverStartOffset + RECORD_HEADER_SIZE + recordBodyLength),
@@ -292,6 +324,9 @@ public class BlockWALService implements WriteAheadLog {
             );
         }
 
+        if (!verifyCRC) {
+            return;
+        }
         int recordBodyCRC = readRecordHeader.getRecordBodyCRC();
         int calculatedRecordBodyCRC = WALUtil.crc32(recordBody);
         if (recordBodyCRC != calculatedRecordBodyCRC) {
@@ -320,21 +355,23 @@ public class BlockWALService implements WriteAheadLog {
         long nextRecoverStartOffset;
         long meetIllegalRecordTimes = 0;
         LOGGER.info("start to recover from ungraceful shutdown, recoverStartOffset: {}, recoverRemainingBytes: {}", recoverStartOffset, recoverRemainingBytes);
-        do {
-            try {
-                ByteBuf body = readRecord(recordSectionCapacity, recoverStartOffset);
-                nextRecoverStartOffset = recoverStartOffset + RECORD_HEADER_SIZE + body.readableBytes();
-                body.release();
-            } catch (ReadRecordException e) {
-                nextRecoverStartOffset = e.getJumpNextRecoverOffset();
-                LOGGER.debug("failed to read record, try next, recoverStartOffset: {}, meetIllegalRecordTimes: {}, recoverRemainingBytes: {}, error: {}",
-                        recoverStartOffset, meetIllegalRecordTimes, recoverRemainingBytes, e.getMessage());
-                meetIllegalRecordTimes++;
-            }
+        try (WALPrefetchReader reader = newPrefetchReader()) {
+            do {
+                try {
+                    ByteBuf body = readRecord(reader, recordSectionCapacity, recoverStartOffset);
+                    nextRecoverStartOffset = recoverStartOffset + RECORD_HEADER_SIZE + body.readableBytes();
+                    body.release();
+                } catch (ReadRecordException e) {
+                    nextRecoverStartOffset = e.getJumpNextRecoverOffset();
+                    LOGGER.debug("failed to read record, try next, recoverStartOffset: {}, meetIllegalRecordTimes: {}, recoverRemainingBytes: {}, error: {}",
+                            recoverStartOffset, meetIllegalRecordTimes, recoverRemainingBytes, e.getMessage());
+                    meetIllegalRecordTimes++;
+                }
 
-            recoverRemainingBytes -= nextRecoverStartOffset - recoverStartOffset;
-            recoverStartOffset = nextRecoverStartOffset;
-        } while (recoverRemainingBytes > 0);
+                recoverRemainingBytes -= nextRecoverStartOffset - recoverStartOffset;
+                recoverStartOffset = nextRecoverStartOffset;
+            } while (recoverRemainingBytes > 0);
+        }
         long windowInitOffset = WALUtil.alignLargeByBlockSize(nextRecoverStartOffset);
         paramWALHeader.setSlidingWindowStartOffset(windowInitOffset).setSlidingWindowNextWriteOffset(windowInitOffset);
 
@@ -342,6 +379,10 @@ public class BlockWALService implements WriteAheadLog {
         return paramWALHeader;
     }
 
+    private WALPrefetchReader newPrefetchReader() {
+        return new WALPrefetchReader(walChannel, RECOVER_SEGMENT_SIZE, recoverThreadNums, recoverExecutor);
+    }
+
     private void recoverWALHeader() throws IOException {
         WALHeaderCoreData walHeaderCoreDataAvailable = null;
 
@@ -385,6 +426,8 @@ public class BlockWALService implements WriteAheadLog {
         StopWatch stopWatch = StopWatch.createStarted();
 
         walChannel.open();
+        recoverExecutor = Threads.newFixedThreadPool(recoverThreadNums,
+                ThreadUtils.createThreadFactory("block-wal-recover-thread-%d", true), LOGGER);
         recoverWALHeader();
         startFlushWALHeaderScheduler();
         slidingWindowService.start();
@@ -408,6 +451,8 @@ public class BlockWALService implements WriteAheadLog {
             flushWALHeaderScheduler.shutdownNow();
         }
 
+        recoverExecutor.shutdownNow();
+
         boolean gracefulShutdown = slidingWindowService.shutdown(1, TimeUnit.DAYS);
         try {
             flushWALHeader(
@@ -437,6 +482,9 @@ public class BlockWALService implements WriteAheadLog {
     }
 
     public AppendResult append0(ByteBuf body, int crc) throws OverCapacityException {
+        if (slidingWindowService.isLockFreeAppend()) {
+            return appendLockFree(body, crc);
+        }
         TimerUtil timerUtil = new TimerUtil();
         checkReadyToServe();
 
@@ -461,11 +509,58 @@ public class BlockWALService implements WriteAheadLog {
 
         final AppendResult appendResult = new AppendResultImpl(expectedWriteOffset, appendResultFuture);
         appendResult.future().whenComplete((nil, ex) -> {
-            OperationMetricsStats.getHistogram(S3Operation.APPEND_STORAGE_WAL).update(timerUtil.elapsed());
+            OperationMetricsStats.recordTimeNanos(S3Operation.APPEND_STORAGE_WAL, timerUtil.elapsedAs(TimeUnit.NANOSECONDS));
         });
         return appendResult;
     }
 
+    /**
+     * Append a record without locking in most cases. The lock is only taken when the current block is sealed or full.
+     * Records in the same block share the same future, and the latency is recorded once per block.
+     */
+    private AppendResult appendLockFree(ByteBuf body, int crc) throws OverCapacityException {
+        checkReadyToServe();
+
+        Block current = slidingWindowService.getCurrentBlock();
+        if (current instanceof ConcurrentBlockImpl) {
+            ConcurrentBlockImpl block = (ConcurrentBlockImpl) current;
+            long expectedWriteOffset = block.tryAppend(body, crc);
+            if (expectedWriteOffset >= 0) {
+                slidingWindowService.tryWriteBlock();
+                return new AppendResultImpl(expectedWriteOffset, block.future());
+            }
+        }
+
+        final long recordSize = RECORD_HEADER_SIZE + body.readableBytes();
+        ConcurrentBlockImpl block;
+        long expectedWriteOffset;
+
+        Lock lock = slidingWindowService.getBlockLock();
+        lock.lock();
+        try {
+            block = (ConcurrentBlockImpl) slidingWindowService.getCurrentBlockLocked();
+            expectedWriteOffset = block.tryAppend(body, crc);
+            while (expectedWriteOffset < 0) {
+                // this block is full, create a new one
+                block = (ConcurrentBlockImpl) slidingWindowService.sealAndNewBlockLocked(block, recordSize, walHeaderCoreData.getFlushedTrimOffset(), walHeaderCoreData.getCapacity() - WAL_HEADER_TOTAL_CAPACITY);
+                final long createTimeNanos = block.createTimeNanos();
+                block.future().whenComplete((nil, ex) -> {
+                    OperationMetricsStats.recordTimeNanos(S3Operation.APPEND_STORAGE_WAL, System.nanoTime() - createTimeNanos);
+                });
+                expectedWriteOffset = block.tryAppend(body, crc);
+                if (expectedWriteOffset < 0 && block.isEmpty()) {
+                    // the record cannot fit in a new block
+                    throw new OverCapacityException(String.format("failed to append record: record size %d exceeds the max block size", recordSize));
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        slidingWindowService.tryWriteBlock();
+
+        return new AppendResultImpl(expectedWriteOffset, block.future());
+    }
+
     private ByteBuf recordHeader(ByteBuf body, int crc, long start) {
         return new SlidingWindowService.RecordHeaderCoreData()
                 .setMagicCode(RECORD_HEADER_MAGIC_CODE)
@@ -707,6 +802,8 @@ public class BlockWALService implements WriteAheadLog {
         private long slidingWindowUpperLimit = 512 << 20;
         private long slidingWindowScaleUnit = 4 << 20;
         private long blockSoftLimit = 1 << 17; // 128KiB
+        private boolean lockFreeAppend = false;
+        private boolean batchWrite = false;
 
         BlockWALServiceBuilder(String blockDevicePath, long capacity) {
             this.blockDevicePath = blockDevicePath;
@@ -720,7 +817,9 @@ public class BlockWALService implements WriteAheadLog {
                     .slidingWindowInitialSize(config.s3WALWindowInitial())
                     .slidingWindowScaleUnit(config.s3WALWindowIncrement())
                     .slidingWindowUpperLimit(config.s3WALWindowMax())
-                    .blockSoftLimit(config.s3WALBlockSoftLimit());
+                    .blockSoftLimit(config.s3WALBlockSoftLimit())
+                    .lockFreeAppend(config.s3WALLockFreeAppend())
+                    .batchWrite(config.s3WALBatchWrite());
         }
 
         public BlockWALServiceBuilder flushHeaderIntervalSeconds(int flushHeaderIntervalSeconds) {
@@ -753,6 +852,16 @@ public class BlockWALService implements WriteAheadLog {
             return this;
         }
 
+        public BlockWALServiceBuilder lockFreeAppend(boolean lockFreeAppend) {
+            this.lockFreeAppend = lockFreeAppend;
+            return this;
+        }
+
+        public BlockWALServiceBuilder batchWrite(boolean batchWrite) {
+            this.batchWrite = batchWrite;
+            return this;
+        }
+
         public BlockWALService build() {
             BlockWALService blockWALService = new BlockWALService();
 
@@ -765,8 +874,11 @@ public class BlockWALService implements WriteAheadLog {
 
             blockWALService.walHeaderFlushIntervalSeconds = flushHeaderIntervalSeconds;
             blockWALService.initialWindowSize = slidingWindowInitialSize;
+            blockWALService.recoverThreadNums = ioThreadNums;
 
-            blockWALService.walChannel = WALChannel.builder(blockDevicePath, blockDeviceCapacityWant).build();
+            blockWALService.walChannel = WALChannel.builder(blockDevicePath, blockDeviceCapacityWant)
+                    .batchWrite(batchWrite)
+                    .build();
 
             blockWALService.slidingWindowService = new SlidingWindowService(
                     blockWALService.walChannel,
@@ -774,6 +886,7 @@ public class BlockWALService implements WriteAheadLog {
                     slidingWindowUpperLimit,
                     slidingWindowScaleUnit,
                     blockSoftLimit,
+                    lockFreeAppend,
                     blockWALService.flusher()
             );
 
@@ -793,6 +906,8 @@ public class BlockWALService implements WriteAheadLog {
                     + ", slidingWindowUpperLimit=" + slidingWindowUpperLimit
                     + ", slidingWindowScaleUnit=" + slidingWindowScaleUnit
                     + ", blockSoftLimit=" + blockSoftLimit
+                    + ", lockFreeAppend=" + lockFreeAppend
+                    + ", batchWrite=" + batchWrite
                     + '}';
         }
     }
@@ -835,7 +950,17 @@ public class BlockWALService implements WriteAheadLog {
         }
     }
 
+    /**
+     * Iterator of the records in the WAL.
+     * <p>
+     * Records are read ahead by a {@link WALPrefetchReader}, and read in batches, in which the CRCs of record bodies
+     * are verified in parallel. If a record in a batch is corrupted, the records after it in the same batch are
+     * dropped, and the next batch starts from the next block of the corrupted record, the same as reading records
+     * one by one.
+     */
     class RecoverIterator implements Iterator<RecoverResult> {
+        private final WALPrefetchReader reader = newPrefetchReader();
+        private final Queue<RecoverResult> batch = new LinkedList<>();
         private long nextRecoverOffset;
         private long skipRecordAtOffset = -1;
         private RecoverResult next;
@@ -874,23 +999,61 @@ public class BlockWALService implements WriteAheadLog {
             if (next != null) {
                 return true;
             }
+            if (batch.isEmpty()) {
+                do {
+                    readBatch();
+                } while (batch.isEmpty() && nextRecoverOffset < walHeaderCoreData.getSlidingWindowNextWriteOffset());
+            }
+            next = batch.poll();
+            if (next == null) {
+                reader.close();
+                return false;
+            }
+            return true;
+        }
+
+        /**
+         * Read a batch of records into {@link #batch}, and move {@link #nextRecoverOffset} forward.
+         */
+        private void readBatch() {
+            final long recordSectionCapacity = walHeaderCoreData.recordSectionCapacity();
+            final long nextWriteOffset = walHeaderCoreData.getSlidingWindowNextWriteOffset();
+            List<RecoverResultImpl> records = new ArrayList<>();
+            List<CompletableFuture<Boolean>> verifyCfs = new ArrayList<>();
+            long offset = nextRecoverOffset;
+            long batchSize = 0;
             do {
                 try {
-                    boolean skip = nextRecoverOffset == skipRecordAtOffset;
-                    ByteBuf nextRecordBody = readRecord(walHeaderCoreData.recordSectionCapacity(), nextRecoverOffset);
-                    RecoverResultImpl recoverResult = new RecoverResultImpl(nextRecordBody, nextRecoverOffset);
-                    nextRecoverOffset += RECORD_HEADER_SIZE + nextRecordBody.readableBytes();
-                    if (skip) {
-                        nextRecordBody.release();
-                        continue;
-                    }
-                    next = recoverResult;
-                    return true;
+                    SlidingWindowService.RecordHeaderCoreData header = readRecordHeader(reader, recordSectionCapacity, offset);
+                    ByteBuf body = readRecordBody(reader, recordSectionCapacity, offset, header, false);
+                    records.add(new RecoverResultImpl(body, offset));
+                    verifyCfs.add(CompletableFuture.supplyAsync(() -> WALUtil.crc32(body) == header.getRecordBodyCRC(), recoverExecutor));
+                    offset += RECORD_HEADER_SIZE + body.readableBytes();
+                    batchSize += body.readableBytes();
                 } catch (ReadRecordException e) {
-                    nextRecoverOffset = e.getJumpNextRecoverOffset();
+                    offset = e.getJumpNextRecoverOffset();
+                    break;
                 }
-            } while (nextRecoverOffset < walHeaderCoreData.getSlidingWindowNextWriteOffset());
-            return false;
+            } while (offset < nextWriteOffset && records.size() < RECOVER_BATCH_COUNT && batchSize < RECOVER_BATCH_SIZE);
+
+            for (int i = 0; i < records.size(); i++) {
+                RecoverResultImpl record = records.get(i);
+                if (!verifyCfs.get(i).join()) {
+                    LOGGER.debug("record body crc mismatch, recoverStartOffset: {}", record.recordOffset());
+                    // drop this record and the following ones, and continue from the next block
+                    offset = WALUtil.alignNextBlock(record.recordOffset() + RECORD_HEADER_SIZE + record.record().readableBytes());
+                    // the crc of the following records may be still calculating, so release them after it is done
+                    CompletableFuture.allOf(verifyCfs.subList(i + 1, verifyCfs.size()).toArray(new CompletableFuture[0])).join();
+                    records.subList(i, records.size()).forEach(r -> r.record().release());
+                    break;
+                }
+                if (record.recordOffset() == skipRecordAtOffset) {
+                    record.record().release();
+                    continue;
+                }
+                batch.add(record);
+            }
+            nextRecoverOffset = offset;
         }
     }
 }
@@ -0,0 +1,251 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.automq.stream.s3.wal;
+
+import com.automq.stream.s3.DirectByteBufAlloc;
+import com.automq.stream.s3.wal.util.WALUtil;
+import io.netty.buffer.ByteBuf;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.zip.CRC32;
+
+import static com.automq.stream.s3.wal.BlockWALService.RECORD_HEADER_MAGIC_CODE;
+import static com.automq.stream.s3.wal.BlockWALService.RECORD_HEADER_SIZE;
+
+/**
+ * A block which supports appending records concurrently without any lock.
+ * <p>
+ * The space of a record is reserved by a CAS on {@link #state}, and then the record header and body are copied into
+ * the pooled buffer of this block, which is allocated once when the block is created.
+ * All records in this block share the same future, so no object is allocated per record.
+ * <p>
+ * {@link #seal()} must be called before {@link #data()} or {@link #size()} is used to write this block.
+ */
+public class ConcurrentBlockImpl implements Block {
+    /**
+     * The highest bit of {@link #state}, which indicates whether this block is sealed.
+     */
+    private static final long SEALED_FLAG = Long.MIN_VALUE;
+    private static final ThreadLocal<CRC32> CRC32_THREAD_LOCAL = ThreadLocal.withInitial(CRC32::new);
+
+    private final long startOffset;
+    /**
+     * The capacity of {@link #data}, records can be added to this block only if the size of this block does not exceed it.
+     */
+    private final int capacity;
+    /**
+     * The next offset to write in this block (the lower 63 bits) and whether this block is sealed (the highest bit).
+     */
+    private final AtomicLong state = new AtomicLong(0);
+    /**
+     * The number of threads which are trying to add records to this block.
+     */
+    private final AtomicInteger writers = new AtomicInteger(0);
+    private final CompletableFuture<WriteAheadLog.AppendResult.CallbackResult> future = new CompletableFuture<>();
+    private final List<CompletableFuture<WriteAheadLog.AppendResult.CallbackResult>> futures = List.of(future);
+    /**
+     * The time when this block is created, in nanoseconds.
+     */
+    private final long createTimeNanos = System.nanoTime();
+    private final ByteBuf data;
+
+    /**
+     * Create a block.
+     * {@link #release()} must be called when this block is no longer used.
+     *
+     * @param maxSize   the max size of this block
+     * @param softLimit the soft limit of this block
+     * @param minSize   the min size of this block, which is used when the soft limit is smaller than a single record
+     */
+    public ConcurrentBlockImpl(long startOffset, long maxSize, long softLimit, long minSize) {
+        this.startOffset = startOffset;
+        this.capacity = (int) Math.min(maxSize, Math.max(softLimit, minSize));
+        this.data = capacity > 0 ? DirectByteBufAlloc.byteBuffer(capacity) : null;
+    }
+
+    @Override
+    public long startOffset() {
+        return startOffset;
+    }
+
+    /**
+     * Try to append a record to this block. It is thread safe and lock free.
+     * The body will be released if the record is appended.
+     *
+     * @return the start offset of the record, or -1 if this block is sealed or full.
+     */
+    public long tryAppend(ByteBuf body, int crc) {
+        final int bodyLength = body.readableBytes();
+        final long recordSize = RECORD_HEADER_SIZE + bodyLength;
+        writers.incrementAndGet();
+        try {
+            final long position = reserve(recordSize);
+            if (position < 0) {
+                return -1;
+            }
+            final long recordOffset = startOffset + position;
+            int bodyCRC = 0 == crc ? crc32(body) : crc;
+            writeHeader((int) position, bodyLength, recordOffset + RECORD_HEADER_SIZE, bodyCRC);
+            data.setBytes((int) position + RECORD_HEADER_SIZE, body, body.readerIndex(), bodyLength);
+            body.release();
+            return recordOffset;
+        } finally {
+            writers.decrementAndGet();
+        }
+    }
+
+    /**
+     * Reserve space for a record.
+     *
+     * @return the position of the record in this block, or -1 if this block is sealed or full.
+     */
+    private long reserve(long recordSize) {
+        for (; ; ) {
+            long current = state.get();
+            if ((current & SEALED_FLAG) != 0 || current + recordSize > capacity) {
+                return -1;
+            }
+            if (state.compareAndSet(current, current + recordSize)) {
+                return current;
+            }
+        }
+    }
+
+    /**
+     * Write the record header at the given position, see {@link SlidingWindowService.RecordHeaderCoreData#marshal()}
+     */
+    private void writeHeader(int position, int bodyLength, long bodyOffset, int bodyCRC) {
+        data.setInt(position, RECORD_HEADER_MAGIC_CODE);
+        data.setInt(position + 4, bodyLength);
+        data.setLong(position + 8, bodyOffset);
+        data.setInt(position + 16, bodyCRC);
+
+        CRC32 crc32 = CRC32_THREAD_LOCAL.get();
+        crc32.reset();
+        updateInt(crc32, RECORD_HEADER_MAGIC_CODE);
+        updateInt(crc32, bodyLength);
+        updateInt(crc32, (int) (bodyOffset >>> 32));
+        updateInt(crc32, (int) bodyOffset);
+        updateInt(crc32, bodyCRC);
+        data.setInt(position + 20, (int) (crc32.getValue() & 0x7FFFFFFF));
+    }
+
+    private static void updateInt(CRC32 crc32, int value) {
+        crc32.update(value >>> 24);
+        crc32.update(value >>> 16);
+        crc32.update(value >>> 8);
+        crc32.update(value);
+    }
+
+    /**
+     * Same as {@link WALUtil#crc32(ByteBuf)}, but it reuses the thread local {@link CRC32} and reads the body in bulk.
+     */
+    private static int crc32(ByteBuf body) {
+        CRC32 crc32 = CRC32_THREAD_LOCAL.get();
+        crc32.reset();
+        for (ByteBuffer buffer : body.nioBuffers()) {
+            crc32.update(buffer);
+        }
+        return (int) (crc32.getValue() & 0x7FFFFFFF);
+    }
+
+    /**
+     * Note: the future of the record will be completed after this block is written, rather than the given one.
+     * The given future is completed at the same time.
+     */
+    @Override
+    public long addRecord(long recordSize, Function<Long, ByteBuf> recordSupplier, CompletableFuture<WriteAheadLog.AppendResult.CallbackResult> future) {
+        writers.incrementAndGet();
+        try {
+            final long position = reserve(recordSize);
+            if (position < 0) {
+                return -1;
+            }
+            final long recordOffset = startOffset + position;
+            ByteBuf record = recordSupplier.apply(recordOffset);
+            data.setBytes((int) position, record, record.readerIndex(), record.readableBytes());
+            record.release();
+            this.future.whenComplete((result, ex) -> {
+                if (ex != null) {
+                    future.completeExceptionally(ex);
+                } else {
+                    future.complete(result);
+                }
+            });
+            return recordOffset;
+        } finally {
+            writers.decrementAndGet();
+        }
+    }
+
+    /**
+     * Seal this block, after which no record can be added to it.
+     * It waits for all in-flight records to be copied into this block.
+     */
+    @Override
+    public void seal() {
+        state.getAndUpdate(current -> current | SEALED_FLAG);
+        while (writers.get() != 0) {
+            Thread.onSpinWait();
+        }
+    }
+
+    public CompletableFuture<WriteAheadLog.AppendResult.CallbackResult> future() {
+        return future;
+    }
+
+    public long createTimeNanos() {
+        return createTimeNanos;
+    }
+
+    @Override
+    public List<CompletableFuture<WriteAheadLog.AppendResult.CallbackResult>> futures() {
+        return futures;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override
+    public ByteBuf data() {
+        if (isEmpty()) {
+            return null;
+        }
+        data.writerIndex((int) size());
+        return data;
+    }
+
+    @Override
+    public long size() {
+        return state.get() & ~SEALED_FLAG;
+    }
+
+    @Override
+    public void release() {
+        if (null != data) {
+            data.release();
+        }
+    }
+}
@@ -57,6 +57,10 @@ public class SlidingWindowService {
     private final long upperLimit;
     private final long scaleUnit;
     private final long blockSoftLimit;
+    /**
+     * Whether records can be added to the current block without {@link #blockLock}, see {@link ConcurrentBlockImpl}.
+     */
+    private final boolean lockFreeAppend;
     private final WALChannel walChannel;
     private final WALHeaderFlusher walHeaderFlusher;
     private final WindowCoreData windowCoreData = new WindowCoreData();
@@ -77,15 +81,22 @@ public class SlidingWindowService {
     private Semaphore semaphore;
     /**
      * The current block, records are added to this block.
+     * It is volatile as it may be read without {@link #blockLock} when {@link #lockFreeAppend} is enabled.
      */
-    private Block currentBlock;
+    private volatile Block currentBlock;
 
     public SlidingWindowService(WALChannel walChannel, int ioThreadNums, long upperLimit, long scaleUnit, long blockSoftLimit, WALHeaderFlusher flusher) {
+        this(walChannel, ioThreadNums, upperLimit, scaleUnit, blockSoftLimit, false, flusher);
+    }
+
+    public SlidingWindowService(WALChannel walChannel, int ioThreadNums, long upperLimit, long scaleUnit, long blockSoftLimit,
+                                boolean lockFreeAppend, WALHeaderFlusher flusher) {
         this.walChannel = walChannel;
         this.ioThreadNums = ioThreadNums;
         this.upperLimit = upperLimit;
         this.scaleUnit = scaleUnit;
         this.blockSoftLimit = blockSoftLimit;
+        this.lockFreeAppend = lockFreeAppend;
         this.walHeaderFlusher = flusher;
     }
 
@@ -153,6 +164,7 @@ public class SlidingWindowService {
      * Note: this method is NOT thread safe, and it should be called with {@link #blockLock} locked.
      */
     public Block sealAndNewBlockLocked(Block previousBlock, long minSize, long trimOffset, long recordSectionCapacity) throws OverCapacityException {
+        previousBlock.seal();
         long startOffset = nextBlockStartOffset(previousBlock);
 
         // If the end of the physical device is insufficient for this block, jump to the start of the physical device
@@ -176,7 +188,7 @@ public class SlidingWindowService {
         // The size of the block should not be larger than the end of the physical device
         maxSize = Math.min(recordSectionCapacity - startOffset % recordSectionCapacity, maxSize);
 
-        Block newBlock = new BlockImpl(startOffset, maxSize, blockSoftLimit);
+        Block newBlock = newBlock(startOffset, maxSize, minSize);
         if (!previousBlock.isEmpty()) {
             // There are some records to be written in the previous block
             pendingBlocks.add(previousBlock);
@@ -200,6 +212,19 @@ public class SlidingWindowService {
         return currentBlock;
     }
 
+    /**
+     * Get the current block without {@link #blockLock}.
+     * Only records that can be added concurrently, see {@link ConcurrentBlockImpl#tryAppend}, should be added to the returned block.
+     * It returns null if no record has been written.
+     */
+    public Block getCurrentBlock() {
+        return currentBlock;
+    }
+
+    public boolean isLockFreeAppend() {
+        return lockFreeAppend;
+    }
+
     /**
      * Set the current block.
      * Note: this method is NOT thread safe, and it should be called with {@link #blockLock} locked.
@@ -215,6 +240,13 @@ public class SlidingWindowService {
         return block.startOffset() + WALUtil.alignLargeByBlockSize(block.size());
     }
 
+    private Block newBlock(long startOffset, long maxSize, long minSize) {
+        if (lockFreeAppend) {
+            return new ConcurrentBlockImpl(startOffset, maxSize, blockSoftLimit, minSize);
+        }
+        return new BlockImpl(startOffset, maxSize, blockSoftLimit);
+    }
+
     /**
      * Create a new block with the given start offset.
      * This method is only used when we don't know the maximum length of the new block.
@@ -222,7 +254,7 @@ public class SlidingWindowService {
     private Block nextBlock(long startOffset) {
         // Trick: we cannot determine the maximum length of the block here, so we set it to 0 first.
         // When we try to write a record, this block will be found full, and then a new block will be created.
-        return new BlockImpl(startOffset, 0, 0);
+        return newBlock(startOffset, 0, 0);
     }
 
     /**
@@ -261,6 +293,7 @@ public class SlidingWindowService {
             // No record to be written
             return null;
         }
+        currentBlock.seal();
 
         Block newCurrentBlock = nextBlock(currentBlock);
         setCurrentBlockLocked(newCurrentBlock);
@@ -24,6 +24,7 @@ import com.automq.stream.utils.Threads;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
 import net.sourceforge.argparse4j.ArgumentParsers;
+import net.sourceforge.argparse4j.impl.Arguments;
 import net.sourceforge.argparse4j.helper.HelpScreenException;
 import net.sourceforge.argparse4j.inf.ArgumentParser;
 import net.sourceforge.argparse4j.inf.ArgumentParserException;
@@ -52,6 +53,8 @@ public class WriteBench implements AutoCloseable {
         if (config.depth != null) {
             builder.ioThreadNums(config.depth);
         }
+        builder.lockFreeAppend(config.lockFreeAppend);
+        builder.batchWrite(config.batchWrite);
         this.log = builder.build();
         this.log.start();
         this.log.reset();
@@ -185,6 +188,8 @@ public class WriteBench implements AutoCloseable {
         final String path;
         final Long capacity;
         final Integer depth;
+        final Boolean lockFreeAppend;
+        final Boolean batchWrite;
 
         // following fields are benchmark configuration
         final Integer threads;
@@ -196,6 +201,8 @@ public class WriteBench implements AutoCloseable {
             this.path = ns.getString("path");
             this.capacity = ns.getLong("capacity");
             this.depth = ns.getInt("depth");
+            this.lockFreeAppend = ns.getBoolean("lockFreeAppend");
+            this.batchWrite = ns.getBoolean("batchWrite");
             this.threads = ns.getInt("threads");
             this.throughputBytes = ns.getInt("throughput");
             this.recordSizeBytes = ns.getInt("recordSize");
@@ -218,6 +225,14 @@ public class WriteBench implements AutoCloseable {
             parser.addArgument("-d", "--depth")
                     .type(Integer.class)
                     .help("IO depth of the WAL");
+            parser.addArgument("--lock-free")
+                    .dest("lockFreeAppend")
+                    .action(Arguments.storeTrue())
+                    .help("Whether to append records without the block lock");
+            parser.addArgument("--batch-write")
+                    .dest("batchWrite")
+                    .action(Arguments.storeTrue())
+                    .help("Whether to merge concurrent writes to the WAL channel into batches");
             parser.addArgument("--threads")
                     .type(Integer.class)
                     .setDefault(1)
@@ -0,0 +1,217 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.automq.stream.s3.wal.util;
+
+import com.automq.stream.s3.DirectByteBufAlloc;
+import com.automq.stream.utils.ThreadUtils;
+import com.automq.stream.utils.Threads;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.Unpooled;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link WALChannel} which batches writes from multiple threads.
+ * <p>
+ * Writes are queued and submitted together by a single IO thread. Writes in a batch are sorted by position, and
+ * adjacent ones (with a gap less than {@link WALUtil#BLOCK_SIZE}, which is padded with zeros) are merged into one
+ * write of the underlying channel. So a batch of blocks usually costs a single write and a single sync of the
+ * underlying channel, rather than one for each block.
+ * <p>
+ * Reads are delegated to the underlying channel directly.
+ */
+public class WALBatchWriteChannel implements WALChannel {
+    private static final Logger LOGGER = LoggerFactory.getLogger(WALBatchWriteChannel.class);
+    private static final int MAX_BATCH_SIZE = Integer.parseInt(System.getProperty(
+            "automq.ebswal.maxBatchWriteSize",
+            String.valueOf(1024 * 1024 * 4)
+    ));
+    private static final ByteBuf ZERO_PADDING = Unpooled.unreleasableBuffer(Unpooled.directBuffer(WALUtil.BLOCK_SIZE).writeZero(WALUtil.BLOCK_SIZE));
+
+    private final WALChannel channel;
+    private final BlockingQueue<WriteRequest> requests = new LinkedBlockingQueue<>();
+    private ExecutorService executor;
+    private volatile boolean closed = false;
+
+    public WALBatchWriteChannel(WALChannel channel) {
+        this.channel = channel;
+    }
+
+    @Override
+    public void open() throws IOException {
+        channel.open();
+        executor = Threads.newFixedThreadPool(1, ThreadUtils.createThreadFactory("wal-batch-write-%d", true), LOGGER);
+        executor.submit(this::run);
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        if (executor != null) {
+            executor.shutdownNow();
+            try {
+                if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                    LOGGER.warn("failed to stop the batch write thread in 10s");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        failAll(new IOException("channel closed"));
+        channel.close();
+    }
+
+    @Override
+    public long capacity() {
+        return channel.capacity();
+    }
+
+    @Override
+    public void write(ByteBuf src, long position) throws IOException {
+        try {
+            writeAsync(src, position).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Asynchronous version of {@link #write}. The returned future completes when all bytes are written.
+     * The given buffer should not be modified before the returned future completes.
+     */
+    public CompletableFuture<Void> writeAsync(ByteBuf src, long position) {
+        WriteRequest request = new WriteRequest(src, position);
+        if (closed) {
+            request.future.completeExceptionally(new IOException("channel closed"));
+            return request.future;
+        }
+        requests.add(request);
+        return request.future;
+    }
+
+    @Override
+    public int read(ByteBuf dst, long position) throws IOException {
+        return channel.read(dst, position);
+    }
+
+    private void run() {
+        List<WriteRequest> batch = new ArrayList<>();
+        while (!closed) {
+            try {
+                batch.add(requests.take());
+            } catch (InterruptedException e) {
+                break;
+            }
+            requests.drainTo(batch);
+            writeBatch(batch);
+            batch.clear();
+        }
+    }
+
+    private void writeBatch(List<WriteRequest> batch) {
+        // stable sort, so writes to the same position are still applied in order
+        batch.sort(Comparator.comparingLong(r -> r.position));
+        int start = 0;
+        while (start < batch.size()) {
+            int end = start + 1;
+            long endPosition = batch.get(start).endPosition();
+            long size = batch.get(start).size();
+            while (end < batch.size()) {
+                WriteRequest next = batch.get(end);
+                long gap = next.position - endPosition;
+                if (gap < 0 || gap >= WALUtil.BLOCK_SIZE || size + gap + next.size() > MAX_BATCH_SIZE) {
+                    break;
+                }
+                endPosition = next.endPosition();
+                size += gap + next.size();
+                end++;
+            }
+            writeMerged(batch.subList(start, end));
+            start = end;
+        }
+    }
+
+    private void writeMerged(List<WriteRequest> merged) {
+        try {
+            if (merged.size() == 1) {
+                WriteRequest request = merged.get(0);
+                channel.write(request.src, request.position);
+            } else {
+                CompositeByteBuf buf = DirectByteBufAlloc.compositeByteBuffer();
+                try {
+                    long endPosition = merged.get(0).position;
+                    for (WriteRequest request : merged) {
+                        int gap = (int) (request.position - endPosition);
+                        if (gap > 0) {
+                            buf.addComponent(true, ZERO_PADDING.retainedSlice(0, gap));
+                        }
+                        buf.addComponent(true, request.src.retainedSlice());
+                        endPosition = request.endPosition();
+                    }
+                    channel.write(buf, merged.get(0).position);
+                } finally {
+                    buf.release();
+                }
+            }
+            merged.forEach(request -> request.future.complete(null));
+        } catch (Throwable e) {
+            LOGGER.error("failed to write {} requests from position {}", merged.size(), merged.get(0).position, e);
+            merged.forEach(request -> request.future.completeExceptionally(e));
+        }
+    }
+
+    private void failAll(Throwable e) {
+        List<WriteRequest> remaining = new ArrayList<>();
+        requests.drainTo(remaining);
+        remaining.forEach(request -> request.future.completeExceptionally(e));
+    }
+
+    static class WriteRequest {
+        final ByteBuf src;
+        final long position;
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        WriteRequest(ByteBuf src, long position) {
+            this.src = src;
+            this.position = position;
+        }
+
+        long size() {
+            return src.readableBytes();
+        }
+
+        long endPosition() {
+            return position + size();
+        }
+    }
+}
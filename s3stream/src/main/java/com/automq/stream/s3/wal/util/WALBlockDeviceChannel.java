@@ -96,14 +96,17 @@ public class WALBlockDeviceChannel implements WALChannel {
 
     @Override
     public void write(ByteBuf buf, long position) throws IOException {
-        ByteBuffer src = buf.nioBuffer();
-        int bufferDirectIOAlignedSize = (int) WALUtil.alignLargeByBlockSize(src.limit());
+        int bufferDirectIOAlignedSize = (int) WALUtil.alignLargeByBlockSize(buf.readableBytes());
 
         makeThreadLocalBytebufferMatchDirectIO(bufferDirectIOAlignedSize);
 
-
         ByteBuffer byteBufferWrite = threadLocalByteBuffer.get();
-        byteBufferWrite.position(0).put(src);
+        // reset the limit, which may be set by the previous write or read
+        byteBufferWrite.clear();
+        // copy each component separately, to avoid merging a composite buffer before copying it
+        for (ByteBuffer src : buf.nioBuffers()) {
+            byteBufferWrite.put(src);
+        }
         byteBufferWrite.position(0).limit(bufferDirectIOAlignedSize);
 
         int remaining = byteBufferWrite.limit();
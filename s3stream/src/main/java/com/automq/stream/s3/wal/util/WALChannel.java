@@ -25,6 +25,7 @@ import java.io.IOException;
  * There are two implementations of WALChannel:
  * 1. WALFileChannel based on file system, which calls fsync after each write to ensure data is flushed to disk.
  * 2. WALBlockDeviceChannel based on block device, which uses O_DIRECT to bypass page cache.
+ * Either of them can be wrapped by WALBatchWriteChannel, which merges concurrent writes into fewer writes and syncs.
  */
 public interface WALChannel {
     static WALChannelBuilder builder(String path, long capacity) {
@@ -56,18 +57,29 @@ public interface WALChannel {
     class WALChannelBuilder {
         private final String path;
         private final long capacity;
+        private boolean batchWrite = false;
 
         private WALChannelBuilder(String path, long capacity) {
             this.path = path;
             this.capacity = capacity;
         }
 
+        public WALChannelBuilder batchWrite(boolean batchWrite) {
+            this.batchWrite = batchWrite;
+            return this;
+        }
+
         public WALChannel build() {
+            WALChannel channel;
             if (path.startsWith("/dev/")) {
-                return new WALBlockDeviceChannel(path, capacity);
+                channel = new WALBlockDeviceChannel(path, capacity);
             } else {
-                return new WALFileChannel(path, capacity);
+                channel = new WALFileChannel(path, capacity);
+            }
+            if (batchWrite) {
+                channel = new WALBatchWriteChannel(channel);
             }
+            return channel;
         }
     }
 }
@@ -0,0 +1,144 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.automq.stream.s3.wal.util;
+
+import com.automq.stream.s3.DirectByteBufAlloc;
+import io.netty.buffer.ByteBuf;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * A reader which reads a {@link WALChannel} sequentially, with the following segments read ahead in parallel.
+ * <p>
+ * The channel is divided into segments of the same size, and at most {@link #prefetchSegments} segments, starting
+ * from the segment of the last read, are cached. So the memory used is bounded by
+ * {@code segmentSize * prefetchSegments}.
+ * <p>
+ * Note: this class is NOT thread safe, it is designed for a single reader.
+ */
+public class WALPrefetchReader implements AutoCloseable {
+    private final WALChannel channel;
+    private final int segmentSize;
+    private final int prefetchSegments;
+    private final ExecutorService executor;
+    /**
+     * Segment index to the segment data.
+     */
+    private final Map<Long, CompletableFuture<ByteBuf>> segments = new HashMap<>();
+
+    public WALPrefetchReader(WALChannel channel, int segmentSize, int prefetchSegments, ExecutorService executor) {
+        if (segmentSize % WALUtil.BLOCK_SIZE != 0) {
+            throw new IllegalArgumentException("segment size " + segmentSize + " is not aligned to " + WALUtil.BLOCK_SIZE);
+        }
+        this.channel = channel;
+        this.segmentSize = segmentSize;
+        this.prefetchSegments = Math.max(1, prefetchSegments);
+        this.executor = executor;
+    }
+
+    /**
+     * Same as {@link WALChannel#read}, but the data is read from the prefetched segments.
+     */
+    public int read(ByteBuf dst, long position) throws IOException {
+        long segmentIndex = position / segmentSize;
+        prefetch(segmentIndex);
+        int bytesRead = 0;
+        while (dst.isWritable()) {
+            long currentPosition = position + bytesRead;
+            long currentSegmentIndex = currentPosition / segmentSize;
+            ByteBuf segment = segment(currentSegmentIndex);
+            int offsetInSegment = (int) (currentPosition - currentSegmentIndex * segmentSize);
+            if (offsetInSegment >= segment.readableBytes()) {
+                // reach the end of the channel
+                break;
+            }
+            int length = Math.min(dst.writableBytes(), segment.readableBytes() - offsetInSegment);
+            dst.writeBytes(segment, segment.readerIndex() + offsetInSegment, length);
+            bytesRead += length;
+        }
+        return bytesRead;
+    }
+
+    /**
+     * Make sure the segments in [segmentIndex, segmentIndex + prefetchSegments) are being read, and release the others.
+     */
+    private void prefetch(long segmentIndex) {
+        Iterator<Map.Entry<Long, CompletableFuture<ByteBuf>>> it = segments.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Long, CompletableFuture<ByteBuf>> entry = it.next();
+            long index = entry.getKey();
+            if (index < segmentIndex || index >= segmentIndex + prefetchSegments) {
+                release(entry.getValue());
+                it.remove();
+            }
+        }
+        long maxSegmentIndex = (channel.capacity() - 1) / segmentSize;
+        for (long index = segmentIndex; index < segmentIndex + prefetchSegments && index <= maxSegmentIndex; index++) {
+            segments.computeIfAbsent(index, this::readSegment);
+        }
+    }
+
+    private ByteBuf segment(long segmentIndex) throws IOException {
+        CompletableFuture<ByteBuf> cf = segments.get(segmentIndex);
+        if (cf == null) {
+            // the read crosses the prefetched segments
+            cf = readSegment(segmentIndex);
+            segments.put(segmentIndex, cf);
+        }
+        try {
+            return cf.join();
+        } catch (CompletionException e) {
+            segments.remove(segmentIndex);
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private CompletableFuture<ByteBuf> readSegment(long segmentIndex) {
+        return CompletableFuture.supplyAsync(() -> {
+            ByteBuf buf = DirectByteBufAlloc.byteBuffer(segmentSize);
+            try {
+                int read = channel.read(buf, segmentIndex * segmentSize);
+                // not all channels update the writer index, so set it explicitly
+                buf.writerIndex(read);
+                return buf;
+            } catch (IOException e) {
+                buf.release();
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+
+    private static void release(CompletableFuture<ByteBuf> cf) {
+        cf.thenAccept(ByteBuf::release);
+    }
+
+    @Override
+    public void close() {
+        segments.values().forEach(WALPrefetchReader::release);
+        segments.clear();
+    }
+}
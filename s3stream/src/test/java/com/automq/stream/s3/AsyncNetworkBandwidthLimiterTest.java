@@ -22,6 +22,9 @@ import com.automq.stream.s3.network.ThrottleStrategy;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 
 public class AsyncNetworkBandwidthLimiterTest {
@@ -80,4 +83,26 @@ public class AsyncNetworkBandwidthLimiterTest {
         });
         cf.join();
     }
+
+    @Test
+    public void testWeightedFairness() {
+        AsyncNetworkBandwidthLimiter bucket = new AsyncNetworkBandwidthLimiter(AsyncNetworkBandwidthLimiter.Type.OUTBOUND, 10, 10, 10);
+        // exhaust the bucket, so the requests below are queued
+        bucket.consume(ThrottleStrategy.BYPASS, 1000);
+        List<ThrottleStrategy> order = Collections.synchronizedList(new ArrayList<>());
+        List<CompletableFuture<Void>> cfList = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            cfList.add(bucket.consume(ThrottleStrategy.THROTTLE, 10).thenRun(() -> order.add(ThrottleStrategy.THROTTLE)));
+        }
+        for (int i = 0; i < 10; i++) {
+            cfList.add(bucket.consume(ThrottleStrategy.WAL_UPLOAD, 10).thenRun(() -> order.add(ThrottleStrategy.WAL_UPLOAD)));
+        }
+        CompletableFuture.allOf(cfList.toArray(new CompletableFuture[0])).join();
+        // the WAL uploads get 8/9 of the bandwidth, though they are queued after the compactions
+        List<ThrottleStrategy> expected = new ArrayList<>(Collections.nCopies(7, ThrottleStrategy.WAL_UPLOAD));
+        expected.add(ThrottleStrategy.THROTTLE);
+        expected.addAll(Collections.nCopies(3, ThrottleStrategy.WAL_UPLOAD));
+        expected.addAll(Collections.nCopies(9, ThrottleStrategy.THROTTLE));
+        Assertions.assertEquals(expected, order);
+    }
 }
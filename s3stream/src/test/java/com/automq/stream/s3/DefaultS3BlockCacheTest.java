@@ -18,6 +18,7 @@
 package com.automq.stream.s3;
 
 import com.automq.stream.s3.cache.DefaultS3BlockCache;
+import com.automq.stream.s3.cache.DiskBlockCache;
 import com.automq.stream.s3.cache.ReadDataBlock;
 import com.automq.stream.s3.model.StreamRecordBatch;
 import com.automq.stream.s3.objects.ObjectManager;
@@ -32,6 +33,7 @@ import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentMatchers;
 import org.mockito.Mockito;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
@@ -39,6 +41,8 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.verify;
@@ -115,13 +119,13 @@ public class DefaultS3BlockCacheTest {
 
         s3BlockCache.read(233L, 10L, 11L, 10000).get();
         // range read index and range read data
-        verify(s3Operator, Mockito.times(2)).rangeRead(eq(ObjectUtils.genKey(0, 0)), ArgumentMatchers.anyLong(), ArgumentMatchers.anyLong());
-        verify(s3Operator, Mockito.times(0)).rangeRead(eq(ObjectUtils.genKey(0, 1)), ArgumentMatchers.anyLong(), ArgumentMatchers.anyLong());
+        verify(s3Operator, Mockito.times(2)).rangeRead(eq(ObjectUtils.genKey(0, 0)), ArgumentMatchers.anyLong(), ArgumentMatchers.anyLong(), ArgumentMatchers.any());
+        verify(s3Operator, Mockito.times(0)).rangeRead(eq(ObjectUtils.genKey(0, 1)), ArgumentMatchers.anyLong(), ArgumentMatchers.anyLong(), ArgumentMatchers.any());
         // trigger readahead
         when(objectManager.getObjects(eq(233L), eq(20L), eq(-1L), eq(2))).thenReturn(CompletableFuture.completedFuture(List.of(metadata2)));
         when(objectManager.getObjects(eq(233L), eq(30L), eq(-1L), eq(2))).thenReturn(CompletableFuture.completedFuture(Collections.emptyList()));
         s3BlockCache.read(233L, 15L, 16L, 10000).get();
-        verify(s3Operator, timeout(1000).times(2)).rangeRead(eq(ObjectUtils.genKey(0, 1)), ArgumentMatchers.anyLong(), ArgumentMatchers.anyLong());
+        verify(s3Operator, timeout(1000).times(2)).rangeRead(eq(ObjectUtils.genKey(0, 1)), ArgumentMatchers.anyLong(), ArgumentMatchers.anyLong(), ArgumentMatchers.any());
         verify(objectManager, timeout(1000).times(1)).getObjects(eq(233L), eq(30L), eq(-1L), eq(2));
 
         // expect readahead already cached the records
@@ -130,6 +134,48 @@ public class DefaultS3BlockCacheTest {
         assertEquals(20L, records.get(0).getBaseOffset());
     }
 
+    @Test
+    public void testRead_offsetIndex() throws Exception {
+        s3BlockCache = new DefaultS3BlockCache(1024 * 1024, objectManager, s3Operator);
+        ObjectWriter objectWriter = ObjectWriter.writer(0, s3Operator, 1024 * 1024, 1024 * 1024, streamId -> CompressionType.NONE, 2);
+        List<StreamRecordBatch> records = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            records.add(newRecord(233, i, 1, 512));
+        }
+        objectWriter.write(233, records);
+        objectWriter.close();
+        S3ObjectMetadata metadata = new S3ObjectMetadata(0, objectWriter.size(), S3ObjectType.WAL);
+        when(objectManager.getObjects(eq(233L), ArgumentMatchers.anyLong(), ArgumentMatchers.anyLong(), ArgumentMatchers.anyInt()))
+            .thenReturn(CompletableFuture.completedFuture(List.of(metadata)));
+
+        ReadDataBlock rst = s3BlockCache.read(233L, 7L, 8L, 10000).get(3, TimeUnit.SECONDS);
+        assertFalse(rst.isCacheHit());
+        assertEquals(1, rst.getRecords().size());
+        assertEquals(7, rst.getRecords().get(0).getBaseOffset());
+        rst.getRecords().forEach(StreamRecordBatch::release);
+
+        // the records from 7 are decoded and cached
+        rst = s3BlockCache.read(233L, 7L, 10L, 10000).get(3, TimeUnit.SECONDS);
+        assertTrue(rst.isCacheHit());
+        assertEquals(3, rst.getRecords().size());
+        rst.getRecords().forEach(StreamRecordBatch::release);
+
+        // the records before 7 are skipped by the offset index, so they are not cached
+        rst = s3BlockCache.read(233L, 2L, 4L, 10000).get(3, TimeUnit.SECONDS);
+        assertFalse(rst.isCacheHit());
+        assertEquals(2, rst.getRecords().size());
+        assertEquals(2, rst.getRecords().get(0).getBaseOffset());
+        rst.getRecords().forEach(StreamRecordBatch::release);
+    }
+
+    @Test
+    public void testShutdown() {
+        DiskBlockCache diskCache = Mockito.mock(DiskBlockCache.class);
+        s3BlockCache = new DefaultS3BlockCache(0, diskCache, objectManager, s3Operator);
+        s3BlockCache.shutdown();
+        verify(diskCache).close();
+    }
+
     StreamRecordBatch newRecord(long streamId, long offset, int count, int payloadSize) {
         return new StreamRecordBatch(streamId, 0, offset, count, TestUtils.random(payloadSize));
     }
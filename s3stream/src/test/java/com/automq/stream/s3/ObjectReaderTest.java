@@ -20,17 +20,23 @@ package com.automq.stream.s3;
 import com.automq.stream.s3.metadata.S3ObjectMetadata;
 import com.automq.stream.s3.metadata.S3ObjectType;
 import com.automq.stream.s3.model.StreamRecordBatch;
+import com.automq.stream.s3.network.ThrottleStrategy;
 import com.automq.stream.s3.operator.MemoryS3Operator;
 import com.automq.stream.s3.operator.S3Operator;
+import com.automq.stream.utils.CloseableIterator;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
 import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @Tag("S3Unit")
 public class ObjectReaderTest {
@@ -116,4 +122,83 @@ public class ObjectReaderTest {
         }
     }
 
+    @Test
+    public void testFooterFirstRead() throws ExecutionException, InterruptedException {
+        List<long[]> ranges = new ArrayList<>();
+        S3Operator s3Operator = new MemoryS3Operator() {
+            @Override
+            public CompletableFuture<ByteBuf> rangeRead(String path, long start, long end, ThrottleStrategy throttleStrategy) {
+                ranges.add(new long[] {start, end});
+                return super.rangeRead(path, start, end, throttleStrategy);
+            }
+        };
+        ObjectWriter objectWriter = ObjectWriter.writer(233L, s3Operator, 1024, 1024);
+        int streamCount = 1000;
+        for (int i = 0; i < streamCount; i++) {
+            objectWriter.write(i, List.of(new StreamRecordBatch(i, 0, i, 1, TestUtils.random(1))));
+        }
+        objectWriter.close().get();
+        S3ObjectMetadata metadata = new S3ObjectMetadata(233L, objectWriter.size(), S3ObjectType.WAL);
+
+        // the index is bigger than the estimation, so the rest of it is read in the second step
+        ObjectReader.IndexSizeHint indexSizeHint = new ObjectReader.IndexSizeHint(ObjectReader.IndexSizeHint.MIN_INDEX_SIZE_HINT);
+        long tailStart = metadata.objectSize() - ObjectWriter.Footer.FOOTER_SIZE - ObjectReader.IndexSizeHint.MIN_INDEX_SIZE_HINT;
+        int indexBlockSize;
+        try (ObjectReader objectReader = new ObjectReader(metadata, s3Operator, indexSizeHint)) {
+            ObjectReader.BasicObjectInfo info = objectReader.basicObjectInfo().get();
+            assertEquals(streamCount, info.blockCount());
+            indexBlockSize = info.indexBlockSize();
+            assertEquals(2, ranges.size());
+            assertArrayEquals(new long[] {tailStart, metadata.objectSize()}, ranges.get(0));
+            assertArrayEquals(new long[] {info.dataBlockSize(), tailStart}, ranges.get(1));
+            // only the index is kept in memory
+            assertEquals(indexBlockSize - 4, info.indexBlock().size());
+        }
+
+        // the estimation follows the index size
+        assertTrue(indexSizeHint.get() > ObjectReader.IndexSizeHint.MIN_INDEX_SIZE_HINT);
+        ranges.clear();
+        try (ObjectReader objectReader = new ObjectReader(metadata, s3Operator, new ObjectReader.IndexSizeHint(indexBlockSize))) {
+            assertEquals(streamCount, objectReader.basicObjectInfo().get().blockCount());
+            assertEquals(1, ranges.size());
+        }
+    }
+
+    @Test
+    public void testReadBlockWithoutCopy() throws ExecutionException, InterruptedException {
+        S3Operator s3Operator = new MemoryS3Operator();
+        ObjectWriter objectWriter = ObjectWriter.writer(233L, s3Operator, 1024 * 1024, 1024 * 1024);
+        StreamRecordBatch r1 = new StreamRecordBatch(233, 0, 10, 1, TestUtils.random(100));
+        StreamRecordBatch r2 = new StreamRecordBatch(233, 0, 11, 2, TestUtils.random(200));
+        objectWriter.write(233, List.of(r1, r2));
+        objectWriter.close().get();
+
+        S3ObjectMetadata metadata = new S3ObjectMetadata(233L, objectWriter.size(), S3ObjectType.WAL);
+        ByteBuf blockBuf;
+        try (ObjectReader objectReader = new ObjectReader(metadata, s3Operator)) {
+            ObjectReader.DataBlockIndex blockIndex = objectReader.find(233, 10, 13).get().get(0);
+            ByteBuf slice = s3Operator.rangeRead(objectReader.objectKey(), blockIndex.startPosition(), blockIndex.endPosition()).get();
+            blockBuf = Unpooled.copiedBuffer(slice);
+            slice.release();
+        }
+
+        ObjectReader.DataBlock dataBlock = new ObjectReader.DataBlock(blockBuf, 2);
+        List<StreamRecordBatch> records = new ArrayList<>();
+        try (CloseableIterator<StreamRecordBatch> it = dataBlock.iterator()) {
+            it.forEachRemaining(records::add);
+        }
+        assertEquals(2, records.size());
+        assertEquals(10, records.get(0).getBaseOffset());
+        assertEquals(r1.getPayload(), records.get(0).getPayload());
+        assertEquals(11, records.get(1).getBaseOffset());
+        assertEquals(13, records.get(1).getLastOffset());
+        assertEquals(r2.getPayload(), records.get(1).getPayload());
+
+        // the records retain the block buffer
+        assertEquals(3, blockBuf.refCnt());
+        dataBlock.close();
+        assertEquals(2, blockBuf.refCnt());
+        records.forEach(StreamRecordBatch::release);
+        assertEquals(0, blockBuf.refCnt());
+    }
 }
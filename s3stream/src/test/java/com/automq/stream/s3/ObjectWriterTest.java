@@ -23,15 +23,22 @@ import com.automq.stream.s3.operator.MemoryS3Operator;
 import com.automq.stream.s3.operator.S3Operator;
 import com.automq.stream.s3.metadata.S3ObjectMetadata;
 import com.automq.stream.s3.metadata.S3ObjectType;
+import com.automq.stream.utils.CloseableIterator;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
 
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.ExecutionException;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @Tag("S3Unit")
 public class ObjectWriterTest {
@@ -95,6 +102,10 @@ public class ObjectWriterTest {
             r.release();
         }
 
+        // the object without compressed block keeps the old index format
+        assertEquals(ObjectWriter.INDEX_VERSION_V0, objectReader.basicObjectInfo().get().indexBlock().version());
+        assertEquals(blockIndexes.get(0).size(), blockIndexes.get(0).uncompressedSize());
+
         blockIndexes = objectReader.find(234, 1, 2).get();
         assertEquals(1, blockIndexes.size());
         assertEquals(2, blockIndexes.get(0).blockId());
@@ -110,6 +121,132 @@ public class ObjectWriterTest {
         }
     }
 
+    @ParameterizedTest
+    @EnumSource(value = CompressionType.class, names = {"ZSTD", "LZ4"})
+    public void testWriteCompressed(CompressionType compressionType) throws ExecutionException, InterruptedException {
+        S3Operator s3Operator = new MemoryS3Operator();
+        // only compress the stream 233
+        ObjectWriter objectWriter = ObjectWriter.writer(1, s3Operator, 1024, 1024,
+            streamId -> streamId == 233 ? compressionType : CompressionType.NONE);
+        StreamRecordBatch r1 = newCompressibleRecord(233, 10, 5, 4096);
+        StreamRecordBatch r2 = newCompressibleRecord(233, 15, 10, 4096);
+        objectWriter.write(233, List.of(r1, r2));
+        StreamRecordBatch r3 = newCompressibleRecord(234, 0, 5, 4096);
+        objectWriter.write(234, List.of(r3));
+        objectWriter.close().get();
+
+        S3ObjectMetadata metadata = new S3ObjectMetadata(1, objectWriter.size(), S3ObjectType.WAL);
+        ObjectReader objectReader = new ObjectReader(metadata, s3Operator);
+        assertEquals(ObjectWriter.INDEX_VERSION_V1, objectReader.basicObjectInfo().get().indexBlock().version());
+
+        List<ObjectReader.DataBlockIndex> blockIndexes = objectReader.find(233, 10, 25).get();
+        assertEquals(2, blockIndexes.size());
+        for (int i = 0; i < blockIndexes.size(); i++) {
+            ObjectReader.DataBlockIndex blockIndex = blockIndexes.get(i);
+            assertTrue(blockIndex.size() < blockIndex.uncompressedSize() / 2);
+            StreamRecordBatch expected = i == 0 ? r1 : r2;
+            try (ObjectReader.DataBlock dataBlock = objectReader.read(blockIndex).get()) {
+                Iterator<StreamRecordBatch> it = dataBlock.iterator();
+                StreamRecordBatch r = it.next();
+                assertEquals(233L, r.getStreamId());
+                assertEquals(expected.getBaseOffset(), r.getBaseOffset());
+                assertEquals(expected.getRecordBatch().count(), r.getRecordBatch().count());
+                assertEquals(expected.getRecordBatch().rawPayload(), r.getRecordBatch().rawPayload());
+                // the record size is the decompressed size
+                assertEquals(4096, r.size());
+                assertFalse(it.hasNext());
+                r.release();
+            }
+        }
+
+        blockIndexes = objectReader.find(234, 0, 5).get();
+        assertEquals(1, blockIndexes.size());
+        assertEquals(blockIndexes.get(0).size(), blockIndexes.get(0).uncompressedSize());
+        try (ObjectReader.DataBlock dataBlock = objectReader.read(blockIndexes.get(0)).get()) {
+            Iterator<StreamRecordBatch> it = dataBlock.iterator();
+            StreamRecordBatch r = it.next();
+            assertEquals(r3.getRecordBatch().rawPayload(), r.getRecordBatch().rawPayload());
+            r.release();
+        }
+        objectReader.close();
+    }
+
+    @Test
+    public void testSkipIncompressibleBlock() throws ExecutionException, InterruptedException {
+        S3Operator s3Operator = new MemoryS3Operator();
+        ObjectWriter objectWriter = ObjectWriter.writer(1, s3Operator, 1024, 1024, streamId -> CompressionType.ZSTD);
+        StreamRecordBatch r1 = newRecord(233, 10, 5, 4096);
+        objectWriter.write(233, List.of(r1));
+        objectWriter.close().get();
+
+        S3ObjectMetadata metadata = new S3ObjectMetadata(1, objectWriter.size(), S3ObjectType.WAL);
+        ObjectReader objectReader = new ObjectReader(metadata, s3Operator);
+        // the random payload cannot be compressed, so it is written as is
+        assertEquals(ObjectWriter.INDEX_VERSION_V0, objectReader.basicObjectInfo().get().indexBlock().version());
+        List<ObjectReader.DataBlockIndex> blockIndexes = objectReader.find(233, 10, 15).get();
+        try (ObjectReader.DataBlock dataBlock = objectReader.read(blockIndexes.get(0)).get()) {
+            StreamRecordBatch r = dataBlock.iterator().next();
+            assertEquals(r1.getRecordBatch().rawPayload(), r.getRecordBatch().rawPayload());
+            r.release();
+        }
+        objectReader.close();
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = CompressionType.class, names = {"NONE", "ZSTD"})
+    public void testOffsetIndex(CompressionType compressionType) throws ExecutionException, InterruptedException {
+        S3Operator s3Operator = new MemoryS3Operator();
+        ObjectWriter objectWriter = ObjectWriter.writer(1, s3Operator, 1024 * 1024, 1024 * 1024, streamId -> compressionType, 4);
+        List<StreamRecordBatch> records = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            records.add(newCompressibleRecord(233, 10 + i * 2L, 2, 128));
+        }
+        objectWriter.write(233, records);
+        // no index for the block with fewer records than the interval
+        objectWriter.write(234, List.of(newCompressibleRecord(234, 0, 2, 128)));
+        objectWriter.close().get();
+
+        S3ObjectMetadata metadata = new S3ObjectMetadata(1, objectWriter.size(), S3ObjectType.WAL);
+        try (ObjectReader objectReader = new ObjectReader(metadata, s3Operator)) {
+            ObjectReader.DataBlockIndex blockIndex = objectReader.find(233, 10, 30).get().get(0);
+            try (ObjectReader.DataBlock dataBlock = objectReader.read(blockIndex).get()) {
+                assertTrue((dataBlock.buffer().getByte(1) & ObjectWriter.DATA_BLOCK_OFFSET_INDEX_FLAG) != 0);
+                assertEquals(List.of(10L, 12L, 14L, 16L, 18L, 20L, 22L, 24L, 26L, 28L), baseOffsets(dataBlock.iterator()));
+                // seek to an indexed record, a record after an indexed one and a record in the middle of a batch
+                assertEquals(List.of(18L, 20L, 22L, 24L, 26L, 28L), baseOffsets(dataBlock.iterator(18)));
+                assertEquals(List.of(20L, 22L, 24L, 26L, 28L), baseOffsets(dataBlock.iterator(20)));
+                assertEquals(List.of(24L, 26L, 28L), baseOffsets(dataBlock.iterator(25)));
+                assertEquals(List.of(10L, 12L, 14L, 16L, 18L, 20L, 22L, 24L, 26L, 28L), baseOffsets(dataBlock.iterator(0)));
+                assertEquals(List.of(), baseOffsets(dataBlock.iterator(30)));
+            }
+            blockIndex = objectReader.find(234, 0, 2).get().get(0);
+            try (ObjectReader.DataBlock dataBlock = objectReader.read(blockIndex).get()) {
+                assertEquals(0, dataBlock.buffer().getByte(1) & ObjectWriter.DATA_BLOCK_OFFSET_INDEX_FLAG);
+                assertEquals(List.of(0L), baseOffsets(dataBlock.iterator(1)));
+                assertEquals(List.of(), baseOffsets(dataBlock.iterator(2)));
+            }
+        }
+    }
+
+    private static List<Long> baseOffsets(CloseableIterator<StreamRecordBatch> it) {
+        List<Long> offsets = new ArrayList<>();
+        try (it) {
+            it.forEachRemaining(r -> {
+                offsets.add(r.getBaseOffset());
+                r.release();
+            });
+        }
+        return offsets;
+    }
+
+    StreamRecordBatch newCompressibleRecord(long streamId, long offset, int count, int payloadSize) {
+        ByteBuf payload = Unpooled.buffer(payloadSize);
+        while (payload.isWritable()) {
+            payload.writeByte('a' + payload.writerIndex() % 8);
+        }
+        return new StreamRecordBatch(streamId, 0, offset, count, payload);
+    }
+
     StreamRecordBatch newRecord(long streamId, long offset, int count, int payloadSize) {
         return new StreamRecordBatch(streamId, 0, offset, count, TestUtils.random(payloadSize));
     }
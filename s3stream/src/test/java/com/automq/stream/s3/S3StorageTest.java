@@ -17,6 +17,8 @@
 
 package com.automq.stream.s3;
 
+import com.automq.stream.api.ErrorCode;
+import com.automq.stream.api.StreamClientException;
 import com.automq.stream.s3.cache.DefaultS3BlockCache;
 import com.automq.stream.s3.cache.LogCache;
 import com.automq.stream.s3.cache.ReadDataBlock;
@@ -41,13 +43,16 @@ import org.mockito.ArgumentCaptor;
 import org.mockito.ArgumentMatchers;
 import org.mockito.Mockito;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static com.automq.stream.s3.TestUtils.random;
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -125,13 +130,63 @@ public class S3StorageTest {
         seq.before(r3);
 
         assertEquals(Collections.emptyList(), seq.after(r3));
-        assertEquals(-1L, seq.getWALConfirmOffset());
         assertEquals(List.of(r2, r3), seq.after(r2));
-        assertEquals(-1L, seq.getWALConfirmOffset());
         assertEquals(List.of(r0), seq.after(r0));
-        assertEquals(100L, seq.getWALConfirmOffset());
         assertEquals(List.of(r1), seq.after(r1));
-        assertEquals(103L, seq.getWALConfirmOffset());
+    }
+
+    @Test
+    public void testWALConfirmOffsetCalculator() {
+        S3Storage.WALConfirmOffsetCalculator calculator = new S3Storage.WALConfirmOffsetCalculator();
+        WalWriteRequest r0 = new WalWriteRequest(newRecord(233L, 10L), 100L, new CompletableFuture<>());
+        calculator.add(r0);
+        WalWriteRequest r1 = new WalWriteRequest(newRecord(233L, 11L), 101L, new CompletableFuture<>());
+        calculator.add(r1);
+        WalWriteRequest r2 = new WalWriteRequest(newRecord(234L, 20L), 102L, new CompletableFuture<>());
+        calculator.add(r2);
+        WalWriteRequest r3 = new WalWriteRequest(newRecord(234L, 21L), 103L, new CompletableFuture<>());
+        calculator.add(r3);
+
+        r2.cached = true;
+        r3.cached = true;
+        assertEquals(-1L, calculator.get());
+        r0.cached = true;
+        assertEquals(100L, calculator.get());
+        r1.cached = true;
+        calculator.tryUpdate();
+        assertEquals(103L, calculator.get());
+    }
+
+    @Test
+    public void testShardedAppend() throws Exception {
+        Mockito.when(objectManager.prepareObject(eq(1), anyLong())).thenReturn(CompletableFuture.completedFuture(16L));
+        Mockito.when(objectManager.commitWALObject(any())).thenReturn(CompletableFuture.completedFuture(new CommitWALObjectResponse()));
+        S3Operator s3Operator = new MemoryS3Operator();
+        S3Storage storage = new S3Storage(new Config().s3StorageShardNum(4), new MemoryWriteAheadLog(),
+                streamManager, objectManager, new DefaultS3BlockCache(0L, objectManager, s3Operator), s3Operator);
+
+        List<CompletableFuture<Void>> cfList = new ArrayList<>();
+        for (long streamId = 233; streamId < 241; streamId++) {
+            for (long offset = 0; offset < 10; offset++) {
+                cfList.add(storage.append(new StreamRecordBatch(streamId, 0, offset, 1, random(10))));
+            }
+        }
+        CompletableFuture.allOf(cfList.toArray(new CompletableFuture[0])).get(3, TimeUnit.SECONDS);
+
+        for (long streamId = 233; streamId < 241; streamId++) {
+            ReadDataBlock readRst = storage.read(streamId, 0, 10, 1000).get();
+            assertEquals(10, readRst.getRecords().size());
+            readRst.getRecords().forEach(StreamRecordBatch::release);
+        }
+
+        // all shards are archived and uploaded as one WAL object.
+        storage.forceUpload(235L).get();
+        ArgumentCaptor<CommitWALObjectRequest> commitArg = ArgumentCaptor.forClass(CommitWALObjectRequest.class);
+        verify(objectManager).commitWALObject(commitArg.capture());
+        CommitWALObjectRequest commitReq = commitArg.getValue();
+        assertEquals(16L, commitReq.getObjectId());
+        assertEquals(8, commitReq.getStreamRanges().size());
+        storage.shutdown();
     }
 
     @Test
@@ -175,6 +230,113 @@ public class S3StorageTest {
         cf2.get(1, TimeUnit.SECONDS);
     }
 
+    @Test
+    public void testUploadWALObject_concurrencyLimit() throws ExecutionException, InterruptedException, TimeoutException {
+        S3Operator s3Operator = new MemoryS3Operator();
+        storage = new S3Storage(new Config().s3WALObjectUploadConcurrency(1), new MemoryWriteAheadLog(),
+                streamManager, objectManager, new DefaultS3BlockCache(0L, objectManager, s3Operator), s3Operator);
+        AtomicLong nextObjectId = new AtomicLong(1);
+        Mockito.doAnswer(invocation -> CompletableFuture.completedFuture(nextObjectId.getAndIncrement())).when(objectManager).prepareObject(ArgumentMatchers.anyInt(), anyLong());
+        List<CompletableFuture<CommitWALObjectResponse>> commitCfList = List.of(new CompletableFuture<>(), new CompletableFuture<>());
+        AtomicInteger commitCfIndex = new AtomicInteger();
+        Mockito.doAnswer(invocation -> commitCfList.get(commitCfIndex.getAndIncrement())).when(objectManager).commitWALObject(any());
+
+        CompletableFuture<Void> cf1 = storage.uploadWALObject(newLogCacheBlock(10L));
+        CompletableFuture<Void> cf2 = storage.uploadWALObject(newLogCacheBlock(20L));
+        verify(objectManager, Mockito.timeout(1000).times(1)).commitWALObject(any());
+        Thread.sleep(10);
+        // the second object is not prepared until the first one is committed
+        verify(objectManager, Mockito.times(1)).prepareObject(ArgumentMatchers.anyInt(), anyLong());
+
+        commitCfList.get(0).complete(new CommitWALObjectResponse());
+        cf1.get(1, TimeUnit.SECONDS);
+        verify(objectManager, Mockito.timeout(1000).times(2)).commitWALObject(any());
+        commitCfList.get(1).complete(new CommitWALObjectResponse());
+        cf2.get(1, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testUploadWALObject_commitRetry() throws ExecutionException, InterruptedException, TimeoutException {
+        S3Operator s3Operator = new MemoryS3Operator();
+        Config config = new Config().s3ControllerRequestRetryBaseDelayMs(1).s3ControllerRequestRetryMaxCount(1);
+        storage = new S3Storage(config, new MemoryWriteAheadLog(),
+                streamManager, objectManager, new DefaultS3BlockCache(0L, objectManager, s3Operator), s3Operator);
+        AtomicLong nextObjectId = new AtomicLong(1);
+        Mockito.doAnswer(invocation -> CompletableFuture.completedFuture(nextObjectId.getAndIncrement())).when(objectManager).prepareObject(ArgumentMatchers.anyInt(), anyLong());
+        AtomicInteger commitCount = new AtomicInteger();
+        List<CommitWALObjectRequest> requests = new CopyOnWriteArrayList<>();
+        Mockito.doAnswer(invocation -> {
+            requests.add(invocation.getArgument(0));
+            // the commit fails more times than the max retry count, e.g. the commit times out
+            if (commitCount.getAndIncrement() < 3) {
+                return CompletableFuture.failedFuture(new RuntimeException("mock commit fail"));
+            }
+            return CompletableFuture.completedFuture(new CommitWALObjectResponse());
+        }).when(objectManager).commitWALObject(any());
+
+        storage.uploadWALObject(newLogCacheBlock(10L)).get(5, TimeUnit.SECONDS);
+
+        // the commit of the same object is retried, as a failed commit may have been applied
+        assertEquals(4, requests.size());
+        requests.forEach(request -> assertEquals(1L, request.getObjectId()));
+        verify(objectManager, Mockito.times(1)).prepareObject(ArgumentMatchers.anyInt(), anyLong());
+    }
+
+    @Test
+    public void testUploadWALObject_uploadFailRollback() throws ExecutionException, InterruptedException, TimeoutException {
+        S3Operator s3Operator = Mockito.spy(new MemoryS3Operator());
+        Config config = new Config().s3ControllerRequestRetryBaseDelayMs(1);
+        storage = new S3Storage(config, new MemoryWriteAheadLog(),
+                streamManager, objectManager, new DefaultS3BlockCache(0L, objectManager, s3Operator), s3Operator);
+        AtomicLong nextObjectId = new AtomicLong(1);
+        Mockito.doAnswer(invocation -> CompletableFuture.completedFuture(nextObjectId.getAndIncrement())).when(objectManager).prepareObject(ArgumentMatchers.anyInt(), anyLong());
+        List<CommitWALObjectRequest> requests = new CopyOnWriteArrayList<>();
+        Mockito.doAnswer(invocation -> {
+            requests.add(invocation.getArgument(0));
+            return CompletableFuture.completedFuture(new CommitWALObjectResponse());
+        }).when(objectManager).commitWALObject(any());
+        // the first upload fails
+        Mockito.doThrow(new RuntimeException("mock upload fail")).doCallRealMethod().when(s3Operator).writer(ArgumentMatchers.anyString(), any());
+
+        storage.uploadWALObject(newLogCacheBlock(10L)).get(5, TimeUnit.SECONDS);
+
+        // rollback to a new object, which keeps the order of the failed one
+        assertEquals(1, requests.size());
+        assertEquals(2L, requests.get(0).getObjectId());
+        assertEquals(1L, requests.get(0).getOrderId());
+    }
+
+    @Test
+    public void testUploadWALObject_nonRetriableCommitFail() throws InterruptedException {
+        S3Operator s3Operator = new MemoryS3Operator();
+        Config config = new Config().s3ControllerRequestRetryBaseDelayMs(1);
+        storage = new S3Storage(config, new MemoryWriteAheadLog(),
+                streamManager, objectManager, new DefaultS3BlockCache(0L, objectManager, s3Operator), s3Operator);
+        AtomicLong nextObjectId = new AtomicLong(1);
+        Mockito.doAnswer(invocation -> CompletableFuture.completedFuture(nextObjectId.getAndIncrement())).when(objectManager).prepareObject(ArgumentMatchers.anyInt(), anyLong());
+        // the controller rejects the commit, e.g. the stream is fenced
+        Mockito.doAnswer(invocation -> CompletableFuture.failedFuture(new StreamClientException(ErrorCode.EXPIRED_STREAM_EPOCH, "mock fenced")))
+                .when(objectManager).commitWALObject(any());
+
+        CompletableFuture<Void> cf1 = storage.uploadWALObject(newLogCacheBlock(10L));
+        ExecutionException ex = Assertions.assertThrows(ExecutionException.class, () -> cf1.get(5, TimeUnit.SECONDS));
+        Assertions.assertInstanceOf(StreamClientException.class, ex.getCause());
+        // the error is surfaced rather than re-uploaded, and the following objects are neither uploaded nor committed
+        CompletableFuture<Void> cf2 = storage.uploadWALObject(newLogCacheBlock(20L));
+        ex = Assertions.assertThrows(ExecutionException.class, () -> cf2.get(5, TimeUnit.SECONDS));
+        Assertions.assertInstanceOf(StreamClientException.class, ex.getCause());
+        verify(objectManager, Mockito.times(1)).commitWALObject(any());
+        verify(objectManager, Mockito.times(1)).prepareObject(ArgumentMatchers.anyInt(), anyLong());
+    }
+
+    private static LogCache.LogCacheBlock newLogCacheBlock(long offset) {
+        LogCache.LogCacheBlock logCacheBlock = new LogCache.LogCacheBlock(1024);
+        logCacheBlock.put(newRecord(233L, offset));
+        logCacheBlock.put(newRecord(234L, offset));
+        logCacheBlock.confirmOffset(offset);
+        return logCacheBlock;
+    }
+
     @Test
     public void testRecoverContinuousRecords() {
         List<WriteAheadLog.RecoverResult> recoverResults = List.of(
@@ -207,6 +369,27 @@ public class S3StorageTest {
         Assertions.assertTrue(exception);
     }
 
+    @Test
+    public void testRecoverContinuousRecordsInBlocks() {
+        List<WriteAheadLog.RecoverResult> recoverResults = new ArrayList<>();
+        for (long offset = 10L; offset < 15L; offset++) {
+            recoverResults.add(new TestRecoverResult(StreamRecordBatchCodec.encode(newRecord(233L, offset))));
+        }
+        List<StreamMetadata> openingStreams = List.of(new StreamMetadata(233L, 0L, 0L, 10L, StreamState.OPENED));
+        List<LogCache.LogCacheBlock> fullBlocks = new ArrayList<>();
+        LogCache.LogCacheBlock lastBlock = storage.recoverContinuousRecords(recoverResults.iterator(), openingStreams,
+                2, Integer.MAX_VALUE, fullBlocks::add);
+
+        assertEquals(2, fullBlocks.size());
+        assertEquals(10L, fullBlocks.get(0).records().get(233L).get(0).getBaseOffset());
+        assertEquals(2, fullBlocks.get(0).records().get(233L).size());
+        assertEquals(12L, fullBlocks.get(1).records().get(233L).get(0).getBaseOffset());
+        assertEquals(2, fullBlocks.get(1).records().get(233L).size());
+        List<StreamRecordBatch> lastRecords = lastBlock.records().get(233L);
+        assertEquals(1, lastRecords.size());
+        assertEquals(14L, lastRecords.get(0).getBaseOffset());
+    }
+
     private static StreamRecordBatch newRecord(long streamId, long offset) {
         return new StreamRecordBatch(streamId, 0, offset, 1, random(1));
     }
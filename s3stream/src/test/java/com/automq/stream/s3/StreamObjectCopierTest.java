@@ -22,6 +22,8 @@ import com.automq.stream.s3.operator.MemoryS3Operator;
 import com.automq.stream.s3.operator.S3Operator;
 import com.automq.stream.s3.metadata.S3ObjectMetadata;
 import com.automq.stream.s3.metadata.S3ObjectType;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
 
@@ -31,6 +33,7 @@ import java.util.concurrent.ExecutionException;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @Tag("S3Unit")
 public class StreamObjectCopierTest {
@@ -47,9 +50,10 @@ public class StreamObjectCopierTest {
         objectWriter1.write(streamId, List.of(r1, r2));
         objectWriter1.close().get();
 
-        ObjectWriter objectWriter2 = ObjectWriter.writer(2, s3Operator, 1024, 1024);
-        StreamRecordBatch r3 = newRecord(streamId, 25, 8, 512);
-        StreamRecordBatch r4 = newRecord(streamId, 33, 6, 512);
+        // mix the compressed object with the uncompressed one
+        ObjectWriter objectWriter2 = ObjectWriter.writer(2, s3Operator, 1024, 1024, id -> CompressionType.LZ4);
+        StreamRecordBatch r3 = newCompressibleRecord(streamId, 25, 8, 512);
+        StreamRecordBatch r4 = newCompressibleRecord(streamId, 33, 6, 512);
         objectWriter2.write(streamId, List.of(r3, r4));
         objectWriter2.close().get();
 
@@ -68,8 +72,11 @@ public class StreamObjectCopierTest {
         assertEquals(targetObjectSize, objectSize);
 
         ObjectReader objectReader = new ObjectReader(metadata, s3Operator);
+        assertEquals(ObjectWriter.INDEX_VERSION_V1, objectReader.basicObjectInfo().get().indexBlock().version());
         List<ObjectReader.DataBlockIndex> blockIndexes = objectReader.find(streamId, 10, 40).get();
         assertEquals(2, blockIndexes.size());
+        assertEquals(blockIndexes.get(0).size(), blockIndexes.get(0).uncompressedSize());
+        assertTrue(blockIndexes.get(1).size() < blockIndexes.get(1).uncompressedSize());
         {
             Iterator<StreamRecordBatch> it = objectReader.read(blockIndexes.get(0)).get().iterator();
             StreamRecordBatch r = it.next();
@@ -110,4 +117,10 @@ public class StreamObjectCopierTest {
         return new StreamRecordBatch(streamId, 0, offset, count, TestUtils.random(payloadSize));
     }
 
+    StreamRecordBatch newCompressibleRecord(long streamId, long offset, int count, int payloadSize) {
+        ByteBuf payload = Unpooled.buffer(payloadSize);
+        payload.writeZero(payloadSize);
+        return new StreamRecordBatch(streamId, 0, offset, count, payload);
+    }
+
 }
@@ -0,0 +1,151 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.automq.stream.s3;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@Tag("S3Unit")
+class StreamObjectsCompactionSchedulerTest {
+    ExecutorService executor;
+
+    @BeforeEach
+    void setUp() {
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void testScore() {
+        assertEquals(10, StreamObjectsCompactionScheduler.score(10, 0), 1e-6);
+        // more small objects or hotter, higher priority
+        assertTrue(StreamObjectsCompactionScheduler.score(11, 0) > StreamObjectsCompactionScheduler.score(10, 0));
+        assertTrue(StreamObjectsCompactionScheduler.score(10, 1024 * 1024) > StreamObjectsCompactionScheduler.score(10, 0));
+        // hotness is scaled logarithmically
+        assertTrue(StreamObjectsCompactionScheduler.score(2, 1024L * 1024 * 1024) < StreamObjectsCompactionScheduler.score(40, 0));
+    }
+
+    @Test
+    void testParallelismAndPriority() throws Exception {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        List<Long> order = Collections.synchronizedList(new ArrayList<>());
+        List<S3Stream> streams = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            streams.add(mockStream(i, i + 2, 100, 0, () -> {
+                int r = running.incrementAndGet();
+                maxRunning.accumulateAndGet(r, Math::max);
+                return CompletableFuture.runAsync(() -> {
+                    sleep(20);
+                    running.decrementAndGet();
+                }, executor);
+            }, order));
+        }
+        // a closed stream is skipped
+        S3Stream closed = mock(S3Stream.class);
+        when(closed.isClosed()).thenReturn(true);
+        streams.add(closed);
+
+        StreamObjectsCompactionScheduler scheduler = new StreamObjectsCompactionScheduler(2, Long.MAX_VALUE, executor);
+        List<StreamObjectsCompactionTask.CompactionSummary> summaries = scheduler.compact(streams).get(10, TimeUnit.SECONDS);
+
+        assertEquals(10, summaries.size());
+        assertEquals(2, maxRunning.get());
+        // the streams with more small objects go first
+        assertEquals(9L, order.get(0));
+        assertEquals(8L, order.get(1));
+        verify(closed, never()).streamObjectsCompactionTask();
+    }
+
+    @Test
+    void testHotStreamFirst() throws Exception {
+        List<Long> order = Collections.synchronizedList(new ArrayList<>());
+        List<S3Stream> streams = List.of(
+                mockStream(1, 4, 100, 0, () -> CompletableFuture.completedFuture(null), order),
+                mockStream(2, 4, 100, 100L * 1024 * 1024, () -> CompletableFuture.completedFuture(null), order)
+        );
+        StreamObjectsCompactionScheduler scheduler = new StreamObjectsCompactionScheduler(1, Long.MAX_VALUE, executor);
+        scheduler.compact(streams).get(10, TimeUnit.SECONDS);
+        assertEquals(List.of(2L, 1L), order);
+    }
+
+    @Test
+    void testByteBudget() throws Exception {
+        List<Long> order = Collections.synchronizedList(new ArrayList<>());
+        List<S3Stream> streams = List.of(
+                mockStream(1, 10, 600, 0, () -> CompletableFuture.completedFuture(null), order),
+                mockStream(2, 8, 600, 0, () -> CompletableFuture.completedFuture(null), order),
+                mockStream(3, 6, 300, 0, () -> CompletableFuture.completedFuture(null), order),
+                // nothing to compact
+                mockStream(4, 0, 0, 0, () -> CompletableFuture.completedFuture(null), order)
+        );
+        StreamObjectsCompactionScheduler scheduler = new StreamObjectsCompactionScheduler(1, 1000, executor);
+        scheduler.compact(streams).get(10, TimeUnit.SECONDS);
+        // stream 2 is out of the budget and delayed to the next round
+        assertEquals(List.of(1L, 3L), order);
+    }
+
+    private S3Stream mockStream(long streamId, int pendingObjectsCount, long pendingObjectsSize, long fetchedBytes,
+        Supplier<CompletableFuture<Void>> compaction, List<Long> order) {
+        S3Stream stream = mock(S3Stream.class);
+        StreamObjectsCompactionTask task = mock(StreamObjectsCompactionTask.class);
+        when(stream.streamId()).thenReturn(streamId);
+        when(stream.takeFetchedBytes()).thenReturn(fetchedBytes);
+        when(stream.streamObjectsCompactionTask()).thenReturn(task);
+        when(task.getPendingObjectsCount()).thenReturn(pendingObjectsCount);
+        when(task.getPendingObjectsSize()).thenReturn(pendingObjectsSize);
+        when(task.doCompactions()).thenAnswer(args -> {
+            order.add(streamId);
+            return compaction.get();
+        });
+        when(task.getCompactionsSummary()).thenReturn(new StreamObjectsCompactionTask.CompactionSummary(
+                streamId, 0, 100, 1, pendingObjectsSize, pendingObjectsCount, 1, 0));
+        return stream;
+    }
+
+    private static void sleep(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
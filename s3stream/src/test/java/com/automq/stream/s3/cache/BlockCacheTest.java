@@ -22,7 +22,12 @@ import com.automq.stream.s3.model.StreamRecordBatch;
 import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNull;
@@ -103,6 +108,58 @@ public class BlockCacheTest {
         assertEquals(2, blockCache.get(233L, 16, 21L, 1000).getRecords().size());
     }
 
+    @Test
+    public void testScanResistance() {
+        BlockCache blockCache = new BlockCache(10);
+        // the hot block is read through and then read again
+        blockCache.put(233L, List.of(newRecord(233L, 0L, 1, 2)));
+        blockCache.get(233L, 0L, 1L, 1000).getRecords().forEach(StreamRecordBatch::release);
+        blockCache.get(233L, 0L, 1L, 1000).getRecords().forEach(StreamRecordBatch::release);
+
+        // scan another stream in the same segment, each block is read through once
+        long scanStreamId = 233L + BlockCache.SEGMENT_COUNT;
+        for (long offset = 0; offset < 10; offset++) {
+            blockCache.put(scanStreamId, List.of(newRecord(scanStreamId, offset, 1, 2)));
+            blockCache.get(scanStreamId, offset, offset + 1, 1000).getRecords().forEach(StreamRecordBatch::release);
+        }
+
+        assertEquals(1, blockCache.get(233L, 0L, 1L, 1000).getRecords().size());
+        assertEquals(0, blockCache.get(scanStreamId, 0L, 1L, 1000).getRecords().size());
+        assertEquals(1, blockCache.get(scanStreamId, 9L, 10L, 1000).getRecords().size());
+    }
+
+    @Test
+    public void testConcurrentPutGet() throws Exception {
+        BlockCache blockCache = new BlockCache(64 * 1024);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                long streamId = t % 4;
+                boolean writer = t < 4;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 2000; i++) {
+                        long offset = writer ? i : ThreadLocalRandom.current().nextInt(2000);
+                        if (writer) {
+                            blockCache.put(streamId, List.of(newRecord(streamId, offset, 1, 1024)));
+                        }
+                        List<StreamRecordBatch> records = blockCache.get(streamId, offset, offset + 10, 4096).getRecords();
+                        for (StreamRecordBatch record : records) {
+                            // the payload must not be freed before released
+                            assertEquals(1024, record.getRecordBatch().rawPayload().remaining());
+                            record.release();
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
     @Test
     public void testLRU() {
         LRUCache<Long, Boolean> lru = new LRUCache<>();
@@ -165,6 +222,35 @@ public class BlockCacheTest {
         assertEquals(BlockCache.BLOCK_SIZE, readahead.getSize());
     }
 
+    @Test
+    public void testReadaheadHitAndWaste() {
+        List<Long> hits = new ArrayList<>();
+        List<Long> wastes = new ArrayList<>();
+        BlockCache blockCache = new BlockCache(10, new BlockCache.ReadaheadListener() {
+            @Override
+            public void onHit(long streamId, long bytes) {
+                hits.add(bytes);
+            }
+
+            @Override
+            public void onWaste(long streamId, long bytes) {
+                wastes.add(bytes);
+            }
+        });
+        blockCache.put(233L, List.of(newRecord(233L, 0L, 1, 2)));
+        blockCache.put(233L, List.of(newRecord(233L, 1L, 1, 3)), true);
+
+        // only the bytes read from the block filled by the readahead are counted
+        blockCache.get(233L, 0L, 2L, 1000).getRecords().forEach(StreamRecordBatch::release);
+        assertEquals(List.of(3L), hits);
+
+        // the blocks which are not read through are evicted, only the one filled by the readahead is a waste
+        blockCache.put(233L, List.of(newRecord(233L, 10L, 1, 4)), true);
+        blockCache.put(233L, List.of(newRecord(233L, 11L, 1, 4)));
+        blockCache.put(233L, List.of(newRecord(233L, 12L, 1, 4)));
+        assertEquals(List.of(4L), wastes);
+    }
+
     private static StreamRecordBatch newRecord(long streamId, long offset, int count, int size) {
         return new StreamRecordBatch(streamId, 0, offset, count, TestUtils.random(size));
     }
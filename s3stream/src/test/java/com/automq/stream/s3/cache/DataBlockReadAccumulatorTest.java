@@ -20,6 +20,7 @@ package com.automq.stream.s3.cache;
 import com.automq.stream.s3.ObjectReader;
 import com.automq.stream.s3.TestUtils;
 import com.automq.stream.s3.model.StreamRecordBatch;
+import com.automq.stream.s3.network.ThrottleStrategy;
 import com.automq.stream.utils.CloseableIterator;
 import org.junit.jupiter.api.Test;
 
@@ -34,6 +35,7 @@ import java.util.function.Consumer;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
@@ -51,7 +53,7 @@ public class DataBlockReadAccumulatorTest {
         ObjectReader reader = mock(ObjectReader.class);
         ObjectReader.DataBlockIndex dataBlockIndex = new ObjectReader.DataBlockIndex(10, 10, 100, 2);
         CompletableFuture<ObjectReader.DataBlock> readerCf = new CompletableFuture<>();
-        when(reader.read(eq(dataBlockIndex))).thenReturn(readerCf);
+        when(reader.read(eq(dataBlockIndex), any())).thenReturn(readerCf);
 
         CompletableFuture<DataBlockRecords> dataBlockCf1 = accumulator.readDataBlock(reader, dataBlockIndex);
         CompletableFuture<DataBlockRecords> dataBlockCf2 = accumulator.readDataBlock(reader, dataBlockIndex);
@@ -62,7 +64,7 @@ public class DataBlockReadAccumulatorTest {
                 newRecord(10, 12, 2, 1)
         );
         when(dataBlock.recordCount()).thenReturn(2);
-        when(dataBlock.iterator()).thenAnswer(args -> {
+        when(dataBlock.iterator(anyLong())).thenAnswer(args -> {
             Iterator<StreamRecordBatch> it = records.iterator();
             return new CloseableIterator<StreamRecordBatch>() {
 
@@ -85,7 +87,7 @@ public class DataBlockReadAccumulatorTest {
         when(dataBlock.recordCount()).thenReturn(2);
         readerCf.complete(dataBlock);
 
-        verify(reader, times(1)).read(any());
+        verify(reader, times(1)).read(any(), any());
         assertEquals(1, consumedBlocks.size());
         assertEquals(2, consumedBlocks.get(0).records().size());
         assertEquals(2, consumedBlocks.get(0).refCount.get());
@@ -99,10 +101,63 @@ public class DataBlockReadAccumulatorTest {
 
         // next round read, expected new read
         CompletableFuture<DataBlockRecords> dataBlockCf3 = accumulator.readDataBlock(reader, dataBlockIndex);
-        verify(reader, times(2)).read(any());
+        verify(reader, times(2)).read(any(), any());
         dataBlockCf3.get().release();
     }
 
+    @Test
+    public void testReadFromStartOffset() throws ExecutionException, InterruptedException, TimeoutException {
+        DataBlockReadAccumulator accumulator = new DataBlockReadAccumulator(records -> {
+        });
+
+        ObjectReader reader = mock(ObjectReader.class);
+        ObjectReader.DataBlockIndex dataBlockIndex = new ObjectReader.DataBlockIndex(10, 10, 100, 2);
+        CompletableFuture<ObjectReader.DataBlock> readerCf1 = new CompletableFuture<>();
+        CompletableFuture<ObjectReader.DataBlock> readerCf2 = new CompletableFuture<>();
+        when(reader.read(eq(dataBlockIndex), any())).thenReturn(readerCf1, readerCf2);
+
+        CompletableFuture<DataBlockRecords> dataBlockCf1 = accumulator.readDataBlock(reader, dataBlockIndex, ThrottleStrategy.BYPASS, 12, false);
+        // the inflight read starts after 10, so it misses the record [10, 12)
+        CompletableFuture<DataBlockRecords> dataBlockCf2 = accumulator.readDataBlock(reader, dataBlockIndex, ThrottleStrategy.BYPASS, 10, false);
+        // the inflight read which starts from 10 contains all the records from 13
+        CompletableFuture<DataBlockRecords> dataBlockCf3 = accumulator.readDataBlock(reader, dataBlockIndex, ThrottleStrategy.BYPASS, 13, false);
+        verify(reader, times(2)).read(any(), any());
+
+        ObjectReader.DataBlock dataBlock1 = mock(ObjectReader.DataBlock.class);
+        when(dataBlock1.iterator(12)).thenAnswer(args -> iterator(List.of(newRecord(10, 12, 2, 1))));
+        readerCf1.complete(dataBlock1);
+        ObjectReader.DataBlock dataBlock2 = mock(ObjectReader.DataBlock.class);
+        when(dataBlock2.iterator(10)).thenAnswer(args -> iterator(List.of(newRecord(10, 10, 2, 1), newRecord(10, 12, 2, 1))));
+        readerCf2.complete(dataBlock2);
+
+        assertEquals(1, dataBlockCf1.get(1, TimeUnit.SECONDS).records().size());
+        assertEquals(2, dataBlockCf2.get(1, TimeUnit.SECONDS).records().size());
+        assertEquals(2, dataBlockCf3.get(1, TimeUnit.SECONDS).records().size());
+        assertEquals(12, dataBlockCf3.get().records(13).get(0).getBaseOffset());
+        dataBlockCf1.get().release();
+        dataBlockCf2.get().release();
+        dataBlockCf3.get().release();
+    }
+
+    private static CloseableIterator<StreamRecordBatch> iterator(List<StreamRecordBatch> records) {
+        Iterator<StreamRecordBatch> it = records.iterator();
+        return new CloseableIterator<>() {
+            @Override
+            public boolean hasNext() {
+                return it.hasNext();
+            }
+
+            @Override
+            public StreamRecordBatch next() {
+                return it.next();
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
     private static StreamRecordBatch newRecord(long streamId, long offset, int count, int size) {
         return new StreamRecordBatch(streamId, 0, offset, count, TestUtils.random(size));
     }
@@ -0,0 +1,161 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.automq.stream.s3.cache;
+
+import com.automq.stream.s3.ObjectReader;
+import com.automq.stream.s3.TestUtils;
+import com.automq.stream.s3.network.ThrottleStrategy;
+import io.netty.buffer.ByteBuf;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@Tag("S3Unit")
+public class DiskBlockCacheTest {
+    private static final int SEGMENT_SIZE = 4096;
+
+    String path;
+
+    @BeforeEach
+    void setUp() {
+        path = TestUtils.tempFilePath();
+    }
+
+    @Test
+    public void testPutGet() throws IOException {
+        try (DiskBlockCache cache = new DiskBlockCache(path, SEGMENT_SIZE * 4, SEGMENT_SIZE)) {
+            ByteBuf block1 = TestUtils.random(1000);
+            ByteBuf block2 = TestUtils.random(2000);
+            cache.put(1, 0, block1).join();
+            cache.put(1, 1, block2).join();
+            // a block larger than a segment is not cached
+            cache.put(2, 0, TestUtils.random(SEGMENT_SIZE)).join();
+
+            assertEquals(block1, cache.get(1, 0));
+            assertEquals(block2, cache.get(1, 1));
+            assertNull(cache.get(1, 2));
+            assertNull(cache.get(2, 0));
+            assertEquals(SEGMENT_SIZE, cache.size());
+        }
+    }
+
+    @Test
+    public void testRecover() throws IOException {
+        ByteBuf block1 = TestUtils.random(1000);
+        ByteBuf block2 = TestUtils.random(3100);
+        try (DiskBlockCache cache = new DiskBlockCache(path, SEGMENT_SIZE * 4, SEGMENT_SIZE)) {
+            cache.put(1, 0, block1).join();
+            // rolls to the second segment
+            cache.put(1, 1, block2).join();
+        }
+        try (DiskBlockCache cache = new DiskBlockCache(path, SEGMENT_SIZE * 4, SEGMENT_SIZE)) {
+            assertEquals(block1, cache.get(1, 0));
+            assertEquals(block2, cache.get(1, 1));
+            // new blocks are appended to a new segment
+            ByteBuf block3 = TestUtils.random(100);
+            cache.put(2, 0, block3).join();
+            assertEquals(block3, cache.get(2, 0));
+            assertEquals(SEGMENT_SIZE * 3, cache.size());
+        }
+    }
+
+    @Test
+    public void testRecoverTornEntry() throws IOException {
+        ByteBuf block1 = TestUtils.random(1000);
+        ByteBuf block2 = TestUtils.random(1000);
+        try (DiskBlockCache cache = new DiskBlockCache(path, SEGMENT_SIZE * 4, SEGMENT_SIZE)) {
+            cache.put(1, 0, block1).join();
+            cache.put(1, 1, block2).join();
+        }
+        // corrupt the data of the second entry
+        Path segment = segments().get(0);
+        try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+            long position = DiskBlockCache.ENTRY_HEADER_SIZE * 2L + 1000 + 10;
+            file.seek(position);
+            byte b = file.readByte();
+            file.seek(position);
+            file.writeByte(~b);
+        }
+        try (DiskBlockCache cache = new DiskBlockCache(path, SEGMENT_SIZE * 4, SEGMENT_SIZE)) {
+            assertEquals(block1, cache.get(1, 0));
+            assertNull(cache.get(1, 1));
+        }
+    }
+
+    @Test
+    public void testEvict() throws IOException {
+        try (DiskBlockCache cache = new DiskBlockCache(path, SEGMENT_SIZE * 2, SEGMENT_SIZE)) {
+            // each block takes a whole segment
+            for (int i = 0; i < 3; i++) {
+                cache.put(1, i, TestUtils.random(SEGMENT_SIZE - DiskBlockCache.ENTRY_HEADER_SIZE)).join();
+            }
+            assertNull(cache.get(1, 0));
+            assertEquals(SEGMENT_SIZE - DiskBlockCache.ENTRY_HEADER_SIZE, cache.get(1, 1).readableBytes());
+            assertEquals(SEGMENT_SIZE - DiskBlockCache.ENTRY_HEADER_SIZE, cache.get(1, 2).readableBytes());
+            assertEquals(SEGMENT_SIZE * 2, cache.size());
+            assertEquals(2, segments().size());
+        }
+    }
+
+    @Test
+    public void testReadThrough() throws IOException {
+        try (DiskBlockCache cache = new DiskBlockCache(path, SEGMENT_SIZE * 4, SEGMENT_SIZE)) {
+            ByteBuf block = TestUtils.random(1000);
+            ObjectReader reader = mock(ObjectReader.class);
+            when(reader.objectId()).thenReturn(233L);
+            ObjectReader.DataBlockIndex blockIndex = new ObjectReader.DataBlockIndex(1, 0, 1000, 10);
+            when(reader.read(any(), any())).thenReturn(CompletableFuture.completedFuture(new ObjectReader.DataBlock(block.retainedDuplicate(), 10)));
+
+            try (ObjectReader.DataBlock dataBlock = cache.read(reader, blockIndex, ThrottleStrategy.TAIL_READ).join()) {
+                assertEquals(block, dataBlock.buffer());
+            }
+            // wait for the background write
+            cache.put(233L, 1, TestUtils.random(1)).join();
+
+            try (ObjectReader.DataBlock dataBlock = cache.read(reader, blockIndex, ThrottleStrategy.TAIL_READ).join()) {
+                assertEquals(block, dataBlock.buffer());
+                assertEquals(10, dataBlock.recordCount());
+            }
+            verify(reader, times(1)).read(any(), any());
+        }
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(Paths.get(path))) {
+            return files.sorted().collect(Collectors.toList());
+        }
+    }
+}
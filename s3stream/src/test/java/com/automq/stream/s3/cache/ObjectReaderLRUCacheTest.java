@@ -0,0 +1,98 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.automq.stream.s3.cache;
+
+import com.automq.stream.s3.ObjectReader;
+import com.automq.stream.s3.ObjectWriter;
+import com.automq.stream.s3.TestUtils;
+import com.automq.stream.s3.metadata.S3ObjectMetadata;
+import com.automq.stream.s3.metadata.S3ObjectType;
+import com.automq.stream.s3.model.StreamRecordBatch;
+import com.automq.stream.s3.operator.MemoryS3Operator;
+import com.automq.stream.s3.operator.S3Operator;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@Tag("S3Unit")
+public class ObjectReaderLRUCacheTest {
+
+    @Test
+    public void testEvictByIndexSize() throws Exception {
+        S3Operator s3Operator = new MemoryS3Operator();
+        List<S3ObjectMetadata> objects = new ArrayList<>();
+        for (long objectId = 0; objectId < 4; objectId++) {
+            objects.add(writeObject(s3Operator, objectId, 10));
+        }
+        int indexSize;
+        try (ObjectReader reader = new ObjectReader(objects.get(0), s3Operator)) {
+            indexSize = reader.basicObjectInfo().get().indexBlock().size();
+        }
+        // room for two and a half indexes
+        ObjectReaderLRUCache cache = new ObjectReaderLRUCache(s3Operator, indexSize * 5L / 2);
+        ObjectReader reader0 = load(cache, objects.get(0));
+        load(cache, objects.get(1));
+        assertEquals(2, cache.size());
+        assertEquals(indexSize * 2L, cache.indexSize());
+        // touch the first one, so the second one is the least recently used
+        assertSame(reader0, load(cache, objects.get(0)));
+
+        load(cache, objects.get(2));
+        assertEquals(2, cache.size());
+        assertEquals(indexSize * 2L, cache.indexSize());
+        assertSame(reader0, load(cache, objects.get(0)));
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testEvictFailedReader() throws Exception {
+        S3Operator s3Operator = new MemoryS3Operator();
+        ObjectReaderLRUCache cache = new ObjectReaderLRUCache(s3Operator, Long.MAX_VALUE);
+        S3ObjectMetadata metadata = new S3ObjectMetadata(233L, 1024, S3ObjectType.WAL);
+        ObjectReader reader = cache.get(metadata);
+        assertThrows(Exception.class, () -> reader.basicObjectInfo().get());
+        reader.release();
+        // the next read retries
+        ObjectReader retry = cache.get(metadata);
+        assertNotSame(reader, retry);
+        retry.release();
+    }
+
+    private static ObjectReader load(ObjectReaderLRUCache cache, S3ObjectMetadata metadata) throws Exception {
+        ObjectReader reader = cache.get(metadata);
+        reader.basicObjectInfo().get();
+        reader.release();
+        return reader;
+    }
+
+    private static S3ObjectMetadata writeObject(S3Operator s3Operator, long objectId, int streamCount) throws Exception {
+        ObjectWriter objectWriter = ObjectWriter.writer(objectId, s3Operator, 1024, 1024);
+        for (int i = 0; i < streamCount; i++) {
+            objectWriter.write(i, List.of(new StreamRecordBatch(i, 0, 0, 1, TestUtils.random(1))));
+        }
+        objectWriter.close().get();
+        return new S3ObjectMetadata(objectId, objectWriter.size(), S3ObjectType.WAL);
+    }
+}
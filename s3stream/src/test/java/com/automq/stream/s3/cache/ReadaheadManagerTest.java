@@ -0,0 +1,159 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.automq.stream.s3.cache;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@Tag("S3Unit")
+public class ReadaheadManagerTest {
+
+    @Test
+    public void testSequentialDetect() {
+        ReadaheadManager manager = new ReadaheadManager(task -> CompletableFuture.completedFuture(null));
+        int size = 4 * BlockCache.BLOCK_SIZE;
+        // unknown stream
+        assertEquals(size, manager.adjust(233, size));
+
+        manager.onRead(233, 0, 10, 1024, false);
+        manager.onRead(233, 10, 20, 1024, true);
+        assertEquals(size, manager.adjust(233, size));
+
+        // another consumer of the same stream reads from the beginning
+        manager.onRead(233, 0, 5, 1024, true);
+        assertEquals(0, manager.adjust(233, size));
+        manager.onRead(233, 5, 8, 1024, true);
+        assertEquals(size, manager.adjust(233, size));
+        // the first consumer is still tracked
+        manager.onRead(233, 20, 30, 1024, true);
+        assertEquals(size, manager.adjust(233, size));
+    }
+
+    @Test
+    public void testConsumeRate() {
+        ReadaheadManager.StreamState state = new ReadaheadManager.StreamState();
+        long now = 1;
+        state.onRead(0, 10, 1024, now);
+        assertEquals(0, state.rate);
+        for (int i = 1; i <= 10; i++) {
+            now += TimeUnit.MILLISECONDS.toNanos(100);
+            state.onRead(i * 10, i * 10 + 10, 1024 * 1024, now);
+        }
+        // 1MiB per 100ms
+        assertEquals(10 * 1024 * 1024, state.rate, 1);
+        assertTrue(state.sequential);
+    }
+
+    @Test
+    public void testSchedule() {
+        List<ReadaheadManager.Task> running = new ArrayList<>();
+        List<CompletableFuture<Void>> runningCf = new ArrayList<>();
+        ReadaheadManager manager = new ReadaheadManager(task -> {
+            CompletableFuture<Void> cf = new CompletableFuture<>();
+            running.add(task);
+            runningCf.add(cf);
+            return cf;
+        });
+        for (int i = 0; i < ReadaheadManager.MAX_INFLIGHT; i++) {
+            manager.submit(i, 0, BlockCache.BLOCK_SIZE);
+        }
+        assertEquals(ReadaheadManager.MAX_INFLIGHT, running.size());
+
+        // queued instead of dropped
+        ReadaheadManager.Task normal = manager.submit(100, 0, BlockCache.BLOCK_SIZE);
+        manager.onRead(101, 0, 10, 1024, false);
+        ReadaheadManager.Task lagging = manager.submit(101, 10, BlockCache.BLOCK_SIZE);
+        ReadaheadManager.Task waited = manager.submit(102, 0, BlockCache.BLOCK_SIZE);
+        manager.boost(waited);
+        assertEquals(3, manager.pendingCount());
+        assertFalse(normal.cf.isDone());
+
+        runningCf.get(0).complete(null);
+        assertEquals(waited, running.get(running.size() - 1));
+        runningCf.get(1).complete(null);
+        assertEquals(lagging, running.get(running.size() - 1));
+        runningCf.get(2).complete(null);
+        assertEquals(normal, running.get(running.size() - 1));
+        assertEquals(0, manager.pendingCount());
+
+        runningCf.get(running.size() - 1).complete(null);
+        assertTrue(normal.cf.isDone());
+    }
+
+    @Test
+    public void testDropWhenFull() {
+        ReadaheadManager manager = new ReadaheadManager(task -> new CompletableFuture<>());
+        for (int i = 0; i < ReadaheadManager.MAX_INFLIGHT + ReadaheadManager.MAX_PENDING; i++) {
+            manager.submit(i, 0, BlockCache.BLOCK_SIZE);
+        }
+        assertEquals(ReadaheadManager.MAX_PENDING, manager.pendingCount());
+        ReadaheadManager.Task task = manager.submit(233, 0, BlockCache.BLOCK_SIZE);
+        assertEquals(ReadaheadManager.MAX_PENDING, manager.pendingCount());
+        // the lowest priority one, which is the newest one, is dropped
+        assertTrue(task.cf.isDone());
+    }
+
+    @Test
+    public void testEvictIdleState() {
+        ReadaheadManager manager = new ReadaheadManager(task -> CompletableFuture.completedFuture(null));
+        int size = 4 * BlockCache.BLOCK_SIZE;
+        long now = System.nanoTime();
+        manager.onRead(233, 0, 10, 1024, true, now);
+        manager.onRead(234, 0, 10, 1024, true, now + ReadaheadManager.STATE_IDLE_TIMEOUT_NANOS / 2);
+        manager.onRead(233, 0, 5, 1024, true, now + ReadaheadManager.STATE_IDLE_TIMEOUT_NANOS / 2);
+        assertEquals(0, manager.adjust(233, size));
+        assertEquals(2, manager.stateCount());
+
+        // stream 234 is idle for the timeout, while stream 233 is still read
+        manager.onRead(233, 5, 8, 1024, true, now + ReadaheadManager.STATE_IDLE_TIMEOUT_NANOS * 3 / 2);
+        assertEquals(1, manager.stateCount());
+        assertEquals(size, manager.adjust(233, size));
+        assertEquals(size, manager.adjust(234, size));
+    }
+
+    @Test
+    public void testReadaheadStats() {
+        ReadaheadManager manager = new ReadaheadManager(task -> CompletableFuture.completedFuture(null));
+        long now = System.nanoTime();
+        manager.onRead(233, 0, 10, 1024, true, now);
+        manager.onRead(234, 0, 10, 1024, true, now);
+        manager.onHit(233, 100);
+        manager.onWaste(233, 10);
+        manager.onWaste(234, 20);
+        // the streams which are not tracked are ignored
+        manager.onWaste(235, 30);
+
+        List<ReadaheadManager.StreamStats> stats = manager.topWasteStreams(ReadaheadManager.TOP_WASTE_STREAMS);
+        assertEquals(List.of(new ReadaheadManager.StreamStats(234, 0, 20), new ReadaheadManager.StreamStats(233, 100, 10)), stats);
+        assertEquals(1, manager.topWasteStreams(1).size());
+
+        // the stats are evicted along with the idle states
+        manager.onRead(233, 10, 20, 1024, true, now + ReadaheadManager.STATE_IDLE_TIMEOUT_NANOS / 2);
+        manager.onRead(233, 20, 30, 1024, true, now + ReadaheadManager.STATE_IDLE_TIMEOUT_NANOS * 3 / 2);
+        assertEquals(List.of(new ReadaheadManager.StreamStats(233, 100, 10)), manager.topWasteStreams(ReadaheadManager.TOP_WASTE_STREAMS));
+    }
+}
@@ -91,6 +91,34 @@ public class CompactionUploaderTest extends CompactionTestBase {
         }
     }
 
+    @Test
+    public void testWriteCompressedWALObject() {
+        // the second block is compressed
+        List<StreamDataBlock> streamDataBlocks = List.of(
+                new StreamDataBlock(STREAM_0, 0, 20, 2, 1, 30, 20, 1),
+                new StreamDataBlock(STREAM_0, 20, 25, 3, 0, 10, 5, 1, 50));
+        CompactedObject compactedObject = new CompactedObject(CompactionType.COMPACT, streamDataBlocks);
+        CompactionUploader uploader = new CompactionUploader(objectManager, s3Operator, config);
+        CompletableFuture<Void> cf = uploader.chainWriteWALObject(null, compactedObject);
+        for (StreamDataBlock streamDataBlock : streamDataBlocks) {
+            streamDataBlock.getDataCf().complete(TestUtils.random(streamDataBlock.getBlockSize()));
+        }
+        cf.thenAccept(v -> uploader.forceUploadWAL()).join();
+        uploader.forceUploadWAL().join();
+        long walObjectSize = uploader.completeWAL();
+        // the index with uncompressed size is 4 bytes larger for each block
+        assertEquals(walObjectSize, calculateObjectSize(streamDataBlocks) + 4L * streamDataBlocks.size());
+
+        DataBlockReader reader = new DataBlockReader(new S3ObjectMetadata(OBJECT_0, walObjectSize, S3ObjectType.WAL), s3Operator);
+        reader.parseDataBlockIndex();
+        List<StreamDataBlock> streamDataBlocksFromS3 = reader.getDataBlockIndex().join();
+        assertEquals(streamDataBlocks.size(), streamDataBlocksFromS3.size());
+        for (int i = 0; i < streamDataBlocks.size(); i++) {
+            assertEquals(streamDataBlocks.get(i).getBlockSize(), streamDataBlocksFromS3.get(i).getBlockSize());
+            assertEquals(streamDataBlocks.get(i).getUncompressedSize(), streamDataBlocksFromS3.get(i).getUncompressedSize());
+        }
+    }
+
     @Test
     public void testWriteWALObject2() {
         List<StreamDataBlock> streamDataBlocks1 = List.of(
@@ -0,0 +1,141 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.automq.stream.s3.metrics;
+
+import com.automq.stream.s3.metrics.operations.S3Operation;
+import com.automq.stream.s3.metrics.stats.OperationMetricsStats;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@Tag("S3Unit")
+public class PercentileHistogramTest {
+    private static final long WINDOW_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    @Test
+    public void testIndex() {
+        for (long value = 0; value < PercentileHistogram.SUB_BUCKET_COUNT; value++) {
+            assertEquals(value, PercentileHistogram.highestEquivalentValue(PercentileHistogram.index(value)));
+        }
+        Random random = new Random(233);
+        for (int i = 0; i < 10000; i++) {
+            long value = random.nextLong() >>> (1 + random.nextInt(63));
+            int index = PercentileHistogram.index(value);
+            assertTrue(index < PercentileHistogram.BUCKET_COUNT);
+            long highest = PercentileHistogram.highestEquivalentValue(index);
+            assertTrue(highest >= value);
+            assertTrue(highest - value <= value / PercentileHistogram.SUB_BUCKET_HALF_COUNT, value + " " + highest);
+        }
+        assertEquals(Long.MAX_VALUE, PercentileHistogram.highestEquivalentValue(PercentileHistogram.index(Long.MAX_VALUE)));
+    }
+
+    @Test
+    public void testPercentile() {
+        PercentileHistogram histogram = new PercentileHistogram(WINDOW_NANOS);
+        long[] values = new long[100000];
+        Random random = new Random(233);
+        for (int i = 0; i < values.length; i++) {
+            // a long tail
+            values[i] = (long) Math.exp(random.nextDouble() * 15);
+            histogram.update(values[i]);
+        }
+        Arrays.sort(values);
+        histogram.tryRoll(System.nanoTime() + WINDOW_NANOS);
+        for (double percentile : new double[] {50, 90, 99, 99.9, 100}) {
+            long expected = values[(int) Math.ceil(percentile / 100 * values.length) - 1];
+            long actual = histogram.valueAtPercentile(percentile);
+            assertTrue(actual >= expected && actual - expected <= expected / PercentileHistogram.SUB_BUCKET_HALF_COUNT,
+                    "p" + percentile + " expected " + expected + " but was " + actual);
+        }
+        assertEquals(values.length, histogram.windowCount());
+        assertEquals(Arrays.stream(values).average().orElse(0), histogram.windowMean(), 1e-6);
+    }
+
+    @Test
+    public void testWindow() {
+        PercentileHistogram histogram = new PercentileHistogram(WINDOW_NANOS);
+        long now = System.nanoTime();
+        for (int i = 0; i < 100; i++) {
+            histogram.update(1000);
+        }
+        // the values are visible after the window is rolled
+        assertEquals(0, histogram.max());
+        histogram.tryRoll(now + WINDOW_NANOS);
+        assertEquals(100, histogram.windowCount());
+        assertEquals(1000, histogram.valueAtPercentile(99), 1000.0 / PercentileHistogram.SUB_BUCKET_HALF_COUNT);
+
+        histogram.update(1);
+        histogram.tryRoll(now + WINDOW_NANOS * 2);
+        // the last window only has the new value
+        assertEquals(1, histogram.windowCount());
+        assertEquals(1, histogram.max());
+        assertEquals(101, histogram.count());
+
+        histogram.tryRoll(now + WINDOW_NANOS * 3);
+        assertEquals(0, histogram.windowCount());
+        assertEquals(0, histogram.valueAtPercentile(99));
+    }
+
+    @Test
+    public void testConcurrentUpdate() throws InterruptedException {
+        PercentileHistogram histogram = new PercentileHistogram(WINDOW_NANOS);
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+                for (int j = 0; j < 100000; j++) {
+                    histogram.update(j);
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        histogram.tryRoll(System.nanoTime() + WINDOW_NANOS);
+        assertEquals(400000, histogram.count());
+        assertEquals(400000, histogram.windowCount());
+    }
+
+    @Test
+    public void testZeroAllocation() {
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Histogram histogram = OperationMetricsStats.getHistogram(S3Operation.APPEND_STORAGE_WAL);
+        // warm up, so the code is compiled
+        for (int i = 0; i < 1_000_000; i++) {
+            OperationMetricsStats.getHistogram(S3Operation.APPEND_STORAGE_WAL).update(i & 1023);
+        }
+        long countBefore = histogram.count();
+        long threadId = Thread.currentThread().getId();
+        long before = threadMXBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < 1_000_000; i++) {
+            OperationMetricsStats.getHistogram(S3Operation.APPEND_STORAGE_WAL).update(i & 1023);
+        }
+        long allocated = threadMXBean.getThreadAllocatedBytes(threadId) - before;
+        // less than a byte per sample, the few bytes are allocated by the measurement itself
+        assertTrue(allocated < 1024, "allocated " + allocated + " bytes");
+        // the histogram is shared with the other tests in the same JVM
+        assertTrue(histogram.count() - countBefore >= 1_000_000);
+    }
+}
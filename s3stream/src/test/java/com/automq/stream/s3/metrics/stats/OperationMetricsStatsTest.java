@@ -0,0 +1,46 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.automq.stream.s3.metrics.stats;
+
+import com.automq.stream.s3.metrics.NoopS3StreamMetricsGroup;
+import com.automq.stream.s3.metrics.PercentileHistogram;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@Tag("S3Unit")
+public class OperationMetricsStatsTest {
+
+    @Test
+    public void testSubMillisecondTime() {
+        OperationMetricsStats.OperationTimeHistogram histogram = new OperationMetricsStats.OperationTimeHistogram(
+                new NoopS3StreamMetricsGroup().newHistogram("operation_time", Map.of()), new PercentileHistogram());
+        for (int i = 0; i < 4; i++) {
+            histogram.updateNanos(TimeUnit.MICROSECONDS.toNanos(250));
+        }
+        // recorded in milliseconds
+        histogram.update(2);
+        assertEquals(5, histogram.count());
+        // (4 * 250us + 2000us) / 5, which is 0 if the times are truncated to milliseconds
+        assertEquals(0.6, histogram.mean(), 0.001);
+    }
+}
@@ -18,22 +18,40 @@
 package com.automq.stream.s3.operator;
 
 import com.automq.stream.s3.TestUtils;
+import com.automq.stream.s3.network.ThrottleStrategy;
 import io.netty.buffer.ByteBuf;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscription;
+import software.amazon.awssdk.core.async.AsyncRequestBody;
+import software.amazon.awssdk.core.async.AsyncResponseTransformer;
+import software.amazon.awssdk.core.async.ResponsePublisher;
+import software.amazon.awssdk.core.async.SdkPublisher;
 import software.amazon.awssdk.services.s3.S3AsyncClient;
 import software.amazon.awssdk.services.s3.model.DeleteObjectsRequest;
 import software.amazon.awssdk.services.s3.model.DeleteObjectsResponse;
 import software.amazon.awssdk.services.s3.model.DeletedObject;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
@@ -91,8 +109,9 @@ class DefaultS3OperatorTest {
     void testMergeRead() throws ExecutionException, InterruptedException {
         operator = new DefaultS3Operator(s3, "test-bucket", true) {
             @Override
-            CompletableFuture<ByteBuf> mergedRangeRead(String path, long start, long end) {
-                return CompletableFuture.completedFuture(TestUtils.random((int) (end - start + 1)));
+            CompletableFuture<Void> mergedRangeRead(String path, long start, long end, Consumer<ByteBuffer> consumer) {
+                consumer.accept(TestUtils.random((int) (end - start)).nioBuffer());
+                return CompletableFuture.completedFuture(null);
             }
         };
         operator = spy(operator);
@@ -106,9 +125,9 @@ class DefaultS3OperatorTest {
 
         operator.tryMergeRead();
 
-        verify(operator, timeout(1000L).times(1)).mergedRangeRead(eq("obj0"), eq(0L), eq(16777216L));
-        verify(operator, timeout(1000L).times(1)).mergedRangeRead(eq("obj1"), eq(1024L), eq(3072L));
-        verify(operator, timeout(1000L).times(1)).mergedRangeRead(eq("obj0"), eq(16777216L), eq(16777728L));
+        verify(operator, timeout(1000L).times(1)).mergedRangeRead(eq("obj0"), eq(0L), eq(16777216L), any());
+        verify(operator, timeout(1000L).times(1)).mergedRangeRead(eq("obj1"), eq(1024L), eq(3072L), any());
+        verify(operator, timeout(1000L).times(1)).mergedRangeRead(eq("obj0"), eq(16777216L), eq(16777728L), any());
 
         ByteBuf buf = cf1.get();
         assertEquals(1024, buf.readableBytes());
@@ -126,4 +145,200 @@ class DefaultS3OperatorTest {
         assertEquals(512, buf.readableBytes());
         buf.release();
     }
+
+    @Test
+    void testReadPermitLimit() throws Exception {
+        List<String> started = new CopyOnWriteArrayList<>();
+        List<CompletableFuture<Void>> inflight = new CopyOnWriteArrayList<>();
+        operator = new DefaultS3Operator(s3, "test-bucket", true) {
+            @Override
+            CompletableFuture<Void> mergedRangeRead(String path, long start, long end, Consumer<ByteBuffer> consumer) {
+                started.add(path);
+                CompletableFuture<Void> cf = new CompletableFuture<>();
+                inflight.add(cf);
+                return cf.thenAccept(nil -> consumer.accept(TestUtils.random((int) (end - start)).nioBuffer()));
+            }
+        };
+        // limited by count
+        List<CompletableFuture<ByteBuf>> cfs = new ArrayList<>();
+        for (int i = 0; i < 60; i++) {
+            cfs.add(operator.rangeRead("obj" + i, 0, 1024));
+        }
+        operator.tryMergeRead();
+        assertEquals(50, started.size());
+        inflight.get(0).complete(null);
+        assertEquals(1024, cfs.get(0).get(1, TimeUnit.SECONDS).readableBytes());
+        operator.tryMergeRead();
+        assertEquals(51, started.size());
+        inflight.forEach(cf -> cf.complete(null));
+        operator.tryMergeRead();
+        inflight.forEach(cf -> cf.complete(null));
+
+        // limited by bytes
+        started.clear();
+        inflight.clear();
+        int size = 100 * 1024 * 1024;
+        for (int i = 0; i < 3; i++) {
+            operator.rangeRead("large" + i, 0, size);
+        }
+        operator.tryMergeRead();
+        assertEquals(List.of("large0", "large1"), started);
+        inflight.get(0).completeExceptionally(new RuntimeException("test"));
+        operator.tryMergeRead();
+        assertEquals(List.of("large0", "large1", "large2"), started);
+    }
+
+    @Test
+    void testReadPermitLimitMergedSize() {
+        List<long[]> started = new CopyOnWriteArrayList<>();
+        operator = new DefaultS3Operator(s3, "test-bucket", true) {
+            @Override
+            CompletableFuture<Void> mergedRangeRead(String path, long start, long end, Consumer<ByteBuffer> consumer) {
+                started.add(new long[] {start, end});
+                return new CompletableFuture<>();
+            }
+        };
+        int mib = 1024 * 1024;
+        operator.rangeRead("large", 0, 250L * mib);
+        operator.tryMergeRead();
+        assertEquals(1, started.size());
+
+        // only 6MiB is left in the budget, so the merged GET stops growing there
+        for (int i = 0; i < 16; i++) {
+            operator.rangeRead("obj", (long) i * mib, (long) (i + 1) * mib);
+        }
+        operator.tryMergeRead();
+        assertEquals(2, started.size());
+        assertArrayEquals(new long[] {0, 6L * mib}, started.get(1));
+    }
+
+    @Test
+    void testReadFairQueue() {
+        List<String> started = new CopyOnWriteArrayList<>();
+        operator = new DefaultS3Operator(s3, "test-bucket", true) {
+            @Override
+            CompletableFuture<Void> mergedRangeRead(String path, long start, long end, Consumer<ByteBuffer> consumer) {
+                started.add(path);
+                return new CompletableFuture<>();
+            }
+        };
+        for (int i = 0; i < 100; i++) {
+            operator.rangeRead("compaction" + i, 0, 1024, ThrottleStrategy.THROTTLE);
+        }
+        operator.rangeRead("fetch", 0, 1024, ThrottleStrategy.BYPASS);
+        operator.tryMergeRead();
+        // the fetch is not queued behind the compaction reads
+        assertEquals(50, started.size());
+        assertTrue(started.indexOf("fetch") <= 1);
+    }
+
+    @Test
+    void testReadMergeWindow() {
+        ReadMergeWindow window = new ReadMergeWindow();
+        assertEquals(ReadMergeWindow.MAX_MERGE_READ_SIZE, window.maxGap());
+        assertEquals(ReadMergeWindow.MAX_MERGE_READ_SIZE, window.maxSize());
+
+        // 20ms to the first byte, 100MiB/s
+        long latency = TimeUnit.MILLISECONDS.toNanos(20);
+        window.record(1024 * 1024, latency, TimeUnit.MILLISECONDS.toNanos(10));
+        assertEquals((long) (100 * 1024 * 1024 * 0.02), window.maxGap(), 1);
+        assertEquals((int) (100 * 1024 * 1024 * 0.02 * ReadMergeWindow.MAX_TRANSFER_LATENCY_RATIO), window.maxSize(), 1);
+
+        // merged by gap
+        DefaultS3Operator.MergedReadTask task = new DefaultS3Operator.MergedReadTask(
+                new DefaultS3Operator.ReadTask("obj", 0, 1024, new CompletableFuture<>()), window.maxSize(), window.maxGap());
+        assertTrue(task.tryMerge(new DefaultS3Operator.ReadTask("obj", 1024 + window.maxGap(), 2048 + window.maxGap(), new CompletableFuture<>())));
+        assertEquals(false, task.tryMerge(new DefaultS3Operator.ReadTask("obj", 4096 + 2 * window.maxGap(), 8192 + 2 * window.maxGap(), new CompletableFuture<>())));
+    }
+
+    @Test
+    void testStreamingMergedRead() throws Exception {
+        int chunkSize = DefaultS3Operator.MergedReadTask.CHUNK_SIZE;
+        CompletableFuture<ByteBuf> cf1 = new CompletableFuture<>();
+        CompletableFuture<ByteBuf> cf2 = new CompletableFuture<>();
+        CompletableFuture<ByteBuf> cf3 = new CompletableFuture<>();
+        DefaultS3Operator.MergedReadTask task = new DefaultS3Operator.MergedReadTask(
+                new DefaultS3Operator.ReadTask("obj", 0, 1024, cf1), ReadMergeWindow.MAX_MERGE_READ_SIZE, ReadMergeWindow.MAX_MERGE_READ_SIZE);
+        // cross the chunks
+        task.tryMerge(new DefaultS3Operator.ReadTask("obj", chunkSize - 100, chunkSize + 100, cf2));
+        task.tryMerge(new DefaultS3Operator.ReadTask("obj", chunkSize * 2, chunkSize * 2 + 10, cf3));
+        ByteBuf data = TestUtils.random(chunkSize * 2 + 10);
+
+        // the first read completes as soon as its bytes arrive
+        task.onData(data.nioBuffer(0, 2000));
+        assertTrue(cf1.isDone());
+        assertFalse(cf2.isDone());
+        assertEquals(data.slice(0, 1024), cf1.get());
+
+        task.onData(data.nioBuffer(2000, chunkSize));
+        assertEquals(data.slice(chunkSize - 100, 200), cf2.get());
+        assertFalse(cf3.isDone());
+        task.onData(data.nioBuffer(chunkSize + 2000, chunkSize - 1990));
+        task.handleReadCompleted(null);
+        assertEquals(data.slice(chunkSize * 2, 10), cf3.get());
+
+        // the chunks are held by the results only
+        ByteBuf buf = cf2.get();
+        buf.release();
+        assertEquals(0, buf.refCnt());
+        cf1.get().release();
+        cf3.get().release();
+    }
+
+    @Test
+    void testStreamingMergedReadFail() {
+        CompletableFuture<ByteBuf> cf1 = new CompletableFuture<>();
+        CompletableFuture<ByteBuf> cf2 = new CompletableFuture<>();
+        DefaultS3Operator.MergedReadTask task = new DefaultS3Operator.MergedReadTask(
+                new DefaultS3Operator.ReadTask("obj", 0, 100, cf1), ReadMergeWindow.MAX_MERGE_READ_SIZE, ReadMergeWindow.MAX_MERGE_READ_SIZE);
+        task.tryMerge(new DefaultS3Operator.ReadTask("obj", 100, 200, cf2));
+        task.onData(TestUtils.random(150).nioBuffer());
+        task.handleReadCompleted(null);
+        assertTrue(cf1.isDone() && !cf1.isCompletedExceptionally());
+        // short read
+        assertTrue(cf2.isCompletedExceptionally());
+        cf1.join().release();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testMergedRangeReadResume() throws Exception {
+        ByteBuf data = TestUtils.random(3000);
+        List<String> ranges = new CopyOnWriteArrayList<>();
+        when(s3.getObject(any(GetObjectRequest.class), any(AsyncResponseTransformer.class))).thenAnswer(invocation -> {
+            GetObjectRequest request = invocation.getArgument(0);
+            ranges.add(request.range());
+            String[] startEnd = request.range().split("=")[1].split("-");
+            int start = Integer.parseInt(startEnd[0]);
+            int end = Integer.parseInt(startEnd[1]) + 1;
+            Publisher<ByteBuffer> publisher;
+            if (ranges.size() == 1) {
+                // the first GET fails after 1000 bytes
+                publisher = subscriber -> subscriber.onSubscribe(new Subscription() {
+                    boolean sent;
+
+                    @Override
+                    public void request(long n) {
+                        if (!sent) {
+                            sent = true;
+                            subscriber.onNext(data.nioBuffer(start, 1000));
+                        } else {
+                            subscriber.onError(new IOException("connection reset"));
+                        }
+                    }
+
+                    @Override
+                    public void cancel() {
+                    }
+                });
+            } else {
+                publisher = AsyncRequestBody.fromByteBuffers(data.nioBuffer(start, 500), data.nioBuffer(start + 500, end - start - 500));
+            }
+            return CompletableFuture.completedFuture(new ResponsePublisher<>(GetObjectResponse.builder().build(), SdkPublisher.adapt(publisher)));
+        });
+        ByteBuf buf = operator.rangeRead("obj", 0, 3000).get(10, TimeUnit.SECONDS);
+        assertEquals(List.of("bytes=0-2999", "bytes=1000-2999"), ranges);
+        assertEquals(data, buf);
+        buf.release();
+    }
 }
@@ -18,7 +18,9 @@
 package com.automq.stream.s3.operator;
 
 import com.automq.stream.s3.TestUtils;
+import com.automq.stream.s3.network.ThrottleStrategy;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
@@ -43,9 +45,15 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
@@ -209,4 +217,53 @@ class MultiPartWriterTest {
                 .collect(Collectors.toList()));
     }
 
-}
\ No newline at end of file
+    @Test
+    void testParallelCopyWrite() throws Exception {
+        int rangeCount = 32;
+        int rangeSize = 1024;
+        long latencyMs = 50;
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        AtomicInteger inflight = new AtomicInteger();
+        AtomicInteger maxInflight = new AtomicInteger();
+        try {
+            S3Operator latencyOperator = new MemoryS3Operator() {
+                @Override
+                public CompletableFuture<ByteBuf> rangeRead(String path, long start, long end, ThrottleStrategy throttleStrategy) {
+                    maxInflight.accumulateAndGet(inflight.incrementAndGet(), Math::max);
+                    CompletableFuture<ByteBuf> cf = new CompletableFuture<>();
+                    scheduler.schedule(() -> {
+                        inflight.decrementAndGet();
+                        super.rangeRead(path, start, end, throttleStrategy).whenComplete((buf, ex) -> cf.complete(buf));
+                    }, latencyMs, TimeUnit.MILLISECONDS);
+                    return cf;
+                }
+            };
+            ByteBuf source = TestUtils.random(rangeCount * rangeSize);
+            latencyOperator.write("source", source.duplicate(), null).get();
+
+            // a part per 4 ranges
+            MultiPartWriter writer = new MultiPartWriter(latencyOperator, "target", rangeSize * 4 - 1, null);
+            long startNanos = System.nanoTime();
+            // copy the ranges in reverse order
+            for (int i = rangeCount - 1; i >= 0; i--) {
+                writer.copyWrite("source", (long) i * rangeSize, (long) (i + 1) * rangeSize);
+            }
+            writer.close().get();
+            long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+
+            // serial reads take rangeCount * latencyMs = 1600ms
+            assertTrue(elapsedMs < rangeCount * latencyMs / 2, "elapsed " + elapsedMs + "ms");
+            assertTrue(maxInflight.get() > 1);
+            assertTrue(maxInflight.get() <= MultiPartWriter.MAX_INFLIGHT_READS);
+
+            ByteBuf target = latencyOperator.rangeRead("target", 0, (long) rangeCount * rangeSize, null).get();
+            for (int i = 0; i < rangeCount; i++) {
+                int sourceIndex = rangeCount - 1 - i;
+                assertArrayEquals(ByteBufUtil.getBytes(source, sourceIndex * rangeSize, rangeSize),
+                        ByteBufUtil.getBytes(target, i * rangeSize, rangeSize));
+            }
+        } finally {
+            scheduler.shutdownNow();
+        }
+    }
+}
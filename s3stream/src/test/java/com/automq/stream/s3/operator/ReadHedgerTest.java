@@ -0,0 +1,347 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.automq.stream.s3.operator;
+
+import com.automq.stream.s3.TestUtils;
+import com.automq.stream.s3.network.ThrottleStrategy;
+import io.netty.buffer.ByteBuf;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+
+@Tag("S3Unit")
+class ReadHedgerTest {
+    private static final long FAST_LATENCY_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+    private static final long SLOW_LATENCY_NANOS = TimeUnit.MILLISECONDS.toNanos(200);
+    /**
+     * One of every {@code SLOW_INTERVAL} reads is slow.
+     */
+    private static final int SLOW_INTERVAL = 50;
+    /**
+     * The hedge tasks are not scheduled by time, but run by the tests to simulate the slow reads.
+     */
+    private final List<Runnable> hedgeTasks = new ArrayList<>();
+    ScheduledExecutorService scheduler;
+    ReadHedger hedger;
+
+    @BeforeEach
+    void setUp() {
+        scheduler = Mockito.mock(ScheduledExecutorService.class);
+        Mockito.when(scheduler.schedule(any(Runnable.class), anyLong(), any())).thenAnswer(invocation -> {
+            hedgeTasks.add(invocation.getArgument(0));
+            return null;
+        });
+        hedger = new ReadHedger(scheduler);
+    }
+
+    @Test
+    void testHedgeDelay() {
+        // 2% of the reads are slow
+        for (int i = 0; i < ReadHedger.MIN_SAMPLES - 1; i++) {
+            hedger.record(i % 50 == 49 ? SLOW_LATENCY_NANOS : FAST_LATENCY_NANOS);
+        }
+        assertEquals(0, hedger.hedgeDelayNanos());
+        for (int i = ReadHedger.MIN_SAMPLES - 1; i < 128; i++) {
+            hedger.record(i % 50 == 49 ? SLOW_LATENCY_NANOS : FAST_LATENCY_NANOS);
+        }
+        // the p95 latency is fast, so the delay is bounded by the minimum
+        assertEquals(ReadHedger.MIN_HEDGE_DELAY_NANOS, hedger.hedgeDelayNanos());
+
+        // the p95 latency moves up with the recent latencies
+        for (int i = 0; i < 64; i++) {
+            hedger.record(TimeUnit.MILLISECONDS.toNanos(50));
+        }
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(50), hedger.hedgeDelayNanos());
+    }
+
+    @Test
+    void testTailLatency() throws Exception {
+        SimulatedScheduler simulatedScheduler = new SimulatedScheduler();
+        AtomicInteger readCount = new AtomicInteger();
+        // inject latency: 2% of the reads are 40 times slower than the others
+        S3Operator operator = new MemoryS3Operator() {
+            @Override
+            public CompletableFuture<ByteBuf> rangeRead(String path, long start, long end, ThrottleStrategy throttleStrategy) {
+                long latency = readCount.incrementAndGet() % SLOW_INTERVAL == 0 ? SLOW_LATENCY_NANOS : FAST_LATENCY_NANOS;
+                CompletableFuture<ByteBuf> cf = new CompletableFuture<>();
+                simulatedScheduler.scheduler.schedule(() -> {
+                    super.rangeRead(path, start, end, throttleStrategy).thenAccept(buf -> {
+                        if (!cf.complete(buf)) {
+                            // cancelled
+                            buf.release();
+                        }
+                    });
+                }, latency, TimeUnit.NANOSECONDS);
+                return cf;
+            }
+        };
+        operator.write("object", TestUtils.random(1024), null).get();
+
+        int reads = 1000;
+        long baselineP99 = p99(runReads(simulatedScheduler, operator, reads, null));
+
+        ReadHedger hedger = new ReadHedger(simulatedScheduler.scheduler, simulatedScheduler::nanoTime);
+        // warm up the latency samples
+        runReads(simulatedScheduler, operator, ReadHedger.MIN_SAMPLES * 2, hedger);
+        assertTrue(hedger.hedgeDelayNanos() > 0);
+        int countBefore = readCount.get();
+        long hedgedP99 = p99(runReads(simulatedScheduler, operator, reads, hedger));
+        int duplicateReads = readCount.get() - countBefore - reads;
+
+        assertEquals(SLOW_LATENCY_NANOS, baselineP99);
+        assertTrue(hedgedP99 < baselineP99 / 2, "hedged p99 " + hedgedP99 + ", baseline p99 " + baselineP99);
+        // the slow reads are hedged within the budget
+        assertTrue(duplicateReads >= reads / SLOW_INTERVAL / 2, "duplicate reads " + duplicateReads);
+        assertTrue(duplicateReads <= reads * ReadHedger.HEDGE_BUDGET_RATIO + ReadHedger.MAX_HEDGE_CREDITS, "duplicate reads " + duplicateReads);
+    }
+
+    @Test
+    void testNoHedgeBeforeSamples() {
+        CompletableFuture<String> cf = hedger.read(CompletableFuture::new, s -> {
+        });
+        assertFalse(cf.isDone());
+        Mockito.verify(scheduler, Mockito.never()).schedule(any(Runnable.class), anyLong(), any());
+    }
+
+    @Test
+    void testHedgeBudget() {
+        warmUp();
+        AtomicInteger attempts = new AtomicInteger();
+        int reads = 1000;
+
+        // every read is slow, and hedged as soon as the budget allows
+        for (int i = 0; i < reads; i++) {
+            hedger.read(() -> {
+                attempts.incrementAndGet();
+                return new CompletableFuture<String>();
+            }, s -> {
+            });
+            runHedgeTasks();
+        }
+        Mockito.verify(scheduler, Mockito.times(reads)).schedule(any(Runnable.class), eq(hedger.hedgeDelayNanos()), eq(TimeUnit.NANOSECONDS));
+        int duplicateReads = attempts.get() - reads;
+        assertTrue(duplicateReads >= reads * ReadHedger.HEDGE_BUDGET_RATIO - 1, "duplicate reads " + duplicateReads);
+        assertTrue(duplicateReads <= reads * ReadHedger.HEDGE_BUDGET_RATIO, "duplicate reads " + duplicateReads);
+
+        // the unused budget is capped
+        attempts.set(0);
+        for (int i = 0; i < reads; i++) {
+            hedger.read(() -> {
+                attempts.incrementAndGet();
+                return new CompletableFuture<String>();
+            }, s -> {
+            });
+        }
+        runHedgeTasks();
+        assertEquals(reads + (int) ReadHedger.MAX_HEDGE_CREDITS, attempts.get());
+    }
+
+    @Test
+    void testFirstResponseWins() throws Exception {
+        warmUp();
+        earnCredits();
+        List<CompletableFuture<String>> attempts = new ArrayList<>();
+        List<String> discarded = Collections.synchronizedList(new ArrayList<>());
+        CompletableFuture<String> cf = hedger.read(() -> {
+            CompletableFuture<String> attempt = new CompletableFuture<>();
+            attempts.add(attempt);
+            return attempt;
+        }, discarded::add);
+        // the duplicate read is issued after the hedge delay
+        assertEquals(1, attempts.size());
+        runHedgeTasks();
+        assertEquals(2, attempts.size());
+        attempts.get(1).complete("hedge");
+        assertEquals("hedge", cf.get(1, TimeUnit.SECONDS));
+        // the slower read is cancelled
+        assertTrue(attempts.get(0).isCancelled());
+
+        // the read fails only if all attempts fail
+        earnCredits();
+        CompletableFuture<String> primary = new CompletableFuture<>();
+        CompletableFuture<String> hedge = new CompletableFuture<>();
+        AtomicInteger count = new AtomicInteger();
+        cf = hedger.read(() -> count.getAndIncrement() == 0 ? primary : hedge, discarded::add);
+        runHedgeTasks();
+        assertEquals(2, count.get());
+        primary.completeExceptionally(new IllegalStateException("primary"));
+        assertFalse(cf.isDone());
+        hedge.completeExceptionally(new IllegalStateException("hedge"));
+        CompletableFuture<String> failedCf = cf;
+        ExecutionException ex = assertThrows(ExecutionException.class, () -> failedCf.get(1, TimeUnit.SECONDS));
+        assertEquals("hedge", ex.getCause().getMessage());
+        assertTrue(discarded.isEmpty());
+    }
+
+    @Test
+    void testConcurrentSuccesses() throws Exception {
+        warmUp();
+        earnCredits();
+        List<CompletableFuture<String>> attempts = new ArrayList<>();
+        List<String> discarded = Collections.synchronizedList(new ArrayList<>());
+        CompletableFuture<String> cf = hedger.read(() -> {
+            CompletableFuture<String> attempt = new CompletableFuture<>();
+            attempts.add(attempt);
+            return attempt;
+        }, discarded::add);
+        runHedgeTasks();
+        assertEquals(2, attempts.size());
+
+        // Both attempts succeed on separate threads. Holding the hedger blocks each of them in recording the
+        // latency, which is after the race is decided and before the result is completed, so both of them
+        // are in the middle of completing at the same time.
+        Thread primary = new Thread(() -> attempts.get(0).complete("primary"));
+        Thread hedge = new Thread(() -> attempts.get(1).complete("hedge"));
+        synchronized (hedger) {
+            primary.start();
+            awaitBlocked(primary);
+            hedge.start();
+            awaitBlocked(hedge);
+        }
+        primary.join(5000);
+        hedge.join(5000);
+
+        // the first response wins, and the other one is discarded rather than leaked
+        assertEquals("primary", cf.get(1, TimeUnit.SECONDS));
+        assertEquals(List.of("hedge"), discarded);
+    }
+
+    private static void awaitBlocked(Thread thread) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (thread.getState() != Thread.State.BLOCKED && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(Thread.State.BLOCKED, thread.getState());
+    }
+
+    private void warmUp() {
+        for (int i = 0; i < 128; i++) {
+            hedger.record(FAST_LATENCY_NANOS);
+        }
+        assertTrue(hedger.hedgeDelayNanos() > 0);
+    }
+
+    private void earnCredits() {
+        // the fast reads earn the budget of a hedge without being hedged
+        for (int i = 0; i < 1 / ReadHedger.HEDGE_BUDGET_RATIO + 1; i++) {
+            hedger.read(() -> CompletableFuture.completedFuture("fast"), s -> {
+            });
+        }
+        assertTrue(hedgeTasks.isEmpty());
+    }
+
+    /**
+     * Issue a read every millisecond on the simulated clock, and return the latencies of them.
+     */
+    private static List<Long> runReads(SimulatedScheduler simulatedScheduler, S3Operator operator, int count,
+        ReadHedger hedger) {
+        List<Long> latencies = new ArrayList<>();
+        List<CompletableFuture<Void>> cfList = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            long startNanos = simulatedScheduler.nanoTime();
+            CompletableFuture<ByteBuf> cf = hedger == null
+                ? operator.rangeRead("object", 0, 1024)
+                : hedger.read(() -> operator.rangeRead("object", 0, 1024), ByteBuf::release);
+            cfList.add(cf.thenAccept(buf -> {
+                latencies.add(simulatedScheduler.nanoTime() - startNanos);
+                buf.release();
+            }));
+            simulatedScheduler.advance(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+        simulatedScheduler.drain();
+        cfList.forEach(cf -> assertTrue(cf.isDone()));
+        return latencies;
+    }
+
+    private static long p99(List<Long> latencies) {
+        List<Long> sorted = new ArrayList<>(latencies);
+        Collections.sort(sorted);
+        return sorted.get((int) (sorted.size() * 0.99));
+    }
+
+    private void runHedgeTasks() {
+        List<Runnable> tasks = new ArrayList<>(hedgeTasks);
+        hedgeTasks.clear();
+        tasks.forEach(Runnable::run);
+    }
+
+    /**
+     * A scheduler on a simulated clock, the tasks run in the order of their deadlines when the clock advances.
+     */
+    private static class SimulatedScheduler {
+        final ScheduledExecutorService scheduler = Mockito.mock(ScheduledExecutorService.class);
+        private final PriorityQueue<ScheduledTask> tasks = new PriorityQueue<>(
+            Comparator.comparingLong(ScheduledTask::deadlineNanos).thenComparingLong(ScheduledTask::sequence));
+        private long nowNanos;
+        private long sequence;
+
+        SimulatedScheduler() {
+            Mockito.when(scheduler.schedule(any(Runnable.class), anyLong(), any())).thenAnswer(invocation -> {
+                TimeUnit unit = invocation.getArgument(2);
+                long deadlineNanos = nowNanos + unit.toNanos(invocation.getArgument(1));
+                tasks.add(new ScheduledTask(deadlineNanos, sequence++, invocation.getArgument(0)));
+                return null;
+            });
+        }
+
+        long nanoTime() {
+            return nowNanos;
+        }
+
+        void advance(long nanos) {
+            long deadlineNanos = nowNanos + nanos;
+            while (!tasks.isEmpty() && tasks.peek().deadlineNanos() <= deadlineNanos) {
+                ScheduledTask task = tasks.poll();
+                nowNanos = task.deadlineNanos();
+                task.task().run();
+            }
+            nowNanos = deadlineNanos;
+        }
+
+        /**
+         * Advance the clock until all the tasks, including the tasks scheduled by them, are run.
+         */
+        void drain() {
+            while (!tasks.isEmpty()) {
+                advance(tasks.peek().deadlineNanos() - nowNanos);
+            }
+        }
+    }
+
+    private record ScheduledTask(long deadlineNanos, long sequence, Runnable task) {
+    }
+}
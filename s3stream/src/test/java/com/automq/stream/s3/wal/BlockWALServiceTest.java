@@ -177,15 +177,21 @@ class BlockWALServiceTest {
         }
     }
 
-    @ParameterizedTest(name = "Test {index}: mergeWrite={0}")
-    @ValueSource(booleans = {false, true})
-    public void testMultiThreadAppend(boolean mergeWrite) throws InterruptedException, IOException {
+    @ParameterizedTest(name = "Test {index}: mergeWrite={0}, lockFree={1}")
+    @CsvSource({
+        "false, false",
+        "true, false",
+        "false, true",
+        "true, true",
+    })
+    public void testMultiThreadAppend(boolean mergeWrite, boolean lockFree) throws InterruptedException, IOException {
         final int recordSize = 4096 + 1;
         final int recordCount = 10;
         final int threadCount = 8;
         final long blockDeviceCapacity = WALUtil.alignLargeByBlockSize(recordSize) * recordCount * threadCount + WAL_HEADER_TOTAL_CAPACITY;
 
-        BlockWALService.BlockWALServiceBuilder builder = BlockWALService.builder(TestUtils.tempFilePath(), blockDeviceCapacity);
+        BlockWALService.BlockWALServiceBuilder builder = BlockWALService.builder(TestUtils.tempFilePath(), blockDeviceCapacity)
+                .lockFreeAppend(lockFree);
         if (!mergeWrite) {
             builder.blockSoftLimit(0);
         }
@@ -325,14 +331,19 @@ class BlockWALServiceTest {
         }
     }
 
-    @ParameterizedTest(name = "Test {index}: shutdown={0}, overCapacity={1}")
+    @ParameterizedTest(name = "Test {index}: shutdown={0}, overCapacity={1}, lockFree={2}")
     @CsvSource({
-        "true, false",
-        "true, true",
-        "false, false",
-        "false, true",
+        "true, false, false",
+        "true, true, false",
+        "false, false, false",
+        "false, true, false",
+
+        "true, false, true",
+        "true, true, true",
+        "false, false, true",
+        "false, true, true",
     })
-    public void testRecoverAfterMergeWrite(boolean shutdown, boolean overCapacity) throws IOException {
+    public void testRecoverAfterMergeWrite(boolean shutdown, boolean overCapacity, boolean lockFree) throws IOException {
         final int recordSize = 1024 + 1;
         final int recordCount = 100;
         long blockDeviceCapacity;
@@ -346,6 +357,7 @@ class BlockWALServiceTest {
         // Append records
         final WriteAheadLog previousWAL = BlockWALService.builder(tempFilePath, blockDeviceCapacity)
                 .flushHeaderIntervalSeconds(1 << 20)
+                .lockFreeAppend(lockFree)
                 .build()
                 .start();
         List<Long> appended = appendAsync(previousWAL, recordSize, recordCount);
@@ -453,18 +465,23 @@ class BlockWALServiceTest {
     }
 
 
-    private ByteBuf recordHeader(ByteBuf body, long offset) {
+    private ByteBuf recordHeader(ByteBuf body, long offset, int crc) {
         return new SlidingWindowService.RecordHeaderCoreData()
                 .setMagicCode(BlockWALService.RECORD_HEADER_MAGIC_CODE)
                 .setRecordBodyLength(body.readableBytes())
                 .setRecordBodyOffset(offset + BlockWALService.RECORD_HEADER_SIZE)
-                .setRecordBodyCRC(WALUtil.crc32(body))
+                .setRecordBodyCRC(crc)
                 .marshal();
     }
 
     private void write(WALChannel walChannel, long logicOffset, int recordSize) throws IOException {
+        write(walChannel, logicOffset, recordSize, false);
+    }
+
+    private void write(WALChannel walChannel, long logicOffset, int recordSize, boolean corrupted) throws IOException {
         ByteBuf recordBody = TestUtils.random(recordSize);
-        ByteBuf recordHeader = recordHeader(recordBody, logicOffset);
+        int crc = WALUtil.crc32(recordBody);
+        ByteBuf recordHeader = recordHeader(recordBody, logicOffset, corrupted ? crc + 1 : crc);
 
         CompositeByteBuf record = DirectByteBufAlloc.compositeByteBuffer();
         record.addComponents(true, recordHeader, recordBody);
@@ -641,6 +658,41 @@ class BlockWALServiceTest {
         }
     }
 
+    @Test
+    public void testRecoverCorruptedRecord() throws IOException {
+        final String tempFilePath = TestUtils.tempFilePath();
+        final WALChannel walChannel = WALChannel.builder(tempFilePath, RecoverFromDisasterParam.CAPACITY).build();
+        final int recordSize = 100;
+
+        // the corrupted record and the following ones in the same block are recovered in one batch
+        walChannel.open();
+        writeWALHeader(walChannel, 0, 0, 0, 50L * WALUtil.BLOCK_SIZE);
+        write(walChannel, 0, recordSize, true);
+        write(walChannel, BlockWALService.RECORD_HEADER_SIZE + recordSize, recordSize);
+        write(walChannel, 2L * (BlockWALService.RECORD_HEADER_SIZE + recordSize), recordSize);
+        write(walChannel, WALUtil.BLOCK_SIZE, recordSize);
+        walChannel.close();
+
+        final WriteAheadLog wal = BlockWALService.builder(tempFilePath, RecoverFromDisasterParam.CAPACITY)
+                .flushHeaderIntervalSeconds(1 << 30)
+                .build()
+                .start();
+        try {
+            Iterator<RecoverResult> recover = wal.recover();
+            List<Long> recovered = new ArrayList<>();
+            while (recover.hasNext()) {
+                RecoverResult next = recover.next();
+                next.record().release();
+                recovered.add(next.recordOffset());
+            }
+            // the records after the corrupted one in the same block are dropped
+            assertEquals(List.of((long) WALUtil.BLOCK_SIZE), recovered);
+            wal.reset().join();
+        } finally {
+            wal.shutdownGracefully();
+        }
+    }
+
     @Test
     public void testRecoverAfterReset() throws IOException, OverCapacityException {
         final int recordSize = 4096 + 1;
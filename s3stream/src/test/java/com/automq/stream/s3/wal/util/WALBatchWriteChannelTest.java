@@ -0,0 +1,94 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.automq.stream.s3.wal.util;
+
+import com.automq.stream.s3.TestUtils;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@Tag("S3Unit")
+class WALBatchWriteChannelTest {
+    WALBatchWriteChannel walChannel;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        walChannel = (WALBatchWriteChannel) WALChannel.builder(String.format("%s/WALBatchWriteChannelUnitTest.data", TestUtils.tempFilePath()), 1024 * 1024 * 20)
+                .batchWrite(true)
+                .build();
+        walChannel.open();
+    }
+
+    @AfterEach
+    void tearDown() {
+        walChannel.close();
+    }
+
+    @Test
+    void testConcurrentWriteAndRead() throws IOException {
+        final int count = 100;
+        final int size = WALUtil.BLOCK_SIZE * 3 - 100;
+        List<ByteBuf> data = new ArrayList<>(count);
+        List<CompletableFuture<Void>> futures = new ArrayList<>(count);
+        // write in reverse order, and all writes are aligned to the block size
+        for (int i = count - 1; i >= 0; i--) {
+            ByteBuf buf = TestUtils.random(size);
+            data.add(0, buf);
+            futures.add(walChannel.writeAsync(buf, (long) i * WALUtil.alignLargeByBlockSize(size)));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+
+        for (int i = 0; i < count; i++) {
+            ByteBuf read = Unpooled.buffer(size);
+            assertEquals(size, walChannel.read(read, (long) i * WALUtil.alignLargeByBlockSize(size)));
+            assertEquals(data.get(i), read);
+        }
+    }
+
+    @Test
+    void testWriteSamePosition() throws IOException {
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        ByteBuf last = null;
+        for (int i = 0; i < 10; i++) {
+            last = TestUtils.random(1024);
+            futures.add(walChannel.writeAsync(last, 0));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+
+        ByteBuf read = Unpooled.buffer(1024);
+        walChannel.read(read, 0);
+        assertEquals(last, read);
+    }
+
+    @Test
+    void testWriteAfterClose() {
+        walChannel.close();
+        assertThrows(IOException.class, () -> walChannel.write(TestUtils.random(1024), 0));
+    }
+}
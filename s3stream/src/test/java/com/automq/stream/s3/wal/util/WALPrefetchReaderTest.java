@@ -0,0 +1,100 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.automq.stream.s3.wal.util;
+
+import com.automq.stream.s3.TestUtils;
+import com.automq.stream.utils.ThreadUtils;
+import com.automq.stream.utils.Threads;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@Tag("S3Unit")
+class WALPrefetchReaderTest {
+    private static final Logger LOGGER = LoggerFactory.getLogger(WALPrefetchReaderTest.class);
+    private static final int CAPACITY = 1024 * 1024;
+    private static final int SEGMENT_SIZE = 64 * 1024;
+
+    WALChannel walChannel;
+    ExecutorService executor;
+    ByteBuf data;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        walChannel = WALChannel.builder(String.format("%s/WALPrefetchReaderTest.data", TestUtils.tempFilePath()), CAPACITY).build();
+        walChannel.open();
+        data = TestUtils.random(CAPACITY);
+        walChannel.write(data, 0);
+        executor = Threads.newFixedThreadPool(4, ThreadUtils.createThreadFactory("wal-prefetch-test-%d", true), LOGGER);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+        walChannel.close();
+        data.release();
+    }
+
+    @Test
+    void testSequentialRead() throws IOException {
+        try (WALPrefetchReader reader = new WALPrefetchReader(walChannel, SEGMENT_SIZE, 4, executor)) {
+            long position = 0;
+            int length = 1;
+            while (position < CAPACITY) {
+                ByteBuf dst = Unpooled.buffer(length);
+                int read = reader.read(dst, position);
+                int expectedRead = (int) Math.min(length, CAPACITY - position);
+                assertEquals(expectedRead, read);
+                assertEquals(data.slice((int) position, expectedRead), dst);
+                position += read;
+                // read with various lengths, some of which cross segments
+                length = length * 3 % (SEGMENT_SIZE * 2) + 1;
+            }
+        }
+    }
+
+    @Test
+    void testReadBeyondEnd() throws IOException {
+        try (WALPrefetchReader reader = new WALPrefetchReader(walChannel, SEGMENT_SIZE, 4, executor)) {
+            ByteBuf dst = Unpooled.buffer(100);
+            assertEquals(10, reader.read(dst, CAPACITY - 10));
+            assertEquals(data.slice(CAPACITY - 10, 10), dst);
+
+            dst = Unpooled.buffer(100);
+            assertEquals(0, reader.read(dst, CAPACITY));
+        }
+    }
+
+    @Test
+    void testSegmentSizeNotAligned() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new WALPrefetchReader(walChannel, SEGMENT_SIZE + 1, 4, executor));
+    }
+}
@@ -17,11 +17,15 @@
 
 package com.automq.rocketmq.store;
 
+import apache.rocketmq.controller.v1.Code;
 import apache.rocketmq.controller.v1.S3StreamObject;
 import apache.rocketmq.controller.v1.S3WALObject;
 import apache.rocketmq.controller.v1.SubStream;
 import apache.rocketmq.controller.v1.SubStreams;
+import com.automq.rocketmq.controller.exception.ControllerException;
 import com.automq.rocketmq.metadata.api.StoreMetadataService;
+import com.automq.stream.api.ErrorCode;
+import com.automq.stream.api.StreamClientException;
 import com.automq.stream.s3.metadata.S3ObjectMetadata;
 import com.automq.stream.s3.metadata.S3ObjectType;
 import com.automq.stream.s3.metadata.S3StreamConstant;
@@ -31,6 +35,7 @@ import com.automq.stream.s3.objects.CommitWALObjectRequest;
 import com.automq.stream.s3.objects.CommitWALObjectResponse;
 import com.automq.stream.s3.objects.ObjectManager;
 import com.automq.stream.s3.objects.ObjectStreamRange;
+import com.automq.stream.utils.FutureUtil;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.LinkedList;
@@ -38,6 +43,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Queue;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import org.apache.commons.lang3.tuple.Pair;
@@ -100,7 +106,33 @@ public class S3ObjectManager implements ObjectManager {
             walObject, streamObjects, request.getCompactedObjectIds());
 
         // Build compacted objects
-        return metaService.commitWalObject(walObject, streamObjects, request.getCompactedObjectIds()).thenApply(resp -> new CommitWALObjectResponse());
+        return metaService.commitWalObject(walObject, streamObjects, request.getCompactedObjectIds())
+            .thenApply(resp -> new CommitWALObjectResponse())
+            .exceptionally(ex -> {
+                throw new CompletionException(commitError(FutureUtil.cause(ex)));
+            });
+    }
+
+    /**
+     * Translate the error of a commit, so the storage tells a rejected commit from a transient failure. The
+     * controller rejects the commit with an object that is not prepared, expired or missing, and a retry never
+     * succeeds.
+     */
+    static Throwable commitError(Throwable cause) {
+        if (cause instanceof ControllerException controllerException) {
+            switch (controllerException.getErrorCode()) {
+                case Code.ILLEGAL_STATE_VALUE, Code.NOT_FOUND_VALUE -> {
+                    return new StreamClientException(ErrorCode.UNEXPECTED, cause.getMessage(), cause);
+                }
+                case Code.FENCED_VALUE -> {
+                    return new StreamClientException(ErrorCode.EXPIRED_STREAM_EPOCH, cause.getMessage(), cause);
+                }
+                default -> {
+                    return cause;
+                }
+            }
+        }
+        return cause;
     }
 
     @Override
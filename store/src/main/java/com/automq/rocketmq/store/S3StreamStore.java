@@ -69,7 +69,7 @@ public class S3StreamStore implements StreamStore {
             streamConfig.s3ForcePathStyle(), streamConfig.s3AccessKey(), streamConfig.s3SecretKey());
 
         WriteAheadLog writeAheadLog = BlockWALService.builder(s3Config.s3WALPath(), s3Config.s3WALCapacity()).config(s3Config).build();
-        S3BlockCache blockCache = new DefaultS3BlockCache(s3Config.s3BlockCacheSize(), objectManager, defaultOperator);
+        S3BlockCache blockCache = new DefaultS3BlockCache(s3Config, objectManager, defaultOperator);
 
         // Build the s3 storage
         this.storage = new S3Storage(s3Config, writeAheadLog, streamManager, objectManager, blockCache, defaultOperator);
@@ -219,11 +219,20 @@ public class S3StreamStore implements StreamStore {
         config.s3SecretKey(streamConfig.s3SecretKey());
         config.networkBaselineBandwidth(streamConfig.networkBaselineBandwidth());
         config.refillPeriodMs(streamConfig.refillPeriodMs());
+        config.s3StorageShardNum(streamConfig.storageShardNum());
+        config.s3WALObjectUploadConcurrency(streamConfig.walObjectUploadConcurrency());
+        config.s3ObjectCompressionType(streamConfig.objectCompressionType());
+        config.s3ObjectBlockOffsetIndexInterval(streamConfig.objectBlockOffsetIndexInterval());
+        config.s3BlockCacheDiskPath(streamConfig.blockCacheDiskPath());
+        config.s3BlockCacheDiskSize(streamConfig.blockCacheDiskSize());
+        config.s3ObjectIndexCacheSize(streamConfig.objectIndexCacheSize());
 
         // Compaction config
         config.s3StreamObjectCompactionIntervalMinutes(streamConfig.streamObjectCompactionIntervalMinutes());
         config.s3StreamObjectCompactionMaxSizeBytes(streamConfig.streamObjectCompactionMaxSizeBytes());
         config.s3StreamObjectCompactionLivingTimeMinutes(streamConfig.streamObjectCompactionLivingTimeMinutes());
+        config.s3StreamObjectCompactionParallelism(streamConfig.streamObjectCompactionParallelism());
+        config.s3StreamObjectCompactionByteBudget(streamConfig.streamObjectCompactionByteBudget());
         config.s3WALObjectCompactionInterval(streamConfig.walObjectCompactionInterval());
         config.s3WALObjectCompactionCacheSize(streamConfig.walObjectCompactionCacheSize());
         config.s3WALObjectCompactionUploadConcurrency(streamConfig.walObjectCompactionUploadConcurrency());
@@ -19,10 +19,12 @@ package com.automq.rocketmq.store.api;
 
 import com.automq.rocketmq.store.exception.StoreException;
 import com.automq.rocketmq.store.model.operation.AckOperation;
+import com.automq.rocketmq.store.model.operation.BatchPopOperation;
 import com.automq.rocketmq.store.model.operation.ChangeInvisibleDurationOperation;
 import com.automq.rocketmq.store.model.operation.OperationSnapshot;
 import com.automq.rocketmq.store.model.operation.PopOperation;
 import com.automq.rocketmq.store.model.operation.ResetConsumeOffsetOperation;
+import java.util.List;
 
 public interface MessageStateMachine {
     long topicId();
@@ -31,6 +33,11 @@ public interface MessageStateMachine {
 
     ReplayPopResult replayPopOperation(long operationOffset, PopOperation operation) throws StoreException;
 
+    /**
+     * Replay all pop operations of the batch, the i-th of them is replayed at <code>operationOffset + i</code>.
+     */
+    List<ReplayPopResult> replayBatchPopOperation(long operationOffset, BatchPopOperation operation) throws StoreException;
+
     void replayAckOperation(long operationOffset, AckOperation operation) throws StoreException;
 
     void replayChangeInvisibleDurationOperation(long operationOffset, ChangeInvisibleDurationOperation operation);
@@ -51,7 +58,12 @@ public interface MessageStateMachine {
 
     long retryAckOffset(long consumerGroupId);
 
-    boolean isLocked(long consumerGroupId, long offset) throws StoreException;
+    /**
+     * Whether the fifo message at this offset has been delivered and not acked yet, which locks its message group.
+     */
+    boolean isLocked(long consumerGroupId, long offset);
+
+    boolean isAcked(long consumerGroupId, long offset);
 
     int consumeTimes(long consumerGroupId, long offset);
 
@@ -0,0 +1,122 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.automq.rocketmq.store.model.operation;
+
+import com.automq.rocketmq.store.api.MessageStateMachine;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * All pop operations of one pop call, which are logged as one record. The i-th pop operation takes the i-th offset
+ * of the record as its operation id, so each popped message still has its own receipt handle.
+ */
+public class BatchPopOperation extends Operation {
+    private final long consumerGroupId;
+    private final long[] offsets;
+    private final int[] counts;
+    private final long invisibleDuration;
+    private final boolean endMark;
+    private final PopOperation.PopOperationType popOperationType;
+
+    public BatchPopOperation(long topicId, int queueId, long operationStreamId, long snapshotStreamId,
+        MessageStateMachine stateMachine, long consumerGroupId, long[] offsets, int[] counts, long invisibleDuration,
+        long operationTimestamp, boolean endMark, PopOperation.PopOperationType popOperationType) {
+        if (offsets.length == 0 || offsets.length != counts.length) {
+            throw new IllegalArgumentException("Illegal batch pop operation, offsets: " + offsets.length + ", counts: " + counts.length);
+        }
+        this.topicId = topicId;
+        this.queueId = queueId;
+        this.operationStreamId = operationStreamId;
+        this.snapshotStreamId = snapshotStreamId;
+        this.stateMachine = stateMachine;
+        this.consumerGroupId = consumerGroupId;
+        this.offsets = offsets;
+        this.counts = counts;
+        this.invisibleDuration = invisibleDuration;
+        this.operationTimestamp = operationTimestamp;
+        this.endMark = endMark;
+        this.popOperationType = popOperationType;
+    }
+
+    public long consumerGroupId() {
+        return consumerGroupId;
+    }
+
+    public long[] offsets() {
+        return offsets;
+    }
+
+    public int[] counts() {
+        return counts;
+    }
+
+    public long invisibleDuration() {
+        return invisibleDuration;
+    }
+
+    public boolean isEndMark() {
+        return endMark;
+    }
+
+    public PopOperation.PopOperationType popOperationType() {
+        return popOperationType;
+    }
+
+    /**
+     * The number of pop operations, which is also the number of offsets taken in the operation log.
+     */
+    public int size() {
+        return offsets.length;
+    }
+
+    public PopOperation popOperation(int index) {
+        return new PopOperation(topicId, queueId, operationStreamId, snapshotStreamId, stateMachine, consumerGroupId,
+            offsets[index], counts[index], invisibleDuration, operationTimestamp, endMark && index == offsets.length - 1,
+            popOperationType);
+    }
+
+    @Override
+    public OperationType operationType() {
+        return OperationType.BATCH_POP;
+    }
+
+    @Override
+    public int offsetCount() {
+        return size();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (o == null || getClass() != o.getClass())
+            return false;
+        BatchPopOperation that = (BatchPopOperation) o;
+        return consumerGroupId == that.consumerGroupId && topicId == that.topicId && queueId == that.queueId
+            && Arrays.equals(offsets, that.offsets) && Arrays.equals(counts, that.counts)
+            && invisibleDuration == that.invisibleDuration && operationTimestamp == that.operationTimestamp
+            && endMark == that.endMark && popOperationType == that.popOperationType;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(consumerGroupId, topicId, queueId, Arrays.hashCode(offsets), Arrays.hashCode(counts),
+            invisibleDuration, operationTimestamp, endMark, popOperationType);
+    }
+}
@@ -33,7 +33,8 @@ public abstract class Operation {
         POP,
         ACK,
         CHANGE_INVISIBLE_DURATION,
-        RESET_CONSUME_OFFSET
+        RESET_CONSUME_OFFSET,
+        BATCH_POP
     }
 
     public long topicId() {
@@ -59,4 +60,11 @@ public abstract class Operation {
     public long operationTimestamp() {
         return operationTimestamp;
     }
+
+    /**
+     * The number of offsets this operation takes in the operation stream.
+     */
+    public int offsetCount() {
+        return 1;
+    }
 }
@@ -0,0 +1,57 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.automq.rocketmq.store.model.stream;
+
+import com.automq.stream.api.RecordBatch;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A record batch which takes several offsets of the stream.
+ * <p>
+ * It packs several messages in the data stream, each of them takes one offset. Payload: [(message size int)(message
+ * bytes)...]. A batch of a single message is stored as a {@link SingleRecord} instead, whose payload is the message
+ * itself, so the records are distinguished by the count.
+ * <p>
+ * In the operation stream, it holds a batch pop operation, which takes one offset for each of its pop operations.
+ */
+public record MultiRecord(int count, ByteBuffer rawPayload) implements RecordBatch {
+
+    public static MultiRecord of(List<ByteBuffer> messages) {
+        int size = messages.stream().mapToInt(message -> 4 + message.remaining()).sum();
+        ByteBuffer payload = ByteBuffer.allocate(size);
+        for (ByteBuffer message : messages) {
+            payload.putInt(message.remaining());
+            payload.put(message.duplicate());
+        }
+        payload.flip();
+        return new MultiRecord(messages.size(), payload);
+    }
+
+    @Override
+    public long baseTimestamp() {
+        return 0;
+    }
+
+    @Override
+    public Map<String, String> properties() {
+        // We don't store any properties to S3Stream
+        return null;
+    }
+}
@@ -28,6 +28,7 @@ import com.automq.rocketmq.store.model.kv.BatchRequest;
 import com.automq.rocketmq.store.model.kv.BatchWriteRequest;
 import com.automq.rocketmq.store.model.metadata.ConsumerGroupMetadata;
 import com.automq.rocketmq.store.model.operation.AckOperation;
+import com.automq.rocketmq.store.model.operation.BatchPopOperation;
 import com.automq.rocketmq.store.model.operation.ChangeInvisibleDurationOperation;
 import com.automq.rocketmq.store.model.operation.OperationSnapshot;
 import com.automq.rocketmq.store.model.operation.PopOperation;
@@ -42,6 +43,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentSkipListMap;
@@ -56,11 +58,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import static com.automq.rocketmq.store.MessageStoreImpl.KV_NAMESPACE_CHECK_POINT;
-import static com.automq.rocketmq.store.MessageStoreImpl.KV_NAMESPACE_FIFO_INDEX;
 import static com.automq.rocketmq.store.util.SerializeUtil.buildCheckPointKey;
 import static com.automq.rocketmq.store.util.SerializeUtil.buildCheckPointValue;
-import static com.automq.rocketmq.store.util.SerializeUtil.buildOrderIndexKey;
-import static com.automq.rocketmq.store.util.SerializeUtil.buildOrderIndexValue;
 import static com.automq.rocketmq.store.util.SerializeUtil.buildReceiptHandle;
 import static com.automq.rocketmq.store.util.SerializeUtil.buildReceiptHandleKey;
 
@@ -71,6 +70,8 @@ public class DefaultLogicQueueStateMachine implements MessageStateMachine {
     private Map<Long/*consumerGroup*/, ConsumerGroupMetadata> consumerGroupMetadataMap;
     private final Map<Long/*consumerGroup*/, AckCommitter> ackCommitterMap = new HashMap<>();
     private final Map<Long/*consumerGroup*/, AckCommitter> retryAckCommitterMap = new HashMap<>();
+    // Offsets of the fifo messages that are delivered but not acked yet, rebuilt from the operation log and snapshot.
+    private final Map<Long/*consumerGroup*/, Set<Long>> fifoInflightOffsetMap = new ConcurrentHashMap<>();
     private long currentOperationOffset = -1;
     private final ReadWriteLock lock = new ReentrantReadWriteLock();
     private final Lock reentrantLock = lock.readLock();
@@ -114,19 +115,49 @@ public class DefaultLogicQueueStateMachine implements MessageStateMachine {
     public ReplayPopResult replayPopOperation(long operationOffset, PopOperation operation) throws StoreException {
         reentrantLock.lock();
         try {
-            this.currentOperationOffset = operationOffset;
-            return switch (operation.popOperationType()) {
-                case POP_NORMAL -> replayPopNormalOperation(operationOffset, operation);
-                case POP_ORDER -> replayPopFifoOperation(operationOffset, operation);
-                case POP_RETRY -> replayPopRetryOperation(operationOffset, operation);
-            };
+            List<BatchRequest> requestList = new ArrayList<>();
+            ReplayPopResult result = replayPopOperation(operationOffset, operation, requestList);
+            if (!requestList.isEmpty()) {
+                kvService.batch(requestList.toArray(new BatchRequest[0]));
+            }
+            return result;
+        } finally {
+            reentrantLock.unlock();
+        }
+    }
+
+    @Override
+    public List<ReplayPopResult> replayBatchPopOperation(long operationOffset,
+        BatchPopOperation operation) throws StoreException {
+        reentrantLock.lock();
+        try {
+            // write the states of all pop operations in one batch
+            List<BatchRequest> requestList = new ArrayList<>();
+            List<ReplayPopResult> resultList = new ArrayList<>(operation.size());
+            for (int i = 0; i < operation.size(); i++) {
+                resultList.add(replayPopOperation(operationOffset + i, operation.popOperation(i), requestList));
+            }
+            if (!requestList.isEmpty()) {
+                kvService.batch(requestList.toArray(new BatchRequest[0]));
+            }
+            return resultList;
         } finally {
             reentrantLock.unlock();
         }
     }
 
+    private ReplayPopResult replayPopOperation(long operationOffset, PopOperation operation,
+        List<BatchRequest> requestList) {
+        this.currentOperationOffset = operationOffset;
+        return switch (operation.popOperationType()) {
+            case POP_NORMAL -> replayPopNormalOperation(operationOffset, operation, requestList);
+            case POP_ORDER -> replayPopFifoOperation(operationOffset, operation, requestList);
+            case POP_RETRY -> replayPopRetryOperation(operationOffset, operation, requestList);
+        };
+    }
+
     private ReplayPopResult replayPopNormalOperation(long operationOffset,
-        PopOperation operation) throws StoreException {
+        PopOperation operation, List<BatchRequest> requestList) {
         long topicId = operation.topicId();
         int queueId = operation.queueId();
         long offset = operation.offset();
@@ -154,7 +185,6 @@ public class DefaultLogicQueueStateMachine implements MessageStateMachine {
             return ReplayPopResult.empty();
         }
 
-        List<BatchRequest> requestList = new ArrayList<>();
         // write a ck for this offset
         BatchWriteRequest writeCheckPointRequest = new BatchWriteRequest(KV_NAMESPACE_CHECK_POINT,
             buildCheckPointKey(topicId, queueId, consumerGroupId, operationId),
@@ -171,13 +201,11 @@ public class DefaultLogicQueueStateMachine implements MessageStateMachine {
         Integer currentConsumeTimes = metadata.getConsumeTimes().getOrDefault(offset, 0);
         Integer newConsumeTimes = currentConsumeTimes + 1;
         metadata.getConsumeTimes().put(offset, newConsumeTimes);
-
-        kvService.batch(requestList.toArray(new BatchRequest[0]));
         return ReplayPopResult.of(newConsumeTimes);
     }
 
     private ReplayPopResult replayPopRetryOperation(long operationOffset,
-        PopOperation operation) throws StoreException {
+        PopOperation operation, List<BatchRequest> requestList) {
         long topicId = operation.topicId();
         int queueId = operation.queueId();
         long offset = operation.offset();
@@ -205,7 +233,6 @@ public class DefaultLogicQueueStateMachine implements MessageStateMachine {
             return ReplayPopResult.empty();
         }
 
-        List<BatchRequest> requestList = new ArrayList<>();
         // write a ck for this offset
         BatchWriteRequest writeCheckPointRequest = new BatchWriteRequest(KV_NAMESPACE_CHECK_POINT,
             buildCheckPointKey(topicId, queueId, consumerGroupId, operationId),
@@ -218,13 +245,11 @@ public class DefaultLogicQueueStateMachine implements MessageStateMachine {
             nextVisibleTimestamp, buildReceiptHandleKey(topicId, queueId, operationId),
             TimerHandlerType.POP_REVIVE, buildReceiptHandle(consumerGroupId, topicId, queueId, operationId));
         requestList.add(timerEnqueueRequest);
-
-        kvService.batch(requestList.toArray(new BatchRequest[0]));
         return ReplayPopResult.empty();
     }
 
     private ReplayPopResult replayPopFifoOperation(long operationOffset,
-        PopOperation operation) throws StoreException {
+        PopOperation operation, List<BatchRequest> requestList) {
         long topicId = operation.topicId();
         int queueId = operation.queueId();
         long offset = operation.offset();
@@ -253,7 +278,6 @@ public class DefaultLogicQueueStateMachine implements MessageStateMachine {
             return ReplayPopResult.empty();
         }
 
-        List<BatchRequest> requestList = new ArrayList<>();
         // write a ck for this offset
         BatchWriteRequest writeCheckPointRequest = new BatchWriteRequest(KV_NAMESPACE_CHECK_POINT,
             buildCheckPointKey(topicId, queueId, consumerGroupId, operationId),
@@ -267,20 +291,12 @@ public class DefaultLogicQueueStateMachine implements MessageStateMachine {
             TimerHandlerType.POP_REVIVE, buildReceiptHandle(consumerGroupId, topicId, queueId, operationId));
         requestList.add(timerEnqueueRequest);
 
-        // if this message is orderly, write order index for each offset in this operation to KV service
-        long baseOffset = offset - count + 1;
-        for (int i = 0; i < count; i++) {
-            long currOffset = baseOffset + i;
-            BatchWriteRequest writeOrderIndexRequest = new BatchWriteRequest(KV_NAMESPACE_FIFO_INDEX,
-                buildOrderIndexKey(consumerGroupId, topicId, queueId, currOffset), buildOrderIndexValue(operationId));
-            requestList.add(writeOrderIndexRequest);
-        }
-
         Integer currentConsumeTimes = metadata.getConsumeTimes().getOrDefault(offset, 0);
         int newConsumeTimes = currentConsumeTimes + 1;
         metadata.getConsumeTimes().put(offset, newConsumeTimes);
 
-        kvService.batch(requestList.toArray(new BatchRequest[0]));
+        // lock the message group of this message until it is acked
+        lockFifoOffset(consumerGroupId, offset);
         return ReplayPopResult.of(newConsumeTimes);
     }
 
@@ -445,6 +461,7 @@ public class DefaultLogicQueueStateMachine implements MessageStateMachine {
         if (!batchRequests.isEmpty()) {
             kvService.batch(batchRequests.toArray(new BatchRequest[0]));
         }
+        checkPointList.forEach(this::unlockFifoOffset);
     }
 
     private void deleteCheckPointAndRelatedStates(CheckPoint checkPoint) throws StoreException {
@@ -452,6 +469,7 @@ public class DefaultLogicQueueStateMachine implements MessageStateMachine {
         if (!batchRequests.isEmpty()) {
             kvService.batch(batchRequests.toArray(new BatchRequest[0]));
         }
+        unlockFifoOffset(checkPoint);
     }
 
     private List<BatchRequest> deleteCheckPointAndRelatedStatesReqs(CheckPoint checkPoint) {
@@ -464,16 +482,6 @@ public class DefaultLogicQueueStateMachine implements MessageStateMachine {
         BatchDeleteRequest timerCancelRequest = timerService.cancelRequest(checkPoint.nextVisibleTimestamp(),
             buildReceiptHandleKey(checkPoint.topicId(), checkPoint.queueId(), checkPoint.operationId()));
         requestList.add(timerCancelRequest);
-
-        if (checkPoint.popOperationType() == PopOperation.PopOperationType.POP_ORDER.value()) {
-            long baseOffset = checkPoint.messageOffset() - checkPoint.count() + 1;
-            for (int i = 0; i < checkPoint.count(); i++) {
-                long currOffset = baseOffset + i;
-                BatchDeleteRequest deleteOrderIndexRequest = new BatchDeleteRequest(KV_NAMESPACE_FIFO_INDEX,
-                    buildOrderIndexKey(checkPoint.consumerGroupId(), checkPoint.topicId(), checkPoint.queueId(), currOffset));
-                requestList.add(deleteOrderIndexRequest);
-            }
-        }
         return requestList;
     }
 
@@ -485,6 +493,7 @@ public class DefaultLogicQueueStateMachine implements MessageStateMachine {
         if (!batchRequests.isEmpty()) {
             kvService.batch(batchRequests.toArray(new BatchRequest[0]));
         }
+        checkPointList.forEach(this::lockFifoOffset);
     }
 
     private void writeCheckPointAndRelatedStates(CheckPoint checkPoint) throws StoreException {
@@ -492,6 +501,7 @@ public class DefaultLogicQueueStateMachine implements MessageStateMachine {
         if (!batchRequests.isEmpty()) {
             kvService.batch(batchRequests.toArray(new BatchRequest[0]));
         }
+        lockFifoOffset(checkPoint);
     }
 
     private List<BatchRequest> writeCheckPointAndRelatedStatesReqs(CheckPoint checkPoint) {
@@ -509,17 +519,26 @@ public class DefaultLogicQueueStateMachine implements MessageStateMachine {
             checkPoint.nextVisibleTimestamp(), buildReceiptHandleKey(checkPoint.topicId(), checkPoint.queueId(), checkPoint.operationId()),
             TimerHandlerType.POP_REVIVE, buildReceiptHandle(checkPoint.consumerGroupId(), checkPoint.topicId(), checkPoint.queueId(), checkPoint.operationId()));
         requestList.add(timerEnqueueRequest);
-        // write order index
-        if (checkPoint.popOperationType() == PopOperation.PopOperationType.POP_ORDER.ordinal()) {
-            long baseOffset = checkPoint.messageOffset() - checkPoint.count() + 1;
-            for (int i = 0; i < checkPoint.count(); i++) {
-                long currOffset = baseOffset + i;
-                BatchWriteRequest writeOrderIndexRequest = new BatchWriteRequest(KV_NAMESPACE_FIFO_INDEX,
-                    buildOrderIndexKey(checkPoint.consumerGroupId(), checkPoint.topicId(), checkPoint.queueId(), currOffset), buildOrderIndexValue(checkPoint.operationId()));
-                requestList.add(writeOrderIndexRequest);
+        return requestList;
+    }
+
+    private void lockFifoOffset(CheckPoint checkPoint) {
+        if (checkPoint.popOperationType() == PopOperation.PopOperationType.POP_ORDER.value()) {
+            lockFifoOffset(checkPoint.consumerGroupId(), checkPoint.messageOffset());
+        }
+    }
+
+    private void lockFifoOffset(long consumerGroupId, long offset) {
+        fifoInflightOffsetMap.computeIfAbsent(consumerGroupId, k -> ConcurrentHashMap.newKeySet()).add(offset);
+    }
+
+    private void unlockFifoOffset(CheckPoint checkPoint) {
+        if (checkPoint.popOperationType() == PopOperation.PopOperationType.POP_ORDER.value()) {
+            Set<Long> offsets = fifoInflightOffsetMap.get(checkPoint.consumerGroupId());
+            if (offsets != null) {
+                offsets.remove(checkPoint.messageOffset());
             }
         }
-        return requestList;
     }
 
     @Override
@@ -561,6 +580,7 @@ public class DefaultLogicQueueStateMachine implements MessageStateMachine {
                 getRetryAckCommitter(metadataSnapshot.getConsumerGroupId(), retryBitmap);
             });
             this.currentOperationOffset = snapshot.getSnapshotEndOffset();
+            this.fifoInflightOffsetMap.clear();
             // recover states in kv service
             writeCheckPointsAndRelatedStates(snapshot.getCheckPoints());
         } catch (Exception e) {
@@ -581,6 +601,7 @@ public class DefaultLogicQueueStateMachine implements MessageStateMachine {
             this.consumerGroupMetadataMap.clear();
             this.ackCommitterMap.clear();
             this.retryAckCommitterMap.clear();
+            this.fifoInflightOffsetMap.clear();
             this.currentOperationOffset = -1;
             List<CheckPoint> checkPointList = new ArrayList<>();
             byte[] tqPrefix = SerializeUtil.buildCheckPointQueuePrefix(topicId, queueId);
@@ -619,11 +640,20 @@ public class DefaultLogicQueueStateMachine implements MessageStateMachine {
     }
 
     @Override
-    public boolean isLocked(long consumerGroupId, long offset) throws StoreException {
+    public boolean isLocked(long consumerGroupId, long offset) {
+        Set<Long> offsets = fifoInflightOffsetMap.get(consumerGroupId);
+        return offsets != null && offsets.contains(offset);
+    }
+
+    @Override
+    public boolean isAcked(long consumerGroupId, long offset) {
+        if (offset < ackOffset(consumerGroupId)) {
+            return true;
+        }
         exclusiveLock.lock();
         try {
-            byte[] lockKey = buildOrderIndexKey(consumerGroupId, topicId, queueId, offset);
-            return kvService.get(KV_NAMESPACE_FIFO_INDEX, lockKey) != null;
+            AckCommitter ackCommitter = ackCommitterMap.get(consumerGroupId);
+            return ackCommitter != null && ackCommitter.isAcked(offset);
         } finally {
             exclusiveLock.unlock();
         }
@@ -669,6 +699,10 @@ public class DefaultLogicQueueStateMachine implements MessageStateMachine {
             }
         }
 
+        public boolean isAcked(long offset) {
+            return offset < ackOffset || bitmap.contains((int) (offset - baseOffset));
+        }
+
         public ByteBuffer getAckBitmapBuffer() throws IOException {
             int length = bitmap.serializedSizeInBytes();
             ByteBuffer buffer = ByteBuffer.allocate(length);
@@ -35,23 +35,34 @@ import com.automq.rocketmq.store.model.message.PullResult;
 import com.automq.rocketmq.store.model.message.PutResult;
 import com.automq.rocketmq.store.model.message.ResetConsumeOffsetResult;
 import com.automq.rocketmq.store.model.operation.AckOperation;
+import com.automq.rocketmq.store.model.operation.BatchPopOperation;
 import com.automq.rocketmq.store.model.operation.ChangeInvisibleDurationOperation;
 import com.automq.rocketmq.store.model.operation.PopOperation;
 import com.automq.rocketmq.store.model.operation.ResetConsumeOffsetOperation;
+import com.automq.rocketmq.store.model.stream.MultiRecord;
 import com.automq.rocketmq.store.model.stream.SingleRecord;
 import com.automq.rocketmq.store.service.InflightService;
 import com.automq.rocketmq.store.service.StreamReclaimService;
 import com.automq.rocketmq.store.service.api.OperationLogService;
+import com.automq.rocketmq.store.util.FlatMessageUtil;
 import com.automq.rocketmq.store.util.SerializeUtil;
+import com.automq.stream.api.AppendResult;
+import com.automq.stream.api.RecordBatch;
 import com.automq.stream.utils.FutureUtil;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Queue;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
 import org.apache.rocketmq.logging.org.slf4j.Logger;
 import org.apache.rocketmq.logging.org.slf4j.LoggerFactory;
 
@@ -72,6 +83,7 @@ public class StreamLogicQueue extends LogicQueue {
     private final InflightService inflightService;
     private final StreamReclaimService streamReclaimService;
     private final AtomicReference<State> state;
+    private final PutBatcher putBatcher = new PutBatcher();
 
     public StreamLogicQueue(StoreConfig config, long topicId, int queueId,
         StoreMetadataService metadataService, MessageStateMachine stateMachine, StreamStore streamStore,
@@ -196,8 +208,88 @@ public class StreamLogicQueue extends LogicQueue {
         if (state.get() != State.OPENED) {
             return CompletableFuture.failedFuture(new StoreException(StoreErrorCode.QUEUE_NOT_OPENED, "Topic queue not opened"));
         }
-        return streamStore.append(dataStreamId, new SingleRecord(flatMessage.getByteBuffer()))
-            .thenApply(appendResult -> new PutResult(PutResult.Status.PUT_OK, appendResult.baseOffset()));
+        return putBatcher.put(flatMessage);
+    }
+
+    /**
+     * Pack the messages put concurrently into multi-message record batches of the data stream.
+     * <p>
+     * At most one append to the data stream is in flight. The messages put meanwhile are queued, and appended as one
+     * batch when the in-flight append completes. So a lone message is appended at once, and the batch grows with
+     * the load, up to {@link StoreConfig#putBatchMaxCount()} messages or {@link StoreConfig#putBatchMaxBytes()} bytes.
+     */
+    class PutBatcher {
+        private final Queue<PendingPut> pendingPuts = new ArrayDeque<>();
+        private boolean appending;
+
+        CompletableFuture<PutResult> put(FlatMessage flatMessage) {
+            PendingPut pendingPut = new PendingPut(flatMessage.getByteBuffer(), new CompletableFuture<>());
+            synchronized (this) {
+                pendingPuts.add(pendingPut);
+                if (appending) {
+                    return pendingPut.future();
+                }
+                appending = true;
+            }
+            appendNext();
+            return pendingPut.future();
+        }
+
+        private void appendNext() {
+            // Loop while the appends complete in place, to avoid growing the stack under a burst of puts.
+            while (true) {
+                List<PendingPut> batch = new ArrayList<>();
+                synchronized (this) {
+                    int batchBytes = 0;
+                    while (!pendingPuts.isEmpty() && batch.size() < config.putBatchMaxCount()) {
+                        PendingPut next = pendingPuts.peek();
+                        if (!batch.isEmpty() && batchBytes + next.message().remaining() > config.putBatchMaxBytes()) {
+                            break;
+                        }
+                        batch.add(pendingPuts.poll());
+                        batchBytes += next.message().remaining();
+                    }
+                    if (batch.isEmpty()) {
+                        appending = false;
+                        return;
+                    }
+                }
+                RecordBatch recordBatch = batch.size() == 1 ? new SingleRecord(batch.get(0).message())
+                    : MultiRecord.of(batch.stream().map(PendingPut::message).toList());
+                CompletableFuture<AppendResult> appendCf;
+                try {
+                    appendCf = streamStore.append(dataStreamId, recordBatch);
+                } catch (Throwable e) {
+                    appendCf = CompletableFuture.failedFuture(e);
+                }
+                if (!appendCf.isDone()) {
+                    CompletableFuture<AppendResult> pendingCf = appendCf;
+                    pendingCf.whenComplete((appendResult, ex) -> {
+                        onAppended(batch, pendingCf);
+                        appendNext();
+                    });
+                    return;
+                }
+                onAppended(batch, appendCf);
+            }
+        }
+
+        private void onAppended(List<PendingPut> batch, CompletableFuture<AppendResult> appendCf) {
+            AppendResult appendResult;
+            try {
+                appendResult = appendCf.join();
+            } catch (Throwable e) {
+                Throwable cause = FutureUtil.cause(e);
+                batch.forEach(pendingPut -> pendingPut.future().completeExceptionally(cause));
+                return;
+            }
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).future().complete(new PutResult(PutResult.Status.PUT_OK, appendResult.baseOffset() + i));
+            }
+        }
+    }
+
+    record PendingPut(ByteBuffer message, CompletableFuture<PutResult> future) {
     }
 
     @Override
@@ -273,36 +365,18 @@ public class StreamLogicQueue extends LogicQueue {
         // log op
         CompletableFuture<FilterFetchResult> fetchAndLogOpCf = fetchCf.thenCompose(filterFetchResult -> {
             List<FlatMessageExt> messageExtList = filterFetchResult.messageList;
-            // write pop operation to operation log
-            long preOffset = filterFetchResult.startOffset - 1;
-            List<CompletableFuture<OperationLogService.LogResult>> appendOpCfs = new ArrayList<>(messageExtList.size());
             // write pop operation for each need consumed message
+            long preOffset = filterFetchResult.startOffset - 1;
+            List<Integer> countList = new ArrayList<>(messageExtList.size());
             for (FlatMessageExt messageExt : messageExtList) {
-                int count = (int) (messageExt.offset() - preOffset);
+                countList.add((int) (messageExt.offset() - preOffset));
                 preOffset = messageExt.offset();
-                PopOperation popOperation = new PopOperation(topicId, queueId, operationStreamId, snapshotStreamId,
-                    stateMachine, consumerGroupId, messageExt.offset(), count, invisibleDuration, operationTimestamp,
-                    false, operationType);
-                appendOpCfs.add(operationLogService.logPopOperation(popOperation)
-                    .thenApply(logResult -> {
-                        long operationId = logResult.getOperationOffset();
-                        messageExt.setReceiptHandle(SerializeUtil.encodeReceiptHandle(consumerGroupId, topicId, queueId, operationId));
-                        if (!messageExt.isRetryMessage()) {
-                            messageExt.setDeliveryAttempts(logResult.getPopTimes());
-                        }
-                        return logResult;
-                    }));
             }
             // write special pop operation for the last message to update consume offset
-            int count = (int) (fetchResult.endOffset - 1 - preOffset);
-            if (count > 0) {
-                PopOperation popOperation = new PopOperation(topicId, queueId, operationStreamId, snapshotStreamId,
-                    stateMachine, consumerGroupId, fetchResult.endOffset - 1, count, invisibleDuration,
-                    operationTimestamp, true, operationType);
-                appendOpCfs.add(operationLogService.logPopOperation(popOperation));
-            }
-            return CompletableFuture.allOf(appendOpCfs.toArray(new CompletableFuture[0]))
-                .thenApply(nil -> fetchResult);
+            int endMarkCount = (int) (filterFetchResult.endOffset - 1 - preOffset);
+            return logPopOperations(consumerGroupId, operationType, messageExtList, countList,
+                filterFetchResult.endOffset, endMarkCount, invisibleDuration, operationTimestamp)
+                .thenApply(nil -> filterFetchResult);
         });
 
         return fetchAndLogOpCf.thenApply(filterFetchResult -> {
@@ -318,24 +392,136 @@ public class StreamLogicQueue extends LogicQueue {
         }).exceptionally(throwable -> new PopResult(PopResult.Status.ERROR, operationTimestamp, Collections.emptyList(), confirmOffset - startOffset));
     }
 
+    // Write all pop operations of a pop call to operation log as one batch, the message at index i covers countList[i]
+    // offsets ending at itself, and the end mark covers endMarkCount offsets ending at endOffset - 1.
+    private CompletableFuture<Void> logPopOperations(long consumerGroupId, PopOperation.PopOperationType operationType,
+        List<FlatMessageExt> messageExtList, List<Integer> countList, long endOffset, int endMarkCount,
+        long invisibleDuration, long operationTimestamp) {
+        boolean endMark = endMarkCount > 0;
+        int size = messageExtList.size() + (endMark ? 1 : 0);
+        if (size == 0) {
+            return CompletableFuture.completedFuture(null);
+        }
+        long[] offsets = new long[size];
+        int[] counts = new int[size];
+        for (int i = 0; i < messageExtList.size(); i++) {
+            offsets[i] = messageExtList.get(i).offset();
+            counts[i] = countList.get(i);
+        }
+        if (endMark) {
+            offsets[size - 1] = endOffset - 1;
+            counts[size - 1] = endMarkCount;
+        }
+        BatchPopOperation operation = new BatchPopOperation(topicId, queueId, operationStreamId, snapshotStreamId,
+            stateMachine, consumerGroupId, offsets, counts, invisibleDuration, operationTimestamp, endMark, operationType);
+        return operationLogService.logBatchPopOperation(operation)
+            .thenAccept(logResults -> {
+                for (int i = 0; i < messageExtList.size(); i++) {
+                    FlatMessageExt messageExt = messageExtList.get(i);
+                    OperationLogService.LogResult logResult = logResults.get(i);
+                    long operationId = logResult.getOperationOffset();
+                    messageExt.setReceiptHandle(SerializeUtil.encodeReceiptHandle(consumerGroupId, topicId, queueId, operationId));
+                    if (!messageExt.isRetryMessage()) {
+                        messageExt.setDeliveryAttempts(logResult.getPopTimes());
+                    }
+                }
+            });
+    }
+
     @Override
     public CompletableFuture<PopResult> popFifo(long consumerGroup, Filter filter, int batchSize,
         long invisibleDuration) {
         if (state.get() != State.OPENED) {
             return CompletableFuture.failedFuture(new StoreException(StoreErrorCode.QUEUE_NOT_OPENED, "Topic queue not opened"));
         }
-        // start from ack offset
-        try {
-            long offset = stateMachine.ackOffset(consumerGroup);
-            boolean isLocked = stateMachine.isLocked(consumerGroup, offset);
-            if (isLocked) {
-                return CompletableFuture.completedFuture(new PopResult(PopResult.Status.LOCKED, 0, Collections.emptyList(), 0));
+        // Start from ack offset, messages after it may be acked or in flight already.
+        long startOffset = stateMachine.ackOffset(consumerGroup);
+        long confirmOffset = streamStore.confirmOffset(dataStreamId);
+        if (startOffset == confirmOffset) {
+            return CompletableFuture.completedFuture(new PopResult(PopResult.Status.END_OF_QUEUE, 0, Collections.emptyList(), 0));
+        }
+        if (startOffset > confirmOffset) {
+            return CompletableFuture.completedFuture(new PopResult(PopResult.Status.ILLEGAL_OFFSET, 0, Collections.emptyList(), 0));
+        }
+
+        // Messages of locked groups are skipped like the filtered ones, so always fetch more messages.
+        int fetchBatchSize = batchSize * config.fetchBatchSizeFactor();
+        long operationTimestamp = System.currentTimeMillis();
+        FifoFetchResult fetchResult = new FifoFetchResult(startOffset);
+        CompletableFuture<FifoFetchResult> fetchCf = fetchFifoMessages(consumerGroup, startOffset, batchSize,
+            fetchBatchSize, filter, fetchResult, 0, 0, operationTimestamp);
+        CompletableFuture<FifoFetchResult> fetchAndLogOpCf = fetchCf.thenCompose(fifoFetchResult -> {
+            // each delivered message covers the skipped messages right before it, and the end mark acks the filtered
+            // messages at the tail
+            int endMarkCount = fifoFetchResult.pendingAck ? (int) (fifoFetchResult.endOffset - fifoFetchResult.pendingOffset) : 0;
+            return logPopOperations(consumerGroup, PopOperation.PopOperationType.POP_ORDER, fifoFetchResult.messageList,
+                fifoFetchResult.countList, fifoFetchResult.endOffset, endMarkCount, invisibleDuration, operationTimestamp)
+                .thenApply(nil -> fifoFetchResult);
+        });
+
+        return fetchAndLogOpCf.thenApply(fifoFetchResult -> {
+            List<FlatMessageExt> messageExtList = fifoFetchResult.messageList;
+            PopResult.Status status;
+            if (!messageExtList.isEmpty()) {
+                status = PopResult.Status.FOUND;
+            } else if (!fifoFetchResult.lockedGroups.isEmpty()) {
+                status = PopResult.Status.LOCKED;
             } else {
-                return pop(consumerGroup, dataStreamId, offset, PopOperation.PopOperationType.POP_ORDER, filter, batchSize, invisibleDuration);
+                status = PopResult.Status.NOT_FOUND;
             }
-        } catch (StoreException e) {
-            return CompletableFuture.completedFuture(new PopResult(PopResult.Status.ERROR, 0, Collections.emptyList(), 0));
-        }
+            inflightService.increaseInflightCount(consumerGroup, topicId, queueId, messageExtList.size());
+            return new PopResult(status, operationTimestamp, messageExtList, confirmOffset - fifoFetchResult.endOffset);
+        }).exceptionally(throwable -> new PopResult(PopResult.Status.ERROR, operationTimestamp, Collections.emptyList(), confirmOffset - startOffset));
+    }
+
+    // Fetch messages in order and pick the deliverable ones until exceeding the limit.
+    private CompletableFuture<FifoFetchResult> fetchFifoMessages(long consumerGroupId, long offset, int batchSize,
+        int fetchBatchSize, Filter filter, FifoFetchResult result, int fetchCount, long fetchBytes,
+        long operationTimestamp) {
+        return fetchMessages(dataStreamId, offset, fetchBatchSize)
+            .thenCompose(fetchResult -> {
+                Set<Long> matchedOffsets = filter.doFilter(fetchResult)
+                    .stream()
+                    .map(FlatMessageExt::offset)
+                    .collect(Collectors.toSet());
+                for (FlatMessageExt messageExt : fetchResult) {
+                    if (result.size() >= batchSize) {
+                        break;
+                    }
+                    long messageOffset = messageExt.offset();
+                    String messageGroup = messageExt.message().messageGroup();
+                    if (stateMachine.isLocked(consumerGroupId, messageOffset)) {
+                        // The message is in flight, hold back the rest of its group.
+                        result.lock(messageExt, messageGroup);
+                    } else if (stateMachine.isAcked(consumerGroupId, messageOffset)) {
+                        result.skip(messageExt, false);
+                    } else if (!matchedOffsets.contains(messageOffset)) {
+                        result.skip(messageExt, true);
+                    } else if (result.isLocked(messageGroup)) {
+                        result.lock(messageExt, messageGroup);
+                    } else {
+                        result.deliver(messageExt);
+                    }
+                }
+
+                boolean needToFetch = result.size() < batchSize;
+                boolean hasMoreMessages = fetchResult.size() >= fetchBatchSize;
+
+                int newFetchCount = fetchCount + fetchResult.size();
+                long newFetchBytes = fetchBytes + fetchResult.stream()
+                    .map(messageExt -> (long) messageExt.message().getByteBuffer().limit())
+                    .reduce(0L, Long::sum);
+                boolean notExceedLimit = newFetchCount < config.maxFetchCount() &&
+                    newFetchBytes < config.maxFetchBytes() &&
+                    System.currentTimeMillis() - operationTimestamp < config.maxFetchTimeMillis();
+
+                if (needToFetch && hasMoreMessages && notExceedLimit) {
+                    return fetchFifoMessages(consumerGroupId, offset + fetchResult.size(), batchSize, fetchBatchSize,
+                        filter, result, newFetchCount, newFetchBytes, operationTimestamp);
+                } else {
+                    return CompletableFuture.completedFuture(result);
+                }
+            });
     }
 
     @Override
@@ -364,19 +550,16 @@ public class StreamLogicQueue extends LogicQueue {
             batchSize = (int) (confirmOffset - offset);
         }
 
+        long fetchStartOffset = offset;
+        long fetchEndOffset = offset + batchSize;
         return streamStore.fetch(streamId, offset, batchSize)
             .thenApply(fetchResult -> {
-                // TODO: Assume message count is always 1 in each batch for now.
+                // A record batch may contain several messages, and the first and last batch may cross the fetch range,
+                // so only the messages in the range are returned, one for each offset.
                 return fetchResult.recordBatchList()
                     .stream()
-                    .map(batch -> {
-                        FlatMessage message = FlatMessage.getRootAsFlatMessage(batch.rawPayload());
-                        long messageOffset = batch.baseOffset();
-                        return FlatMessageExt.Builder.builder()
-                            .message(message)
-                            .offset(messageOffset)
-                            .build();
-                    })
+                    .flatMap(batch -> FlatMessageUtil.transferToMessageExtList(batch).stream())
+                    .filter(messageExt -> messageExt.offset() >= fetchStartOffset && messageExt.offset() < fetchEndOffset)
                     .toList();
             });
     }
@@ -449,6 +632,62 @@ public class StreamLogicQueue extends LogicQueue {
         }
     }
 
+    /**
+     * Fifo fetch result.
+     * <p>
+     * All messages in <code>[startOffset, endOffset)</code> are scanned in order. A message group is locked once one of
+     * its messages is found in flight, and the later messages of a locked group are held back while other groups go on.
+     * The skipped messages in <code>[pendingOffset, endOffset)</code> are acked together with the next delivered
+     * message, or by an end mark if no message is delivered after them.
+     */
+    static class FifoFetchResult {
+        private long endOffset;
+        private long pendingOffset;
+        private boolean pendingAck;
+        private final List<FlatMessageExt> messageList = new ArrayList<>();
+        private final List<Integer> countList = new ArrayList<>();
+        private final Set<String> lockedGroups = new HashSet<>();
+
+        public FifoFetchResult(long startOffset) {
+            this.endOffset = startOffset;
+            this.pendingOffset = startOffset;
+        }
+
+        public void deliver(FlatMessageExt messageExt) {
+            messageList.add(messageExt);
+            countList.add((int) (messageExt.offset() - pendingOffset + 1));
+            endOffset = messageExt.offset() + 1;
+            pendingOffset = endOffset;
+            pendingAck = false;
+        }
+
+        /**
+         * Skip an acked or filtered message, which is safe to be acked again.
+         */
+        public void skip(FlatMessageExt messageExt, boolean needAck) {
+            endOffset = messageExt.offset() + 1;
+            pendingAck |= needAck;
+        }
+
+        /**
+         * Hold back a message of the locked group, the skipped messages before it are left to the later pop.
+         */
+        public void lock(FlatMessageExt messageExt, String messageGroup) {
+            lockedGroups.add(messageGroup);
+            endOffset = messageExt.offset() + 1;
+            pendingOffset = endOffset;
+            pendingAck = false;
+        }
+
+        public boolean isLocked(String messageGroup) {
+            return lockedGroups.contains(messageGroup);
+        }
+
+        public int size() {
+            return messageList.size();
+        }
+    }
+
     @Override
     public CompletableFuture<AckResult> ack(String receiptHandle) {
         if (state.get() != State.OPENED) {
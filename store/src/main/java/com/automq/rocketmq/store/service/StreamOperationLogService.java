@@ -23,19 +23,29 @@ import com.automq.rocketmq.store.api.StreamStore;
 import com.automq.rocketmq.store.exception.StoreErrorCode;
 import com.automq.rocketmq.store.exception.StoreException;
 import com.automq.rocketmq.store.model.operation.AckOperation;
+import com.automq.rocketmq.store.model.operation.BatchPopOperation;
 import com.automq.rocketmq.store.model.operation.ChangeInvisibleDurationOperation;
 import com.automq.rocketmq.store.model.operation.Operation;
 import com.automq.rocketmq.store.model.operation.PopOperation;
 import com.automq.rocketmq.store.model.operation.ResetConsumeOffsetOperation;
+import com.automq.rocketmq.store.model.stream.MultiRecord;
 import com.automq.rocketmq.store.model.stream.SingleRecord;
 import com.automq.rocketmq.store.service.api.OperationLogService;
 import com.automq.rocketmq.store.util.SerializeUtil;
 import com.automq.stream.api.AppendResult;
+import com.automq.stream.api.FetchResult;
+import com.automq.stream.api.RecordBatch;
 import com.automq.stream.api.RecordBatchWithContext;
 import com.automq.stream.utils.FutureUtil;
 import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -44,6 +54,7 @@ public class StreamOperationLogService implements OperationLogService {
     private final StreamStore streamStore;
     private final SnapshotService snapshotService;
     private final StoreConfig storeConfig;
+    private final ConcurrentMap<Long, OperationCommitter> committerMap = new ConcurrentHashMap<>();
 
     public StreamOperationLogService(StreamStore streamStore, SnapshotService snapshotService,
         StoreConfig storeConfig) {
@@ -75,83 +86,274 @@ public class StreamOperationLogService implements OperationLogService {
                     return snapshot.getSnapshotEndOffset() + 1;
                 });
         }
-        // 2. get all operations
-        // TODO: batch fetch, fetch all at once may cause some problems
-        return snapshotFetch.thenCompose(offset -> streamStore.fetch(operationStreamId, offset, (int) (endOffset - offset))
-            .thenAccept(result -> {
-                // load operations
-                for (RecordBatchWithContext batchWithContext : result.recordBatchList()) {
-                    // TODO: assume that a batch only contains one operation
-                    Operation operation = SerializeUtil.decodeOperation(batchWithContext.rawPayload(), stateMachine,
-                        operationStreamId, snapshotStreamId);
+        // 2. replay operations chunk by chunk
+        return snapshotFetch.thenCompose(offset -> {
+            RecoverTask task = new RecoverTask(stateMachine, operationStreamId, snapshotStreamId, offset, endOffset);
+            if (offset >= endOffset) {
+                task.future.complete(null);
+            } else {
+                task.replayNext(task.fetchChunk(offset));
+            }
+            return task.future;
+        });
+    }
+
+    /**
+     * Replay the operation stream from the snapshot to the end in chunks of at most
+     * {@link StoreConfig#operationLogRecoverBatchSize()} operations, so only two chunks are held in memory.
+     * The next chunk is fetched before the current one is replayed, so the fetch overlaps the replay.
+     */
+    class RecoverTask {
+        private final MessageStateMachine stateMachine;
+        private final long operationStreamId;
+        private final long snapshotStreamId;
+        private final long startOffset;
+        private final long endOffset;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        RecoverTask(MessageStateMachine stateMachine, long operationStreamId, long snapshotStreamId, long startOffset,
+            long endOffset) {
+            this.stateMachine = stateMachine;
+            this.operationStreamId = operationStreamId;
+            this.snapshotStreamId = snapshotStreamId;
+            this.startOffset = startOffset;
+            this.endOffset = endOffset;
+        }
+
+        private CompletableFuture<FetchResult> fetchChunk(long offset) {
+            int count = (int) Math.min(endOffset - offset, storeConfig.operationLogRecoverBatchSize());
+            try {
+                return streamStore.fetch(operationStreamId, offset, count);
+            } catch (Throwable e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+
+        private void replayNext(CompletableFuture<FetchResult> fetchCf) {
+            // Loop while the fetches complete in place, to avoid growing the stack for a long operation stream.
+            while (true) {
+                if (!fetchCf.isDone()) {
+                    CompletableFuture<FetchResult> pendingCf = fetchCf;
+                    pendingCf.whenComplete((result, ex) -> replayNext(pendingCf));
+                    return;
+                }
+                FetchResult result;
+                try {
+                    result = fetchCf.join();
+                } catch (Throwable e) {
+                    future.completeExceptionally(FutureUtil.cause(e));
+                    return;
+                }
+                CompletableFuture<FetchResult> nextFetchCf = null;
+                try {
+                    List<RecordBatchWithContext> recordBatchList = result.recordBatchList();
+                    if (recordBatchList.isEmpty()) {
+                        throw new IllegalStateException("Topic " + stateMachine.topicId() + ", queue: " + stateMachine.queueId()
+                            + ": Fetch no operation from stream " + operationStreamId + " before the end offset " + endOffset);
+                    }
+                    long nextOffset = recordBatchList.get(recordBatchList.size() - 1).lastOffset();
+                    if (nextOffset < endOffset) {
+                        nextFetchCf = fetchChunk(nextOffset);
+                    }
+                    replay(recordBatchList);
+                } catch (Throwable e) {
+                    future.completeExceptionally(FutureUtil.cause(e));
+                    return;
+                } finally {
+                    result.free();
+                }
+                if (nextFetchCf == null) {
+                    future.complete(null);
+                    return;
+                }
+                fetchCf = nextFetchCf;
+            }
+        }
+
+        private void replay(List<RecordBatchWithContext> recordBatchList) throws StoreException {
+            for (RecordBatchWithContext batchWithContext : recordBatchList) {
+                // A record contains one operation or a group of operations committed together, and an operation
+                // may take several offsets like the batch pop operation.
+                List<Operation> operationList = SerializeUtil.decodeOperations(batchWithContext.rawPayload(), stateMachine,
+                    operationStreamId, snapshotStreamId);
+                long operationOffset = batchWithContext.baseOffset();
+                for (Operation operation : operationList) {
+                    // The snapshot may be taken in the middle of an operation group, skip the operations it covers.
+                    if (operationOffset < startOffset) {
+                        operationOffset += operation.offsetCount();
+                        continue;
+                    }
                     try {
-                        // TODO: operation may be null
-                        replay(batchWithContext.baseOffset(), operation);
+                        StreamOperationLogService.this.replay(operationOffset, operation);
                     } catch (StoreException e) {
                         LOGGER.error("Topic {}, queue: {}: Replay operation: {} failed when recover", stateMachine.topicId(), stateMachine.queueId(), operation, e);
                         if (e.code() != StoreErrorCode.ILLEGAL_ARGUMENT) {
-                            throw new CompletionException(e);
+                            throw e;
                         }
                     }
+                    operationOffset += operation.offsetCount();
                 }
-            }));
+            }
+        }
     }
 
     @Override
     public CompletableFuture<LogResult> logPopOperation(PopOperation operation) {
-        return streamStore.append(operation.operationStreamId(),
-                new SingleRecord(ByteBuffer.wrap(SerializeUtil.encodePopOperation(operation))))
-            .thenApply(result -> {
-                try {
-                    return doReplay(result, operation);
-                } catch (StoreException e) {
-                    LOGGER.error("Topic {}, queue: {}: Replay pop operation: {} failed", operation.topicId(), operation.queueId(), operation, e);
-                    throw new CompletionException(e);
-                }
-            });
+        return commit(operation).thenApply(logResults -> logResults.get(0));
+    }
+
+    @Override
+    public CompletableFuture<List<LogResult>> logBatchPopOperation(BatchPopOperation operation) {
+        return commit(operation);
     }
 
     @Override
     public CompletableFuture<LogResult> logAckOperation(AckOperation operation) {
-        return streamStore.append(operation.operationStreamId(),
-                new SingleRecord(ByteBuffer.wrap(SerializeUtil.encodeAckOperation(operation))))
-            .thenApply(result -> {
-                try {
-                    return doReplay(result, operation);
-                } catch (StoreException e) {
-                    LOGGER.error("Topic {}, queue: {}: Replay ack operation: {} failed", operation.topicId(), operation.queueId(), operation, e);
-                    throw new CompletionException(e);
-                }
-            });
+        return commit(operation).thenApply(logResults -> logResults.get(0));
     }
 
     @Override
     public CompletableFuture<LogResult> logChangeInvisibleDurationOperation(
         ChangeInvisibleDurationOperation operation) {
-        return streamStore.append(operation.operationStreamId(),
-                new SingleRecord(ByteBuffer.wrap(SerializeUtil.encodeChangeInvisibleDurationOperation(operation))))
-            .thenApply(result -> {
-                try {
-                    return doReplay(result, operation);
-                } catch (StoreException e) {
-                    LOGGER.error("Topic {}, queue: {}: Replay change invisible duration operation: {} failed", operation.topicId(), operation.queueId(), operation, e);
-                    throw new CompletionException(e);
-                }
-            });
+        return commit(operation).thenApply(logResults -> logResults.get(0));
     }
 
     @Override
     public CompletableFuture<LogResult> logResetConsumeOffsetOperation(ResetConsumeOffsetOperation operation) {
-        return streamStore.append(operation.operationStreamId(),
-                new SingleRecord(ByteBuffer.wrap(SerializeUtil.encodeResetConsumeOffsetOperation(operation))))
-            .thenApply(result -> {
+        return commit(operation).thenApply(logResults -> logResults.get(0));
+    }
+
+    private CompletableFuture<List<LogResult>> commit(Operation operation) {
+        while (true) {
+            CompletableFuture<List<LogResult>> future = committerMap
+                .computeIfAbsent(operation.operationStreamId(), OperationCommitter::new).commit(operation);
+            // The committer is removed once it is idle, retry with a new one.
+            if (future != null) {
+                return future;
+            }
+        }
+    }
+
+    int committerCount() {
+        return committerMap.size();
+    }
+
+    /**
+     * Group-commit the operations logged to an operation stream concurrently.
+     * <p>
+     * At most one append to the operation stream is in flight. The operations logged meanwhile are queued, and
+     * appended as one record when the in-flight append completes, up to
+     * {@link StoreConfig#operationLogGroupCommitMaxCount()} operations. An operation logged to an idle stream is
+     * appended at once, or after {@link StoreConfig#operationLogGroupCommitLingerMillis()} if configured.
+     * <p>
+     * The operations of a record are replayed in order, each at its own offset, and the future of each operation
+     * completes with its own result.
+     * <p>
+     * The committer is removed from {@link #committerMap} once there is no operation left, so the committers of the
+     * closed operation streams are not retained.
+     */
+    class OperationCommitter {
+        private final long operationStreamId;
+        private final Queue<PendingOperation> pendingOperations = new ArrayDeque<>();
+        private boolean appending;
+        private boolean closed;
+
+        OperationCommitter(long operationStreamId) {
+            this.operationStreamId = operationStreamId;
+        }
+
+        /**
+         * @return the future of the operation, or null if the committer is closed.
+         */
+        CompletableFuture<List<LogResult>> commit(Operation operation) {
+            PendingOperation pendingOperation = new PendingOperation(operation, new CompletableFuture<>());
+            synchronized (this) {
+                if (closed) {
+                    return null;
+                }
+                pendingOperations.add(pendingOperation);
+                if (appending) {
+                    return pendingOperation.future();
+                }
+                appending = true;
+            }
+            long lingerMillis = storeConfig.operationLogGroupCommitLingerMillis();
+            if (lingerMillis > 0) {
+                CompletableFuture.delayedExecutor(lingerMillis, TimeUnit.MILLISECONDS).execute(this::appendNext);
+            } else {
+                appendNext();
+            }
+            return pendingOperation.future();
+        }
+
+        private void appendNext() {
+            // Loop while the appends complete in place, to avoid growing the stack under a burst of operations.
+            while (true) {
+                List<PendingOperation> batch = new ArrayList<>();
+                synchronized (this) {
+                    while (!pendingOperations.isEmpty() && batch.size() < storeConfig.operationLogGroupCommitMaxCount()) {
+                        batch.add(pendingOperations.poll());
+                    }
+                    if (batch.isEmpty()) {
+                        appending = false;
+                        closed = true;
+                        committerMap.remove(operationStreamId, this);
+                        return;
+                    }
+                }
+                CompletableFuture<AppendResult> appendCf;
                 try {
-                    return doReplay(result, operation);
-                } catch (StoreException e) {
-                    LOGGER.error("Topic {}, queue: {}: Replay reset consume offset operation: {} failed", operation.topicId(), operation.queueId(), operation, e);
-                    throw new CompletionException(e);
+                    appendCf = streamStore.append(operationStreamId, encode(batch));
+                } catch (Throwable e) {
+                    appendCf = CompletableFuture.failedFuture(e);
                 }
-            });
+                if (!appendCf.isDone()) {
+                    CompletableFuture<AppendResult> pendingCf = appendCf;
+                    pendingCf.whenComplete((appendResult, ex) -> {
+                        onAppended(batch, pendingCf);
+                        appendNext();
+                    });
+                    return;
+                }
+                onAppended(batch, appendCf);
+            }
+        }
+
+        private void onAppended(List<PendingOperation> batch, CompletableFuture<AppendResult> appendCf) {
+            AppendResult appendResult;
+            try {
+                appendResult = appendCf.join();
+            } catch (Throwable e) {
+                Throwable cause = FutureUtil.cause(e);
+                batch.forEach(pendingOperation -> pendingOperation.future().completeExceptionally(cause));
+                return;
+            }
+            long operationOffset = appendResult.baseOffset();
+            for (PendingOperation pendingOperation : batch) {
+                Operation operation = pendingOperation.operation();
+                try {
+                    pendingOperation.future().complete(doReplay(operationOffset, operation));
+                } catch (Throwable e) {
+                    LOGGER.error("Topic {}, queue: {}: Replay operation: {} failed", operation.topicId(), operation.queueId(), operation, e);
+                    pendingOperation.future().completeExceptionally(e);
+                }
+                operationOffset += operation.offsetCount();
+            }
+        }
+
+        private RecordBatch encode(List<PendingOperation> batch) {
+            if (batch.size() == 1) {
+                Operation operation = batch.get(0).operation();
+                ByteBuffer payload = ByteBuffer.wrap(SerializeUtil.encodeOperation(operation));
+                return operation.offsetCount() == 1 ? new SingleRecord(payload) : new MultiRecord(operation.offsetCount(), payload);
+            }
+            List<Operation> operationList = batch.stream().map(PendingOperation::operation).toList();
+            int offsetCount = operationList.stream().mapToInt(Operation::offsetCount).sum();
+            return new MultiRecord(offsetCount, ByteBuffer.wrap(SerializeUtil.encodeOperationGroup(operationList)));
+        }
+    }
+
+    record PendingOperation(Operation operation, CompletableFuture<List<LogResult>> future) {
     }
 
     private void notifySnapshot(Operation operation) {
@@ -177,18 +379,21 @@ public class StreamOperationLogService implements OperationLogService {
         }
     }
 
-    private LogResult doReplay(AppendResult appendResult, Operation operation) throws StoreException {
-        long operationOffset = appendResult.baseOffset();
-        LogResult logResult = replay(operationOffset, operation);
+    private List<LogResult> doReplay(long operationOffset, Operation operation) throws StoreException {
+        List<LogResult> logResults = replay(operationOffset, operation);
+        checkSnapshot(operationOffset + operation.offsetCount() - 1, operation);
+        return logResults;
+    }
+
+    private void checkSnapshot(long operationOffset, Operation operation) {
         MessageStateMachine stateMachine = operation.stateMachine();
         SnapshotService.SnapshotStatus snapshotStatus = snapshotService.getSnapshotStatus(stateMachine.topicId(), stateMachine.queueId());
         if (operationOffset - snapshotStatus.operationStartOffset().get() + 1 >= storeConfig.operationSnapshotInterval()) {
             notifySnapshot(operation);
         }
-        return logResult;
     }
 
-    private LogResult replay(long operationOffset, Operation operation) throws StoreException {
+    private List<LogResult> replay(long operationOffset, Operation operation) throws StoreException {
         LogResult logResult = new LogResult(operationOffset);
         switch (operation.operationType()) {
             case POP -> {
@@ -200,8 +405,19 @@ public class StreamOperationLogService implements OperationLogService {
                 operation.stateMachine().replayChangeInvisibleDurationOperation(operationOffset, (ChangeInvisibleDurationOperation) operation);
             case RESET_CONSUME_OFFSET ->
                 operation.stateMachine().replayResetConsumeOffsetOperation(operationOffset, (ResetConsumeOffsetOperation) operation);
+            case BATCH_POP -> {
+                List<MessageStateMachine.ReplayPopResult> replayPopResults = operation.stateMachine()
+                    .replayBatchPopOperation(operationOffset, (BatchPopOperation) operation);
+                List<LogResult> logResults = new ArrayList<>(replayPopResults.size());
+                for (int i = 0; i < replayPopResults.size(); i++) {
+                    LogResult popLogResult = new LogResult(operationOffset + i);
+                    popLogResult.setPopTimes(replayPopResults.get(i).getPopTimes());
+                    logResults.add(popLogResult);
+                }
+                return logResults;
+            }
             default -> throw new IllegalStateException("Unexpected value: " + operation.operationType());
         }
-        return logResult;
+        return List.of(logResult);
     }
 }
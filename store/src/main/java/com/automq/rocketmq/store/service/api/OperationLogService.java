@@ -19,9 +19,11 @@ package com.automq.rocketmq.store.service.api;
 
 import com.automq.rocketmq.store.api.MessageStateMachine;
 import com.automq.rocketmq.store.model.operation.AckOperation;
+import com.automq.rocketmq.store.model.operation.BatchPopOperation;
 import com.automq.rocketmq.store.model.operation.ChangeInvisibleDurationOperation;
 import com.automq.rocketmq.store.model.operation.PopOperation;
 import com.automq.rocketmq.store.model.operation.ResetConsumeOffsetOperation;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 
 public interface OperationLogService {
@@ -31,6 +33,14 @@ public interface OperationLogService {
      */
     CompletableFuture<LogResult> logPopOperation(PopOperation operation);
 
+    /**
+     * Log all pop operations of a pop call to WAL as one record.
+     * Each queue has its own operation log.
+     *
+     * @return the log result of each pop operation in the batch
+     */
+    CompletableFuture<List<LogResult>> logBatchPopOperation(BatchPopOperation operation);
+
     /**
      * Log ack operation to WAL.
      * Each queue has its own operation log.
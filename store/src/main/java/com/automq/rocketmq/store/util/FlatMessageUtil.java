@@ -22,6 +22,8 @@ import com.automq.rocketmq.common.model.generated.FlatMessage;
 import com.automq.stream.api.RecordBatchWithContext;
 import com.google.flatbuffers.Table;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * An utility class to convert S3Stream Record to FlatMessage, and vice versa.
@@ -41,4 +43,27 @@ public class FlatMessageUtil {
             .offset(recordBatch.baseOffset())
             .build();
     }
+
+    /**
+     * Unpack the messages of a record batch, which is a {@link com.automq.rocketmq.store.model.stream.SingleRecord}
+     * or a {@link com.automq.rocketmq.store.model.stream.MultiRecord}. The i-th message takes the offset
+     * {@code baseOffset + i}.
+     */
+    public static List<FlatMessageExt> transferToMessageExtList(RecordBatchWithContext recordBatch) {
+        if (recordBatch.count() == 1) {
+            return List.of(transferToMessageExt(recordBatch));
+        }
+        ByteBuffer payload = recordBatch.rawPayload().duplicate();
+        List<FlatMessageExt> messageList = new ArrayList<>(recordBatch.count());
+        for (int i = 0; i < recordBatch.count(); i++) {
+            int size = payload.getInt();
+            ByteBuffer messageBuffer = payload.slice(payload.position(), size);
+            payload.position(payload.position() + size);
+            messageList.add(FlatMessageExt.Builder.builder()
+                .message(FlatMessage.getRootAsFlatMessage(messageBuffer))
+                .offset(recordBatch.baseOffset() + i)
+                .build());
+        }
+        return messageList;
+    }
 }
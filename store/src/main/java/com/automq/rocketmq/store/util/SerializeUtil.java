@@ -22,6 +22,7 @@ import com.automq.rocketmq.store.model.generated.CheckPoint;
 import com.automq.rocketmq.store.model.generated.OperationLogItem;
 import com.automq.rocketmq.store.model.generated.ReceiptHandle;
 import com.automq.rocketmq.store.model.operation.AckOperation;
+import com.automq.rocketmq.store.model.operation.BatchPopOperation;
 import com.automq.rocketmq.store.model.operation.ChangeInvisibleDurationOperation;
 import com.automq.rocketmq.store.model.operation.Operation;
 import com.automq.rocketmq.store.model.operation.OperationSnapshot;
@@ -81,23 +82,6 @@ public class SerializeUtil {
         return buffer.array();
     }
 
-    // <groupId><topicId><queueId><offset>
-    public static byte[] buildOrderIndexKey(long consumerGroupId, long topicId, int queueId, long offset) {
-        ByteBuffer buffer = ByteBuffer.allocate(28);
-        buffer.putLong(consumerGroupId);
-        buffer.putLong(topicId);
-        buffer.putInt(queueId);
-        buffer.putLong(offset);
-        return buffer.array();
-    }
-
-    // <operationId>
-    public static byte[] buildOrderIndexValue(long operationId) {
-        ByteBuffer buffer = ByteBuffer.allocate(8);
-        buffer.putLong(operationId);
-        return buffer.array();
-    }
-
     public static CheckPoint decodeCheckPoint(ByteBuffer buffer) {
         return CheckPoint.getRootAsCheckPoint(buffer);
     }
@@ -125,20 +109,61 @@ public class SerializeUtil {
 
     public static byte[] encodePopOperation(PopOperation popOperation) {
         FlatBufferBuilder builder = new FlatBufferBuilder();
+        builder.finish(buildPopOperation(builder, popOperation));
+        return builder.sizedByteArray();
+    }
+
+    private static int buildPopOperation(FlatBufferBuilder builder, PopOperation popOperation) {
         int operation = com.automq.rocketmq.store.model.generated.PopOperation.createPopOperation(builder,
             popOperation.consumerGroupId(), popOperation.topicId(), popOperation.queueId(),
             popOperation.offset(), popOperation.count(), popOperation.invisibleDuration(),
             popOperation.operationTimestamp(), popOperation.isEndMark(), popOperation.popOperationType().value()
         );
-        int root = OperationLogItem.createOperationLogItem(builder, com.automq.rocketmq.store.model.generated.Operation.PopOperation, operation);
-        builder.finish(root);
+        return OperationLogItem.createOperationLogItem(builder, com.automq.rocketmq.store.model.generated.Operation.PopOperation, operation);
+    }
+
+    public static byte[] encodeBatchPopOperation(BatchPopOperation batchPopOperation) {
+        FlatBufferBuilder builder = new FlatBufferBuilder();
+        builder.finish(buildBatchPopOperation(builder, batchPopOperation));
         return builder.sizedByteArray();
     }
 
+    private static int buildBatchPopOperation(FlatBufferBuilder builder, BatchPopOperation batchPopOperation) {
+        int offsets = com.automq.rocketmq.store.model.generated.BatchPopOperation.createOffsetsVector(builder, batchPopOperation.offsets());
+        int counts = com.automq.rocketmq.store.model.generated.BatchPopOperation.createCountsVector(builder, batchPopOperation.counts());
+        int operation = com.automq.rocketmq.store.model.generated.BatchPopOperation.createBatchPopOperation(builder,
+            batchPopOperation.consumerGroupId(), batchPopOperation.topicId(), batchPopOperation.queueId(),
+            offsets, counts, batchPopOperation.invisibleDuration(), batchPopOperation.operationTimestamp(),
+            batchPopOperation.isEndMark(), batchPopOperation.popOperationType().value()
+        );
+        return OperationLogItem.createOperationLogItem(builder, com.automq.rocketmq.store.model.generated.Operation.BatchPopOperation, operation);
+    }
+
     public static Operation decodeOperation(ByteBuffer buffer,
+        MessageStateMachine stateMachine, long operationStreamId, long snapshotStreamId) {
+        return decodeOperation(OperationLogItem.getRootAsOperationLogItem(buffer), stateMachine, operationStreamId, snapshotStreamId);
+    }
+
+    /**
+     * Decode all operations in a log item, which is either a single operation or an operation group.
+     */
+    public static List<Operation> decodeOperations(ByteBuffer buffer,
         MessageStateMachine stateMachine, long operationStreamId, long snapshotStreamId) {
         OperationLogItem operationLogItem = OperationLogItem.getRootAsOperationLogItem(buffer);
+        if (operationLogItem.operationType() != com.automq.rocketmq.store.model.generated.Operation.OperationGroup) {
+            return List.of(decodeOperation(operationLogItem, stateMachine, operationStreamId, snapshotStreamId));
+        }
+        com.automq.rocketmq.store.model.generated.OperationGroup operationGroup = (com.automq.rocketmq.store.model.generated.OperationGroup) operationLogItem.operation(new com.automq.rocketmq.store.model.generated.OperationGroup());
+        List<Operation> operationList = new ArrayList<>(operationGroup.operationsLength());
+        OperationLogItem item = new OperationLogItem();
+        for (int i = 0; i < operationGroup.operationsLength(); i++) {
+            operationList.add(decodeOperation(operationGroup.operations(item, i), stateMachine, operationStreamId, snapshotStreamId));
+        }
+        return operationList;
+    }
 
+    private static Operation decodeOperation(OperationLogItem operationLogItem,
+        MessageStateMachine stateMachine, long operationStreamId, long snapshotStreamId) {
         switch (operationLogItem.operationType()) {
             case com.automq.rocketmq.store.model.generated.Operation.PopOperation -> {
                 com.automq.rocketmq.store.model.generated.PopOperation popOperation = (com.automq.rocketmq.store.model.generated.PopOperation) operationLogItem.operation(new com.automq.rocketmq.store.model.generated.PopOperation());
@@ -167,6 +192,21 @@ public class SerializeUtil {
                     operationStreamId, snapshotStreamId, stateMachine,
                     resetConsumeOffsetOperation.operationTimestamp(), resetConsumeOffsetOperation.consumerGroupId(), resetConsumeOffsetOperation.offset());
             }
+            case com.automq.rocketmq.store.model.generated.Operation.BatchPopOperation -> {
+                com.automq.rocketmq.store.model.generated.BatchPopOperation batchPopOperation = (com.automq.rocketmq.store.model.generated.BatchPopOperation) operationLogItem.operation(new com.automq.rocketmq.store.model.generated.BatchPopOperation());
+                long[] offsets = new long[batchPopOperation.offsetsLength()];
+                int[] counts = new int[batchPopOperation.countsLength()];
+                for (int i = 0; i < offsets.length; i++) {
+                    offsets[i] = batchPopOperation.offsets(i);
+                }
+                for (int i = 0; i < counts.length; i++) {
+                    counts[i] = batchPopOperation.counts(i);
+                }
+                return new BatchPopOperation(
+                    batchPopOperation.topicId(), batchPopOperation.queueId(), operationStreamId, snapshotStreamId, stateMachine,
+                    batchPopOperation.consumerGroupId(), offsets, counts, batchPopOperation.invisibleDuration(),
+                    batchPopOperation.operationTimestamp(), batchPopOperation.endMark(), PopOperation.PopOperationType.values()[batchPopOperation.type()]);
+            }
             default ->
                 throw new IllegalStateException("Unexpected operation type: " + operationLogItem.operationType());
         }
@@ -234,33 +274,79 @@ public class SerializeUtil {
     }
 
     public static byte[] encodeAckOperation(AckOperation ackOperation) {
+        FlatBufferBuilder builder = new FlatBufferBuilder();
+        builder.finish(buildAckOperation(builder, ackOperation));
+        return builder.sizedByteArray();
+    }
+
+    private static int buildAckOperation(FlatBufferBuilder builder, AckOperation ackOperation) {
         long topicId = ackOperation.topicId();
         int queueId = ackOperation.queueId();
         long operationId = ackOperation.operationId();
         long operationTimestamp = ackOperation.operationTimestamp();
         long consumerGroupId = ackOperation.consumerGroupId();
-        FlatBufferBuilder builder = new FlatBufferBuilder();
         int receiptHandleId = ReceiptHandle.createReceiptHandle(builder, consumerGroupId, topicId, queueId, operationId);
         int operation = com.automq.rocketmq.store.model.generated.AckOperation.createAckOperation(builder, receiptHandleId, operationTimestamp, (short) ackOperation.ackOperationType().ordinal());
-        int root = OperationLogItem.createOperationLogItem(builder, com.automq.rocketmq.store.model.generated.Operation.AckOperation, operation);
-        builder.finish(root);
-        return builder.sizedByteArray();
+        return OperationLogItem.createOperationLogItem(builder, com.automq.rocketmq.store.model.generated.Operation.AckOperation, operation);
     }
 
     public static byte[] encodeChangeInvisibleDurationOperation(ChangeInvisibleDurationOperation durationOperation) {
         FlatBufferBuilder builder = new FlatBufferBuilder();
+        builder.finish(buildChangeInvisibleDurationOperation(builder, durationOperation));
+        return builder.sizedByteArray();
+    }
+
+    private static int buildChangeInvisibleDurationOperation(FlatBufferBuilder builder,
+        ChangeInvisibleDurationOperation durationOperation) {
         int receiptHandleId = ReceiptHandle.createReceiptHandle(builder, durationOperation.consumerGroupId(), durationOperation.topicId(), durationOperation.queueId(), durationOperation.operationId());
         int operation = com.automq.rocketmq.store.model.generated.ChangeInvisibleDurationOperation.createChangeInvisibleDurationOperation(builder, receiptHandleId, durationOperation.invisibleDuration(), durationOperation.operationTimestamp());
-        int root = OperationLogItem.createOperationLogItem(builder, com.automq.rocketmq.store.model.generated.Operation.ChangeInvisibleDurationOperation, operation);
-        builder.finish(root);
-        return builder.sizedByteArray();
+        return OperationLogItem.createOperationLogItem(builder, com.automq.rocketmq.store.model.generated.Operation.ChangeInvisibleDurationOperation, operation);
     }
 
     public static byte[] encodeResetConsumeOffsetOperation(ResetConsumeOffsetOperation resetConsumeOffsetOperation) {
         FlatBufferBuilder builder = new FlatBufferBuilder();
+        builder.finish(buildResetConsumeOffsetOperation(builder, resetConsumeOffsetOperation));
+        return builder.sizedByteArray();
+    }
+
+    private static int buildResetConsumeOffsetOperation(FlatBufferBuilder builder,
+        ResetConsumeOffsetOperation resetConsumeOffsetOperation) {
         int operation = com.automq.rocketmq.store.model.generated.ResetConsumeOffsetOperation.createResetConsumeOffsetOperation(builder, resetConsumeOffsetOperation.consumerGroupId(), resetConsumeOffsetOperation.topicId(), resetConsumeOffsetOperation.queueId(), resetConsumeOffsetOperation.offset(), resetConsumeOffsetOperation.operationTimestamp());
-        int root = OperationLogItem.createOperationLogItem(builder, com.automq.rocketmq.store.model.generated.Operation.ResetConsumeOffsetOperation, operation);
+        return OperationLogItem.createOperationLogItem(builder, com.automq.rocketmq.store.model.generated.Operation.ResetConsumeOffsetOperation, operation);
+    }
+
+    public static byte[] encodeOperation(Operation operation) {
+        FlatBufferBuilder builder = new FlatBufferBuilder();
+        builder.finish(buildOperation(builder, operation));
+        return builder.sizedByteArray();
+    }
+
+    /**
+     * Encode several operations of the same operation stream into one log item, which takes
+     * the offsets of all the operations in order.
+     */
+    public static byte[] encodeOperationGroup(List<Operation> operationList) {
+        FlatBufferBuilder builder = new FlatBufferBuilder();
+        int[] items = new int[operationList.size()];
+        for (int i = 0; i < items.length; i++) {
+            items[i] = buildOperation(builder, operationList.get(i));
+        }
+        int operations = com.automq.rocketmq.store.model.generated.OperationGroup.createOperationsVector(builder, items);
+        int operation = com.automq.rocketmq.store.model.generated.OperationGroup.createOperationGroup(builder, operations);
+        int root = OperationLogItem.createOperationLogItem(builder, com.automq.rocketmq.store.model.generated.Operation.OperationGroup, operation);
         builder.finish(root);
         return builder.sizedByteArray();
     }
+
+    private static int buildOperation(FlatBufferBuilder builder, Operation operation) {
+        return switch (operation.operationType()) {
+            case POP -> buildPopOperation(builder, (PopOperation) operation);
+            case ACK -> buildAckOperation(builder, (AckOperation) operation);
+            case CHANGE_INVISIBLE_DURATION ->
+                buildChangeInvisibleDurationOperation(builder, (ChangeInvisibleDurationOperation) operation);
+            case RESET_CONSUME_OFFSET ->
+                buildResetConsumeOffsetOperation(builder, (ResetConsumeOffsetOperation) operation);
+            case BATCH_POP -> buildBatchPopOperation(builder, (BatchPopOperation) operation);
+        };
+    }
 }
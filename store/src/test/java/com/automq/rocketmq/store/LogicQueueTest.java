@@ -35,6 +35,7 @@ import com.automq.rocketmq.store.model.message.Filter;
 import com.automq.rocketmq.store.model.message.PopResult;
 import com.automq.rocketmq.store.model.message.ResetConsumeOffsetResult;
 import com.automq.rocketmq.store.model.message.TagFilter;
+import com.automq.rocketmq.store.model.stream.MultiRecord;
 import com.automq.rocketmq.store.queue.DefaultLogicQueueStateMachine;
 import com.automq.rocketmq.store.queue.StreamLogicQueue;
 import com.automq.rocketmq.store.service.InflightService;
@@ -46,6 +47,7 @@ import com.automq.rocketmq.store.service.TimerService;
 import com.automq.rocketmq.store.service.api.KVService;
 import com.automq.rocketmq.store.service.api.OperationLogService;
 import com.automq.rocketmq.store.util.SerializeUtil;
+import com.automq.stream.api.RecordBatchWithContext;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
@@ -122,6 +124,39 @@ public class LogicQueueTest {
         assertEquals(message.payloadAsByteBuffer(), messageExt.message().payloadAsByteBuffer());
     }
 
+    @Test
+    void pop_multiMessageBatch() {
+        // 1. append a batch of 5 messages and a single message
+        List<ByteBuffer> messages = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            messages.add(buildMessage(TOPIC_ID, QUEUE_ID, i % 2 == 0 ? "TagA" : "TagB"));
+        }
+        long dataStreamId = ((StreamLogicQueue) logicQueue).dataStreamId();
+        streamStore.append(dataStreamId, MultiRecord.of(messages)).join();
+        assertEquals(5, logicQueue.put(FlatMessage.getRootAsFlatMessage(buildMessage(TOPIC_ID, QUEUE_ID, "TagA"))).join().offset());
+
+        // 2. pop the head of the batch
+        PopResult popResult = logicQueue.popNormal(CONSUMER_GROUP_ID, Filter.DEFAULT_FILTER, 2, 100).join();
+        assertEquals(PopResult.Status.FOUND, popResult.status());
+        assertEquals(List.of(0L, 1L), popResult.messageList().stream().map(FlatMessageExt::offset).toList());
+        assertEquals(2, stateMachine.consumeOffset(CONSUMER_GROUP_ID));
+
+        // 3. pop from the middle of the batch with filter
+        popResult = logicQueue.popNormal(CONSUMER_GROUP_ID, new TagFilter("TagA"), 2, 100).join();
+        assertEquals(PopResult.Status.FOUND, popResult.status());
+        assertEquals(List.of(2L, 4L), popResult.messageList().stream().map(FlatMessageExt::offset).toList());
+        assertEquals(5, stateMachine.consumeOffset(CONSUMER_GROUP_ID));
+
+        // 4. pop the single message after the batch
+        popResult = logicQueue.popNormal(CONSUMER_GROUP_ID, Filter.DEFAULT_FILTER, 2, 100).join();
+        assertEquals(List.of(5L), popResult.messageList().stream().map(FlatMessageExt::offset).toList());
+        assertEquals(6, stateMachine.consumeOffset(CONSUMER_GROUP_ID));
+
+        // 5. ack a message in the batch with its own receipt handle
+        AckResult ackResult = logicQueue.ack(popResult.messageList().get(0).receiptHandle().get()).join();
+        assertEquals(AckResult.Status.SUCCESS, ackResult.status());
+    }
+
     @Test
     void pop_normal() throws StoreException {
 
@@ -170,6 +205,37 @@ public class LogicQueueTest {
         assertEquals(5, stateMachine.consumeOffset(CONSUMER_GROUP_ID));
     }
 
+    @Test
+    void pop_batchOperationLog() {
+        // 1. append 5 messages with tag: A, B, A, B, B
+        for (String tag : List.of("TagA", "TagB", "TagA", "TagB", "TagB")) {
+            logicQueue.put(FlatMessage.getRootAsFlatMessage(buildMessage(TOPIC_ID, QUEUE_ID, tag)));
+        }
+
+        // 2. pop 2 messages with TagA, the filtered messages at the tail are covered by an end mark
+        PopResult popResult = logicQueue.popNormal(CONSUMER_GROUP_ID, new TagFilter("TagA"), 3, 100).join();
+        assertEquals(PopResult.Status.FOUND, popResult.status());
+        assertEquals(2, popResult.messageList().size());
+        assertEquals(5, stateMachine.consumeOffset(CONSUMER_GROUP_ID));
+
+        // 3. all pop operations are logged as one record, and each message has its own operation id
+        long operationStreamId = metadataService.operationStreamOf(TOPIC_ID, QUEUE_ID).join().getStreamId();
+        List<RecordBatchWithContext> recordList = streamStore.fetch(operationStreamId, 0, 3).join().recordBatchList();
+        assertEquals(1, recordList.size());
+        assertEquals(3, recordList.get(0).count());
+        for (int i = 0; i < popResult.messageList().size(); i++) {
+            ReceiptHandle handle = SerializeUtil.decodeReceiptHandle(popResult.messageList().get(i).receiptHandle().get());
+            assertEquals(i, handle.operationId());
+            checkCkExist(popResult.messageList().get(i).receiptHandle().get(), true);
+        }
+
+        // 4. ack the second message
+        AckResult ackResult = logicQueue.ack(popResult.messageList().get(1).receiptHandle().get()).join();
+        assertEquals(AckResult.Status.SUCCESS, ackResult.status());
+        assertEquals(1, logicQueue.getInflightStats(CONSUMER_GROUP_ID));
+        assertEquals(0, stateMachine.ackOffset(CONSUMER_GROUP_ID));
+    }
+
     @Test
     void pop_order() throws StoreException {
         // 1. append 5 messages
@@ -204,6 +270,46 @@ public class LogicQueueTest {
         assertEquals(2, stateMachine.consumeOffset(CONSUMER_GROUP_ID));
     }
 
+    @Test
+    void pop_fifo_multi_message_group() {
+        // 1. append 5 messages of 3 message groups: g1, g2, g1, g2, g3
+        for (String messageGroup : List.of("g1", "g2", "g1", "g2", "g3")) {
+            logicQueue.put(FlatMessage.getRootAsFlatMessage(buildMessage(TOPIC_ID, QUEUE_ID, "TagA", messageGroup)));
+        }
+
+        // 2. pop 1 message of g1
+        PopResult popResult = logicQueue.popFifo(CONSUMER_GROUP_ID, Filter.DEFAULT_FILTER, 1, 100).join();
+        assertEquals(PopResult.Status.FOUND, popResult.status());
+        assertEquals(List.of(0L), popResult.messageList().stream().map(FlatMessageExt::offset).toList());
+        String receiptHandle0 = popResult.messageList().get(0).receiptHandle().get();
+
+        // 3. g1 is locked, pop the messages of g2 in order
+        popResult = logicQueue.popFifo(CONSUMER_GROUP_ID, Filter.DEFAULT_FILTER, 2, 100).join();
+        assertEquals(PopResult.Status.FOUND, popResult.status());
+        assertEquals(List.of(1L, 3L), popResult.messageList().stream().map(FlatMessageExt::offset).toList());
+
+        // 4. g1 and g2 are locked, pop the message of g3
+        popResult = logicQueue.popFifo(CONSUMER_GROUP_ID, Filter.DEFAULT_FILTER, 2, 100).join();
+        assertEquals(PopResult.Status.FOUND, popResult.status());
+        assertEquals(List.of(4L), popResult.messageList().stream().map(FlatMessageExt::offset).toList());
+
+        // 5. all groups are locked
+        popResult = logicQueue.popFifo(CONSUMER_GROUP_ID, Filter.DEFAULT_FILTER, 2, 100).join();
+        assertEquals(PopResult.Status.LOCKED, popResult.status());
+        assertEquals(4, logicQueue.getInflightStats(CONSUMER_GROUP_ID));
+
+        // 6. ack the first message of g1, then the next message of g1 is available
+        AckResult ackResult = logicQueue.ack(receiptHandle0).join();
+        assertEquals(AckResult.Status.SUCCESS, ackResult.status());
+        assertEquals(1, stateMachine.ackOffset(CONSUMER_GROUP_ID));
+        assertFalse(stateMachine.isLocked(CONSUMER_GROUP_ID, 0));
+        assertTrue(stateMachine.isLocked(CONSUMER_GROUP_ID, 1));
+
+        popResult = logicQueue.popFifo(CONSUMER_GROUP_ID, Filter.DEFAULT_FILTER, 2, 100).join();
+        assertEquals(PopResult.Status.FOUND, popResult.status());
+        assertEquals(List.of(2L), popResult.messageList().stream().map(FlatMessageExt::offset).toList());
+    }
+
     @Test
     void pop_normal_multi_group() throws StoreException {
         long group0 = 0;
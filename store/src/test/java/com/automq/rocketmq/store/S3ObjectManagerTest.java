@@ -17,11 +17,14 @@
 
 package com.automq.rocketmq.store;
 
+import apache.rocketmq.controller.v1.Code;
 import apache.rocketmq.controller.v1.S3StreamObject;
 import apache.rocketmq.controller.v1.S3WALObject;
 import apache.rocketmq.controller.v1.SubStream;
 import apache.rocketmq.controller.v1.SubStreams;
+import com.automq.rocketmq.controller.exception.ControllerException;
 import com.automq.rocketmq.metadata.api.StoreMetadataService;
+import com.automq.stream.api.StreamClientException;
 import com.automq.stream.s3.metadata.S3ObjectMetadata;
 import com.automq.stream.s3.metadata.S3ObjectType;
 import com.automq.stream.s3.objects.CommitStreamObjectRequest;
@@ -32,6 +35,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.stream.Collectors;
 import org.apache.commons.lang3.tuple.ImmutablePair;
 import org.junit.jupiter.api.BeforeEach;
@@ -43,6 +47,9 @@ import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
@@ -124,6 +131,24 @@ class S3ObjectManagerTest {
         assertEquals(2000, sObject.getEndOffset());
     }
 
+    @Test
+    void commitWALObject_rejected() {
+        CommitWALObjectRequest walObjectRequest = new CommitWALObjectRequest();
+        walObjectRequest.setObjectId(100L);
+
+        // the object is not prepared, retry never succeeds
+        when(metadataService.commitWalObject(any(), any(), any())).thenReturn(CompletableFuture.failedFuture(
+            new ControllerException(Code.ILLEGAL_STATE_VALUE, "S3WALObject[object-id=100] is not ready for commit")));
+        CompletionException ex = assertThrows(CompletionException.class, () -> objectManager.commitWALObject(walObjectRequest).join());
+        assertInstanceOf(StreamClientException.class, ex.getCause());
+
+        // transient failure
+        RuntimeException timeout = new RuntimeException("timeout");
+        when(metadataService.commitWalObject(any(), any(), any())).thenReturn(CompletableFuture.failedFuture(timeout));
+        ex = assertThrows(CompletionException.class, () -> objectManager.commitWALObject(walObjectRequest).join());
+        assertSame(timeout, ex.getCause());
+    }
+
     @Test
     void commitStreamObject() {
         CommitStreamObjectRequest request = new CommitStreamObjectRequest(1L, 1000, 2000, 100, 1000, List.of(10L));
@@ -106,6 +106,11 @@ public class MemoryStreamClient implements StreamClient {
 
         @Override
         public CompletableFuture<FetchResult> fetch(long startOffset, long endOffset, int maxBytesHint) {
+            // include the record batch which contains the start offset, as the S3Stream does
+            Long floorOffset = recordMap.floorKey(startOffset);
+            if (floorOffset != null && recordMap.get(floorOffset).lastOffset() >= startOffset) {
+                startOffset = floorOffset;
+            }
             List<RecordBatchWithContext> records = new ArrayList<>(recordMap.subMap(startOffset, endOffset).values());
             return CompletableFuture.completedFuture(() -> records);
         }
@@ -33,11 +33,15 @@ public class MockMessageUtil {
     }
 
     public static ByteBuffer buildMessage(long topicId, int queueId, String tag) {
+        return buildMessage(topicId, queueId, tag, "test-group");
+    }
+
+    public static ByteBuffer buildMessage(long topicId, int queueId, String tag, String messageGroup) {
         FlatMessageT flatMessageT = new FlatMessageT();
         flatMessageT.setTopicId(topicId);
         flatMessageT.setQueueId(queueId);
         flatMessageT.setPayload("Hello, AutoMQ Message".getBytes(StandardCharsets.UTF_8));
-        flatMessageT.setMessageGroup("test-group");
+        flatMessageT.setMessageGroup(messageGroup);
         flatMessageT.setKeys("keys");
         flatMessageT.setTag(tag);
 
@@ -20,6 +20,7 @@ package com.automq.rocketmq.store.mock;
 import com.automq.rocketmq.store.api.StreamStore;
 import com.automq.stream.api.AppendResult;
 import com.automq.stream.api.FetchResult;
+import com.automq.stream.api.OpenStreamOptions;
 import com.automq.stream.api.RecordBatch;
 import com.automq.stream.api.Stream;
 import com.automq.stream.api.StreamClient;
@@ -34,7 +35,11 @@ public class MockStreamStore implements StreamStore {
     private final Map<Long, Stream> openedStreams = new ConcurrentHashMap<>();
 
     public MockStreamStore() {
-        streamClient = new MemoryStreamClient();
+        this(new MemoryStreamClient());
+    }
+
+    public MockStreamStore(StreamClient streamClient) {
+        this.streamClient = streamClient;
     }
 
     @Override
@@ -72,7 +77,7 @@ public class MockStreamStore implements StreamStore {
 
     @Override
     public CompletableFuture<Void> open(long streamId, long epoch) {
-        openStream(streamId);
+        openStream(streamId, epoch);
         return CompletableFuture.completedFuture(null);
     }
 
@@ -104,15 +109,16 @@ public class MockStreamStore implements StreamStore {
      * Open the specified stream if not opened yet.
      *
      * @param streamId stream id.
+     * @param epoch    stream epoch.
      * @return the opened stream.
      */
-    private Stream openStream(long streamId) {
+    private Stream openStream(long streamId, long epoch) {
         // Open the specified stream if not opened yet.
         if (openedStreams.containsKey(streamId)) {
             throw new IllegalStateException("Stream " + streamId + " already opened.");
         }
-        // TODO: Build a real OpenStreamOptions
-        return openedStreams.computeIfAbsent(streamId, id -> streamClient.openStream(id, null).join());
+        return openedStreams.computeIfAbsent(streamId,
+            id -> streamClient.openStream(id, OpenStreamOptions.newBuilder().epoch(epoch).build()).join());
     }
 
     private void closeStream(long streamId) {
@@ -0,0 +1,215 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.automq.rocketmq.store.service;
+
+import com.automq.rocketmq.common.config.StoreConfig;
+import com.automq.rocketmq.store.api.MessageStateMachine;
+import com.automq.rocketmq.store.api.StreamStore;
+import com.automq.rocketmq.store.mock.MockStreamStore;
+import com.automq.rocketmq.store.model.operation.AckOperation;
+import com.automq.rocketmq.store.model.operation.Operation;
+import com.automq.rocketmq.store.model.operation.PopOperation;
+import com.automq.rocketmq.store.model.stream.MultiRecord;
+import com.automq.rocketmq.store.queue.DefaultLogicQueueStateMachine;
+import com.automq.rocketmq.store.service.api.KVService;
+import com.automq.rocketmq.store.service.api.OperationLogService;
+import com.automq.rocketmq.store.util.SerializeUtil;
+import com.automq.stream.api.FetchResult;
+import com.automq.stream.s3.Config;
+import com.automq.stream.s3.S3Storage;
+import com.automq.stream.s3.S3StreamClient;
+import com.automq.stream.s3.cache.DefaultS3BlockCache;
+import com.automq.stream.s3.memory.MemoryMetadataManager;
+import com.automq.stream.s3.metadata.StreamMetadata;
+import com.automq.stream.s3.metadata.StreamState;
+import com.automq.stream.s3.operator.MemoryS3Operator;
+import com.automq.stream.s3.operator.S3Operator;
+import com.automq.stream.s3.streams.StreamManager;
+import com.automq.stream.s3.wal.MemoryWriteAheadLog;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.apache.rocketmq.common.UtilAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.intThat;
+
+public class StreamOperationLogServiceTest {
+    private static final String PATH = "/tmp/ros/operation_log_service_test/";
+    private static final long TOPIC_ID = 13;
+    private static final int QUEUE_ID = 1313;
+    private static final long OP_STREAM_ID = 131313;
+    private static final long SNAPSHOT_STREAM_ID = 13131313;
+    private static final long CONSUMER_GROUP_ID = 131313131313L;
+    private static final String KV_NAMESPACE_TIMER_TAG = "timer_tag";
+
+    private KVService kvService;
+    private S3Storage storage;
+    private S3StreamClient streamClient;
+    private StreamStore streamStore;
+    private SnapshotService snapshotService;
+    private OperationLogService operationLogService;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        kvService = new RocksDBKVService(PATH);
+
+        // The operation stream is backed by a real S3 stream over the memory S3 operator.
+        StreamManager streamManager = Mockito.mock(StreamManager.class);
+        Mockito.when(streamManager.openStream(anyLong(), anyLong())).thenAnswer(invocation -> CompletableFuture.completedFuture(
+            new StreamMetadata(invocation.getArgument(0), invocation.getArgument(1), 0, 0, StreamState.OPENED)));
+        Mockito.when(streamManager.closeStream(anyLong(), anyLong())).thenReturn(CompletableFuture.completedFuture(null));
+        MemoryMetadataManager objectManager = new MemoryMetadataManager();
+        S3Operator s3Operator = new MemoryS3Operator();
+        Config config = new Config();
+        storage = new S3Storage(config, new MemoryWriteAheadLog(), streamManager, objectManager,
+            new DefaultS3BlockCache(0L, objectManager, s3Operator), s3Operator);
+        streamClient = new S3StreamClient(streamManager, storage, objectManager, s3Operator, config);
+        streamStore = new MockStreamStore(streamClient);
+        streamStore.open(OP_STREAM_ID, 0);
+        streamStore.open(SNAPSHOT_STREAM_ID, 0);
+
+        snapshotService = new SnapshotService(streamStore, kvService);
+        operationLogService = new StreamOperationLogService(streamStore, snapshotService, new StoreConfig());
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        streamClient.shutdown();
+        storage.shutdown();
+        kvService.destroy();
+        UtilAll.deleteFile(new File(PATH));
+    }
+
+    @Test
+    public void groupCommit_concurrentOperations() throws Exception {
+        int consumerGroupCount = 16;
+        int messageCount = 500;
+        MessageStateMachine stateMachine = newStateMachine();
+
+        // 1. pop and ack messages concurrently, each consumer group pops and acks its messages one by one
+        Set<Long> operationOffsetSet = ConcurrentHashMap.newKeySet();
+        ExecutorService executor = Executors.newFixedThreadPool(consumerGroupCount);
+        List<CompletableFuture<Void>> futureList = new ArrayList<>();
+        for (int i = 0; i < consumerGroupCount; i++) {
+            long consumerGroupId = i;
+            futureList.add(CompletableFuture.runAsync(() -> {
+                for (int offset = 0; offset < messageCount; offset++) {
+                    long now = System.currentTimeMillis();
+                    OperationLogService.LogResult popResult = operationLogService.logPopOperation(new PopOperation(TOPIC_ID, QUEUE_ID,
+                        OP_STREAM_ID, SNAPSHOT_STREAM_ID, stateMachine, consumerGroupId, offset, 1, 60_000, now, false,
+                        PopOperation.PopOperationType.POP_NORMAL)).join();
+                    assertTrue(operationOffsetSet.add(popResult.getOperationOffset()));
+                    OperationLogService.LogResult ackResult = operationLogService.logAckOperation(new AckOperation(TOPIC_ID, QUEUE_ID,
+                        OP_STREAM_ID, SNAPSHOT_STREAM_ID, stateMachine, consumerGroupId, popResult.getOperationOffset(), now,
+                        AckOperation.AckOperationType.ACK_NORMAL)).join();
+                    assertTrue(operationOffsetSet.add(ackResult.getOperationOffset()));
+                }
+            }, executor));
+        }
+        CompletableFuture.allOf(futureList.toArray(new CompletableFuture[0])).join();
+        executor.shutdown();
+        // the committer is released once all operations are committed
+        await().atMost(1, TimeUnit.SECONDS)
+            .until(() -> ((StreamOperationLogService) operationLogService).committerCount() == 0);
+
+        // 2. every operation takes its own offset, but the operations are committed in fewer records
+        int operationCount = consumerGroupCount * messageCount * 2;
+        assertEquals(operationCount, operationOffsetSet.size());
+        assertEquals(operationCount, streamStore.nextOffset(OP_STREAM_ID));
+        int recordCount = 0;
+        long offset = 0;
+        while (offset < operationCount) {
+            FetchResult fetchResult = streamStore.fetch(OP_STREAM_ID, offset, operationCount - (int) offset).join();
+            recordCount += fetchResult.recordBatchList().size();
+            offset = fetchResult.recordBatchList().get(fetchResult.recordBatchList().size() - 1).lastOffset();
+        }
+        assertTrue(recordCount < operationCount, "records: " + recordCount + ", operations: " + operationCount);
+
+        // 3. check the state of the state machine
+        for (long consumerGroupId = 0; consumerGroupId < consumerGroupCount; consumerGroupId++) {
+            assertEquals(messageCount, stateMachine.consumeOffset(consumerGroupId));
+            assertEquals(messageCount, stateMachine.ackOffset(consumerGroupId));
+        }
+
+        // 4. recover the operation groups into a new state machine
+        MessageStateMachine recoveredStateMachine = newStateMachine();
+        operationLogService.recover(recoveredStateMachine, OP_STREAM_ID, SNAPSHOT_STREAM_ID).join();
+        for (long consumerGroupId = 0; consumerGroupId < consumerGroupCount; consumerGroupId++) {
+            assertEquals(messageCount, recoveredStateMachine.consumeOffset(consumerGroupId));
+            assertEquals(messageCount, recoveredStateMachine.ackOffset(consumerGroupId));
+        }
+    }
+
+    @Test
+    public void recover_chunked() {
+        int popCount = 500 * 1000;
+        int groupSize = 1000;
+        int batchSize = 10 * 1000;
+        MessageStateMachine stateMachine = newStateMachine();
+
+        // 1. append 1M operations, each record is a group of pops followed by the acks of them
+        long operationOffset = 0;
+        for (int offset = 0; offset < popCount; offset += groupSize / 2) {
+            List<Operation> operationList = new ArrayList<>(groupSize);
+            for (int i = 0; i < groupSize / 2; i++) {
+                operationList.add(new PopOperation(TOPIC_ID, QUEUE_ID, OP_STREAM_ID, SNAPSHOT_STREAM_ID, stateMachine,
+                    CONSUMER_GROUP_ID, offset + i, 1, 60_000, 0, false, PopOperation.PopOperationType.POP_NORMAL));
+            }
+            for (int i = 0; i < groupSize / 2; i++) {
+                operationList.add(new AckOperation(TOPIC_ID, QUEUE_ID, OP_STREAM_ID, SNAPSHOT_STREAM_ID, stateMachine,
+                    CONSUMER_GROUP_ID, operationOffset + i, 0, AckOperation.AckOperationType.ACK_NORMAL));
+            }
+            streamStore.append(OP_STREAM_ID, new MultiRecord(groupSize, ByteBuffer.wrap(SerializeUtil.encodeOperationGroup(operationList)))).join();
+            operationOffset += groupSize;
+        }
+        assertEquals(popCount * 2, streamStore.nextOffset(OP_STREAM_ID));
+
+        // 2. recover in chunks
+        StoreConfig storeConfig = new StoreConfig();
+        storeConfig.setOperationLogRecoverBatchSize(batchSize);
+        StreamStore spyStreamStore = Mockito.spy(streamStore);
+        OperationLogService recoverService = new StreamOperationLogService(spyStreamStore, snapshotService, storeConfig);
+        recoverService.recover(stateMachine, OP_STREAM_ID, SNAPSHOT_STREAM_ID).join();
+        Mockito.verify(spyStreamStore, Mockito.times(popCount * 2 / batchSize)).fetch(eq(OP_STREAM_ID), anyLong(), intThat(count -> count <= batchSize));
+
+        assertEquals(popCount, stateMachine.consumeOffset(CONSUMER_GROUP_ID));
+        assertEquals(popCount, stateMachine.ackOffset(CONSUMER_GROUP_ID));
+    }
+
+    private MessageStateMachine newStateMachine() {
+        TimerService timerService = new TimerService(KV_NAMESPACE_TIMER_TAG, kvService);
+        return new DefaultLogicQueueStateMachine(TOPIC_ID, QUEUE_ID, kvService, timerService);
+    }
+}
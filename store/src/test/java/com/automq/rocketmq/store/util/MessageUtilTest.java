@@ -21,8 +21,10 @@ import com.automq.rocketmq.common.model.FlatMessageExt;
 import com.automq.rocketmq.common.model.generated.FlatMessage;
 import com.automq.rocketmq.store.mock.MemoryStreamClient;
 import com.automq.rocketmq.store.mock.MockMessageUtil;
+import com.automq.rocketmq.store.model.stream.MultiRecord;
 import com.automq.rocketmq.store.model.stream.SingleRecord;
 import java.nio.ByteBuffer;
+import java.util.List;
 import org.junit.jupiter.api.Test;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -57,4 +59,26 @@ class MessageUtilTest {
         assertEquals(1, messageExt.deliveryAttempts());
         assertFalse(messageExt.receiptHandle().isPresent());
     }
-}
\ No newline at end of file
+
+    @Test
+    void transferToMessageExtList() {
+        List<ByteBuffer> messages = List.of(
+            MockMessageUtil.buildMessage(1, 0, "TagA"),
+            MockMessageUtil.buildMessage(1, 0, "TagB"),
+            MockMessageUtil.buildMessage(1, 0, "TagC"));
+        List<FlatMessageExt> messageExtList = FlatMessageUtil.transferToMessageExtList(
+            new MemoryStreamClient.RecordBatchWithContextWrapper(MultiRecord.of(messages), 100));
+        assertEquals(3, messageExtList.size());
+        for (int i = 0; i < messageExtList.size(); i++) {
+            assertEquals(100 + i, messageExtList.get(i).offset());
+            assertEquals(FlatMessage.getRootAsFlatMessage(messages.get(i)).tag(), messageExtList.get(i).message().tag());
+        }
+
+        // a single message record is stored as is
+        messageExtList = FlatMessageUtil.transferToMessageExtList(
+            new MemoryStreamClient.RecordBatchWithContextWrapper(new SingleRecord(messages.get(0)), 200));
+        assertEquals(1, messageExtList.size());
+        assertEquals(200, messageExtList.get(0).offset());
+        assertEquals("TagA", messageExtList.get(0).message().tag());
+    }
+}
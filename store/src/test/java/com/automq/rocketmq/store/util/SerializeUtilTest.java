@@ -31,6 +31,8 @@ import org.roaringbitmap.RoaringBitmap;
 import org.roaringbitmap.buffer.ImmutableRoaringBitmap;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class SerializeUtilTest {
     public static final long TOPIC_ID = 0L;
@@ -83,18 +85,6 @@ public class SerializeUtilTest {
         assertEquals(20, key.length);
     }
 
-    @Test
-    void buildOrderIndexKey() {
-        byte[] key = SerializeUtil.buildOrderIndexKey(CONSUMER_GROUP_ID, TOPIC_ID, QUEUE_ID, OFFSET);
-        assertEquals(28, key.length);
-    }
-
-    @Test
-    void buildOrderIndexValue() {
-        byte[] value = SerializeUtil.buildOrderIndexValue(OPERATION_ID);
-        assertEquals(8, value.length);
-    }
-
     @Test
     void encodeReceiptHandle() {
         String receiptHandle = SerializeUtil.encodeReceiptHandle(CONSUMER_GROUP_ID, TOPIC_ID, QUEUE_ID, OPERATION_ID);
@@ -121,6 +111,43 @@ public class SerializeUtilTest {
         assertEquals(popOperation, decodedOperation);
     }
 
+    @Test
+    void encodeBatchPopOperation() {
+        com.automq.rocketmq.store.model.operation.BatchPopOperation batchPopOperation = new com.automq.rocketmq.store.model.operation.BatchPopOperation(
+            TOPIC_ID, QUEUE_ID, OPERATION_STREAM_ID, SNAPSHOT_STREAM_ID, null, CONSUMER_GROUP_ID, new long[] {OFFSET, OFFSET + 2, OFFSET + 5},
+            new int[] {COUNT, 2, 3}, INVISIBLE_DURATION, OPERATION_TIMESTAMP, true, POP_OPERATION_TYPE
+        );
+        byte[] bytes = SerializeUtil.encodeBatchPopOperation(batchPopOperation);
+        com.automq.rocketmq.store.model.operation.Operation decodedOperation = SerializeUtil.decodeOperation(ByteBuffer.wrap(bytes), null, OPERATION_STREAM_ID, SNAPSHOT_STREAM_ID);
+        assertEquals(batchPopOperation, decodedOperation);
+
+        // only the last pop operation is an end mark
+        com.automq.rocketmq.store.model.operation.PopOperation popOperation = batchPopOperation.popOperation(1);
+        assertEquals(OFFSET + 2, popOperation.offset());
+        assertEquals(2, popOperation.count());
+        assertFalse(popOperation.isEndMark());
+        assertTrue(batchPopOperation.popOperation(2).isEndMark());
+    }
+
+    @Test
+    void encodeOperationGroup() {
+        com.automq.rocketmq.store.model.operation.BatchPopOperation batchPopOperation = new com.automq.rocketmq.store.model.operation.BatchPopOperation(
+            TOPIC_ID, QUEUE_ID, OPERATION_STREAM_ID, SNAPSHOT_STREAM_ID, null, CONSUMER_GROUP_ID, new long[] {OFFSET, OFFSET + 1},
+            new int[] {COUNT, COUNT}, INVISIBLE_DURATION, OPERATION_TIMESTAMP, false, POP_OPERATION_TYPE
+        );
+        com.automq.rocketmq.store.model.operation.AckOperation ackOperation = new com.automq.rocketmq.store.model.operation.AckOperation(
+            TOPIC_ID, QUEUE_ID, OPERATION_STREAM_ID, SNAPSHOT_STREAM_ID, null, CONSUMER_GROUP_ID,
+            OPERATION_ID, OPERATION_TIMESTAMP, ACK_OPERATION_TYPE
+        );
+        List<com.automq.rocketmq.store.model.operation.Operation> operationList = List.of(batchPopOperation, ackOperation);
+        byte[] bytes = SerializeUtil.encodeOperationGroup(operationList);
+        assertEquals(operationList, SerializeUtil.decodeOperations(ByteBuffer.wrap(bytes), null, OPERATION_STREAM_ID, SNAPSHOT_STREAM_ID));
+
+        // a single operation is decoded as a group of one
+        bytes = SerializeUtil.encodeOperation(ackOperation);
+        assertEquals(List.of(ackOperation), SerializeUtil.decodeOperations(ByteBuffer.wrap(bytes), null, OPERATION_STREAM_ID, SNAPSHOT_STREAM_ID));
+    }
+
     @Test
     void encodeAckOperation() {
         com.automq.rocketmq.store.model.operation.AckOperation ackOperation = new com.automq.rocketmq.store.model.operation.AckOperation(